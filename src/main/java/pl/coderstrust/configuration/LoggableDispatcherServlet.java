@@ -2,12 +2,18 @@ package pl.coderstrust.configuration;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.web.servlet.DispatcherServlet;
 import org.springframework.web.util.ContentCachingResponseWrapper;
 import org.springframework.web.util.WebUtils;
+import pl.coderstrust.service.bulk.BulkMediaTypes;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -18,6 +24,10 @@ public class LoggableDispatcherServlet extends DispatcherServlet {
   @Override
   protected void doDispatch(HttpServletRequest request, HttpServletResponse response)
       throws Exception {
+    if (isStreamed(request)) {
+      super.doDispatch(request, response);
+      return;
+    }
     if (!(response instanceof ContentCachingResponseWrapper)) {
       response = new ContentCachingResponseWrapper(response);
     }
@@ -30,6 +40,23 @@ public class LoggableDispatcherServlet extends DispatcherServlet {
     }
   }
 
+  /**
+   * Bulk uploads and downloads are streamed line by line, which caching the body for the log
+   * would turn into holding all of it in memory.
+   */
+  private boolean isStreamed(HttpServletRequest request) {
+    try {
+      List<MediaType> types = new ArrayList<>(
+          MediaType.parseMediaTypes(request.getHeader(HttpHeaders.ACCEPT)));
+      if (request.getContentType() != null) {
+        types.add(MediaType.parseMediaType(request.getContentType()));
+      }
+      return BulkMediaTypes.select(types) != null;
+    } catch (InvalidMediaTypeException ex) {
+      return false;
+    }
+  }
+
   private String getResponsePayload(HttpServletResponse response) {
     ContentCachingResponseWrapper wrapper = WebUtils
         .getNativeResponse(response, ContentCachingResponseWrapper.class);
@@ -2,7 +2,11 @@ package pl.coderstrust.database;
 
 import pl.coderstrust.model.WithNameIdIssueDate;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public interface Database<T extends WithNameIdIssueDate> {
 
@@ -18,4 +22,116 @@ public interface Database<T extends WithNameIdIssueDate> {
 
   boolean idExist(long id);
 
+  /**
+   * Highest id stored so far, answered from the index or sequence of the database. It may be
+   * the id of an entry deleted since, and is lower than any id the database assigns later.
+   */
+  long getMaxId();
+
+  /**
+   * Adds the entry under the id it already carries instead of assigning the next one, for
+   * decorators which hand out ids before the entry reaches the backend. Later assigned ids
+   * continue after it. Databases generating ids themselves throw a DbException.
+   */
+  long insertEntry(T entry);
+
+  /**
+   * Adds all entries, with a single write where the backend can do it.
+   *
+   * @return ids of the entries, in the order of the list
+   */
+  default List<Long> addEntries(List<T> entries) {
+    List<Long> ids = new ArrayList<>(entries.size());
+    for (T entry : entries) {
+      ids.add(addEntry(entry));
+    }
+    return ids;
+  }
+
+  /**
+   * Adds all entries under the ids they carry, see {@link #insertEntry}, with a single write
+   * where the backend can do it.
+   */
+  default void insertEntries(List<T> entries) {
+    for (T entry : entries) {
+      insertEntry(entry);
+    }
+  }
+
+  default void updateEntries(List<T> entries) {
+    for (T entry : entries) {
+      updateEntry(entry);
+    }
+  }
+
+  default void deleteEntries(List<Long> ids) {
+    for (long id : ids) {
+      deleteEntry(id);
+    }
+  }
+
+  default List<T> getEntriesByDate(LocalDate beginDate, LocalDate endDate) {
+    return getEntries().stream()
+        .filter(entry -> !entry.getIssueDate().isBefore(beginDate)
+            && !entry.getIssueDate().isAfter(endDate))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Entries issued between beginDate and endDate which may involve the given company. Backends
+   * without a per-company layout return entries of all companies, so callers still filter.
+   */
+  default List<T> getEntriesByCompany(long companyId, LocalDate beginDate, LocalDate endDate) {
+    return getEntriesByDate(beginDate, endDate);
+  }
+
+  /**
+   * Entries which may have the given NIP. Backends without a NIP index return all entries, so
+   * callers still filter.
+   */
+  default List<T> getEntriesByNip(String nip) {
+    return getEntries();
+  }
+
+  /**
+   * At most pageSize entries issued between beginDate and endDate which come after the cursor,
+   * ordered by issue date and id. Use {@link PageCursor#START} for the first page.
+   */
+  default List<T> getEntriesPage(LocalDate beginDate, LocalDate endDate, PageCursor after,
+      int pageSize) {
+    try (Stream<T> entries = streamEntries()) {
+      return PageCursor.selectPage(entries
+          .filter(entry -> !entry.getIssueDate().isBefore(beginDate)
+              && !entry.getIssueDate().isAfter(endDate)), after, pageSize);
+    }
+  }
+
+  /**
+   * Entries read one at a time as the stream is consumed, for callers which don't need them all
+   * in memory at once. The stream may hold a file or a cursor open, so close it, e.g. with
+   * try-with-resources.
+   */
+  default Stream<T> streamEntries() {
+    return getEntries().stream();
+  }
+
+  /**
+   * Streaming counterpart of {@link #getEntriesByDate}.
+   */
+  default Stream<T> streamEntriesByDate(LocalDate beginDate, LocalDate endDate) {
+    return streamEntries()
+        .filter(entry -> !entry.getIssueDate().isBefore(beginDate)
+            && !entry.getIssueDate().isAfter(endDate));
+  }
+
+  /**
+   * Streaming counterpart of {@link #getEntriesByCompany}, with the same superset semantics.
+   */
+  default Stream<T> streamEntriesByCompany(long companyId, LocalDate beginDate,
+      LocalDate endDate) {
+    return streamEntries()
+        .filter(entry -> !entry.getIssueDate().isBefore(beginDate)
+            && !entry.getIssueDate().isAfter(endDate));
+  }
+
 }
@@ -4,18 +4,31 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import pl.coderstrust.database.cache.CachingDatabase;
 import pl.coderstrust.database.file.InFileDatabase;
 import pl.coderstrust.database.hibernate.CompanyRepository;
 import pl.coderstrust.database.hibernate.HibernateCompanyDatabase;
 import pl.coderstrust.database.hibernate.HibernateInvoiceDatabase;
 import pl.coderstrust.database.hibernate.InvoiceRepository;
 import pl.coderstrust.database.memory.InMemoryDatabase;
+import pl.coderstrust.database.memory.OffHeapDatabase;
 //import pl.coderstrust.database.mongo.MongoDatabase;
 import pl.coderstrust.database.mongo.MongoDatabase;
 import pl.coderstrust.database.multifile.MultiFileDatabase;
+import pl.coderstrust.database.multifile.PartitionLayout;
+import pl.coderstrust.database.sharded.ShardedDatabase;
 import pl.coderstrust.database.sql.CompaniesSqlDb;
+import pl.coderstrust.database.tiered.TieredDatabase;
+import pl.coderstrust.database.writebehind.WriteBehindDatabase;
 import pl.coderstrust.model.Company;
 import pl.coderstrust.model.Invoice;
+import pl.coderstrust.model.WithNameIdIssueDate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import javax.annotation.PreDestroy;
 
 @Configuration
 public class DatabaseProvider {
@@ -26,6 +39,8 @@ public class DatabaseProvider {
   private static final String MONGO_EMB = "mongo_emb";
   private static final String SQL_DB = "sql_db";
   private static final String HIBERNATE = "hibernate";
+  private static final String SHARD_SUFFIX = "Shard";
+  private static final String HOT_TIER_SUFFIX = "Hot";
 
   @Value("${pl.coderstrust.database.MasterDatabase}")
   private String masterDbType;
@@ -39,6 +54,57 @@ public class DatabaseProvider {
   @Value("${pl.coderstrust.database.FilterDatabase.key}")
   private String filterDbKey;
 
+  @Value("${pl.coderstrust.database.MasterDatabase.recordFormat:JSON}")
+  private RecordFormat recordFormat;
+
+  @Value("${pl.coderstrust.database.file.GroupCommit:false}")
+  private boolean groupCommit;
+
+  @Value("${pl.coderstrust.database.file.FsyncPolicy:NONE}")
+  private FsyncPolicy fsyncPolicy;
+
+  @Value("${pl.coderstrust.database.file.MappedReads:false}")
+  private boolean mappedReads;
+
+  @Value("${pl.coderstrust.database.memory.OffHeap:false}")
+  private boolean offHeap;
+
+  @Value("${pl.coderstrust.database.memory.Persistent:false}")
+  private boolean persistentMemory;
+
+  @Value("${pl.coderstrust.database.multifile.Layout:DAY}")
+  private PartitionLayout partitionLayout;
+
+  @Value("${pl.coderstrust.database.multifile.SegmentSize:16777216}")
+  private long segmentSize;
+
+  @Value("${pl.coderstrust.database.cache.MaximumSize:0}")
+  private int cacheMaximumSize;
+
+  @Value("${pl.coderstrust.database.cache.TimeToLiveSeconds:0}")
+  private long cacheTimeToLiveSeconds;
+
+  @Value("${pl.coderstrust.database.ShardCount:1}")
+  private int shardCount;
+
+  @Value("${pl.coderstrust.database.tiered.HotMonths:0}")
+  private int hotMonths;
+
+  @Value("${pl.coderstrust.database.writebehind.Capacity:0}")
+  private int writeBehindCapacity;
+
+  @Value("${pl.coderstrust.database.writebehind.BatchSize:100}")
+  private int writeBehindBatchSize;
+
+  @Value("${pl.coderstrust.database.writebehind.FlushIntervalMillis:100}")
+  private long writeBehindFlushIntervalMillis;
+
+  private GroupCommitWriter groupCommitWriter;
+
+  private List<WriteBehindDatabase<?>> writeBehindDatabases = new ArrayList<>();
+
+  private List<TieredDatabase<?>> tieredDatabases = new ArrayList<>();
+
   @Autowired
   CompanyRepository companyRepository;
 
@@ -47,42 +113,162 @@ public class DatabaseProvider {
 
   @Bean
   public Database<Invoice> invoicesDatabase() {
-    switch (masterDbType) {
+    String dbType = getInvoicesDbType();
+    return withCache(Invoice.class, withWriteBehind(dbType, withHotTier(dbType,
+        getShardedDatabase(Invoice.class, dbType, dbName -> getInvoicesDatabase(dbType, dbName)))));
+  }
+
+  /**
+   * With a hot tier, older invoices are kept in the FilterDatabase, or the MasterDatabase when
+   * the former isn't set.
+   */
+  private String getInvoicesDbType() {
+    return hotMonths > 0 && !filterDbType.isEmpty() ? filterDbType : masterDbType;
+  }
+
+  private Database<Invoice> getInvoicesDatabase(String dbType, String dbName) {
+    switch (dbType) {
       case IN_FILE:
-        return new InFileDatabase<>(Invoice.class, masterDbKey);
+        return new InFileDatabase<>(Invoice.class, masterDbKey, getFileConfiguration(dbName),
+            getGroupCommitWriter());
       case MULTIFILE:
-        return new MultiFileDatabase<>(Invoice.class, masterDbKey);
+        return new MultiFileDatabase<>(Invoice.class, masterDbKey,
+            getMultiFileConfiguration(Invoice.class, dbName), getGroupCommitWriter());
       case MONGO:
-        return new MongoDatabase<>(Invoice.class, masterDbKey, false);
+        return new MongoDatabase<>(Invoice.class, masterDbKey, false, dbName);
       case MONGO_EMB:
-        return new MongoDatabase<>(Invoice.class, masterDbKey, true);
+        return new MongoDatabase<>(Invoice.class, masterDbKey, true, dbName);
       case HIBERNATE:
         return new HibernateInvoiceDatabase(invoiceRepository,companyRepository);
       //TODO SQL db for Invoices
       // case SQL_DB:
       // return new CompaniesSqlDb<>(Invoice.class);
       default:
-        return new InMemoryDatabase<>(Invoice.class);
+        return getInMemoryDatabase(Invoice.class, dbName);
     }
   }
 
   @Bean
   public Database<Company> companiesDatabase() {
+    return withCache(Company.class, withWriteBehind(masterDbType,
+        getShardedDatabase(Company.class, masterDbType, this::getCompaniesDatabase)));
+  }
+
+  private Database<Company> getCompaniesDatabase(String dbName) {
     switch (masterDbType) {
       case IN_FILE:
-        return new InFileDatabase<>(Company.class, filterDbKey);
+        return new InFileDatabase<>(Company.class, filterDbKey, getFileConfiguration(dbName),
+            getGroupCommitWriter());
       case MULTIFILE:
-        return new MultiFileDatabase<>(Company.class, filterDbKey);
+        return new MultiFileDatabase<>(Company.class, filterDbKey,
+            getMultiFileConfiguration(Company.class, dbName), getGroupCommitWriter());
       case MONGO:
-        return new MongoDatabase<>(Company.class, filterDbKey, false);
+        return new MongoDatabase<>(Company.class, filterDbKey, false, dbName);
       case MONGO_EMB:
-        return new MongoDatabase<>(Company.class, filterDbKey, true);
+        return new MongoDatabase<>(Company.class, filterDbKey, true, dbName);
       case HIBERNATE:
         return new HibernateCompanyDatabase(companyRepository);
       case SQL_DB:
         return new CompaniesSqlDb();
       default:
-        return new InMemoryDatabase<>(Company.class);
+        return getInMemoryDatabase(Company.class, dbName);
+    }
+  }
+
+  private <T extends WithNameIdIssueDate> Database<T> getShardedDatabase(Class<T> entryClass,
+      String dbType, Function<String, Database<T>> databaseForName) {
+    if (shardCount <= 1 || isIdGeneratedByDatabase(dbType)) {
+      return databaseForName.apply(entryClass.getSimpleName());
+    }
+    List<Database<T>> shards = new ArrayList<>();
+    for (int i = 0; i < shardCount; i++) {
+      shards.add(databaseForName.apply(entryClass.getSimpleName() + SHARD_SUFFIX + i));
+    }
+    return new ShardedDatabase<>(shards);
+  }
+
+  private synchronized Database<Invoice> withHotTier(String dbType, Database<Invoice> database) {
+    if (hotMonths <= 0 || isIdGeneratedByDatabase(dbType)) {
+      return database;
+    }
+    // hot tier is the only copy of recent invoices, so it's always persistent
+    Database<Invoice> hotTier = new InMemoryDatabase<>(Invoice.class,
+        new pl.coderstrust.database.memory.Configuration(
+            Invoice.class.getSimpleName() + HOT_TIER_SUFFIX), getGroupCommitWriter());
+    TieredDatabase<Invoice> tieredDatabase = new TieredDatabase<>(hotTier, database, hotMonths);
+    tieredDatabases.add(tieredDatabase);
+    return tieredDatabase;
+  }
+
+  private synchronized <T extends WithNameIdIssueDate> Database<T> withWriteBehind(
+      String dbType, Database<T> database) {
+    if (writeBehindCapacity <= 0 || isIdGeneratedByDatabase(dbType)) {
+      return database;
+    }
+    WriteBehindDatabase<T> writeBehindDatabase = new WriteBehindDatabase<>(database,
+        writeBehindCapacity, writeBehindBatchSize, writeBehindFlushIntervalMillis);
+    writeBehindDatabases.add(writeBehindDatabase);
+    return writeBehindDatabase;
+  }
+
+  private <T extends WithNameIdIssueDate> Database<T> withCache(Class<T> entryClass,
+      Database<T> database) {
+    if (cacheMaximumSize <= 0) {
+      return database;
+    }
+    return new CachingDatabase<>(database, entryClass, cacheMaximumSize, cacheTimeToLiveSeconds,
+        TimeUnit.SECONDS);
+  }
+
+  /**
+   * Hibernate and sql databases generate ids themselves, so they can't store entries under ids
+   * assigned by write-behind, sharded or tiered databases.
+   */
+  private boolean isIdGeneratedByDatabase(String dbType) {
+    return HIBERNATE.equals(dbType) || SQL_DB.equals(dbType);
+  }
+
+  private <T extends WithNameIdIssueDate> Database<T> getInMemoryDatabase(Class<T> entryClass,
+      String dbName) {
+    if (offHeap) {
+      return new OffHeapDatabase<>(entryClass);
+    }
+    if (persistentMemory) {
+      return new InMemoryDatabase<>(entryClass,
+          new pl.coderstrust.database.memory.Configuration(dbName), getGroupCommitWriter());
+    }
+    return new InMemoryDatabase<>(entryClass);
+  }
+
+  private pl.coderstrust.database.file.Configuration getFileConfiguration(String dbName) {
+    return new pl.coderstrust.database.file.Configuration(dbName, mappedReads, recordFormat);
+  }
+
+  private pl.coderstrust.database.multifile.Configuration getMultiFileConfiguration(
+      Class<?> entryClass, String dbName) {
+    PartitionLayout layout = partitionLayout == PartitionLayout.COMPANY
+        && entryClass != Invoice.class ? PartitionLayout.DAY : partitionLayout;
+    return new pl.coderstrust.database.multifile.Configuration(dbName, layout, segmentSize);
+  }
+
+  private synchronized GroupCommitWriter getGroupCommitWriter() {
+    if (groupCommit && groupCommitWriter == null) {
+      groupCommitWriter = new GroupCommitWriter(fsyncPolicy);
+    }
+    return groupCommitWriter;
+  }
+
+  @PreDestroy
+  public synchronized void flushDatabases() {
+    // aging moves entries between tiers, so it's stopped before their writer is closed
+    for (TieredDatabase<?> tieredDatabase : tieredDatabases) {
+      tieredDatabase.close();
+    }
+    for (WriteBehindDatabase<?> writeBehindDatabase : writeBehindDatabases) {
+      writeBehindDatabase.close();
+    }
+    if (groupCommitWriter != null) {
+      groupCommitWriter.close();
     }
   }
 }
@@ -14,6 +14,18 @@ public class ExceptionMsg {
       "Filesystem I/O error adding entry. Please try again later.";
   public static final String INTERNAL_PROCESSING_ERROR =
       "Internal entry processing error. Please try again later";
+  public static final String IO_ERROR_WHILE_COMPACTING =
+      "Filesystem I/O error while compacting database file.";
+  public static final String CORRUPTED_RECORD =
+      "Database file record failed checksum verification.";
+  public static final String IO_ERROR_WHILE_MIGRATING =
+      "Filesystem I/O error while migrating database files.";
   public static final String IO_ERROR_WHILE_INITIALIZING =
       "Filesystem I/O error while initializing. Please try again later";
+  public static final String IO_ERROR_WHILE_FLUSHING =
+      "Error while flushing buffered write to database.";
+  public static final String IO_ERROR_WHILE_AGING =
+      "Error while moving entries from hot to cold database tier.";
+  public static final String IDS_ASSIGNED_BY_DATABASE =
+      "Database assigns entry ids itself and can't store entries under given ids.";
 }
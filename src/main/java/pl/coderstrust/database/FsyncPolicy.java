@@ -0,0 +1,7 @@
+package pl.coderstrust.database;
+
+public enum FsyncPolicy {
+  NONE,
+  PER_BATCH,
+  PER_RECORD
+}
@@ -0,0 +1,214 @@
+package pl.coderstrust.database;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Appends records of many callers with one writer thread. Records queued while a batch is
+ * written are drained into the next batch, so concurrent writers share file opens and fsyncs.
+ */
+public class GroupCommitWriter implements Closeable {
+
+  private static final int MAX_BATCH_SIZE = 1024;
+  private static final int MAX_OPEN_CHANNELS = 16;
+  private static final PendingRecord STOP = new PendingRecord(null, null);
+
+  private final Logger logger = LoggerFactory.getLogger(GroupCommitWriter.class);
+  private final BlockingQueue<PendingRecord> queue = new LinkedBlockingQueue<>();
+  private final Map<Path, FileChannel> channels =
+      new LinkedHashMap<>(MAX_OPEN_CHANNELS, 0.75f, true);
+  private final FsyncPolicy fsyncPolicy;
+  private final Thread writerThread;
+  private volatile boolean running = true;
+  private volatile CompletableFuture<Long> lastWrite = CompletableFuture.completedFuture(0L);
+
+  public GroupCommitWriter(FsyncPolicy fsyncPolicy) {
+    this.fsyncPolicy = fsyncPolicy;
+    writerThread = new Thread(this::writeBatches, "GroupCommitWriter");
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  /**
+   * Queues the record for appending to the file.
+   *
+   * @return future completed with the offset of the record once its batch is written
+   */
+  public synchronized CompletableFuture<Long> append(Path file, byte[] record) {
+    if (!running) {
+      logger.warn(" from append in GroupCommitWriter: "
+          + ExceptionMsg.IO_ERROR_WHILE_ADDING);
+      throw new DbException(ExceptionMsg.IO_ERROR_WHILE_ADDING);
+    }
+    PendingRecord pendingRecord = new PendingRecord(file, record);
+    lastWrite = pendingRecord.written;
+    queue.add(pendingRecord);
+    return pendingRecord.written;
+  }
+
+  public void awaitPendingWrites() {
+    try {
+      lastWrite.join();
+    } catch (CompletionException ex) {
+      // failure is reported to the caller who queued the record
+    }
+  }
+
+  /**
+   * Waits for queued records and closes the channel kept open for the file, so the file can be
+   * replaced or removed.
+   */
+  public void release(Path file) {
+    awaitPendingWrites();
+    synchronized (channels) {
+      closeChannel(channels.remove(file));
+    }
+  }
+
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (!running) {
+        return;
+      }
+      running = false;
+      queue.add(STOP);
+    }
+    try {
+      writerThread.join();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void writeBatches() {
+    boolean stopped = false;
+    while (!stopped) {
+      List<PendingRecord> batch = new ArrayList<>();
+      try {
+        batch.add(queue.take());
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+      stopped = batch.remove(STOP);
+      writeBatch(batch);
+    }
+    synchronized (channels) {
+      channels.values().forEach(this::closeChannel);
+      channels.clear();
+    }
+  }
+
+  /**
+   * Writes the batch all or nothing. When a write fails, files are truncated back to their size
+   * before the batch, so callers retrying their failed records don't add them twice. Channels of
+   * the batch stay open until it ends, above the limit of open channels if needed.
+   */
+  private void writeBatch(List<PendingRecord> batch) {
+    synchronized (channels) {
+      Map<Path, Long> batchStarts = new LinkedHashMap<>();
+      try {
+        for (PendingRecord pendingRecord : batch) {
+          FileChannel channel = getChannel(pendingRecord.file);
+          pendingRecord.offset = channel.size();
+          batchStarts.putIfAbsent(pendingRecord.file, pendingRecord.offset);
+          ByteBuffer buffer = ByteBuffer.wrap(pendingRecord.record);
+          while (buffer.hasRemaining()) {
+            channel.write(buffer);
+          }
+          if (fsyncPolicy == FsyncPolicy.PER_RECORD) {
+            channel.force(false);
+          }
+        }
+        if (fsyncPolicy == FsyncPolicy.PER_BATCH) {
+          for (Path file : batchStarts.keySet()) {
+            channels.get(file).force(false);
+          }
+        }
+        closeExtraChannels();
+      } catch (IOException ex) {
+        logger.warn(" from writeBatch in GroupCommitWriter: "
+            + ExceptionMsg.IO_ERROR_WHILE_ADDING, ex);
+        DbException failure = new DbException(ExceptionMsg.IO_ERROR_WHILE_ADDING, ex);
+        batchStarts.forEach(this::truncate);
+        channels.values().forEach(this::closeChannel);
+        channels.clear();
+        batch.forEach(pendingRecord -> pendingRecord.written.completeExceptionally(failure));
+        return;
+      }
+    }
+    batch.forEach(pendingRecord -> pendingRecord.written.complete(pendingRecord.offset));
+  }
+
+  private void truncate(Path file, long size) {
+    try {
+      FileChannel channel = channels.get(file);
+      channel.truncate(size);
+      channel.force(false);
+    } catch (IOException ex) {
+      logger.warn(" from truncate in GroupCommitWriter: "
+          + ExceptionMsg.IO_ERROR_WHILE_ADDING, ex);
+    }
+  }
+
+  private FileChannel getChannel(Path file) throws IOException {
+    FileChannel channel = channels.get(file);
+    if (channel == null) {
+      channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.APPEND);
+      channels.put(file, channel);
+    }
+    return channel;
+  }
+
+  private void closeExtraChannels() {
+    Iterator<FileChannel> eldestFirst = channels.values().iterator();
+    while (channels.size() > MAX_OPEN_CHANNELS) {
+      closeChannel(eldestFirst.next());
+      eldestFirst.remove();
+    }
+  }
+
+  private void closeChannel(FileChannel channel) {
+    if (channel == null) {
+      return;
+    }
+    try {
+      channel.close();
+    } catch (IOException ex) {
+      logger.warn(" from closeChannel in GroupCommitWriter: "
+          + ExceptionMsg.IO_ERROR_WHILE_ADDING, ex);
+    }
+  }
+
+  private static class PendingRecord {
+
+    private final Path file;
+    private final byte[] record;
+    private final CompletableFuture<Long> written = new CompletableFuture<>();
+    private long offset;
+
+    PendingRecord(Path file, byte[] record) {
+      this.file = file;
+      this.record = record;
+    }
+  }
+}
@@ -1,29 +1,51 @@
 package pl.coderstrust.database;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.mongodb.DBObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
 
 public class ObjectMapperHelper<T> {
 
   private final Logger logger = LoggerFactory.getLogger(ObjectMapperHelper.class);
   private ObjectMapper jsonMapper;
+  private ObjectMapper recordMapper;
   private Class<T> entryClass;
 
   public ObjectMapperHelper(Class<T> entryClass) {
-    jsonMapper = new ObjectMapper();
-    jsonMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
-    jsonMapper.registerModule(new JavaTimeModule());
+    this(entryClass, RecordFormat.JSON);
+  }
+
+  public ObjectMapperHelper(Class<T> entryClass, RecordFormat recordFormat) {
+    jsonMapper = createMapper(new ObjectMapper());
+    if (recordFormat == RecordFormat.SMILE) {
+      recordMapper = createMapper(new ObjectMapper(new SmileFactory()));
+    } else {
+      recordMapper = jsonMapper;
+    }
     this.entryClass = entryClass;
   }
 
+  private ObjectMapper createMapper(ObjectMapper mapper) {
+    mapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    mapper.registerModule(new JavaTimeModule());
+    return mapper;
+  }
+
   public String toJson(T object) {
     try {
       return jsonMapper.writeValueAsString(object);
@@ -44,11 +66,117 @@ public class ObjectMapperHelper<T> {
     }
   }
 
+  public byte[] toRecord(T object) {
+    return writeRecord(object);
+  }
+
+  public byte[] toRecord(String fieldName, long value) {
+    return writeRecord(Collections.singletonMap(fieldName, value));
+  }
+
+  private byte[] writeRecord(Object value) {
+    try {
+      return recordMapper.writeValueAsBytes(value);
+    } catch (JsonProcessingException ex) {
+      logger.warn(" from toRecord: "
+          + ExceptionMsg.INTERNAL_PROCESSING_ERROR, ex);
+      throw new DbException(ExceptionMsg.INTERNAL_PROCESSING_ERROR, ex);
+    }
+  }
+
+  public T fromRecord(ByteBuffer record) {
+    try (JsonParser parser = createRecordParser(record)) {
+      return recordMapper.readValue(parser, entryClass);
+    } catch (IOException ex) {
+      logger.warn(" from fromRecord: "
+          + ExceptionMsg.INTERNAL_PROCESSING_ERROR, ex);
+      throw new DbException(ExceptionMsg.INTERNAL_PROCESSING_ERROR, ex);
+    }
+  }
+
+  private JsonParser createRecordParser(ByteBuffer record) throws IOException {
+    if (record.hasArray()) {
+      return recordMapper.getFactory().createParser(record.array(),
+          record.arrayOffset() + record.position(), record.remaining());
+    }
+    return recordMapper.getFactory().createParser(new ByteBufferBackedInputStream(record));
+  }
+
   public T toObject(DBObject dbObject) {
     dbObject.removeField("_id");
     return toObject(dbObject.toString());
   }
 
+  public long readId(String json, String idFieldName) {
+    try (JsonParser parser = jsonMapper.getFactory().createParser(json)) {
+      return readId(parser, idFieldName);
+    } catch (IOException ex) {
+      logger.warn(" from readId: "
+          + ExceptionMsg.INTERNAL_PROCESSING_ERROR, ex);
+      throw new DbException(ExceptionMsg.INTERNAL_PROCESSING_ERROR, ex);
+    }
+  }
+
+  public long readId(ByteBuffer record, String idFieldName) {
+    try (JsonParser parser = createRecordParser(record)) {
+      return readId(parser, idFieldName);
+    } catch (IOException ex) {
+      logger.warn(" from readId: "
+          + ExceptionMsg.INTERNAL_PROCESSING_ERROR, ex);
+      throw new DbException(ExceptionMsg.INTERNAL_PROCESSING_ERROR, ex);
+    }
+  }
+
+  private long readId(JsonParser parser, String idFieldName) throws IOException {
+    if (parser.nextToken() == JsonToken.START_OBJECT) {
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String fieldName = parser.getCurrentName();
+        parser.nextToken();
+        if (idFieldName.equals(fieldName)) {
+          return parser.getLongValue();
+        }
+        parser.skipChildren();
+      }
+    }
+    logger.warn(" from readId: "
+        + ExceptionMsg.INTERNAL_PROCESSING_ERROR);
+    throw new DbException(ExceptionMsg.INTERNAL_PROCESSING_ERROR);
+  }
+
+  public LocalDate readDate(String json, String dateFieldName) {
+    try (JsonParser parser = jsonMapper.getFactory().createParser(json)) {
+      return readDate(parser, dateFieldName);
+    } catch (IOException | DateTimeParseException ex) {
+      logger.warn(" from readDate: "
+          + ExceptionMsg.INTERNAL_PROCESSING_ERROR, ex);
+      throw new DbException(ExceptionMsg.INTERNAL_PROCESSING_ERROR, ex);
+    }
+  }
+
+  public LocalDate readDate(ByteBuffer record, String dateFieldName) {
+    try (JsonParser parser = createRecordParser(record)) {
+      return readDate(parser, dateFieldName);
+    } catch (IOException | DateTimeParseException ex) {
+      logger.warn(" from readDate: "
+          + ExceptionMsg.INTERNAL_PROCESSING_ERROR, ex);
+      throw new DbException(ExceptionMsg.INTERNAL_PROCESSING_ERROR, ex);
+    }
+  }
+
+  private LocalDate readDate(JsonParser parser, String dateFieldName) throws IOException {
+    if (parser.nextToken() == JsonToken.START_OBJECT) {
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String fieldName = parser.getCurrentName();
+        JsonToken value = parser.nextToken();
+        if (dateFieldName.equals(fieldName)) {
+          return value == JsonToken.VALUE_STRING ? LocalDate.parse(parser.getText()) : null;
+        }
+        parser.skipChildren();
+      }
+    }
+    return null;
+  }
+
   public String idToJson(long id) {
     try {
       return jsonMapper.writeValueAsString(id);
@@ -0,0 +1,110 @@
+package pl.coderstrust.database;
+
+import pl.coderstrust.model.WithNameIdIssueDate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+
+/**
+ * Position in the issue date and id order of entries, i.e. the last entry of a page. The next
+ * page starts right after it, so entries added or deleted meanwhile don't shift it.
+ */
+public final class PageCursor {
+
+  public static final Comparator<WithNameIdIssueDate> ORDER =
+      Comparator.comparing(WithNameIdIssueDate::getIssueDate)
+          .thenComparingLong(WithNameIdIssueDate::getId);
+  public static final PageCursor START = new PageCursor(LocalDate.MIN, Long.MIN_VALUE);
+  private static final String SEPARATOR = ":";
+
+  private final LocalDate issueDate;
+  private final long id;
+
+  public PageCursor(LocalDate issueDate, long id) {
+    this.issueDate = issueDate;
+    this.id = id;
+  }
+
+  public static PageCursor of(WithNameIdIssueDate entry) {
+    return new PageCursor(entry.getIssueDate(), entry.getId());
+  }
+
+  /**
+   * Cursor of the last entry of a full page, or null when there are no more pages.
+   */
+  public static PageCursor next(List<? extends WithNameIdIssueDate> page, int pageSize) {
+    return page.size() < pageSize ? null : of(page.get(page.size() - 1));
+  }
+
+  /**
+   * Reads a cursor written by {@link #encode}.
+   *
+   * @throws IllegalArgumentException when the token isn't a cursor
+   */
+  public static PageCursor decode(String token) {
+    try {
+      String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8)
+          .split(SEPARATOR);
+      if (parts.length != 2) {
+        throw new IllegalArgumentException("not a page cursor: " + token);
+      }
+      return new PageCursor(LocalDate.parse(parts[0]), Long.parseLong(parts[1]));
+    } catch (DateTimeParseException ex) {
+      throw new IllegalArgumentException("not a page cursor: " + token, ex);
+    }
+  }
+
+  /**
+   * The first pageSize entries after the cursor, in order. Only pageSize entries are held at a
+   * time, so the entries may come from a stream of any length.
+   */
+  public static <T extends WithNameIdIssueDate> List<T> selectPage(Stream<T> entries,
+      PageCursor after, int pageSize) {
+    PriorityQueue<T> page = new PriorityQueue<>(pageSize + 1, ORDER.reversed());
+    entries.filter(after::isBefore).forEach(entry -> {
+      page.offer(entry);
+      if (page.size() > pageSize) {
+        page.poll();
+      }
+    });
+    List<T> sorted = new ArrayList<>(page);
+    sorted.sort(ORDER);
+    return sorted;
+  }
+
+  /**
+   * Opaque token of this cursor, safe to put into an url.
+   */
+  public String encode() {
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString((issueDate + SEPARATOR + id).getBytes(StandardCharsets.UTF_8));
+  }
+
+  public boolean isBefore(WithNameIdIssueDate entry) {
+    int dateOrder = entry.getIssueDate().compareTo(issueDate);
+    return dateOrder > 0 || dateOrder == 0 && entry.getId() > id;
+  }
+
+  /**
+   * Same cursor, moved forward to just before the first entry of beginDate if it's earlier.
+   * Backends can then query issue dates from {@link #getIssueDate} on.
+   */
+  public PageCursor clampTo(LocalDate beginDate) {
+    return issueDate.isBefore(beginDate) ? new PageCursor(beginDate, Long.MIN_VALUE) : this;
+  }
+
+  public LocalDate getIssueDate() {
+    return issueDate;
+  }
+
+  public long getId() {
+    return id;
+  }
+}
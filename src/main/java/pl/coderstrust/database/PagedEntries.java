@@ -0,0 +1,80 @@
+package pl.coderstrust.database;
+
+import pl.coderstrust.model.WithNameIdIssueDate;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Streams entries of a backend which can't keep a cursor open between calls by reading them a
+ * page at a time in id order. Every page starts after the last id of the previous one, so entries
+ * added or deleted meanwhile don't shift the following pages.
+ */
+public final class PagedEntries {
+
+  public static final int DEFAULT_PAGE_SIZE = 500;
+
+  private PagedEntries() {
+  }
+
+  public static <T extends WithNameIdIssueDate> Stream<T> stream(PageReader<T> pageReader,
+      int pageSize) {
+    return streamPages(last -> pageReader.readPage(last == null ? Long.MIN_VALUE : last.getId(),
+        pageSize), pageSize);
+  }
+
+  /**
+   * Streams entries issued between beginDate and endDate in issue date and id order, reading
+   * them with {@link Database#getEntriesPage}.
+   */
+  public static <T extends WithNameIdIssueDate> Stream<T> streamByDate(Database<T> database,
+      LocalDate beginDate, LocalDate endDate, int pageSize) {
+    return streamPages(last -> database.getEntriesPage(beginDate, endDate,
+        last == null ? PageCursor.START : PageCursor.of(last), pageSize), pageSize);
+  }
+
+  /**
+   * Reads the pages with nextPage, given the last entry of the previous page, null at first.
+   */
+  private static <T extends WithNameIdIssueDate> Stream<T> streamPages(
+      Function<T, List<T>> nextPage, int pageSize) {
+    return StreamSupport.stream(new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+        Spliterator.ORDERED | Spliterator.NONNULL) {
+
+      private Iterator<T> page = Collections.emptyIterator();
+      private T last;
+      private boolean lastPage;
+
+      @Override
+      public boolean tryAdvance(Consumer<? super T> action) {
+        while (!page.hasNext()) {
+          if (lastPage) {
+            return false;
+          }
+          List<T> entries = nextPage.apply(last);
+          lastPage = entries.size() < pageSize;
+          page = entries.iterator();
+        }
+        last = page.next();
+        action.accept(last);
+        return true;
+      }
+    }, false);
+  }
+
+  public interface PageReader<T> {
+
+    /**
+     * At most pageSize entries with ids greater than afterId, in id order.
+     */
+    List<T> readPage(long afterId, int pageSize);
+  }
+}
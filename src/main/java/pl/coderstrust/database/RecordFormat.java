@@ -0,0 +1,16 @@
+package pl.coderstrust.database;
+
+public enum RecordFormat {
+  JSON("json"),
+  SMILE("smile");
+
+  private final String fileExtension;
+
+  RecordFormat(String fileExtension) {
+    this.fileExtension = fileExtension;
+  }
+
+  public String getFileExtension() {
+    return fileExtension;
+  }
+}
@@ -0,0 +1,306 @@
+package pl.coderstrust.database.cache;
+
+import pl.coderstrust.database.Database;
+import pl.coderstrust.database.ObjectMapperHelper;
+import pl.coderstrust.database.PageCursor;
+import pl.coderstrust.database.RecordFormat;
+import pl.coderstrust.model.WithNameIdIssueDate;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+/**
+ * Read-through cache of entries by id in front of any database. Least recently used entries are
+ * evicted once maximumSize is exceeded, and with a non-zero time to live entries also expire that
+ * long after being loaded. Updates and deletes go through to the wrapped database and invalidate
+ * the cached entry. Entries are cached serialized, so every read gets its own copy which callers
+ * may change without touching the cache.
+ */
+public class CachingDatabase<T extends WithNameIdIssueDate> implements Database<T> {
+
+  private final Database<T> database;
+  private final ObjectMapperHelper<T> mapper;
+  private final int maximumSize;
+  private final long timeToLiveNanos;
+  private final LongSupplier clock;
+  private final ConcurrentHashMap<Long, CachedEntry> cache = new ConcurrentHashMap<>();
+  // ids of loaded entries by their last access, the least recently used first
+  private final ConcurrentSkipListMap<Long, Long> accessOrder = new ConcurrentSkipListMap<>();
+  private final AtomicLong accesses = new AtomicLong();
+  private final AtomicInteger size = new AtomicInteger();
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+  private final LongAdder evictionCount = new LongAdder();
+
+  public CachingDatabase(Database<T> database, Class<T> entryClass, int maximumSize) {
+    this(database, entryClass, maximumSize, 0, TimeUnit.SECONDS);
+  }
+
+  public CachingDatabase(Database<T> database, Class<T> entryClass, int maximumSize,
+      long timeToLive, TimeUnit timeUnit) {
+    this(database, entryClass, maximumSize, timeUnit.toNanos(timeToLive), System::nanoTime);
+  }
+
+  CachingDatabase(Database<T> database, Class<T> entryClass, int maximumSize,
+      long timeToLiveNanos, LongSupplier clock) {
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("maximumSize must be positive");
+    }
+    this.database = database;
+    this.mapper = new ObjectMapperHelper<>(entryClass, RecordFormat.SMILE);
+    this.maximumSize = maximumSize;
+    this.timeToLiveNanos = timeToLiveNanos;
+    this.clock = clock;
+  }
+
+  @Override
+  public long addEntry(T entry) {
+    return database.addEntry(entry);
+  }
+
+  @Override
+  public long insertEntry(T entry) {
+    return database.insertEntry(entry);
+  }
+
+  @Override
+  public long getMaxId() {
+    return database.getMaxId();
+  }
+
+  @Override
+  public void deleteEntry(long id) {
+    try {
+      database.deleteEntry(id);
+    } finally {
+      invalidate(id);
+    }
+  }
+
+  /**
+   * A miss marks the id as loading before reading the wrapped database. Invalidating the id
+   * removes the mark, so an entry loaded before an update or delete is never cached.
+   */
+  @Override
+  public T getEntryById(long id) {
+    CachedEntry cached = getCached(id);
+    if (cached != null) {
+      hitCount.increment();
+      return mapper.fromRecord(ByteBuffer.wrap(cached.record));
+    }
+    missCount.increment();
+    CachedEntry loading = new CachedEntry(null, 0);
+    boolean caching = cache.putIfAbsent(id, loading) == null;
+    T entry;
+    try {
+      entry = database.getEntryById(id);
+    } catch (RuntimeException ex) {
+      if (caching) {
+        cache.remove(id, loading);
+      }
+      throw ex;
+    }
+    if (caching) {
+      CachedEntry loaded = new CachedEntry(mapper.toRecord(entry), clock.getAsLong());
+      if (cache.replace(id, loading, loaded)) {
+        touch(id, loaded);
+        size.incrementAndGet();
+        evictLeastRecentlyUsed();
+      }
+    }
+    return entry;
+  }
+
+  @Override
+  public void updateEntry(T entry) {
+    try {
+      database.updateEntry(entry);
+    } finally {
+      invalidate(entry.getId());
+    }
+  }
+
+  @Override
+  public List<Long> addEntries(List<T> entries) {
+    return database.addEntries(entries);
+  }
+
+  @Override
+  public void insertEntries(List<T> entries) {
+    database.insertEntries(entries);
+  }
+
+  @Override
+  public void updateEntries(List<T> entries) {
+    try {
+      database.updateEntries(entries);
+    } finally {
+      entries.forEach(entry -> invalidate(entry.getId()));
+    }
+  }
+
+  @Override
+  public void deleteEntries(List<Long> ids) {
+    try {
+      database.deleteEntries(ids);
+    } finally {
+      ids.forEach(this::invalidate);
+    }
+  }
+
+  @Override
+  public List<T> getEntries() {
+    return database.getEntries();
+  }
+
+  @Override
+  public boolean idExist(long id) {
+    if (getCached(id) != null) {
+      hitCount.increment();
+      return true;
+    }
+    missCount.increment();
+    return database.idExist(id);
+  }
+
+  @Override
+  public List<T> getEntriesByDate(LocalDate beginDate, LocalDate endDate) {
+    return database.getEntriesByDate(beginDate, endDate);
+  }
+
+  @Override
+  public List<T> getEntriesByCompany(long companyId, LocalDate beginDate, LocalDate endDate) {
+    return database.getEntriesByCompany(companyId, beginDate, endDate);
+  }
+
+  @Override
+  public List<T> getEntriesByNip(String nip) {
+    return database.getEntriesByNip(nip);
+  }
+
+  @Override
+  public List<T> getEntriesPage(LocalDate beginDate, LocalDate endDate, PageCursor after,
+      int pageSize) {
+    return database.getEntriesPage(beginDate, endDate, after, pageSize);
+  }
+
+  @Override
+  public Stream<T> streamEntries() {
+    return database.streamEntries();
+  }
+
+  @Override
+  public Stream<T> streamEntriesByDate(LocalDate beginDate, LocalDate endDate) {
+    return database.streamEntriesByDate(beginDate, endDate);
+  }
+
+  @Override
+  public Stream<T> streamEntriesByCompany(long companyId, LocalDate beginDate,
+      LocalDate endDate) {
+    return database.streamEntriesByCompany(companyId, beginDate, endDate);
+  }
+
+  public void invalidateAll() {
+    cache.keySet().forEach(this::invalidate);
+  }
+
+  public long getHitCount() {
+    return hitCount.sum();
+  }
+
+  public long getMissCount() {
+    return missCount.sum();
+  }
+
+  public long getEvictionCount() {
+    return evictionCount.sum();
+  }
+
+  public int getSize() {
+    return size.get();
+  }
+
+  private void invalidate(long id) {
+    CachedEntry removed = cache.remove(id);
+    if (removed != null && removed.record != null) {
+      forget(id, removed);
+    }
+  }
+
+  /**
+   * The loaded entry of the id, or null when it isn't cached, is still loading or has expired.
+   */
+  private CachedEntry getCached(long id) {
+    CachedEntry cached = cache.get(id);
+    if (cached == null || cached.record == null) {
+      return null;
+    }
+    if (timeToLiveNanos > 0 && clock.getAsLong() - cached.loadTime >= timeToLiveNanos) {
+      if (cache.remove(id, cached)) {
+        forget(id, cached);
+        evictionCount.increment();
+      }
+      return null;
+    }
+    touch(id, cached);
+    return cached;
+  }
+
+  private void touch(long id, CachedEntry cached) {
+    synchronized (cached) {
+      if (cached.lastAccess != 0) {
+        accessOrder.remove(cached.lastAccess, id);
+      }
+      cached.lastAccess = accesses.incrementAndGet();
+      accessOrder.put(cached.lastAccess, id);
+    }
+  }
+
+  private void forget(long id, CachedEntry removed) {
+    synchronized (removed) {
+      accessOrder.remove(removed.lastAccess, id);
+    }
+    size.decrementAndGet();
+  }
+
+  private void evictLeastRecentlyUsed() {
+    while (size.get() > maximumSize) {
+      Map.Entry<Long, Long> eldest = accessOrder.pollFirstEntry();
+      if (eldest == null) {
+        return;
+      }
+      CachedEntry cached = cache.get(eldest.getValue());
+      // an entry accessed again since it was polled has moved up the order
+      if (cached != null && cached.lastAccess == eldest.getKey()
+          && cache.remove(eldest.getValue(), cached)) {
+        size.decrementAndGet();
+        evictionCount.increment();
+      }
+    }
+  }
+
+  /**
+   * Serialized entry with the time it was loaded, or a loading mark when record is null.
+   */
+  private static class CachedEntry {
+
+    private final byte[] record;
+    private final long loadTime;
+    private volatile long lastAccess;
+
+    CachedEntry(byte[] record, long loadTime) {
+      this.record = record;
+      this.loadTime = loadTime;
+    }
+  }
+}
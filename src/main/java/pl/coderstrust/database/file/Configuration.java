@@ -1,37 +1,85 @@
 package pl.coderstrust.database.file;
 
+import pl.coderstrust.database.RecordFormat;
+
 public class Configuration {
 
 
   private static final String dbFilePath = "src/main/resources/";
-  private static final String dbFileExtension = ".json";
   private static final String dbNamePrefix = "db";
   private static final String dbTempNamePrefix = "temp";
+  private static final String dbIndexNamePrefix = "index";
+  private static final String dbIndexFileExtension = ".idx";
+  private static final String dbTempFileExtension = ".tmp";
 
-  private static final int fileSystemWaitTimeMs = 2000;
-  private static final int UNIT_SLEEP_TIME_MS = 20;
+  static final int DEFAULT_COMPACTION_THRESHOLD = 1000;
+  static final int DEFAULT_SNAPSHOT_INTERVAL = 1000;
 
   private String dbEntryClassName;
+  private int compactionThreshold;
+  private boolean mappedReads;
+  private RecordFormat recordFormat;
 
   public Configuration(String dbEntryClassName) {
+    this(dbEntryClassName, DEFAULT_COMPACTION_THRESHOLD);
+  }
+
+  public Configuration(String dbEntryClassName, int compactionThreshold) {
+    this(dbEntryClassName, compactionThreshold, false);
+  }
+
+  public Configuration(String dbEntryClassName, boolean mappedReads, RecordFormat recordFormat) {
+    this(dbEntryClassName, DEFAULT_COMPACTION_THRESHOLD, mappedReads, recordFormat);
+  }
+
+  public Configuration(String dbEntryClassName, int compactionThreshold, boolean mappedReads) {
+    this(dbEntryClassName, compactionThreshold, mappedReads, RecordFormat.JSON);
+  }
+
+  public Configuration(String dbEntryClassName, int compactionThreshold, boolean mappedReads,
+      RecordFormat recordFormat) {
     this.dbEntryClassName = dbEntryClassName;
+    this.compactionThreshold = compactionThreshold;
+    this.mappedReads = mappedReads;
+    this.recordFormat = recordFormat;
   }
 
   String getDbFilePath() {
     return dbFilePath
-        + dbNamePrefix + dbEntryClassName + dbFileExtension;
+        + dbNamePrefix + dbEntryClassName + getDbFileExtension();
   }
 
   String getDbTempFilePath() {
     return dbFilePath
-        + dbTempNamePrefix + dbEntryClassName + dbFileExtension;
+        + dbTempNamePrefix + dbEntryClassName + getDbFileExtension();
+  }
+
+  private String getDbFileExtension() {
+    return "." + recordFormat.getFileExtension();
+  }
+
+  String getDbIndexFilePath() {
+    return dbFilePath
+        + dbIndexNamePrefix + dbEntryClassName + getDbFileExtension() + dbIndexFileExtension;
+  }
+
+  String getDbIndexTempFilePath() {
+    return getDbIndexFilePath() + dbTempFileExtension;
+  }
+
+  int getSnapshotInterval() {
+    return DEFAULT_SNAPSHOT_INTERVAL;
+  }
+
+  int getCompactionThreshold() {
+    return compactionThreshold;
   }
 
-  int getFileSystemWaitTimeMs() {
-    return fileSystemWaitTimeMs;
+  boolean isMappedReads() {
+    return mappedReads;
   }
 
-  int getUnitSleepTimeMs() {
-    return UNIT_SLEEP_TIME_MS;
+  RecordFormat getRecordFormat() {
+    return recordFormat;
   }
-}
\ No newline at end of file
+}
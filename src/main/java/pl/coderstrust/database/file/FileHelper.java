@@ -4,32 +4,72 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pl.coderstrust.database.DbException;
 import pl.coderstrust.database.ExceptionMsg;
+import pl.coderstrust.database.GroupCommitWriter;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
 
 class FileHelper {
 
+  static final int SCAN_BUFFER_BYTES = 64 * 1024;
+  private static final int INDEX_FORMAT_VERSION = 3;
   private final Logger logger = LoggerFactory.getLogger(FileHelper.class);
-  private Configuration dbConfig;
   private File dbFile;
   private File tempFile;
-  private FileStateCheck canWrite = File::canWrite;
-  private FileStateCheck isDeleted = (File file) -> !file.exists();
+  private File indexFile;
+  private File indexTempFile;
+  private GroupCommitWriter writer;
+  private RecordCodec codec;
+  private MappedFileReader mappedReader;
+  // end and CRC of the bytes written so far, kept up as appends complete
+  private long dataEnd;
+  private CRC32 dataChecksum = new CRC32();
+  private volatile CompletableFuture<Long> lastWrite = CompletableFuture.completedFuture(0L);
 
   FileHelper(Configuration dbConfig) {
-    this.dbConfig = dbConfig;
+    this(dbConfig, null);
+  }
+
+  FileHelper(Configuration dbConfig, GroupCommitWriter writer) {
+    this.writer = writer;
+    codec = RecordCodec.forFormat(dbConfig.getRecordFormat());
     dbFile = new File(dbConfig.getDbFilePath());
     tempFile = new File(dbConfig.getDbTempFilePath());
+    indexFile = new File(dbConfig.getDbIndexFilePath());
+    indexTempFile = new File(dbConfig.getDbIndexTempFilePath());
     initializeDatabaseFile();
+    if (dbConfig.isMappedReads()) {
+      mappedReader = new MappedFileReader(dbFile.toPath(), codec);
+    }
   }
 
   private void initializeDatabaseFile() {
@@ -44,77 +84,476 @@ class FileHelper {
     }
   }
 
-  void addLine(String lineContent) {
-    lineContent += System.lineSeparator();
+  /**
+   * Prepares the db file for appends. The bytes the snapshot was taken of are only read for their
+   * CRC, and when it matches, only the rest of the file is scanned for a record torn by a crash.
+   *
+   * @return whether the snapshot matches the db file, so the index may be restored from it
+   */
+  synchronized boolean open(IndexSnapshot snapshot) {
+    CRC32 checksum = new CRC32();
+    boolean snapshotMatches = snapshot != null
+        && updateChecksum(checksum, 0, snapshot.getDataEnd()) == snapshot.getDataEnd()
+        && checksum.getValue() == snapshot.getDataChecksum();
+    long recordsStart = snapshotMatches ? snapshot.getDataEnd() : 0;
+    if (!snapshotMatches) {
+      checksum.reset();
+    }
+    truncateTornRecord(recordsStart);
+    dataEnd = updateChecksum(checksum, recordsStart, Long.MAX_VALUE);
+    dataChecksum = checksum;
+    return snapshotMatches;
+  }
+
+  /**
+   * Cuts off a record left partly written by a crash, so the next append doesn't follow it. A
+   * last line without its line separator is such a record too.
+   */
+  private void truncateTornRecord(long fromOffset) {
     try {
-      Files.write(dbFile.toPath(), lineContent.getBytes(), StandardOpenOption.APPEND);
+      long recordsEnd = scanRecords(fromOffset, Long.MAX_VALUE, false, (record, position) -> {
+      });
+      if (recordsEnd < dbFile.length()) {
+        logger.warn(" from truncateTornRecord in FileHelper (File): "
+            + ExceptionMsg.CORRUPTED_RECORD);
+        try (FileChannel channel = FileChannel.open(dbFile.toPath(), StandardOpenOption.WRITE)) {
+          channel.truncate(recordsEnd);
+          channel.force(true);
+        }
+      }
     } catch (IOException ex) {
-      logger.warn(" from addLine in FileHelper (File): "
+      logger.warn(" from truncateTornRecord in FileHelper (File): "
+          + ExceptionMsg.IO_ERROR_WHILE_INITIALIZING, ex);
+      throw new DbException(ExceptionMsg.IO_ERROR_WHILE_INITIALIZING, ex);
+    }
+  }
+
+  LinePosition addLine(String lineContent) {
+    return addRecord(lineContent.getBytes(StandardCharsets.UTF_8));
+  }
+
+  LinePosition addRecord(byte[] payload) {
+    CompletableFuture<List<LinePosition>> written =
+        addRecords(Collections.singletonList(payload));
+    awaitWrite(written);
+    return written.join().get(0);
+  }
+
+  /**
+   * Appends the records with a single write. Their positions are taken from where the write
+   * landed, which only the writer knows once a failed batch before it was truncated.
+   *
+   * @return future of the positions of the records in the same order, completed once written
+   */
+  CompletableFuture<List<LinePosition>> addRecords(List<byte[]> payloads) {
+    ByteArrayOutputStream batch = new ByteArrayOutputStream();
+    List<LinePosition> positions = new ArrayList<>(payloads.size());
+    for (byte[] payload : payloads) {
+      byte[] record = codec.encode(payload);
+      positions.add(new LinePosition(batch.size() + codec.getPayloadOffset(), payload.length));
+      batch.write(record, 0, record.length);
+    }
+    byte[] records = batch.toByteArray();
+    if (writer != null) {
+      CompletableFuture<Long> written = writer.append(dbFile.toPath(), records);
+      lastWrite = written;
+      return written.thenApply(offset -> {
+        commitWrite(offset, records);
+        return shift(positions, offset);
+      });
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(records);
+    try (FileChannel channel = FileChannel.open(dbFile.toPath(), StandardOpenOption.APPEND)) {
+      long offset = channel.size();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      commitWrite(offset, records);
+      return CompletableFuture.completedFuture(shift(positions, offset));
+    } catch (IOException ex) {
+      logger.warn(" from addRecords in FileHelper (File): "
           + ExceptionMsg.IO_ERROR_WHILE_ADDING, ex);
       throw new DbException(ExceptionMsg.IO_ERROR_WHILE_ADDING, ex);
     }
   }
 
-  void deleteLine(String lineKey) {
+  private synchronized void commitWrite(long offset, byte[] records) {
+    dataEnd = offset + records.length;
+    dataChecksum.update(records);
+  }
+
+  private List<LinePosition> shift(List<LinePosition> positions, long offset) {
+    return positions.stream()
+        .map(position -> new LinePosition(position.getOffset() + offset, position.getLength()))
+        .collect(Collectors.toList());
+  }
+
+  void awaitWrite(CompletableFuture<?> write) {
     try {
-      deleteLineAndSaveToTempFile(lineKey);
-      updateDatabaseFromTempFile();
-    } catch (InterruptedException ex) {
-      logger.warn(" from deleteLine in FileHelper (File): "
-          + ExceptionMsg.INVOICE_PROCESSING_INTERRUPT, ex);
-      throw new DbException(ExceptionMsg.INVOICE_PROCESSING_INTERRUPT, ex);
+      write.join();
+    } catch (CompletionException ex) {
+      if (ex.getCause() instanceof DbException) {
+        throw (DbException) ex.getCause();
+      }
+      throw new DbException(ExceptionMsg.IO_ERROR_WHILE_ADDING, ex);
+    }
+  }
+
+  private void awaitPendingWrites() {
+    try {
+      lastWrite.join();
+    } catch (CompletionException ex) {
+      // failure is reported to the caller who queued the line
+    }
+  }
+
+  String readLine(LinePosition position) {
+    return StandardCharsets.UTF_8.decode(readRecord(position)).toString();
+  }
+
+  /**
+   * Reads a record at a position taken from a completed write, so it doesn't wait for others.
+   */
+  ByteBuffer readRecord(LinePosition position) {
+    try {
+      if (mappedReader != null) {
+        return mappedReader.slice(position);
+      }
+      try (FileChannel channel = FileChannel.open(dbFile.toPath(), StandardOpenOption.READ)) {
+        return ByteBuffer.wrap(readBytes(channel, position));
+      }
     } catch (IOException ex) {
-      logger.warn(" from deleteLine in FileHelper (File): "
-          + ExceptionMsg.IO_ERROR_WHILE_DELETING, ex);
-      throw new DbException(ExceptionMsg.IO_ERROR_WHILE_DELETING, ex);
+      logger.warn(" from readRecord in FileHelper (File): "
+          + ExceptionMsg.IO_ERROR_WHILE_READING, ex);
+      throw new DbException(ExceptionMsg.IO_ERROR_WHILE_READING, ex);
     }
   }
 
-  private void deleteLineAndSaveToTempFile(String lineKey) throws IOException {
-    try (
-        Stream<String> inputStream = Files.lines(dbFile.toPath());
-        PrintWriter tempFileWriter = new PrintWriter(new FileWriter(tempFile))
-    ) {
-      inputStream
-          .filter(line -> !line.contains(lineKey))
-          .forEach(tempFileWriter::println);
+  private byte[] readBytes(FileChannel channel, LinePosition position) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(position.getLength());
+    int readBytes = 0;
+    while (buffer.hasRemaining() && readBytes >= 0) {
+      readBytes = channel.read(buffer, position.getOffset() + buffer.position());
     }
+    return Arrays.copyOf(buffer.array(), buffer.position());
   }
 
-  private void updateDatabaseFromTempFile() throws IOException, InterruptedException {
-    waitForFileSystem(dbFile, canWrite);
-    Files.delete(dbFile.toPath());
+  /**
+   * End of the records written so far, before any of the writes still pending.
+   */
+  synchronized long getDataEnd() {
+    return dataEnd;
+  }
 
-    waitForFileSystem(dbFile, isDeleted);
-    Files.copy(tempFile.toPath(), dbFile.toPath());
+  HashMap<Long, LinePosition> writeCompactedFile(Map<Long, LinePosition> livePositions) {
+    List<Map.Entry<Long, LinePosition>> entries = new ArrayList<>(livePositions.entrySet());
+    entries.sort(Comparator.comparingLong(entry -> entry.getValue().getOffset()));
+    HashMap<Long, LinePosition> compactedPositions = new HashMap<>();
+    try (FileChannel input = FileChannel.open(dbFile.toPath(), StandardOpenOption.READ);
+        OutputStream output = new BufferedOutputStream(Files.newOutputStream(tempFile.toPath()))) {
+      long offset = 0;
+      for (Map.Entry<Long, LinePosition> entry : entries) {
+        byte[] payload = readBytes(input, entry.getValue());
+        byte[] record = codec.encode(payload);
+        output.write(record);
+        compactedPositions.put(entry.getKey(),
+            new LinePosition(offset + codec.getPayloadOffset(), payload.length));
+        offset += record.length;
+      }
+    } catch (IOException ex) {
+      logger.warn(" from writeCompactedFile in FileHelper (File): "
+          + ExceptionMsg.IO_ERROR_WHILE_COMPACTING, ex);
+      throw new DbException(ExceptionMsg.IO_ERROR_WHILE_COMPACTING, ex);
+    }
+    return compactedPositions;
+  }
+
+  long appendTailToCompactedFile(long tailOffset) {
+    try (FileChannel input = FileChannel.open(dbFile.toPath(), StandardOpenOption.READ);
+        FileChannel output = FileChannel.open(tempFile.toPath(), StandardOpenOption.APPEND)) {
+      long compactedTailOffset = output.size();
+      long position = tailOffset;
+      long end = input.size();
+      while (position < end) {
+        position += input.transferTo(position, end - position, output);
+      }
+      return compactedTailOffset;
+    } catch (IOException ex) {
+      logger.warn(" from appendTailToCompactedFile in FileHelper (File): "
+          + ExceptionMsg.IO_ERROR_WHILE_COMPACTING, ex);
+      throw new DbException(ExceptionMsg.IO_ERROR_WHILE_COMPACTING, ex);
+    }
+  }
 
-    waitForFileSystem(tempFile, canWrite);
-    Files.delete(tempFile.toPath());
+  /**
+   * Replaces the db file with the records, writing them as the stream is consumed.
+   *
+   * @return number of written records
+   */
+  long replaceRecords(Stream<byte[]> payloads) {
+    long recordsCount = 0;
+    try (OutputStream output = new BufferedOutputStream(
+        Files.newOutputStream(tempFile.toPath()))) {
+      Iterator<byte[]> records = payloads.iterator();
+      while (records.hasNext()) {
+        output.write(codec.encode(records.next()));
+        recordsCount++;
+      }
+    } catch (IOException ex) {
+      logger.warn(" from replaceRecords in FileHelper (File): "
+          + ExceptionMsg.IO_ERROR_WHILE_ADDING, ex);
+      throw new DbException(ExceptionMsg.IO_ERROR_WHILE_ADDING, ex);
+    }
+    replaceWithCompactedFile();
+    return recordsCount;
   }
 
-  private void waitForFileSystem(File checkedFile, FileStateCheck stateChecker)
-      throws InterruptedException {
-    int maxChecksCount = dbConfig.getFileSystemWaitTimeMs() / dbConfig.getUnitSleepTimeMs();
-    int checkNumber = 0;
-    while (!stateChecker.fileState(checkedFile) && checkNumber < maxChecksCount) {
-      Thread.sleep(dbConfig.getUnitSleepTimeMs());
-      checkNumber++;
+  void replaceWithCompactedFile() {
+    if (writer != null) {
+      writer.release(dbFile.toPath());
+    }
+    try {
+      if (mappedReader != null) {
+        mappedReader.close();
+      }
+      Files.move(tempFile.toPath(), dbFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException ex) {
+      logger.warn(" from replaceWithCompactedFile in FileHelper (File): "
+          + ExceptionMsg.IO_ERROR_WHILE_COMPACTING, ex);
+      throw new DbException(ExceptionMsg.IO_ERROR_WHILE_COMPACTING, ex);
+    }
+    CRC32 checksum = new CRC32();
+    long fileEnd = updateChecksum(checksum, 0, Long.MAX_VALUE);
+    synchronized (this) {
+      dataEnd = fileEnd;
+      dataChecksum = checksum;
     }
   }
 
-  String getLine(String lineKey) {
-    try (Stream<String> dbStream = Files.lines(dbFile.toPath())) {
-      return dbStream
-          .filter(line -> line.contains(lineKey))
-          .collect(Collectors.joining());
+  /**
+   * CRC of the db file up to {@link #getDataEnd}.
+   */
+  synchronized long getChecksum() {
+    return dataChecksum.getValue();
+  }
+
+  /**
+   * Adds the bytes of the db file between the offsets to the checksum.
+   *
+   * @return offset the bytes ended at, before toOffset when the file is shorter
+   */
+  private long updateChecksum(CRC32 checksum, long fromOffset, long toOffset) {
+    try (FileChannel channel = FileChannel.open(dbFile.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_BYTES);
+      long offset = fromOffset;
+      int readBytes;
+      while ((readBytes = readBefore(channel, buffer, offset, toOffset)) >= 0) {
+        checksum.update(buffer.array(), 0, readBytes);
+        offset += readBytes;
+        buffer.clear();
+      }
+      return offset;
     } catch (IOException ex) {
-      logger.warn(" from getLine in FileHelper (File): "
+      logger.warn(" from updateChecksum in FileHelper (File): "
           + ExceptionMsg.IO_ERROR_WHILE_READING, ex);
       throw new DbException(ExceptionMsg.IO_ERROR_WHILE_READING, ex);
     }
   }
 
+  void writeIndexSnapshot(IndexSnapshot snapshot) {
+    try (CheckedOutputStream checkedOutput = new CheckedOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(indexTempFile.toPath())), new CRC32());
+        DataOutputStream output = new DataOutputStream(checkedOutput)) {
+      output.writeInt(INDEX_FORMAT_VERSION);
+      output.writeLong(snapshot.getDataEnd());
+      output.writeLong(snapshot.getDataChecksum());
+      output.writeLong(snapshot.getRecordsCount());
+      output.writeLong(snapshot.getMaxId());
+      output.writeInt(snapshot.getPositions().size());
+      for (Map.Entry<Long, LinePosition> entry : snapshot.getPositions().entrySet()) {
+        output.writeLong(entry.getKey());
+        output.writeLong(entry.getValue().getOffset());
+        output.writeInt(entry.getValue().getLength());
+      }
+      output.writeInt(snapshot.getIssueDates().size());
+      for (Map.Entry<Long, LocalDate> entry : snapshot.getIssueDates().entrySet()) {
+        output.writeLong(entry.getKey());
+        output.writeLong(entry.getValue().toEpochDay());
+      }
+      output.flush();
+      output.writeLong(checkedOutput.getChecksum().getValue());
+    } catch (IOException ex) {
+      logger.warn(" from writeIndexSnapshot in FileHelper (File): "
+          + ExceptionMsg.IO_ERROR_WHILE_ADDING, ex);
+      throw new DbException(ExceptionMsg.IO_ERROR_WHILE_ADDING, ex);
+    }
+    try {
+      Files.move(indexTempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException ex) {
+      logger.warn(" from writeIndexSnapshot in FileHelper (File): "
+          + ExceptionMsg.IO_ERROR_WHILE_ADDING, ex);
+      throw new DbException(ExceptionMsg.IO_ERROR_WHILE_ADDING, ex);
+    }
+  }
+
+  IndexSnapshot readIndexSnapshot() {
+    if (!indexFile.exists()) {
+      return null;
+    }
+    try (CheckedInputStream checkedInput = new CheckedInputStream(
+        new BufferedInputStream(Files.newInputStream(indexFile.toPath())), new CRC32());
+        DataInputStream input = new DataInputStream(checkedInput)) {
+      if (input.readInt() != INDEX_FORMAT_VERSION) {
+        return null;
+      }
+      long dataEnd = input.readLong();
+      long dataChecksum = input.readLong();
+      long recordsCount = input.readLong();
+      long maxId = input.readLong();
+      int positionsCount = input.readInt();
+      HashMap<Long, LinePosition> positions = new HashMap<>();
+      for (int i = 0; i < positionsCount; i++) {
+        positions.put(input.readLong(), new LinePosition(input.readLong(), input.readInt()));
+      }
+      int issueDatesCount = input.readInt();
+      HashMap<Long, LocalDate> issueDates = new HashMap<>();
+      for (int i = 0; i < issueDatesCount; i++) {
+        issueDates.put(input.readLong(), LocalDate.ofEpochDay(input.readLong()));
+      }
+      long expectedChecksum = checkedInput.getChecksum().getValue();
+      if (input.readLong() != expectedChecksum) {
+        return null;
+      }
+      return new IndexSnapshot(dataEnd, dataChecksum, recordsCount, maxId, positions,
+          issueDates);
+    } catch (IOException ex) {
+      logger.warn(" from readIndexSnapshot in FileHelper (File): "
+          + ExceptionMsg.IO_ERROR_WHILE_READING, ex);
+      return null;
+    }
+  }
+
+  void forEachLine(LineConsumer lineConsumer) {
+    forEachLine(0, lineConsumer);
+  }
+
+  void forEachLine(long fromOffset, LineConsumer lineConsumer) {
+    forEachRecord(fromOffset, (record, position) -> lineConsumer.accept(
+        StandardCharsets.UTF_8.decode(record).toString(), position));
+  }
+
+  void forEachRecord(RecordConsumer recordConsumer) {
+    forEachRecord(0, recordConsumer);
+  }
+
+  void forEachRecord(long fromOffset, RecordConsumer recordConsumer) {
+    awaitPendingWrites();
+    forEachRecord(fromOffset, Long.MAX_VALUE, recordConsumer);
+  }
+
+  /**
+   * Reads the records between the offsets without waiting for pending writes, e.g. up to
+   * {@link #getDataEnd} so records still being written are left out.
+   */
+  void forEachRecord(long fromOffset, long toOffset, RecordConsumer recordConsumer) {
+    try {
+      if (mappedReader != null) {
+        mappedReader.forEachRecord(fromOffset, toOffset, recordConsumer);
+      } else {
+        scanRecords(fromOffset, toOffset, true, recordConsumer);
+      }
+    } catch (IOException ex) {
+      logger.warn(" from forEachRecord in FileHelper (File): "
+          + ExceptionMsg.IO_ERROR_WHILE_READING, ex);
+      throw new DbException(ExceptionMsg.IO_ERROR_WHILE_READING, ex);
+    }
+  }
+
+  /**
+   * Stream of the mapped records of the db file up to toOffset, reading it only as far as the
+   * stream is consumed. The file stays open until the stream is closed.
+   */
+  <R> Stream<R> streamRecords(long toOffset, RecordCursor.RecordMapper<R> recordMapper) {
+    try {
+      RecordCursor<R> cursor = new RecordCursor<>(
+          FileChannel.open(dbFile.toPath(), StandardOpenOption.READ), toOffset, codec,
+          recordMapper);
+      return StreamSupport.stream(cursor, false).onClose(cursor::close);
+    } catch (IOException ex) {
+      logger.warn(" from streamRecords in FileHelper (File): "
+          + ExceptionMsg.IO_ERROR_WHILE_READING, ex);
+      throw new DbException(ExceptionMsg.IO_ERROR_WHILE_READING, ex);
+    }
+  }
+
+  /**
+   * Reads the records between the offsets with a growing buffer. Unless endsRecord is set, the
+   * end of the file doesn't end a record, so a record missing its terminator is left unread.
+   *
+   * @return offset right after the last whole record
+   */
+  private long scanRecords(long fromOffset, long toOffset, boolean endsRecord,
+      RecordConsumer recordConsumer) throws IOException {
+    try (FileChannel channel = FileChannel.open(dbFile.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_BYTES);
+      long bufferOffset = fromOffset;
+      long readOffset = fromOffset;
+      boolean endOfInput = false;
+      while (!endOfInput) {
+        int readBytes = readBefore(channel, buffer, readOffset, toOffset);
+        if (readBytes < 0) {
+          endOfInput = true;
+        } else {
+          readOffset += readBytes;
+        }
+        buffer.flip();
+        LinePosition record;
+        while ((record = codec.nextRecord(buffer, endOfInput && endsRecord)) != null) {
+          recordConsumer.accept(slice(buffer, record),
+              new LinePosition(bufferOffset + record.getOffset(), record.getLength()));
+        }
+        bufferOffset += buffer.position();
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+          ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+          buffer.flip();
+          buffer = grown.put(buffer);
+        }
+      }
+      return bufferOffset;
+    }
+  }
+
+  /**
+   * Reads into the buffer no further than toOffset.
+   *
+   * @return number of bytes read, or -1 at toOffset or the end of the file
+   */
+  static int readBefore(FileChannel channel, ByteBuffer buffer, long readOffset, long toOffset)
+      throws IOException {
+    if (readOffset >= toOffset) {
+      return -1;
+    }
+    int limit = buffer.limit();
+    buffer.limit((int) Math.min(limit, buffer.position() + toOffset - readOffset));
+    try {
+      return channel.read(buffer, readOffset);
+    } finally {
+      buffer.limit(limit);
+    }
+  }
+
+  static ByteBuffer slice(ByteBuffer buffer, LinePosition position) {
+    ByteBuffer view = buffer.duplicate();
+    view.position((int) position.getOffset());
+    view.limit((int) position.getOffset() + position.getLength());
+    return view.slice();
+  }
+
   List<String> getAllLines() {
+    awaitPendingWrites();
     try (Stream<String> dbStream = Files.lines(dbFile.toPath())) {
       return dbStream.collect(Collectors.toCollection(ArrayList::new));
     } catch (IOException ex) {
@@ -124,8 +563,13 @@ class FileHelper {
     }
   }
 
-  interface FileStateCheck {
+  interface LineConsumer {
+
+    void accept(String line, LinePosition position) throws IOException;
+  }
+
+  interface RecordConsumer {
 
-    boolean fileState(File file);
+    void accept(ByteBuffer record, LinePosition position) throws IOException;
   }
-}
\ No newline at end of file
+}
@@ -5,60 +5,201 @@ import org.slf4j.LoggerFactory;
 import pl.coderstrust.database.Database;
 import pl.coderstrust.database.DbException;
 import pl.coderstrust.database.ExceptionMsg;
+import pl.coderstrust.database.GroupCommitWriter;
 import pl.coderstrust.database.ObjectMapperHelper;
+import pl.coderstrust.database.PageCursor;
 import pl.coderstrust.model.WithNameIdIssueDate;
 
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
 public class InFileDatabase<T extends WithNameIdIssueDate> implements Database<T> {
 
   private static final int FIRST_ID = 0;
   private static final int INCREMENT_ID = 1;
+  private static final String TOMBSTONE_FIELD = "deletedId";
+  private static final String ISSUE_DATE_FIELD = "issueDate";
+  private static final Comparator<PageCursor> PAGE_ORDER =
+      Comparator.comparing(PageCursor::getIssueDate).thenComparingLong(PageCursor::getId);
   private final Logger logger = LoggerFactory.getLogger(InFileDatabase.class);
 
   private FileHelper fileHelper;
   private ObjectMapperHelper mapper;
-  private HashSet<Long> savedIds;
-  private String keyName;
+  private byte[] tombstonePrefix;
+  private HashMap<Long, LinePosition> index;
+  // issue dates of the indexed entries which have one, also kept in page order
+  private HashMap<Long, LocalDate> issueDates;
+  private TreeSet<PageCursor> pageOrder;
+  // ids of tombstones still being written, which no longer exist for new operations
+  private HashSet<Long> pendingDeletes = new HashSet<>();
+  private int writesInFlight;
+  // end and CRC of the db file as of the last write applied to the index
+  private long dataEnd;
+  private long dataChecksum;
+  private String idFieldName;
+  private int compactionThreshold;
+  private int snapshotInterval;
+  private long recordsCount;
+  // highest id ever stored, so ids of deleted entries aren't handed out again
+  private long maxId = FIRST_ID - INCREMENT_ID;
+  private long recordsSinceSnapshot;
+  private boolean compactionScheduled;
+  private boolean snapshotScheduled;
+  private ExecutorService maintenance;
 
   public InFileDatabase(Class<T> entryClass, String dbKey) {
-    this.keyName = dbKey;
-    mapper = new ObjectMapperHelper(entryClass);
-    fileHelper = new FileHelper(new Configuration(entryClass.getSimpleName()));
-    savedIds = getIdsFromDbFile();
+    this(entryClass, dbKey, Configuration.DEFAULT_COMPACTION_THRESHOLD, null);
+  }
+
+  public InFileDatabase(Class<T> entryClass, String dbKey, GroupCommitWriter writer) {
+    this(entryClass, dbKey, Configuration.DEFAULT_COMPACTION_THRESHOLD, writer);
+  }
+
+  public InFileDatabase(Class<T> entryClass, String dbKey, int compactionThreshold,
+      GroupCommitWriter writer) {
+    this(entryClass, dbKey, new Configuration(entryClass.getSimpleName(), compactionThreshold),
+        writer);
+  }
+
+  public InFileDatabase(Class<T> entryClass, String dbKey, Configuration config,
+      GroupCommitWriter writer) {
+    this.idFieldName = dbKey.replace("\"", "");
+    this.compactionThreshold = config.getCompactionThreshold();
+    this.snapshotInterval = config.getSnapshotInterval();
+    mapper = new ObjectMapperHelper(entryClass, config.getRecordFormat());
+    tombstonePrefix = getTombstonePrefix();
+    fileHelper = new FileHelper(config, writer);
+    IndexSnapshot snapshot = fileHelper.readIndexSnapshot();
+    if (!fileHelper.open(snapshot) || !loadIndexFromSnapshot(snapshot)) {
+      loadIndexFromDbFile();
+    }
+    dataEnd = fileHelper.getDataEnd();
+    dataChecksum = fileHelper.getChecksum();
+  }
+
+  /**
+   * Bytes every encoded tombstone starts with, i.e. everything before the deleted id value.
+   */
+  private byte[] getTombstonePrefix() {
+    byte[] first = mapper.toRecord(TOMBSTONE_FIELD, 0);
+    byte[] second = mapper.toRecord(TOMBSTONE_FIELD, 1);
+    int length = 0;
+    while (length < first.length && length < second.length && first[length] == second[length]) {
+      length++;
+    }
+    return Arrays.copyOf(first, length);
+  }
+
+  private boolean isTombstone(ByteBuffer record) {
+    if (record.remaining() < tombstonePrefix.length) {
+      return false;
+    }
+    for (int i = 0; i < tombstonePrefix.length; i++) {
+      if (record.get(record.position() + i) != tombstonePrefix[i]) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Override
-  public synchronized long addEntry(T entry) {
-    entry.setId(getNextId());
-    fileHelper.addLine(mapper.toJson(entry));
-    savedIds.add(entry.getId());
+  public long addEntry(T entry) {
+    CompletableFuture<Void> written;
+    synchronized (this) {
+      entry.setId(getNextId());
+      written = appendEntries(Collections.singletonList(entry));
+    }
+    fileHelper.awaitWrite(written);
     return entry.getId();
   }
 
+  @Override
+  public long insertEntry(T entry) {
+    CompletableFuture<Void> written;
+    synchronized (this) {
+      written = appendEntries(Collections.singletonList(entry));
+    }
+    fileHelper.awaitWrite(written);
+    return entry.getId();
+  }
+
+  /**
+   * Appends all entries with a single write to the db file.
+   */
+  @Override
+  public List<Long> addEntries(List<T> entries) {
+    CompletableFuture<Void> written;
+    synchronized (this) {
+      long nextId = getNextId();
+      for (T entry : entries) {
+        entry.setId(nextId++);
+      }
+      written = appendEntries(entries);
+    }
+    fileHelper.awaitWrite(written);
+    return entries.stream().map(WithNameIdIssueDate::getId).collect(Collectors.toList());
+  }
+
+  @Override
+  public synchronized long getMaxId() {
+    return maxId;
+  }
+
+  @Override
+  public void insertEntries(List<T> entries) {
+    CompletableFuture<Void> written;
+    synchronized (this) {
+      written = appendEntries(entries);
+    }
+    fileHelper.awaitWrite(written);
+  }
+
   private long getNextId() {
-    if (savedIds.isEmpty()) {
-      return FIRST_ID;
-    } else {
-      return Collections.max(savedIds) + INCREMENT_ID;
+    return maxId + INCREMENT_ID;
+  }
+
+  @Override
+  public void deleteEntry(long systemId) {
+    CompletableFuture<Void> written;
+    synchronized (this) {
+      if (!idExist(systemId)) {
+        logger.warn(" from deleteEntry (InFileDatabase): "
+            + ExceptionMsg.INVOICE_NOT_EXIST);
+        throw new DbException(ExceptionMsg.INVOICE_NOT_EXIST);
+      }
+      written = appendTombstones(Collections.singletonList(systemId));
     }
+    fileHelper.awaitWrite(written);
   }
 
   @Override
-  public synchronized void deleteEntry(long systemId) {
-    if (!idExist(systemId)) {
-      logger.warn(" from deleteEntry (InFileDatabase): "
-          + ExceptionMsg.INVOICE_NOT_EXIST);
-      throw new DbException(ExceptionMsg.INVOICE_NOT_EXIST);
-    } else {
-      fileHelper.deleteLine(idToLineKey(systemId));
-      savedIds.remove(systemId);
+  public void deleteEntries(List<Long> systemIds) {
+    if (systemIds.isEmpty()) {
+      return;
     }
+    CompletableFuture<Void> written;
+    synchronized (this) {
+      checkIdsExist(systemIds, "deleteEntries");
+      written = appendTombstones(systemIds);
+    }
+    fileHelper.awaitWrite(written);
   }
 
   @Override
@@ -68,37 +209,335 @@ public class InFileDatabase<T extends WithNameIdIssueDate> implements Database<T
           + ExceptionMsg.INVOICE_NOT_EXIST);
       throw new DbException(ExceptionMsg.INVOICE_NOT_EXIST);
     } else {
-      String jsonEntry = fileHelper.getLine(idToLineKey(systemId));
-      return (T) mapper.toObject(jsonEntry);
+      return (T) mapper.fromRecord(fileHelper.readRecord(index.get(systemId)));
+    }
+  }
+
+  @Override
+  public void updateEntry(WithNameIdIssueDate entry) {
+    CompletableFuture<Void> written;
+    synchronized (this) {
+      if (!idExist(entry.getId())) {
+        logger.warn(" from updateEntry (InFileDatabase): "
+            + ExceptionMsg.INVOICE_NOT_EXIST);
+        throw new DbException(ExceptionMsg.INVOICE_NOT_EXIST);
+      }
+      written = appendEntries(Collections.singletonList(entry));
     }
+    fileHelper.awaitWrite(written);
   }
 
-  private String idToLineKey(long systemId) {
-    return keyName + ":" + String.valueOf(systemId);
+  @Override
+  public void updateEntries(List<T> entries) {
+    CompletableFuture<Void> written;
+    synchronized (this) {
+      checkIdsExist(entries.stream().map(WithNameIdIssueDate::getId)
+          .collect(Collectors.toList()), "updateEntries");
+      written = appendEntries(entries);
+    }
+    fileHelper.awaitWrite(written);
+  }
+
+  /**
+   * Checks the whole batch before writing any of it, so a missing id leaves the file as it was.
+   */
+  private void checkIdsExist(List<Long> systemIds, String methodName) {
+    for (long systemId : systemIds) {
+      if (!idExist(systemId)) {
+        logger.warn(" from " + methodName + " (InFileDatabase): "
+            + ExceptionMsg.INVOICE_NOT_EXIST);
+        throw new DbException(ExceptionMsg.INVOICE_NOT_EXIST);
+      }
+    }
+  }
+
+  private CompletableFuture<Void> appendEntries(List<? extends WithNameIdIssueDate> entries) {
+    if (entries.isEmpty()) {
+      return CompletableFuture.completedFuture(null);
+    }
+    List<byte[]> records = new ArrayList<>(entries.size());
+    List<Long> ids = new ArrayList<>(entries.size());
+    List<LocalDate> entriesIssueDates = new ArrayList<>(entries.size());
+    for (WithNameIdIssueDate entry : entries) {
+      records.add(mapper.toRecord(entry));
+      ids.add(entry.getId());
+      entriesIssueDates.add(entry.getIssueDate());
+      maxId = Math.max(maxId, entry.getId());
+    }
+    return append(records, positions -> {
+      for (int i = 0; i < ids.size(); i++) {
+        index.put(ids.get(i), positions.get(i));
+        indexIssueDate(ids.get(i), entriesIssueDates.get(i));
+        recordsCount++;
+        scheduleMaintenanceIfNeeded();
+      }
+    });
+  }
+
+  private CompletableFuture<Void> appendTombstones(List<Long> systemIds) {
+    List<byte[]> tombstones = new ArrayList<>(systemIds.size());
+    for (long systemId : systemIds) {
+      tombstones.add(mapper.toRecord(TOMBSTONE_FIELD, systemId));
+    }
+    CompletableFuture<Void> written = append(tombstones, positions -> {
+      for (long systemId : systemIds) {
+        recordsCount++;
+        index.remove(systemId);
+        indexIssueDate(systemId, null);
+        scheduleMaintenanceIfNeeded();
+      }
+    });
+    pendingDeletes.addAll(systemIds);
+    return written.whenComplete((result, failure) -> {
+      synchronized (this) {
+        pendingDeletes.removeAll(systemIds);
+      }
+    });
+  }
+
+  private void indexIssueDate(long id, LocalDate issueDate) {
+    LocalDate previous = issueDate == null ? issueDates.remove(id) : issueDates.put(id, issueDate);
+    if (previous != null) {
+      pageOrder.remove(new PageCursor(previous, id));
+    }
+    if (issueDate != null) {
+      pageOrder.add(new PageCursor(issueDate, id));
+    }
+  }
+
+  /**
+   * Appends the records and applies them to the index once written, at the positions the writer
+   * put them. Writes complete in order, so the index follows the file, and a failed write leaves
+   * both as they were. Nothing may wait for a write while holding this lock, as applying the
+   * write needs it.
+   */
+  private CompletableFuture<Void> append(List<byte[]> records,
+      Consumer<List<LinePosition>> applyWritten) {
+    CompletableFuture<List<LinePosition>> written = fileHelper.addRecords(records);
+    writesInFlight++;
+    return written.handle((positions, failure) -> {
+      synchronized (this) {
+        writesInFlight--;
+        if (failure == null) {
+          applyWritten.accept(positions);
+          dataEnd = fileHelper.getDataEnd();
+          dataChecksum = fileHelper.getChecksum();
+        }
+        notifyAll();
+      }
+      if (failure != null) {
+        throw failure instanceof CompletionException
+            ? (CompletionException) failure : new CompletionException(failure);
+      }
+      return null;
+    });
   }
 
   @Override
-  public synchronized void updateEntry(WithNameIdIssueDate entry) {
-    deleteEntry(entry.getId());
-    fileHelper.addLine(mapper.toJson(entry));
-    savedIds.add(entry.getId());
+  public synchronized List<T> getEntries() {
+    HashSet<Long> liveOffsets = getLiveOffsets();
+    List<T> entries = new ArrayList<>();
+    fileHelper.forEachRecord(0, dataEnd, (record, position) -> {
+      if (liveOffsets.contains(position.getOffset())) {
+        entries.add((T) mapper.fromRecord(record));
+      }
+    });
+    return entries;
   }
 
+  /**
+   * Entries as of the call, decoded while the stream is consumed. Compaction replaces the db
+   * file under the same lock, so the open file still matches the offsets taken here.
+   */
   @Override
-  public List<T> getEntries() {
-    return fileHelper.getAllLines().stream()
-        .map(line -> (T) mapper.toObject(line))
-        .collect(Collectors.toCollection(ArrayList::new));
+  public synchronized Stream<T> streamEntries() {
+    HashSet<Long> liveOffsets = getLiveOffsets();
+    return fileHelper.streamRecords(dataEnd, (record, position) ->
+        liveOffsets.contains(position.getOffset()) ? (T) mapper.fromRecord(record) : null);
   }
 
+  /**
+   * Reads only the records of the page, found through the issue date order kept in memory.
+   */
   @Override
-  public boolean idExist(long id) {
-    return savedIds.contains(id);
+  public synchronized List<T> getEntriesPage(LocalDate beginDate, LocalDate endDate,
+      PageCursor after, int pageSize) {
+    List<T> page = new ArrayList<>();
+    for (PageCursor entry : pageOrder.tailSet(after.clampTo(beginDate), false)) {
+      if (page.size() >= pageSize || entry.getIssueDate().isAfter(endDate)) {
+        break;
+      }
+      page.add((T) mapper.fromRecord(fileHelper.readRecord(index.get(entry.getId()))));
+    }
+    return page;
   }
 
-  private HashSet<Long> getIdsFromDbFile() {
-    return getEntries().stream()
-        .map(WithNameIdIssueDate::getId)
+  private HashSet<Long> getLiveOffsets() {
+    return index.values().stream()
+        .map(LinePosition::getOffset)
         .collect(Collectors.toCollection(HashSet::new));
   }
-}
\ No newline at end of file
+
+  @Override
+  public synchronized boolean idExist(long id) {
+    return index.containsKey(id) && !pendingDeletes.contains(id);
+  }
+
+  /**
+   * Restores the index from a snapshot the db file was checked to match by {@link FileHelper#open}
+   * and replays the records written after it.
+   */
+  private boolean loadIndexFromSnapshot(IndexSnapshot snapshot) {
+    try {
+      maxId = snapshot.getMaxId();
+      replayLines(snapshot.getPositions(), snapshot.getIssueDates(), snapshot.getRecordsCount(),
+          snapshot.getDataEnd());
+      return true;
+    } catch (DbException ex) {
+      logger.warn(" from loadIndexFromSnapshot (InFileDatabase): "
+          + ExceptionMsg.IO_ERROR_WHILE_READING, ex);
+      return false;
+    }
+  }
+
+  private void loadIndexFromDbFile() {
+    replayLines(new HashMap<>(), new HashMap<>(), 0, 0);
+  }
+
+  private void replayLines(HashMap<Long, LinePosition> positions,
+      HashMap<Long, LocalDate> positionsIssueDates, long initialRecordsCount, long fromOffset) {
+    recordsCount = initialRecordsCount;
+    recordsSinceSnapshot = 0;
+    fileHelper.forEachRecord(fromOffset, (record, position) -> {
+      recordsCount++;
+      recordsSinceSnapshot++;
+      if (isTombstone(record)) {
+        long id = mapper.readId(record, TOMBSTONE_FIELD);
+        positions.remove(id);
+        positionsIssueDates.remove(id);
+      } else {
+        LocalDate issueDate = mapper.readDate(record.duplicate(), ISSUE_DATE_FIELD);
+        long id = mapper.readId(record, idFieldName);
+        positions.put(id, position);
+        if (issueDate == null) {
+          positionsIssueDates.remove(id);
+        } else {
+          positionsIssueDates.put(id, issueDate);
+        }
+        maxId = Math.max(maxId, id);
+      }
+    });
+    index = positions;
+    issueDates = positionsIssueDates;
+    pageOrder = new TreeSet<>(PAGE_ORDER);
+    positionsIssueDates.forEach((id, issueDate) -> pageOrder.add(new PageCursor(issueDate, id)));
+  }
+
+  private void scheduleMaintenanceIfNeeded() {
+    recordsSinceSnapshot++;
+    scheduleCompactionIfNeeded();
+    if (!snapshotScheduled && recordsSinceSnapshot >= snapshotInterval) {
+      snapshotScheduled = true;
+      getMaintenance().submit(this::saveIndexSnapshot);
+    }
+  }
+
+  private void scheduleCompactionIfNeeded() {
+    if (!compactionScheduled && recordsCount - index.size() >= compactionThreshold) {
+      compactionScheduled = true;
+      getMaintenance().submit(this::compact);
+    }
+  }
+
+  private ExecutorService getMaintenance() {
+    if (maintenance == null) {
+      maintenance = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "InFileDatabase-maintenance");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return maintenance;
+  }
+
+  void saveIndexSnapshot() {
+    try {
+      HashMap<Long, LinePosition> positions;
+      HashMap<Long, LocalDate> positionsIssueDates;
+      long snapshotDataEnd;
+      long snapshotDataChecksum;
+      long snapshotRecordsCount;
+      long snapshotMaxId;
+      synchronized (this) {
+        positions = new HashMap<>(index);
+        positionsIssueDates = new HashMap<>(issueDates);
+        snapshotDataEnd = dataEnd;
+        snapshotDataChecksum = dataChecksum;
+        snapshotRecordsCount = recordsCount;
+        snapshotMaxId = maxId;
+        recordsSinceSnapshot = 0;
+      }
+      fileHelper.writeIndexSnapshot(new IndexSnapshot(snapshotDataEnd, snapshotDataChecksum,
+          snapshotRecordsCount, snapshotMaxId, positions, positionsIssueDates));
+    } catch (DbException ex) {
+      logger.warn(" from saveIndexSnapshot (InFileDatabase): "
+          + ExceptionMsg.IO_ERROR_WHILE_ADDING, ex);
+    } finally {
+      synchronized (this) {
+        snapshotScheduled = false;
+      }
+    }
+  }
+
+  private void compact() {
+    boolean compactedFile = false;
+    try {
+      HashMap<Long, LinePosition> liveSnapshot;
+      long snapshotEnd;
+      long snapshotRecordsCount;
+      synchronized (this) {
+        liveSnapshot = new HashMap<>(index);
+        snapshotEnd = dataEnd;
+        snapshotRecordsCount = recordsCount;
+      }
+      HashMap<Long, LinePosition> compacted = fileHelper.writeCompactedFile(liveSnapshot);
+      synchronized (this) {
+        // the tail is copied as it is on disk, so no write may still be landing in it
+        while (writesInFlight > 0) {
+          wait();
+        }
+        long tailShift = fileHelper.appendTailToCompactedFile(snapshotEnd) - snapshotEnd;
+        HashMap<Long, LinePosition> compactedIndex = new HashMap<>();
+        for (Map.Entry<Long, LinePosition> entry : index.entrySet()) {
+          LinePosition position = entry.getValue();
+          if (position.getOffset() >= snapshotEnd) {
+            compactedIndex.put(entry.getKey(),
+                new LinePosition(position.getOffset() + tailShift, position.getLength()));
+          } else {
+            compactedIndex.put(entry.getKey(), compacted.get(entry.getKey()));
+          }
+        }
+        fileHelper.replaceWithCompactedFile();
+        recordsCount = liveSnapshot.size() + recordsCount - snapshotRecordsCount;
+        index = compactedIndex;
+        dataEnd = fileHelper.getDataEnd();
+        dataChecksum = fileHelper.getChecksum();
+      }
+      compactedFile = true;
+      saveIndexSnapshot();
+    } catch (DbException ex) {
+      logger.warn(" from compact (InFileDatabase): "
+          + ExceptionMsg.IO_ERROR_WHILE_COMPACTING, ex);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } finally {
+      synchronized (this) {
+        compactionScheduled = false;
+        // records written meanwhile were copied as they were and may be dead by now
+        if (compactedFile) {
+          scheduleCompactionIfNeeded();
+        }
+      }
+    }
+  }
+}
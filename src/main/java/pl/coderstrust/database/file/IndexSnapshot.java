@@ -0,0 +1,48 @@
+package pl.coderstrust.database.file;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+
+class IndexSnapshot {
+
+  private final long dataEnd;
+  private final long dataChecksum;
+  private final long recordsCount;
+  private final long maxId;
+  private final HashMap<Long, LinePosition> positions;
+  private final HashMap<Long, LocalDate> issueDates;
+
+  IndexSnapshot(long dataEnd, long dataChecksum, long recordsCount, long maxId,
+      HashMap<Long, LinePosition> positions, HashMap<Long, LocalDate> issueDates) {
+    this.dataEnd = dataEnd;
+    this.dataChecksum = dataChecksum;
+    this.recordsCount = recordsCount;
+    this.maxId = maxId;
+    this.positions = positions;
+    this.issueDates = issueDates;
+  }
+
+  long getDataEnd() {
+    return dataEnd;
+  }
+
+  long getDataChecksum() {
+    return dataChecksum;
+  }
+
+  long getRecordsCount() {
+    return recordsCount;
+  }
+
+  long getMaxId() {
+    return maxId;
+  }
+
+  HashMap<Long, LinePosition> getPositions() {
+    return positions;
+  }
+
+  HashMap<Long, LocalDate> getIssueDates() {
+    return issueDates;
+  }
+}
@@ -0,0 +1,46 @@
+package pl.coderstrust.database.file;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+class JsonLinesRecordCodec implements RecordCodec {
+
+  private static final byte LINE_FEED = '\n';
+  private static final byte CARRIAGE_RETURN = '\r';
+  private final byte[] separator = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+  @Override
+  public byte[] encode(byte[] payload) {
+    byte[] record = Arrays.copyOf(payload, payload.length + separator.length);
+    System.arraycopy(separator, 0, record, payload.length, separator.length);
+    return record;
+  }
+
+  @Override
+  public int getPayloadOffset() {
+    return 0;
+  }
+
+  @Override
+  public LinePosition nextRecord(ByteBuffer buffer, boolean endOfInput) {
+    while (buffer.hasRemaining()) {
+      int start = buffer.position();
+      int end = start;
+      while (end < buffer.limit() && buffer.get(end) != LINE_FEED) {
+        end++;
+      }
+      if (end == buffer.limit() && !endOfInput) {
+        return null;
+      }
+      buffer.position(Math.min(end + 1, buffer.limit()));
+      if (end > start && buffer.get(end - 1) == CARRIAGE_RETURN) {
+        end--;
+      }
+      if (end > start) {
+        return new LinePosition(start, end - start);
+      }
+    }
+    return null;
+  }
+}
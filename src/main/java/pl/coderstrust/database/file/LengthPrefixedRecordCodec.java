@@ -0,0 +1,61 @@
+package pl.coderstrust.database.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.coderstrust.database.DbException;
+import pl.coderstrust.database.ExceptionMsg;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+class LengthPrefixedRecordCodec implements RecordCodec {
+
+  private static final int LENGTH_BYTES = Integer.BYTES;
+  private static final int CHECKSUM_BYTES = Integer.BYTES;
+  private final Logger logger = LoggerFactory.getLogger(LengthPrefixedRecordCodec.class);
+
+  @Override
+  public byte[] encode(byte[] payload) {
+    CRC32 checksum = new CRC32();
+    checksum.update(payload);
+    return ByteBuffer.allocate(LENGTH_BYTES + payload.length + CHECKSUM_BYTES)
+        .putInt(payload.length)
+        .put(payload)
+        .putInt((int) checksum.getValue())
+        .array();
+  }
+
+  @Override
+  public int getPayloadOffset() {
+    return LENGTH_BYTES;
+  }
+
+  @Override
+  public LinePosition nextRecord(ByteBuffer buffer, boolean endOfInput) {
+    int start = buffer.position();
+    if (buffer.remaining() < LENGTH_BYTES) {
+      return null;
+    }
+    int length = buffer.getInt(start);
+    if (length < 0) {
+      logger.warn(" from nextRecord (LengthPrefixedRecordCodec): "
+          + ExceptionMsg.CORRUPTED_RECORD);
+      throw new DbException(ExceptionMsg.CORRUPTED_RECORD);
+    }
+    if (buffer.remaining() < LENGTH_BYTES + length + CHECKSUM_BYTES) {
+      return null;
+    }
+    ByteBuffer payload = buffer.duplicate();
+    payload.position(start + LENGTH_BYTES);
+    payload.limit(start + LENGTH_BYTES + length);
+    CRC32 checksum = new CRC32();
+    checksum.update(payload);
+    if ((int) checksum.getValue() != buffer.getInt(start + LENGTH_BYTES + length)) {
+      logger.warn(" from nextRecord (LengthPrefixedRecordCodec): "
+          + ExceptionMsg.CORRUPTED_RECORD);
+      throw new DbException(ExceptionMsg.CORRUPTED_RECORD);
+    }
+    buffer.position(start + LENGTH_BYTES + length + CHECKSUM_BYTES);
+    return new LinePosition(start + LENGTH_BYTES, length);
+  }
+}
@@ -0,0 +1,20 @@
+package pl.coderstrust.database.file;
+
+class LinePosition {
+
+  private final long offset;
+  private final int length;
+
+  LinePosition(long offset, int length) {
+    this.offset = offset;
+    this.length = length;
+  }
+
+  long getOffset() {
+    return offset;
+  }
+
+  int getLength() {
+    return length;
+  }
+}
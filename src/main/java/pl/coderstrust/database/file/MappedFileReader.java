@@ -0,0 +1,149 @@
+package pl.coderstrust.database.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the db file through mappings of fixed size chunks. When the file grows only its last,
+ * partial chunk is mapped again, so appends don't remap the whole file. Records crossing a chunk
+ * boundary are read into a heap buffer instead.
+ */
+class MappedFileReader implements Closeable {
+
+  static final int DEFAULT_CHUNK_BYTES = 64 * 1024 * 1024;
+
+  private Path file;
+  private RecordCodec codec;
+  private int chunkBytes;
+  private FileChannel channel;
+  private List<MappedByteBuffer> chunks = new ArrayList<>();
+  private long mappedSize;
+
+  MappedFileReader(Path file, RecordCodec codec) {
+    this(file, codec, DEFAULT_CHUNK_BYTES);
+  }
+
+  MappedFileReader(Path file, RecordCodec codec, int chunkBytes) {
+    this.file = file;
+    this.codec = codec;
+    this.chunkBytes = chunkBytes;
+  }
+
+  synchronized ByteBuffer slice(LinePosition position) throws IOException {
+    long end = position.getOffset() + position.getLength();
+    ensureMapped(end);
+    int chunkIndex = (int) (position.getOffset() / chunkBytes);
+    long chunkStart = (long) chunkIndex * chunkBytes;
+    if (end > chunkStart + chunks.get(chunkIndex).limit()) {
+      return read(position.getOffset(), position.getLength());
+    }
+    return FileHelper.slice(chunks.get(chunkIndex),
+        new LinePosition(position.getOffset() - chunkStart, position.getLength()));
+  }
+
+  void forEachRecord(long fromOffset, FileHelper.RecordConsumer recordConsumer)
+      throws IOException {
+    forEachRecord(fromOffset, Long.MAX_VALUE, recordConsumer);
+  }
+
+  synchronized void forEachRecord(long fromOffset, long toOffset,
+      FileHelper.RecordConsumer recordConsumer) throws IOException {
+    long size = Math.min(getChannel().size(), toOffset);
+    ensureMapped(size);
+    long offset = fromOffset;
+    while (offset < size) {
+      int chunkIndex = (int) (offset / chunkBytes);
+      long chunkStart = (long) chunkIndex * chunkBytes;
+      ByteBuffer chunk = chunks.get(chunkIndex).duplicate();
+      chunk.limit((int) Math.min(chunk.limit(), size - chunkStart));
+      chunk.position((int) (offset - chunkStart));
+      boolean lastChunk = chunkStart + chunk.limit() >= size;
+      LinePosition record = codec.nextRecord(chunk, lastChunk);
+      if (record != null) {
+        recordConsumer.accept(FileHelper.slice(chunk, record),
+            new LinePosition(chunkStart + record.getOffset(), record.getLength()));
+      } else if (chunk.hasRemaining()) {
+        if (lastChunk) {
+          return;
+        }
+        offset = readCrossingRecord(offset, chunk.remaining(), size, recordConsumer);
+        continue;
+      }
+      offset = chunkStart + chunk.position();
+    }
+  }
+
+  /**
+   * Reads the record starting at offset through a heap buffer, growing it until the record fits.
+   *
+   * @return offset right after the record, or size when the file ends within it
+   */
+  private long readCrossingRecord(long offset, int chunkRemaining, long size,
+      FileHelper.RecordConsumer recordConsumer) throws IOException {
+    long length = Math.max(2L * chunkRemaining, FileHelper.SCAN_BUFFER_BYTES);
+    while (true) {
+      length = Math.min(length, size - offset);
+      ByteBuffer buffer = read(offset, (int) length);
+      boolean endOfInput = offset + length >= size;
+      LinePosition record = codec.nextRecord(buffer, endOfInput);
+      if (record != null) {
+        recordConsumer.accept(FileHelper.slice(buffer, record),
+            new LinePosition(offset + record.getOffset(), record.getLength()));
+        return offset + buffer.position();
+      }
+      if (endOfInput) {
+        return size;
+      }
+      length *= 2;
+    }
+  }
+
+  private ByteBuffer read(long offset, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    int readBytes = 0;
+    while (buffer.hasRemaining() && readBytes >= 0) {
+      readBytes = getChannel().read(buffer, offset + buffer.position());
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private void ensureMapped(long requiredSize) throws IOException {
+    if (requiredSize <= mappedSize) {
+      return;
+    }
+    long size = getChannel().size();
+    if (!chunks.isEmpty() && chunks.get(chunks.size() - 1).limit() < chunkBytes) {
+      mappedSize -= chunks.remove(chunks.size() - 1).limit();
+    }
+    while (mappedSize < size) {
+      long chunkSize = Math.min(chunkBytes, size - mappedSize);
+      chunks.add(getChannel().map(FileChannel.MapMode.READ_ONLY, mappedSize, chunkSize));
+      mappedSize += chunkSize;
+    }
+  }
+
+  private FileChannel getChannel() throws IOException {
+    if (channel == null) {
+      channel = FileChannel.open(file, StandardOpenOption.READ);
+    }
+    return channel;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    chunks.clear();
+    mappedSize = 0;
+    if (channel != null) {
+      channel.close();
+      channel = null;
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package pl.coderstrust.database.file;
+
+import pl.coderstrust.database.RecordFormat;
+
+import java.nio.ByteBuffer;
+
+interface RecordCodec {
+
+  /**
+   * Wraps payload into the bytes appended to the db file.
+   */
+  byte[] encode(byte[] payload);
+
+  /**
+   * Distance between the start of an encoded record and its payload.
+   */
+  int getPayloadOffset();
+
+  /**
+   * Finds the payload of the next record starting at the buffer position and moves the position
+   * past it. Returns null, leaving a partial record unread, when the buffer ends before the
+   * record does.
+   */
+  LinePosition nextRecord(ByteBuffer buffer, boolean endOfInput);
+
+  static RecordCodec forFormat(RecordFormat format) {
+    switch (format) {
+      case SMILE:
+        return new LengthPrefixedRecordCodec();
+      default:
+        return new JsonLinesRecordCodec();
+    }
+  }
+}
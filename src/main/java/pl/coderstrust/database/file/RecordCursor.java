@@ -0,0 +1,100 @@
+package pl.coderstrust.database.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.coderstrust.database.DbException;
+import pl.coderstrust.database.ExceptionMsg;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Reads records of an open db file up to the end offset one at a time, as
+ * {@link FileHelper#forEachRecord} does in a single pass, keeping only the scan buffer in memory.
+ * Records for which the mapper returns null are skipped.
+ */
+class RecordCursor<R> extends Spliterators.AbstractSpliterator<R> implements Closeable {
+
+  private final Logger logger = LoggerFactory.getLogger(RecordCursor.class);
+
+  private final FileChannel channel;
+  private final long end;
+  private final RecordCodec codec;
+  private final RecordMapper<R> mapper;
+  private ByteBuffer buffer = ByteBuffer.allocate(FileHelper.SCAN_BUFFER_BYTES);
+  private long bufferOffset;
+  private long readOffset;
+  private boolean endOfInput;
+
+  RecordCursor(FileChannel channel, long end, RecordCodec codec, RecordMapper<R> mapper) {
+    super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+    this.channel = channel;
+    this.end = end;
+    this.codec = codec;
+    this.mapper = mapper;
+    buffer.flip();
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super R> action) {
+    try {
+      while (true) {
+        LinePosition record = codec.nextRecord(buffer, endOfInput);
+        if (record != null) {
+          R mapped = mapper.map(FileHelper.slice(buffer, record),
+              new LinePosition(bufferOffset + record.getOffset(), record.getLength()));
+          if (mapped != null) {
+            action.accept(mapped);
+            return true;
+          }
+        } else if (endOfInput) {
+          return false;
+        } else {
+          readMore();
+        }
+      }
+    } catch (IOException ex) {
+      logger.warn(" from tryAdvance in RecordCursor (File): "
+          + ExceptionMsg.IO_ERROR_WHILE_READING, ex);
+      throw new DbException(ExceptionMsg.IO_ERROR_WHILE_READING, ex);
+    }
+  }
+
+  private void readMore() throws IOException {
+    bufferOffset += buffer.position();
+    buffer.compact();
+    if (!buffer.hasRemaining()) {
+      ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+      buffer.flip();
+      buffer = grown.put(buffer);
+    }
+    int readBytes = FileHelper.readBefore(channel, buffer, readOffset, end);
+    if (readBytes < 0) {
+      endOfInput = true;
+    } else {
+      readOffset += readBytes;
+    }
+    buffer.flip();
+  }
+
+  @Override
+  public void close() {
+    try {
+      channel.close();
+    } catch (IOException ex) {
+      logger.warn(" from close in RecordCursor (File): "
+          + ExceptionMsg.IO_ERROR_WHILE_READING, ex);
+      throw new DbException(ExceptionMsg.IO_ERROR_WHILE_READING, ex);
+    }
+  }
+
+  interface RecordMapper<R> {
+
+    R map(ByteBuffer record, LinePosition position);
+  }
+}
@@ -0,0 +1,32 @@
+package pl.coderstrust.database.file;
+
+import pl.coderstrust.database.ObjectMapperHelper;
+import pl.coderstrust.database.RecordFormat;
+import pl.coderstrust.model.WithNameIdIssueDate;
+
+import java.util.stream.Stream;
+
+/**
+ * Rewrites the live entries of an InFileDatabase file into another record format. Ids are kept,
+ * deleted and overwritten entries are dropped.
+ */
+public class RecordFormatConverter<T extends WithNameIdIssueDate> {
+
+  private Class<T> entryClass;
+  private String dbKey;
+
+  public RecordFormatConverter(Class<T> entryClass, String dbKey) {
+    this.entryClass = entryClass;
+    this.dbKey = dbKey;
+  }
+
+  public int convert(RecordFormat sourceFormat, RecordFormat targetFormat) {
+    String entryClassName = entryClass.getSimpleName();
+    ObjectMapperHelper<T> targetMapper = new ObjectMapperHelper<>(entryClass, targetFormat);
+    FileHelper targetFile = new FileHelper(new Configuration(entryClassName, false, targetFormat));
+    try (Stream<T> entries = new InFileDatabase<>(entryClass, dbKey,
+        new Configuration(entryClassName, false, sourceFormat), null).streamEntries()) {
+      return (int) targetFile.replaceRecords(entries.map(targetMapper::toRecord));
+    }
+  }
+}
@@ -1,16 +1,29 @@
 package pl.coderstrust.database.hibernate;
 
 import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import pl.coderstrust.model.Company;
 
+import java.time.LocalDate;
 import java.util.List;
 
 @Repository
 public interface CompanyRepository extends JpaRepository<Company, Long> {
 
   Company getByNip(String nip);
+
+  List<Company> findByIdGreaterThan(long id, Pageable pageable);
+
+  @Query("select coalesce(max(c.id), -1) from Company c")
+  long findMaxId();
+
+  @Query("select c from Company c where c.issueDate between :fromDate and :endDate"
+      + " and (c.issueDate > :fromDate or c.id > :afterId) order by c.issueDate, c.id")
+  List<Company> findPage(@Param("fromDate") LocalDate fromDate, @Param("endDate") LocalDate endDate,
+      @Param("afterId") long afterId, Pageable pageable);
 }
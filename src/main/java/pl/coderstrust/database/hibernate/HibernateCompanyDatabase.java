@@ -1,14 +1,27 @@
 package pl.coderstrust.database.hibernate;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import pl.coderstrust.database.Database;
+import pl.coderstrust.database.DbException;
+import pl.coderstrust.database.ExceptionMsg;
+import pl.coderstrust.database.PageCursor;
+import pl.coderstrust.database.PagedEntries;
 import pl.coderstrust.model.Company;
 
+import java.time.LocalDate;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class HibernateCompanyDatabase implements Database<Company> {
 
+  private final Logger logger = LoggerFactory.getLogger(HibernateCompanyDatabase.class);
+
   private CompanyRepository companyRepository;
 
   @Autowired
@@ -21,6 +34,18 @@ public class HibernateCompanyDatabase implements Database<Company> {
     return companyRepository.save(company).getId();
   }
 
+  @Override
+  public long insertEntry(Company company) {
+    logger.warn(" from insertEntry (HibernateCompanyDatabase): "
+        + ExceptionMsg.IDS_ASSIGNED_BY_DATABASE);
+    throw new DbException(ExceptionMsg.IDS_ASSIGNED_BY_DATABASE);
+  }
+
+  @Override
+  public long getMaxId() {
+    return companyRepository.findMaxId();
+  }
+
   @Override
   public void deleteEntry(long id) {
     companyRepository.delete(id);
@@ -36,11 +61,52 @@ public class HibernateCompanyDatabase implements Database<Company> {
     companyRepository.save(company);
   }
 
+  /**
+   * Saved in one transaction, which Hibernate sends as JDBC batches of
+   * hibernate.jdbc.batch_size statements.
+   */
+  @Override
+  public List<Long> addEntries(List<Company> companys) {
+    return companyRepository.save(companys).stream()
+        .map(Company::getId)
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public void updateEntries(List<Company> companys) {
+    companyRepository.save(companys);
+  }
+
+  @Override
+  public void deleteEntries(List<Long> ids) {
+    companyRepository.delete(companyRepository.findAll(ids));
+  }
+
   @Override
   public List<Company> getEntries() {
     return companyRepository.findAll();
   }
 
+  @Override
+  public Stream<Company> streamEntries() {
+    return PagedEntries.stream((afterId, pageSize) -> companyRepository
+            .findByIdGreaterThan(afterId, new PageRequest(0, pageSize, Sort.Direction.ASC, "id")),
+        PagedEntries.DEFAULT_PAGE_SIZE);
+  }
+
+  @Override
+  public Stream<Company> streamEntriesByDate(LocalDate beginDate, LocalDate endDate) {
+    return PagedEntries.streamByDate(this, beginDate, endDate, PagedEntries.DEFAULT_PAGE_SIZE);
+  }
+
+  @Override
+  public List<Company> getEntriesPage(LocalDate beginDate, LocalDate endDate, PageCursor after,
+      int pageSize) {
+    PageCursor from = after.clampTo(beginDate);
+    return companyRepository.findPage(from.getIssueDate(), endDate, from.getId(),
+        new PageRequest(0, pageSize));
+  }
+
   @Override
   public boolean idExist(long id) {
     return companyRepository.exists(id);
@@ -1,14 +1,27 @@
 package pl.coderstrust.database.hibernate;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import pl.coderstrust.database.Database;
+import pl.coderstrust.database.DbException;
+import pl.coderstrust.database.ExceptionMsg;
+import pl.coderstrust.database.PageCursor;
+import pl.coderstrust.database.PagedEntries;
 import pl.coderstrust.model.Company;
 import pl.coderstrust.model.Invoice;
 
+import java.time.LocalDate;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class HibernateInvoiceDatabase implements Database<Invoice> {
 
+  private final Logger logger = LoggerFactory.getLogger(HibernateInvoiceDatabase.class);
+
   private InvoiceRepository invoiceRepository;
 
   private CompanyRepository companyRepository;
@@ -25,6 +38,18 @@ public class HibernateInvoiceDatabase implements Database<Invoice> {
     return invoiceRepository.save(invoice).getId();
   }
 
+  @Override
+  public long insertEntry(Invoice invoice) {
+    logger.warn(" from insertEntry (HibernateInvoiceDatabase): "
+        + ExceptionMsg.IDS_ASSIGNED_BY_DATABASE);
+    throw new DbException(ExceptionMsg.IDS_ASSIGNED_BY_DATABASE);
+  }
+
+  @Override
+  public long getMaxId() {
+    return invoiceRepository.findMaxId();
+  }
+
   @Override
   public void deleteEntry(long id) {
     invoiceRepository.delete(id);
@@ -40,11 +65,52 @@ public class HibernateInvoiceDatabase implements Database<Invoice> {
     invoiceRepository.save(invoice);
   }
 
+  /**
+   * Saved in one transaction, which Hibernate sends as JDBC batches of
+   * hibernate.jdbc.batch_size statements.
+   */
+  @Override
+  public List<Long> addEntries(List<Invoice> invoices) {
+    return invoiceRepository.save(invoices).stream()
+        .map(Invoice::getId)
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public void updateEntries(List<Invoice> invoices) {
+    invoiceRepository.save(invoices);
+  }
+
+  @Override
+  public void deleteEntries(List<Long> ids) {
+    invoiceRepository.delete(invoiceRepository.findAll(ids));
+  }
+
   @Override
   public List<Invoice> getEntries() {
     return invoiceRepository.findAll();
   }
 
+  @Override
+  public Stream<Invoice> streamEntries() {
+    return PagedEntries.stream((afterId, pageSize) -> invoiceRepository
+            .findByIdGreaterThan(afterId, new PageRequest(0, pageSize, Sort.Direction.ASC, "id")),
+        PagedEntries.DEFAULT_PAGE_SIZE);
+  }
+
+  @Override
+  public Stream<Invoice> streamEntriesByDate(LocalDate beginDate, LocalDate endDate) {
+    return PagedEntries.streamByDate(this, beginDate, endDate, PagedEntries.DEFAULT_PAGE_SIZE);
+  }
+
+  @Override
+  public List<Invoice> getEntriesPage(LocalDate beginDate, LocalDate endDate, PageCursor after,
+      int pageSize) {
+    PageCursor from = after.clampTo(beginDate);
+    return invoiceRepository.findPage(from.getIssueDate(), endDate, from.getId(),
+        new PageRequest(0, pageSize));
+  }
+
   @Override
   public boolean idExist(long id) {
     return invoiceRepository.exists(id);
@@ -1,11 +1,26 @@
 package pl.coderstrust.database.hibernate;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import pl.coderstrust.model.Invoice;
 
+import java.time.LocalDate;
+import java.util.List;
+
 @Repository
 public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
 
+  List<Invoice> findByIdGreaterThan(long id, Pageable pageable);
+
+  @Query("select coalesce(max(i.id), -1) from Invoice i")
+  long findMaxId();
+
+  @Query("select i from Invoice i where i.issueDate between :fromDate and :endDate"
+      + " and (i.issueDate > :fromDate or i.id > :afterId) order by i.issueDate, i.id")
+  List<Invoice> findPage(@Param("fromDate") LocalDate fromDate, @Param("endDate") LocalDate endDate,
+      @Param("afterId") long afterId, Pageable pageable);
 }
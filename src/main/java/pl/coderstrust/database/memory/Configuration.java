@@ -0,0 +1,48 @@
+package pl.coderstrust.database.memory;
+
+public class Configuration {
+
+  private static final String dbFilePath = "src/main/resources/";
+  private static final String dbNamePrefix = "memoryDb";
+  private static final String snapshotFileExtension = ".snapshot";
+  private static final String logFileExtension = ".wal.";
+  private static final String tempFileExtension = ".tmp";
+
+  static final int DEFAULT_SNAPSHOT_INTERVAL = 10000;
+
+  private String dbEntryClassName;
+  private int snapshotInterval;
+
+  public Configuration(String dbEntryClassName) {
+    this(dbEntryClassName, DEFAULT_SNAPSHOT_INTERVAL);
+  }
+
+  public Configuration(String dbEntryClassName, int snapshotInterval) {
+    this.dbEntryClassName = dbEntryClassName;
+    this.snapshotInterval = snapshotInterval;
+  }
+
+  String getDbFilePath() {
+    return dbFilePath;
+  }
+
+  String getLogFileNamePrefix() {
+    return dbNamePrefix + dbEntryClassName + logFileExtension;
+  }
+
+  String getLogFilePath(long segment) {
+    return dbFilePath + getLogFileNamePrefix() + segment;
+  }
+
+  String getSnapshotFilePath() {
+    return dbFilePath + dbNamePrefix + dbEntryClassName + snapshotFileExtension;
+  }
+
+  String getSnapshotTempFilePath() {
+    return getSnapshotFilePath() + tempFileExtension;
+  }
+
+  int getSnapshotInterval() {
+    return snapshotInterval;
+  }
+}
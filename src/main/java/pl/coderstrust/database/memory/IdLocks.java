@@ -0,0 +1,49 @@
+package pl.coderstrust.database.memory;
+
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+class IdLocks {
+
+  private static final int STRIPES_COUNT = 64;
+  private final ReentrantLock[] stripes = new ReentrantLock[STRIPES_COUNT];
+
+  IdLocks() {
+    for (int i = 0; i < STRIPES_COUNT; i++) {
+      stripes[i] = new ReentrantLock();
+    }
+  }
+
+  void lock(Collection<Long> ids) {
+    for (int stripe : getStripes(ids)) {
+      stripes[stripe].lock();
+    }
+  }
+
+  void unlock(Collection<Long> ids) {
+    int[] idStripes = getStripes(ids);
+    for (int i = idStripes.length - 1; i >= 0; i--) {
+      stripes[idStripes[i]].unlock();
+    }
+  }
+
+  void lock(long id) {
+    stripes[getStripe(id)].lock();
+  }
+
+  void unlock(long id) {
+    stripes[getStripe(id)].unlock();
+  }
+
+  private int[] getStripes(Collection<Long> ids) {
+    return ids.stream()
+        .mapToInt(this::getStripe)
+        .distinct()
+        .sorted()
+        .toArray();
+  }
+
+  private int getStripe(long id) {
+    return Math.floorMod(Long.hashCode(id), STRIPES_COUNT);
+  }
+}
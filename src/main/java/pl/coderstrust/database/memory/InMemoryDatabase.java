@@ -5,66 +5,293 @@ import org.slf4j.LoggerFactory;
 import pl.coderstrust.database.Database;
 import pl.coderstrust.database.DbException;
 import pl.coderstrust.database.ExceptionMsg;
+import pl.coderstrust.database.GroupCommitWriter;
+import pl.coderstrust.database.PageCursor;
+import pl.coderstrust.model.Company;
+import pl.coderstrust.model.Invoice;
 import pl.coderstrust.model.WithNameIdIssueDate;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
 public class InMemoryDatabase<T extends WithNameIdIssueDate> implements Database<T> {
 
   private static final int INITIAL_ID = 0;
-  private static final int INCREMENT_ID = 1;
   private final Logger logger = LoggerFactory.getLogger(InMemoryDatabase.class);
 
-  private HashMap<Long, T> entries = new HashMap<>();
-  private long lastId = INITIAL_ID;
-
+  private ConcurrentHashMap<Long, T> entries = new ConcurrentHashMap<>();
+  private AtomicLong lastId = new AtomicLong(INITIAL_ID);
+  // index id sets are never removed, so an add racing with a delete can't lose its id
+  private ConcurrentSkipListMap<LocalDate, Set<Long>> dateIndex = new ConcurrentSkipListMap<>();
+  private ConcurrentHashMap<Long, Set<Long>> companyIndex = new ConcurrentHashMap<>();
+  private ConcurrentHashMap<String, Set<Long>> nipIndex = new ConcurrentHashMap<>();
+  private boolean invoices;
+  private boolean companies;
+  private WriteAheadLog<T> log;
+  // mutations log and apply under the read lock, log rotation takes the write lock
+  private ReadWriteLock rotationLock = new ReentrantReadWriteLock();
+  private IdLocks idLocks = new IdLocks();
+  private AtomicInteger mutationsSinceSnapshot = new AtomicInteger();
+  private AtomicBoolean snapshotScheduled = new AtomicBoolean();
+  private int snapshotInterval;
+  private ExecutorService snapshotter;
 
   public InMemoryDatabase(Class<T> entryClass) {
+    invoices = Invoice.class.isAssignableFrom(entryClass);
+    companies = Company.class.isAssignableFrom(entryClass);
+  }
+
+  public InMemoryDatabase(Class<T> entryClass, Configuration config, GroupCommitWriter writer) {
+    this(entryClass);
+    snapshotInterval = config.getSnapshotInterval();
+    log = new WriteAheadLog<>(entryClass, config, writer);
+    lastId.set(log.load(this::putEntry, this::removeEntry));
+  }
+
+  private void putEntry(T entry) {
+    entries.compute(entry.getId(), (id, previous) -> {
+      if (previous != null) {
+        removeFromIndexes(previous);
+      }
+      addToIndexes(entry);
+      return entry;
+    });
+  }
+
+  private void removeEntry(long id) {
+    entries.computeIfPresent(id, (key, previous) -> {
+      removeFromIndexes(previous);
+      return null;
+    });
   }
 
   @Override
   public long addEntry(T entry) {
-    entry.setId(getNextId());
-    entries.put(entry.getId(), entry);
+    entry.setId(lastId.incrementAndGet());
+    return putNewEntry(entry);
+  }
+
+  @Override
+  public long getMaxId() {
+    return lastId.get();
+  }
+
+  @Override
+  public long insertEntry(T entry) {
+    lastId.accumulateAndGet(entry.getId(), Math::max);
+    return putNewEntry(entry);
+  }
+
+  private long putNewEntry(T entry) {
+    lockMutations(entry.getId());
+    try {
+      writeLog(wal -> wal.logPut(entry));
+      putEntry(entry);
+    } finally {
+      unlockMutations(entry.getId());
+    }
+    afterMutation(1);
     return entry.getId();
   }
 
-  private long getNextId() {
-    lastId += INCREMENT_ID;
-    return lastId;
+  /**
+   * Logs the whole batch with a single write before applying it.
+   */
+  @Override
+  public List<Long> addEntries(List<T> newEntries) {
+    for (T entry : newEntries) {
+      entry.setId(lastId.incrementAndGet());
+    }
+    putEntries(newEntries, false);
+    return newEntries.stream().map(WithNameIdIssueDate::getId).collect(Collectors.toList());
+  }
+
+  @Override
+  public void insertEntries(List<T> insertedEntries) {
+    for (T entry : insertedEntries) {
+      lastId.accumulateAndGet(entry.getId(), Math::max);
+    }
+    putEntries(insertedEntries, false);
+  }
+
+  @Override
+  public void updateEntries(List<T> updatedEntries) {
+    putEntries(updatedEntries, true);
+  }
+
+  @Override
+  public void deleteEntries(List<Long> ids) {
+    if (ids.isEmpty()) {
+      return;
+    }
+    lockMutations(ids);
+    try {
+      checkIdsExist(ids, "deleteEntries");
+      writeLog(wal -> wal.logDeletes(ids));
+      ids.forEach(this::removeEntry);
+    } finally {
+      unlockMutations(ids);
+    }
+    afterMutation(ids.size());
+  }
+
+  private void putEntries(List<T> batch, boolean update) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    List<Long> ids = batch.stream().map(WithNameIdIssueDate::getId)
+        .collect(Collectors.toList());
+    lockMutations(ids);
+    try {
+      if (update) {
+        checkIdsExist(ids, "updateEntries");
+      }
+      writeLog(wal -> wal.logPuts(batch));
+      batch.forEach(this::putEntry);
+    } finally {
+      unlockMutations(ids);
+    }
+    afterMutation(batch.size());
+  }
+
+  private void checkIdsExist(List<Long> ids, String methodName) {
+    for (long id : ids) {
+      if (!entries.containsKey(id)) {
+        logger.warn(" from " + methodName + " (InMemoryDatabase): "
+            + ExceptionMsg.INVOICE_NOT_EXIST);
+        throw new DbException(ExceptionMsg.INVOICE_NOT_EXIST);
+      }
+    }
   }
 
   @Override
   public void deleteEntry(long id) {
-    if (!idExist(id)) {
-      logger.warn(" from deleteEntry (InMemoryDatabase): "
-          + ExceptionMsg.INVOICE_NOT_EXIST);
-      throw new DbException(ExceptionMsg.INVOICE_NOT_EXIST);
+    lockMutations(id);
+    try {
+      checkIdsExist(Collections.singletonList(id), "deleteEntry");
+      writeLog(wal -> wal.logDelete(id));
+      removeEntry(id);
+    } finally {
+      unlockMutations(id);
     }
-    entries.remove(id);
+    afterMutation(1);
   }
 
   @Override
   public T getEntryById(long id) {
-    if (!idExist(id)) {
+    T entry = entries.get(id);
+    if (entry == null) {
       logger.warn(" from getEntryByiD (InMemoryDatabase): "
           + ExceptionMsg.INVOICE_NOT_EXIST);
       throw new DbException(ExceptionMsg.INVOICE_NOT_EXIST);
     }
-    return entries.get(id);
+    return entry;
   }
 
   @Override
   public void updateEntry(T entry) {
-    if (!idExist(entry.getId())) {
-      logger.warn(" from updateEntry (InMemoryDatabase): "
-          + ExceptionMsg.INVOICE_NOT_EXIST);
-      throw new DbException(ExceptionMsg.INVOICE_NOT_EXIST);
+    lockMutations(entry.getId());
+    try {
+      checkIdsExist(Collections.singletonList(entry.getId()), "updateEntry");
+      writeLog(wal -> wal.logPut(entry));
+      putEntry(entry);
+    } finally {
+      unlockMutations(entry.getId());
+    }
+    afterMutation(1);
+  }
+
+  /**
+   * Appends to the log and waits until the write is done, so a mutation reaches memory only
+   * once it is logged. Callers hold the locks of the ids, keeping log and memory in one order.
+   */
+  private void writeLog(Function<WriteAheadLog<T>, CompletableFuture<Long>> append) {
+    if (log != null) {
+      log.awaitWrite(append.apply(log));
+    }
+  }
+
+  private void lockMutations(long id) {
+    lockMutations(Collections.singletonList(id));
+  }
+
+  private void unlockMutations(long id) {
+    unlockMutations(Collections.singletonList(id));
+  }
+
+  private void lockMutations(List<Long> ids) {
+    if (log != null) {
+      rotationLock.readLock().lock();
+    }
+    idLocks.lock(ids);
+  }
+
+  private void unlockMutations(List<Long> ids) {
+    idLocks.unlock(ids);
+    if (log != null) {
+      rotationLock.readLock().unlock();
+    }
+  }
+
+  private void afterMutation(int mutations) {
+    if (log == null) {
+      return;
+    }
+    if (mutationsSinceSnapshot.addAndGet(mutations) >= snapshotInterval
+        && snapshotScheduled.compareAndSet(false, true)) {
+      getSnapshotter().submit(this::saveSnapshot);
+    }
+  }
+
+  private synchronized ExecutorService getSnapshotter() {
+    if (snapshotter == null) {
+      snapshotter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "InMemoryDatabase-snapshot");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return snapshotter;
+  }
+
+  void saveSnapshot() {
+    try {
+      long firstSegment;
+      rotationLock.writeLock().lock();
+      try {
+        firstSegment = log.rotate();
+        mutationsSinceSnapshot.set(0);
+      } finally {
+        rotationLock.writeLock().unlock();
+      }
+      log.writeSnapshot(lastId.get(), firstSegment, entries.values());
+    } catch (DbException ex) {
+      logger.warn(" from saveSnapshot (InMemoryDatabase): "
+          + ExceptionMsg.IO_ERROR_WHILE_ADDING, ex);
+    } finally {
+      snapshotScheduled.set(false);
     }
-    entries.replace(entry.getId(), entry);
   }
 
   @Override
@@ -76,4 +303,156 @@ public class InMemoryDatabase<T extends WithNameIdIssueDate> implements Database
   public boolean idExist(long id) {
     return entries.containsKey(id);
   }
-}
\ No newline at end of file
+
+  @Override
+  public Stream<T> streamEntries() {
+    return entries.values().stream();
+  }
+
+  @Override
+  public List<T> getEntriesByDate(LocalDate beginDate, LocalDate endDate) {
+    if (beginDate.isAfter(endDate)) {
+      return new ArrayList<>();
+    }
+    return getIndexedEntries(dateIndex.subMap(beginDate, true, endDate, true).values(),
+        entry -> isIssuedBetween(entry, beginDate, endDate));
+  }
+
+  /**
+   * Walks the date index from the cursor on, so only the entries of the page are looked at.
+   */
+  @Override
+  public List<T> getEntriesPage(LocalDate beginDate, LocalDate endDate, PageCursor after,
+      int pageSize) {
+    PageCursor from = after.clampTo(beginDate);
+    List<T> page = new ArrayList<>();
+    if (from.getIssueDate().isAfter(endDate)) {
+      return page;
+    }
+    for (Map.Entry<LocalDate, Set<Long>> day
+        : dateIndex.subMap(from.getIssueDate(), true, endDate, true).entrySet()) {
+      long[] ids = day.getValue().stream().mapToLong(Long::longValue).sorted().toArray();
+      for (long id : ids) {
+        T entry = entries.get(id);
+        if (entry != null && day.getKey().equals(entry.getIssueDate()) && from.isBefore(entry)) {
+          page.add(entry);
+          if (page.size() == pageSize) {
+            return page;
+          }
+        }
+      }
+    }
+    return page;
+  }
+
+  @Override
+  public List<T> getEntriesByCompany(long companyId, LocalDate beginDate, LocalDate endDate) {
+    if (!invoices) {
+      return getEntriesByDate(beginDate, endDate);
+    }
+    return getIndexedEntries(getIdSets(companyIndex, companyId),
+        entry -> isIssuedBetween(entry, beginDate, endDate)
+            && involvesCompany((Invoice) entry, companyId));
+  }
+
+  @Override
+  public List<T> getEntriesByNip(String nip) {
+    if (!companies) {
+      return getEntries();
+    }
+    return getIndexedEntries(getIdSets(nipIndex, nip),
+        entry -> Objects.equals(((Company) entry).getNip(), nip));
+  }
+
+  @Override
+  public Stream<T> streamEntriesByDate(LocalDate beginDate, LocalDate endDate) {
+    if (beginDate.isAfter(endDate)) {
+      return Stream.empty();
+    }
+    return streamIndexedEntries(dateIndex.subMap(beginDate, true, endDate, true).values(),
+        entry -> isIssuedBetween(entry, beginDate, endDate));
+  }
+
+  @Override
+  public Stream<T> streamEntriesByCompany(long companyId, LocalDate beginDate,
+      LocalDate endDate) {
+    if (!invoices) {
+      return streamEntries().filter(entry -> isIssuedBetween(entry, beginDate, endDate));
+    }
+    return streamIndexedEntries(getIdSets(companyIndex, companyId),
+        entry -> isIssuedBetween(entry, beginDate, endDate)
+            && involvesCompany((Invoice) entry, companyId));
+  }
+
+  private <K> Collection<Set<Long>> getIdSets(Map<K, Set<Long>> index, K key) {
+    Set<Long> ids = index.get(key);
+    return ids == null ? Collections.emptyList() : Collections.singletonList(ids);
+  }
+
+  private List<T> getIndexedEntries(Collection<Set<Long>> idSets, Predicate<T> stillMatches) {
+    return streamIndexedEntries(idSets, stillMatches).collect(Collectors.toList());
+  }
+
+  private Stream<T> streamIndexedEntries(Collection<Set<Long>> idSets,
+      Predicate<T> stillMatches) {
+    return idSets.stream()
+        .flatMap(Set::stream)
+        .map(entries::get)
+        .filter(entry -> entry != null && stillMatches.test(entry));
+  }
+
+  private boolean isIssuedBetween(T entry, LocalDate beginDate, LocalDate endDate) {
+    return entry.getIssueDate() != null && !entry.getIssueDate().isBefore(beginDate)
+        && !entry.getIssueDate().isAfter(endDate);
+  }
+
+  private boolean involvesCompany(Invoice invoice, long companyId) {
+    return invoice.getSeller() != null && invoice.getSeller().getId() == companyId
+        || invoice.getBuyer() != null && invoice.getBuyer().getId() == companyId;
+  }
+
+  private void addToIndexes(T entry) {
+    if (entry.getIssueDate() != null) {
+      getIds(dateIndex, entry.getIssueDate()).add(entry.getId());
+    }
+    if (invoices) {
+      Invoice invoice = (Invoice) entry;
+      if (invoice.getSeller() != null) {
+        getIds(companyIndex, invoice.getSeller().getId()).add(entry.getId());
+      }
+      if (invoice.getBuyer() != null) {
+        getIds(companyIndex, invoice.getBuyer().getId()).add(entry.getId());
+      }
+    }
+    if (companies && ((Company) entry).getNip() != null) {
+      getIds(nipIndex, ((Company) entry).getNip()).add(entry.getId());
+    }
+  }
+
+  private <K> Set<Long> getIds(Map<K, Set<Long>> index, K key) {
+    return index.computeIfAbsent(key, newKey -> ConcurrentHashMap.newKeySet());
+  }
+
+  private void removeFromIndexes(T entry) {
+    removeFromIndex(dateIndex, entry.getIssueDate(), entry.getId());
+    if (invoices) {
+      Invoice invoice = (Invoice) entry;
+      if (invoice.getSeller() != null) {
+        removeFromIndex(companyIndex, invoice.getSeller().getId(), entry.getId());
+      }
+      if (invoice.getBuyer() != null) {
+        removeFromIndex(companyIndex, invoice.getBuyer().getId(), entry.getId());
+      }
+    }
+    if (companies) {
+      removeFromIndex(nipIndex, ((Company) entry).getNip(), entry.getId());
+    }
+  }
+
+  private <K> void removeFromIndex(Map<K, Set<Long>> index, K key, long id) {
+    Set<Long> ids = key == null ? null : index.get(key);
+    if (ids != null) {
+      ids.remove(id);
+    }
+  }
+}
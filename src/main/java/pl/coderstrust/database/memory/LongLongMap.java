@@ -0,0 +1,120 @@
+package pl.coderstrust.database.memory;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing long to long map with linear probing, so that indexing an entry costs two
+ * array slots instead of boxed keys, values and map nodes. Not thread-safe.
+ */
+class LongLongMap {
+
+  static final long NO_VALUE = -1;
+  private static final long FREE_KEY = Long.MIN_VALUE;
+  private static final int INITIAL_CAPACITY = 16;
+
+  private long[] keys;
+  private long[] values;
+  private int size;
+
+  LongLongMap() {
+    allocate(INITIAL_CAPACITY);
+  }
+
+  long get(long key) {
+    if (key == FREE_KEY) {
+      return NO_VALUE;
+    }
+    int slot = findSlot(key);
+    return keys[slot] == key ? values[slot] : NO_VALUE;
+  }
+
+  void put(long key, long value) {
+    int slot = findSlot(key);
+    if (keys[slot] != key) {
+      keys[slot] = key;
+      size++;
+    }
+    values[slot] = value;
+    if (size * 2 > keys.length) {
+      resize();
+    }
+  }
+
+  long remove(long key) {
+    if (key == FREE_KEY) {
+      return NO_VALUE;
+    }
+    int slot = findSlot(key);
+    if (keys[slot] != key) {
+      return NO_VALUE;
+    }
+    long value = values[slot];
+    keys[slot] = FREE_KEY;
+    size--;
+    shiftFollowingKeys(slot);
+    return value;
+  }
+
+  int size() {
+    return size;
+  }
+
+  long[] keys() {
+    long[] result = new long[size];
+    int index = 0;
+    for (int slot = 0; slot < keys.length; slot++) {
+      if (keys[slot] != FREE_KEY) {
+        result[index++] = keys[slot];
+      }
+    }
+    return result;
+  }
+
+  private int findSlot(long key) {
+    int mask = keys.length - 1;
+    int slot = hash(key) & mask;
+    while (keys[slot] != FREE_KEY && keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  // re-inserts the probe chain after a removed slot so lookups never stop at the gap
+  private void shiftFollowingKeys(int freedSlot) {
+    int mask = keys.length - 1;
+    int slot = (freedSlot + 1) & mask;
+    while (keys[slot] != FREE_KEY) {
+      long key = keys[slot];
+      long value = values[slot];
+      keys[slot] = FREE_KEY;
+      int target = findSlot(key);
+      keys[target] = key;
+      values[target] = value;
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  private void resize() {
+    long[] oldKeys = keys;
+    long[] oldValues = values;
+    allocate(oldKeys.length * 2);
+    for (int slot = 0; slot < oldKeys.length; slot++) {
+      if (oldKeys[slot] != FREE_KEY) {
+        int target = findSlot(oldKeys[slot]);
+        keys[target] = oldKeys[slot];
+        values[target] = oldValues[slot];
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new long[capacity];
+    Arrays.fill(keys, FREE_KEY);
+  }
+
+  private int hash(long key) {
+    long mixed = key * 0x9E3779B97F4A7C15L;
+    return (int) (mixed ^ (mixed >>> Integer.SIZE));
+  }
+}
@@ -0,0 +1,264 @@
+package pl.coderstrust.database.memory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.coderstrust.database.Database;
+import pl.coderstrust.database.DbException;
+import pl.coderstrust.database.ExceptionMsg;
+import pl.coderstrust.database.ObjectMapperHelper;
+import pl.coderstrust.database.RecordFormat;
+import pl.coderstrust.model.WithNameIdIssueDate;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * In-memory database keeping entries as Smile records in direct memory slabs, decoded on every
+ * read. The heap only holds the id to address index.
+ */
+public class OffHeapDatabase<T extends WithNameIdIssueDate> implements Database<T> {
+
+  private static final int INITIAL_ID = 0;
+  private static final int DEFAULT_SLAB_SIZE = 4 * 1024 * 1024;
+  private final Logger logger = LoggerFactory.getLogger(OffHeapDatabase.class);
+
+  private ObjectMapperHelper<T> mapper;
+  private SlabAllocator slabs;
+  private LongLongMap addresses = new LongLongMap();
+  private AtomicLong lastId = new AtomicLong(INITIAL_ID);
+  private ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  public OffHeapDatabase(Class<T> entryClass) {
+    this(entryClass, DEFAULT_SLAB_SIZE);
+  }
+
+  OffHeapDatabase(Class<T> entryClass, int slabSize) {
+    mapper = new ObjectMapperHelper<>(entryClass, RecordFormat.SMILE);
+    slabs = new SlabAllocator(slabSize);
+  }
+
+  @Override
+  public long addEntry(T entry) {
+    entry.setId(lastId.incrementAndGet());
+    return putNewEntry(entry);
+  }
+
+  @Override
+  public long getMaxId() {
+    return lastId.get();
+  }
+
+  @Override
+  public long insertEntry(T entry) {
+    lastId.accumulateAndGet(entry.getId(), Math::max);
+    return putNewEntry(entry);
+  }
+
+  private long putNewEntry(T entry) {
+    byte[] record = mapper.toRecord(entry);
+    lock.writeLock().lock();
+    try {
+      long previous = addresses.get(entry.getId());
+      if (previous != LongLongMap.NO_VALUE) {
+        slabs.free(previous);
+      }
+      addresses.put(entry.getId(), slabs.write(record));
+    } finally {
+      lock.writeLock().unlock();
+    }
+    return entry.getId();
+  }
+
+  /**
+   * Encodes the batch before taking the write lock once for all of it.
+   */
+  @Override
+  public List<Long> addEntries(List<T> entries) {
+    List<byte[]> records = new ArrayList<>(entries.size());
+    List<Long> ids = new ArrayList<>(entries.size());
+    for (T entry : entries) {
+      entry.setId(lastId.incrementAndGet());
+      records.add(mapper.toRecord(entry));
+      ids.add(entry.getId());
+    }
+    lock.writeLock().lock();
+    try {
+      for (int i = 0; i < ids.size(); i++) {
+        addresses.put(ids.get(i), slabs.write(records.get(i)));
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+    return ids;
+  }
+
+  @Override
+  public void updateEntries(List<T> entries) {
+    List<byte[]> records = new ArrayList<>(entries.size());
+    for (T entry : entries) {
+      records.add(mapper.toRecord(entry));
+    }
+    lock.writeLock().lock();
+    try {
+      checkIdsExist(entries.stream().mapToLong(WithNameIdIssueDate::getId), "updateEntries");
+      for (int i = 0; i < entries.size(); i++) {
+        long id = entries.get(i).getId();
+        addresses.put(id, slabs.rewrite(addresses.get(id), records.get(i)));
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void deleteEntries(List<Long> ids) {
+    lock.writeLock().lock();
+    try {
+      checkIdsExist(ids.stream().mapToLong(Long::longValue), "deleteEntries");
+      for (long id : ids) {
+        long address = addresses.remove(id);
+        if (address != LongLongMap.NO_VALUE) {
+          slabs.free(address);
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void checkIdsExist(LongStream ids, String methodName) {
+    if (ids.anyMatch(id -> addresses.get(id) == LongLongMap.NO_VALUE)) {
+      logger.warn(" from " + methodName + " (OffHeapDatabase): "
+          + ExceptionMsg.INVOICE_NOT_EXIST);
+      throw new DbException(ExceptionMsg.INVOICE_NOT_EXIST);
+    }
+  }
+
+  @Override
+  public void deleteEntry(long id) {
+    lock.writeLock().lock();
+    try {
+      long address = addresses.remove(id);
+      if (address == LongLongMap.NO_VALUE) {
+        logger.warn(" from deleteEntry (OffHeapDatabase): "
+            + ExceptionMsg.INVOICE_NOT_EXIST);
+        throw new DbException(ExceptionMsg.INVOICE_NOT_EXIST);
+      }
+      slabs.free(address);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public T getEntryById(long id) {
+    byte[] record;
+    lock.readLock().lock();
+    try {
+      long address = addresses.get(id);
+      if (address == LongLongMap.NO_VALUE) {
+        logger.warn(" from getEntryById (OffHeapDatabase): "
+            + ExceptionMsg.INVOICE_NOT_EXIST);
+        throw new DbException(ExceptionMsg.INVOICE_NOT_EXIST);
+      }
+      record = slabs.read(address);
+    } finally {
+      lock.readLock().unlock();
+    }
+    return mapper.fromRecord(ByteBuffer.wrap(record));
+  }
+
+  @Override
+  public void updateEntry(T entry) {
+    byte[] record = mapper.toRecord(entry);
+    lock.writeLock().lock();
+    try {
+      long address = addresses.get(entry.getId());
+      if (address == LongLongMap.NO_VALUE) {
+        logger.warn(" from updateEntry (OffHeapDatabase): "
+            + ExceptionMsg.INVOICE_NOT_EXIST);
+        throw new DbException(ExceptionMsg.INVOICE_NOT_EXIST);
+      }
+      addresses.put(entry.getId(), slabs.rewrite(address, record));
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public List<T> getEntries() {
+    List<byte[]> records = new ArrayList<>();
+    lock.readLock().lock();
+    try {
+      long[] ids = addresses.keys();
+      Arrays.sort(ids);
+      for (long id : ids) {
+        records.add(slabs.read(addresses.get(id)));
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    List<T> entries = new ArrayList<>(records.size());
+    for (byte[] record : records) {
+      entries.add(mapper.fromRecord(ByteBuffer.wrap(record)));
+    }
+    return entries;
+  }
+
+  /**
+   * Decodes one entry at a time, so only the id list is copied on the heap. Entries deleted
+   * before the stream reaches them are skipped.
+   */
+  @Override
+  public Stream<T> streamEntries() {
+    long[] ids;
+    lock.readLock().lock();
+    try {
+      ids = addresses.keys();
+    } finally {
+      lock.readLock().unlock();
+    }
+    Arrays.sort(ids);
+    return LongStream.of(ids)
+        .mapToObj(this::readRecord)
+        .filter(Objects::nonNull)
+        .map(record -> mapper.fromRecord(ByteBuffer.wrap(record)));
+  }
+
+  private byte[] readRecord(long id) {
+    lock.readLock().lock();
+    try {
+      long address = addresses.get(id);
+      return address == LongLongMap.NO_VALUE ? null : slabs.read(address);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public boolean idExist(long id) {
+    lock.readLock().lock();
+    try {
+      return addresses.get(id) != LongLongMap.NO_VALUE;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  long getAllocatedBytes() {
+    lock.readLock().lock();
+    try {
+      return slabs.getAllocatedBytes();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+}
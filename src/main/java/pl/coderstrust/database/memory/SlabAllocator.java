@@ -0,0 +1,123 @@
+package pl.coderstrust.database.memory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stores length-prefixed records in direct ByteBuffer slabs. Blocks are rounded up to a power
+ * of two and freed blocks are chained into a per-size free list kept inside the blocks
+ * themselves, so reused space costs no heap. An address is the slab index in the upper and
+ * the offset in the lower 32 bits.
+ */
+class SlabAllocator {
+
+  static final long NO_ADDRESS = -1;
+  private static final int LENGTH_BYTES = Integer.BYTES;
+  private static final int MIN_BLOCK_SIZE = 64;
+  private static final int SIZE_CLASSES = Integer.SIZE;
+  private static final long OFFSET_MASK = 0xFFFFFFFFL;
+
+  private final int slabSize;
+  private final List<ByteBuffer> slabs = new ArrayList<>();
+  private final long[] freeBlocks = new long[SIZE_CLASSES];
+  private int currentSlab = -1;
+  private long allocatedBytes;
+
+  SlabAllocator(int slabSize) {
+    this.slabSize = slabSize;
+    Arrays.fill(freeBlocks, NO_ADDRESS);
+  }
+
+  long write(byte[] record) {
+    int sizeClass = getSizeClass(record.length);
+    long address = freeBlocks[sizeClass];
+    if (address != NO_ADDRESS) {
+      freeBlocks[sizeClass] = getSlab(address).getLong(getOffset(address));
+    } else {
+      address = allocate(1 << sizeClass);
+    }
+    writeAt(address, record);
+    return address;
+  }
+
+  /**
+   * Writes the record over the one at address if it fits the same block, otherwise moves it.
+   */
+  long rewrite(long address, byte[] record) {
+    if (getSizeClass(getLength(address)) == getSizeClass(record.length)) {
+      writeAt(address, record);
+      return address;
+    }
+    free(address);
+    return write(record);
+  }
+
+  byte[] read(long address) {
+    ByteBuffer slab = getSlab(address).duplicate();
+    int offset = getOffset(address);
+    byte[] record = new byte[slab.getInt(offset)];
+    slab.position(offset + LENGTH_BYTES);
+    slab.get(record);
+    return record;
+  }
+
+  void free(long address) {
+    int sizeClass = getSizeClass(getLength(address));
+    getSlab(address).putLong(getOffset(address), freeBlocks[sizeClass]);
+    freeBlocks[sizeClass] = address;
+  }
+
+  long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  private long allocate(int blockSize) {
+    if (blockSize > slabSize) {
+      return toAddress(addSlab(blockSize), 0);
+    }
+    if (currentSlab < 0 || slabs.get(currentSlab).remaining() < blockSize) {
+      currentSlab = addSlab(slabSize);
+    }
+    ByteBuffer slab = slabs.get(currentSlab);
+    int offset = slab.position();
+    slab.position(offset + blockSize);
+    return toAddress(currentSlab, offset);
+  }
+
+  private int addSlab(int size) {
+    slabs.add(ByteBuffer.allocateDirect(size));
+    allocatedBytes += size;
+    return slabs.size() - 1;
+  }
+
+  private long toAddress(int slab, int offset) {
+    return (long) slab << Integer.SIZE | offset;
+  }
+
+  private void writeAt(long address, byte[] record) {
+    ByteBuffer slab = getSlab(address).duplicate();
+    int offset = getOffset(address);
+    slab.putInt(offset, record.length);
+    slab.position(offset + LENGTH_BYTES);
+    slab.put(record);
+  }
+
+  private int getLength(long address) {
+    return getSlab(address).getInt(getOffset(address));
+  }
+
+  private int getSizeClass(int recordLength) {
+    int blockSize = Math.max(recordLength + LENGTH_BYTES, MIN_BLOCK_SIZE);
+    return SIZE_CLASSES - Integer.numberOfLeadingZeros(blockSize - 1);
+  }
+
+  private ByteBuffer getSlab(long address) {
+    return slabs.get((int) (address >>> Integer.SIZE));
+  }
+
+  private int getOffset(long address) {
+    return (int) (address & OFFSET_MASK);
+  }
+}
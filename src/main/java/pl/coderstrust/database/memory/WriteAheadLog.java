@@ -0,0 +1,274 @@
+package pl.coderstrust.database.memory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.coderstrust.database.DbException;
+import pl.coderstrust.database.ExceptionMsg;
+import pl.coderstrust.database.GroupCommitWriter;
+import pl.coderstrust.database.ObjectMapperHelper;
+import pl.coderstrust.model.WithNameIdIssueDate;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Sequential log of InMemoryDatabase mutations, split into numbered segments, plus a snapshot
+ * naming the first segment to replay on top of it. Replaying a segment is idempotent, so a
+ * snapshot taken while writers keep going is made consistent by the segments written after
+ * the rotation that preceded it.
+ */
+class WriteAheadLog<T extends WithNameIdIssueDate> {
+
+  private static final String TOMBSTONE_FIELD = "deletedId";
+  private static final String TOMBSTONE_PREFIX = "{\"" + TOMBSTONE_FIELD + "\":";
+  private static final String LAST_ID_FIELD = "lastId";
+  private static final String FIRST_SEGMENT_FIELD = "firstLogSegment";
+  private final Logger logger = LoggerFactory.getLogger(WriteAheadLog.class);
+  private Configuration config;
+  private ObjectMapperHelper<T> mapper;
+  private GroupCommitWriter writer;
+  private FileChannel channel;
+  private long segment;
+
+  WriteAheadLog(Class<T> entryClass, Configuration config, GroupCommitWriter writer) {
+    this.config = config;
+    this.mapper = new ObjectMapperHelper<>(entryClass);
+    this.writer = writer;
+  }
+
+  /**
+   * Feeds the snapshot and the log segments written after it to the consumers, then starts a new
+   * segment.
+   *
+   * @return the highest id ever assigned
+   */
+  long load(Consumer<T> putEntry, LongConsumer deleteEntry) {
+    long lastId = 0;
+    long firstSegment = 0;
+    File snapshotFile = new File(config.getSnapshotFilePath());
+    if (snapshotFile.exists()) {
+      try (BufferedReader reader = Files.newBufferedReader(snapshotFile.toPath(),
+          StandardCharsets.UTF_8)) {
+        String header = reader.readLine();
+        lastId = mapper.readId(header, LAST_ID_FIELD);
+        firstSegment = mapper.readId(header, FIRST_SEGMENT_FIELD);
+        String line;
+        while ((line = reader.readLine()) != null) {
+          putEntry.accept(mapper.toObject(line));
+        }
+      } catch (IOException ex) {
+        logger.warn(" from load in WriteAheadLog: "
+            + ExceptionMsg.IO_ERROR_WHILE_READING, ex);
+        throw new DbException(ExceptionMsg.IO_ERROR_WHILE_READING, ex);
+      }
+    }
+    TreeMap<Long, File> segments = getSegments();
+    for (File segmentFile : segments.tailMap(firstSegment).values()) {
+      lastId = Math.max(lastId, replaySegment(segmentFile, putEntry, deleteEntry));
+    }
+    deleteSegmentsBefore(firstSegment);
+    segment = segments.isEmpty() ? firstSegment : Math.max(firstSegment, segments.lastKey() + 1);
+    openSegment();
+    return lastId;
+  }
+
+  private long replaySegment(File segmentFile, Consumer<T> putEntry, LongConsumer deleteEntry) {
+    long lastId = 0;
+    try (BufferedReader reader = Files.newBufferedReader(segmentFile.toPath(),
+        StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith(TOMBSTONE_PREFIX)) {
+          deleteEntry.accept(mapper.readId(line, TOMBSTONE_FIELD));
+        } else {
+          T entry = mapper.toObject(line);
+          lastId = Math.max(lastId, entry.getId());
+          putEntry.accept(entry);
+        }
+      }
+    } catch (IOException ex) {
+      logger.warn(" from replaySegment in WriteAheadLog: "
+          + ExceptionMsg.IO_ERROR_WHILE_READING, ex);
+      throw new DbException(ExceptionMsg.IO_ERROR_WHILE_READING, ex);
+    } catch (DbException ex) {
+      // a record torn by a crash ends the log
+      logger.warn(" from replaySegment in WriteAheadLog: "
+          + ExceptionMsg.CORRUPTED_RECORD, ex);
+    }
+    return lastId;
+  }
+
+  CompletableFuture<Long> logPut(T entry) {
+    return append(mapper.toJson(entry));
+  }
+
+  CompletableFuture<Long> logDelete(long id) {
+    return append(TOMBSTONE_PREFIX + id + "}");
+  }
+
+  /**
+   * Logs the whole batch with a single write.
+   */
+  CompletableFuture<Long> logPuts(Collection<T> entries) {
+    return append(entries.stream().map(mapper::toJson)
+        .collect(Collectors.joining(System.lineSeparator())));
+  }
+
+  CompletableFuture<Long> logDeletes(Collection<Long> ids) {
+    return append(ids.stream().map(id -> TOMBSTONE_PREFIX + id + "}")
+        .collect(Collectors.joining(System.lineSeparator())));
+  }
+
+  private CompletableFuture<Long> append(String line) {
+    byte[] record = (line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+    if (writer != null) {
+      return writer.append(new File(config.getLogFilePath(segment)).toPath(), record);
+    }
+    try {
+      ByteBuffer buffer = ByteBuffer.wrap(record);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      return CompletableFuture.completedFuture((long) record.length);
+    } catch (IOException ex) {
+      logger.warn(" from append in WriteAheadLog: "
+          + ExceptionMsg.IO_ERROR_WHILE_ADDING, ex);
+      throw new DbException(ExceptionMsg.IO_ERROR_WHILE_ADDING, ex);
+    }
+  }
+
+  void awaitWrite(CompletableFuture<Long> write) {
+    try {
+      write.join();
+    } catch (CompletionException ex) {
+      if (ex.getCause() instanceof DbException) {
+        throw (DbException) ex.getCause();
+      }
+      throw new DbException(ExceptionMsg.IO_ERROR_WHILE_ADDING, ex);
+    }
+  }
+
+  /**
+   * Starts a new segment. Callers must keep appends out while it runs.
+   *
+   * @return number of the new segment
+   */
+  long rotate() {
+    closeChannel();
+    segment++;
+    openSegment();
+    return segment;
+  }
+
+  /**
+   * Writes entries as the snapshot to replay segments from firstSegment on, then drops older
+   * segments.
+   */
+  void writeSnapshot(long lastId, long firstSegment, Collection<T> entries) {
+    File tempFile = new File(config.getSnapshotTempFilePath());
+    try (FileChannel snapshotChannel = FileChannel.open(tempFile.toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      Writer output = new BufferedWriter(new OutputStreamWriter(
+          Channels.newOutputStream(snapshotChannel), StandardCharsets.UTF_8));
+      output.write("{\"" + LAST_ID_FIELD + "\":" + lastId + ",\"" + FIRST_SEGMENT_FIELD + "\":"
+          + firstSegment + "}" + System.lineSeparator());
+      for (T entry : entries) {
+        output.write(mapper.toJson(entry));
+        output.write(System.lineSeparator());
+      }
+      output.flush();
+      snapshotChannel.force(true);
+    } catch (IOException ex) {
+      logger.warn(" from writeSnapshot in WriteAheadLog: "
+          + ExceptionMsg.IO_ERROR_WHILE_ADDING, ex);
+      throw new DbException(ExceptionMsg.IO_ERROR_WHILE_ADDING, ex);
+    }
+    try {
+      Files.move(tempFile.toPath(), new File(config.getSnapshotFilePath()).toPath(),
+          StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException ex) {
+      logger.warn(" from writeSnapshot in WriteAheadLog: "
+          + ExceptionMsg.IO_ERROR_WHILE_ADDING, ex);
+      throw new DbException(ExceptionMsg.IO_ERROR_WHILE_ADDING, ex);
+    }
+    deleteSegmentsBefore(firstSegment);
+  }
+
+  private void deleteSegmentsBefore(long firstSegment) {
+    for (File segmentFile : getSegments().headMap(firstSegment).values()) {
+      if (writer != null) {
+        writer.release(segmentFile.toPath());
+      }
+      if (!segmentFile.delete()) {
+        logger.warn(" from deleteSegmentsBefore in WriteAheadLog: "
+            + ExceptionMsg.IO_ERROR_WHILE_DELETING);
+      }
+    }
+  }
+
+  private TreeMap<Long, File> getSegments() {
+    TreeMap<Long, File> segments = new TreeMap<>();
+    File[] files = new File(config.getDbFilePath()).listFiles();
+    if (files == null) {
+      return segments;
+    }
+    String prefix = config.getLogFileNamePrefix();
+    for (File file : files) {
+      if (file.getName().startsWith(prefix)) {
+        try {
+          segments.put(Long.parseLong(file.getName().substring(prefix.length())), file);
+        } catch (NumberFormatException ex) {
+          // not a log segment
+        }
+      }
+    }
+    return segments;
+  }
+
+  private void openSegment() {
+    if (writer != null) {
+      return;
+    }
+    try {
+      File segmentFile = new File(config.getLogFilePath(segment));
+      segmentFile.getParentFile().mkdirs();
+      channel = FileChannel.open(segmentFile.toPath(), StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    } catch (IOException ex) {
+      logger.warn(" from openSegment in WriteAheadLog: "
+          + ExceptionMsg.IO_ERROR_WHILE_INITIALIZING, ex);
+      throw new DbException(ExceptionMsg.IO_ERROR_WHILE_INITIALIZING, ex);
+    }
+  }
+
+  private void closeChannel() {
+    if (channel == null) {
+      return;
+    }
+    try {
+      channel.close();
+    } catch (IOException ex) {
+      logger.warn(" from closeChannel in WriteAheadLog: "
+          + ExceptionMsg.IO_ERROR_WHILE_ADDING, ex);
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package pl.coderstrust.database.mongo;
 
 import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteOperation;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
@@ -16,28 +17,42 @@ import pl.coderstrust.database.Database;
 import pl.coderstrust.database.DbException;
 import pl.coderstrust.database.ExceptionMsg;
 import pl.coderstrust.database.ObjectMapperHelper;
+import pl.coderstrust.database.PageCursor;
 import pl.coderstrust.database.file.InFileDatabase;
 import pl.coderstrust.model.WithNameIdIssueDate;
 
 import java.io.IOException;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class MongoDatabase<T extends WithNameIdIssueDate> implements Database<T> {
 
+  private static final String ISSUE_DATE_FIELD = "issueDate";
+
   private DBCollection collection;
   private ObjectMapperHelper<T> mapperHelper;
   private long index;
   private Class entryClass;
 
   public MongoDatabase(Class<T> entryClass, String keyName, boolean isEmbeded) {
+    this(entryClass, keyName, isEmbeded, entryClass.getSimpleName());
+  }
+
+  public MongoDatabase(Class<T> entryClass, String keyName, boolean isEmbeded,
+      String collectionName) {
     this.entryClass = entryClass;
     mapperHelper = new ObjectMapperHelper(entryClass);
     if (isEmbeded) {
       MongoConfig mongoConfig = new MongoConfig();
       try {
         MongoTemplate mongoTemplate = mongoConfig.mongoTemplate();
-        collection = mongoTemplate.getCollection(entryClass.getSimpleName());
+        collection = mongoTemplate.getCollection(collectionName);
       } catch (IOException ex) {
         Logger logger = LoggerFactory.getLogger(InFileDatabase.class);
         logger.warn(" From MongoDatabase constructor " + ex);
@@ -46,15 +61,30 @@ public class MongoDatabase<T extends WithNameIdIssueDate> implements Database<T>
     } else {
       MongoClient mongoClient = new MongoClient(new MongoClientURI("mongodb://localhost:27017"));
       DB database = mongoClient.getDB("AccountantApp");
-      collection = database.getCollection(entryClass.getSimpleName());
+      collection = database.getCollection(collectionName);
     }
     index = getCurrentMaxIndex();
   }
 
   @Override
   public long addEntry(T entry) {
-    long id = getNextIndex();
-    entry.setId(id);
+    entry.setId(getNextIndex());
+    return saveEntry(entry);
+  }
+
+  @Override
+  public long insertEntry(T entry) {
+    index = Math.max(index, entry.getId());
+    return saveEntry(entry);
+  }
+
+  @Override
+  public long getMaxId() {
+    return index;
+  }
+
+  private long saveEntry(T entry) {
+    long id = entry.getId();
     String json = mapperHelper.toJson(entry);
     DBObject object = (DBObject) JSON.parse(json);
     object.put("_id", id);
@@ -62,6 +92,59 @@ public class MongoDatabase<T extends WithNameIdIssueDate> implements Database<T>
     return id;
   }
 
+  /**
+   * Inserts all documents with a single request.
+   */
+  @Override
+  public List<Long> addEntries(List<T> entries) {
+    List<DBObject> objects = new ArrayList<>(entries.size());
+    List<Long> ids = new ArrayList<>(entries.size());
+    for (T entry : entries) {
+      entry.setId(getNextIndex());
+      objects.add(toDbObject(entry));
+      ids.add(entry.getId());
+    }
+    if (!objects.isEmpty()) {
+      collection.insert(objects);
+    }
+    return ids;
+  }
+
+  @Override
+  public void insertEntries(List<T> entries) {
+    List<DBObject> objects = new ArrayList<>(entries.size());
+    for (T entry : entries) {
+      index = Math.max(index, entry.getId());
+      objects.add(toDbObject(entry));
+    }
+    if (!objects.isEmpty()) {
+      collection.insert(objects);
+    }
+  }
+
+  @Override
+  public void updateEntries(List<T> entries) {
+    if (entries.isEmpty()) {
+      return;
+    }
+    BulkWriteOperation bulk = collection.initializeUnorderedBulkOperation();
+    for (T entry : entries) {
+      bulk.find(new BasicDBObject("_id", entry.getId())).replaceOne(toDbObject(entry));
+    }
+    bulk.execute();
+  }
+
+  @Override
+  public void deleteEntries(List<Long> ids) {
+    collection.remove(new BasicDBObject("_id", new BasicDBObject("$in", ids)));
+  }
+
+  private DBObject toDbObject(T entry) {
+    DBObject object = (DBObject) JSON.parse(mapperHelper.toJson(entry));
+    object.put("_id", entry.getId());
+    return object;
+  }
+
   @Override
   public void deleteEntry(long id) {
     BasicDBObject document = new BasicDBObject();
@@ -95,6 +178,53 @@ public class MongoDatabase<T extends WithNameIdIssueDate> implements Database<T>
     return entriesList;
   }
 
+  /**
+   * Range query on the issue date and id, sorted and limited by the server. Dates are stored as
+   * ISO strings, which sort like the dates.
+   */
+  @Override
+  public List<T> getEntriesPage(LocalDate beginDate, LocalDate endDate, PageCursor after,
+      int pageSize) {
+    PageCursor from = after.clampTo(beginDate);
+    BasicDBObject query = new BasicDBObject(ISSUE_DATE_FIELD,
+        new BasicDBObject("$gte", from.getIssueDate().toString())
+            .append("$lte", endDate.toString()))
+        .append("$or", Arrays.asList(
+            new BasicDBObject(ISSUE_DATE_FIELD,
+                new BasicDBObject("$gt", from.getIssueDate().toString())),
+            new BasicDBObject("_id", new BasicDBObject("$gt", from.getId()))));
+    List<T> page = new ArrayList<>();
+    try (DBCursor cursor = collection.find(query)
+        .sort(new BasicDBObject(ISSUE_DATE_FIELD, 1).append("_id", 1))
+        .limit(pageSize)) {
+      while (cursor.hasNext()) {
+        page.add(mapperHelper.toObject(cursor.next()));
+      }
+    }
+    return page;
+  }
+
+  /**
+   * Converts documents as the stream pulls them from the cursor, which fetches them in batches.
+   */
+  @Override
+  public Stream<T> streamEntries() {
+    return stream(collection.find());
+  }
+
+  @Override
+  public Stream<T> streamEntriesByDate(LocalDate beginDate, LocalDate endDate) {
+    return stream(collection.find(new BasicDBObject(ISSUE_DATE_FIELD,
+        new BasicDBObject("$gte", beginDate.toString()).append("$lte", endDate.toString()))));
+  }
+
+  private Stream<T> stream(DBCursor cursor) {
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor,
+        Spliterator.ORDERED | Spliterator.NONNULL), false)
+        .map(mapperHelper::toObject)
+        .onClose(cursor::close);
+  }
+
   @Override
   public boolean idExist(long id) {
     BasicDBObject whereQuery = new BasicDBObject();
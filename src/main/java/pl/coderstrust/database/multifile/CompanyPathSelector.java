@@ -0,0 +1,95 @@
+package pl.coderstrust.database.multifile;
+
+import pl.coderstrust.model.Invoice;
+import pl.coderstrust.model.WithNameIdIssueDate;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps invoices in their seller's directory, one file per issue year, and appends a reference
+ * to the invoice id into the buyer's directory so both companies can be listed from their own
+ * files. Only suitable for invoices.
+ */
+class CompanyPathSelector implements PathSelector {
+
+  private static final String FILE_EXTENSION = ".json";
+  private static final String REFERENCE_FILE_EXTENSION = ".ref";
+  private String jsonFilePath;
+
+  CompanyPathSelector(String jsonFilePath) {
+    this.jsonFilePath = jsonFilePath;
+  }
+
+  @Override
+  public String getFilePath(WithNameIdIssueDate entry) {
+    return getPath(((Invoice) entry).getSeller().getId(), entry.getIssueDate().getYear(),
+        FILE_EXTENSION);
+  }
+
+  @Override
+  public String getReferencePath(WithNameIdIssueDate entry) {
+    Invoice invoice = (Invoice) entry;
+    if (invoice.getBuyer().getId() == invoice.getSeller().getId()) {
+      return null;
+    }
+    return getPath(invoice.getBuyer().getId(), entry.getIssueDate().getYear(),
+        REFERENCE_FILE_EXTENSION);
+  }
+
+  private String getPath(long companyId, int year, String extension) {
+    return jsonFilePath + File.separator + companyId + File.separator + year + extension;
+  }
+
+  @Override
+  public List<String> getFilePaths(LocalDate beginDate, LocalDate endDate) {
+    List<String> paths = new ArrayList<>();
+    for (File companyDirectory : listFiles(new File(jsonFilePath))) {
+      paths.addAll(getYearFiles(companyDirectory, beginDate, endDate, FILE_EXTENSION));
+    }
+    Collections.sort(paths);
+    return paths;
+  }
+
+  @Override
+  public List<String> getFilePaths(long companyId, LocalDate beginDate, LocalDate endDate) {
+    return getYearFiles(new File(jsonFilePath, String.valueOf(companyId)), beginDate, endDate,
+        FILE_EXTENSION);
+  }
+
+  @Override
+  public List<String> getReferencePaths(long companyId, LocalDate beginDate,
+      LocalDate endDate) {
+    return getYearFiles(new File(jsonFilePath, String.valueOf(companyId)), beginDate, endDate,
+        REFERENCE_FILE_EXTENSION);
+  }
+
+  private List<String> getYearFiles(File companyDirectory, LocalDate beginDate,
+      LocalDate endDate, String extension) {
+    List<String> paths = new ArrayList<>();
+    for (File yearFile : listFiles(companyDirectory)) {
+      String name = yearFile.getName();
+      if (!name.endsWith(extension)) {
+        continue;
+      }
+      try {
+        int year = Integer.parseInt(name.substring(0, name.length() - extension.length()));
+        if (year >= beginDate.getYear() && year <= endDate.getYear()) {
+          paths.add(yearFile.toString());
+        }
+      } catch (NumberFormatException ex) {
+        // not a partition file
+      }
+    }
+    Collections.sort(paths);
+    return paths;
+  }
+
+  private File[] listFiles(File directory) {
+    File[] files = directory.listFiles();
+    return files == null ? new File[0] : files;
+  }
+}
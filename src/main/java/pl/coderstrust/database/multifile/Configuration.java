@@ -7,19 +7,48 @@ public class Configuration {
   private static final String jsonFilePath =
       "src" + File.separator + "main" + File.separator + "resources" + File.separator
           + "multiFileDB";
-  private static final String jsonTempFileName = "temporary.json";
-  private String dbEntryClassName;
 
+  static final int DEFAULT_COMPACTION_THRESHOLD = 100;
+  static final long DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+  private String dbEntryClassName;
+  private int compactionThreshold;
+  private PartitionLayout layout;
+  private long segmentSize;
 
   public Configuration(String dbEntryClassName) {
+    this(dbEntryClassName, DEFAULT_COMPACTION_THRESHOLD);
+  }
+
+  public Configuration(String dbEntryClassName, int compactionThreshold) {
+    this(dbEntryClassName, compactionThreshold, PartitionLayout.DAY, DEFAULT_SEGMENT_SIZE);
+  }
+
+  public Configuration(String dbEntryClassName, PartitionLayout layout, long segmentSize) {
+    this(dbEntryClassName, DEFAULT_COMPACTION_THRESHOLD, layout, segmentSize);
+  }
+
+  public Configuration(String dbEntryClassName, int compactionThreshold, PartitionLayout layout,
+      long segmentSize) {
     this.dbEntryClassName = dbEntryClassName;
+    this.compactionThreshold = compactionThreshold;
+    this.layout = layout;
+    this.segmentSize = segmentSize;
   }
 
   public String getJsonFilePath() {
     return (jsonFilePath + dbEntryClassName);
   }
 
-  String getJsonTempFilePath() {
-    return (jsonFilePath + dbEntryClassName + File.separator + jsonTempFileName);
+  int getCompactionThreshold() {
+    return compactionThreshold;
+  }
+
+  PartitionLayout getLayout() {
+    return layout;
+  }
+
+  long getSegmentSize() {
+    return segmentSize;
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,35 @@
+package pl.coderstrust.database.multifile;
+
+import java.time.LocalDate;
+
+class DateRange {
+
+  private final LocalDate min;
+  private final LocalDate max;
+
+  DateRange(LocalDate min, LocalDate max) {
+    this.min = min;
+    this.max = max;
+  }
+
+  static DateRange of(LocalDate date) {
+    return new DateRange(date, date);
+  }
+
+  DateRange extend(DateRange other) {
+    return new DateRange(min.isAfter(other.min) ? other.min : min,
+        max.isBefore(other.max) ? other.max : max);
+  }
+
+  boolean overlaps(LocalDate beginDate, LocalDate endDate) {
+    return !min.isAfter(endDate) && !max.isBefore(beginDate);
+  }
+
+  LocalDate getMin() {
+    return min;
+  }
+
+  LocalDate getMax() {
+    return max;
+  }
+}
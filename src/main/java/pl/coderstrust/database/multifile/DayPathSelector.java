@@ -0,0 +1,97 @@
+package pl.coderstrust.database.multifile;
+
+import pl.coderstrust.model.WithNameIdIssueDate;
+
+import java.io.File;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+class DayPathSelector implements PathSelector {
+
+  private static final String FILE_EXTENSION = ".json";
+  private String jsonFilePath;
+
+  DayPathSelector(String jsonFilePath) {
+    this.jsonFilePath = jsonFilePath;
+  }
+
+  @Override
+  public String getFilePath(WithNameIdIssueDate entry) {
+    StringBuilder stringBuilder = new StringBuilder();
+    String invoiceDateYear = String.valueOf(entry.getIssueDate().getYear());
+    String invoiceDateMonth = String.valueOf(entry.getIssueDate().getMonth());
+    String invoiceDateDay = String.valueOf(entry.getIssueDate().getDayOfMonth());
+    stringBuilder.append(jsonFilePath);
+    stringBuilder.append(File.separator);
+    stringBuilder.append(invoiceDateYear);
+    stringBuilder.append(File.separator);
+    stringBuilder.append(invoiceDateMonth);
+    stringBuilder.append(File.separator);
+    stringBuilder.append(invoiceDateDay);
+    stringBuilder.append(FILE_EXTENSION);
+    return stringBuilder.toString();
+  }
+
+  @Override
+  public List<String> getFilePaths(LocalDate beginDate, LocalDate endDate) {
+    TreeMap<LocalDate, String> paths = new TreeMap<>();
+    for (File yearDirectory : listFiles(new File(jsonFilePath))) {
+      Integer year = parseNumber(yearDirectory.getName());
+      if (year == null || year < beginDate.getYear() || year > endDate.getYear()) {
+        continue;
+      }
+      for (File monthDirectory : listFiles(yearDirectory)) {
+        LocalDate monthStart = parseMonthStart(year, monthDirectory.getName());
+        if (monthStart == null || monthStart.isAfter(endDate)
+            || monthStart.with(TemporalAdjusters.lastDayOfMonth()).isBefore(beginDate)) {
+          continue;
+        }
+        for (File dayFile : listFiles(monthDirectory)) {
+          LocalDate date = parseDate(monthStart, dayFile.getName());
+          if (date != null && !date.isBefore(beginDate) && !date.isAfter(endDate)) {
+            paths.put(date, dayFile.toString());
+          }
+        }
+      }
+    }
+    return new ArrayList<>(paths.values());
+  }
+
+  private File[] listFiles(File directory) {
+    File[] files = directory.listFiles();
+    return files == null ? new File[0] : files;
+  }
+
+  private Integer parseNumber(String name) {
+    try {
+      return Integer.valueOf(name);
+    } catch (NumberFormatException ex) {
+      return null;
+    }
+  }
+
+  private LocalDate parseMonthStart(int year, String name) {
+    try {
+      return LocalDate.of(year, Month.valueOf(name), 1);
+    } catch (IllegalArgumentException | DateTimeException ex) {
+      return null;
+    }
+  }
+
+  private LocalDate parseDate(LocalDate monthStart, String name) {
+    if (!name.endsWith(FILE_EXTENSION)) {
+      return null;
+    }
+    Integer day = parseNumber(name.substring(0, name.length() - FILE_EXTENSION.length()));
+    try {
+      return day == null ? null : monthStart.withDayOfMonth(day);
+    } catch (DateTimeException ex) {
+      return null;
+    }
+  }
+}
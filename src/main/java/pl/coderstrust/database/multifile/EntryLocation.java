@@ -0,0 +1,26 @@
+package pl.coderstrust.database.multifile;
+
+class EntryLocation {
+
+  private final String path;
+  private final long offset;
+  private final int length;
+
+  EntryLocation(String path, long offset, int length) {
+    this.path = path;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  String getPath() {
+    return path;
+  }
+
+  long getOffset() {
+    return offset;
+  }
+
+  int getLength() {
+    return length;
+  }
+}
@@ -8,55 +8,185 @@ import pl.coderstrust.database.ExceptionMsg;
 import pl.coderstrust.database.ObjectMapperHelper;
 import pl.coderstrust.model.WithNameIdIssueDate;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 public class FileCache<T extends WithNameIdIssueDate> {
 
+  static final String TOMBSTONE_FIELD = "deletedId";
+  static final String TOMBSTONE_PREFIX = "{\"" + TOMBSTONE_FIELD + "\":";
+  static final String REFERENCE_FIELD = "referenceId";
+  private static final String ISSUE_DATE_FIELD = "issueDate";
+  private static final int LINE_FEED = '\n';
+  private static final int CARRIAGE_RETURN = '\r';
   private final Logger logger = LoggerFactory.getLogger(FileCache.class);
   private ObjectMapperHelper objectMapper;
-  private HashMap<Long, String> cache;
   private String jsonFilePath;
+  private String idFieldName;
+  private ConcurrentHashMap<Long, EntryLocation> cache;
+  // ids of the live entries of each file, so a file is compacted without scanning the cache
+  private ConcurrentHashMap<String, Set<Long>> liveIds = new ConcurrentHashMap<>();
+  private ConcurrentHashMap<String, Integer> deadRecords = new ConcurrentHashMap<>();
+  private ConcurrentHashMap<String, DateRange> issueDates = new ConcurrentHashMap<>();
+  private PartitionManifest manifest;
 
-  public FileCache(ObjectMapperHelper objectMapper, String jsonFilePath) {
+  public FileCache(ObjectMapperHelper objectMapper, String jsonFilePath, String dbKey) {
     this.objectMapper = objectMapper;
     this.jsonFilePath = jsonFilePath;
+    this.idFieldName = dbKey.replace("\"", "");
+    manifest = new PartitionManifest(jsonFilePath);
     cache = getActualFileCache();
   }
 
-  private HashMap getActualFileCache() {
-    ArrayList<String> allFiles = getAllFilesEntries();
-    HashMap<Long, String> tempCache = new HashMap<>();
-    for (String json : allFiles) {
-      T entry = jsonToEntry(json);
-      tempCache.put(entry.getId(), new PathSelector(jsonFilePath).getFilePath(entry));
+  private ConcurrentHashMap<Long, EntryLocation> getActualFileCache() {
+    Map<String, PartitionState> knownPartitions = manifest.read();
+    List<PartitionState> partitions = getAllFiles().parallelStream()
+        .map(path -> {
+          PartitionState known = knownPartitions.get(path);
+          return known != null && known.matches(new File(path)) ? known : scanFile(path);
+        })
+        .collect(Collectors.toList());
+    ConcurrentHashMap<Long, EntryLocation> tempCache = new ConcurrentHashMap<>();
+    boolean changed = partitions.size() != knownPartitions.size();
+    for (PartitionState partition : partitions) {
+      tempCache.putAll(partition.getEntries());
+      getLiveIds(partition.getPath()).addAll(partition.getEntries().keySet());
+      deadRecords.put(partition.getPath(), partition.getDeadRecords());
+      if (partition.getIssueDates() != null) {
+        issueDates.put(partition.getPath(), partition.getIssueDates());
+      }
+      changed |= partition != knownPartitions.get(partition.getPath());
+    }
+    if (changed) {
+      manifest.write(partitions);
     }
     return tempCache;
   }
 
-  ArrayList<String> getAllFilesEntries() {
-    ArrayList<String> readFiles = new ArrayList<>();
+  private PartitionState scanFile(String path) {
+    File file = new File(path);
+    long lastModified = file.lastModified();
+    long size = file.length();
+    Map<Long, EntryLocation> fileEntries = new HashMap<>();
+    int[] recordsCount = new int[1];
+    DateRange[] fileIssueDates = new DateRange[1];
+    forEachLine(path, (line, offset, length) -> {
+      recordsCount[0]++;
+      if (line.startsWith(TOMBSTONE_PREFIX)) {
+        fileEntries.remove(objectMapper.readId(line, TOMBSTONE_FIELD));
+      } else {
+        fileEntries.put(objectMapper.readId(line, idFieldName),
+            new EntryLocation(path, offset, length));
+        LocalDate issueDate = objectMapper.readDate(line, ISSUE_DATE_FIELD);
+        if (issueDate != null) {
+          fileIssueDates[0] = fileIssueDates[0] == null ? DateRange.of(issueDate)
+              : fileIssueDates[0].extend(DateRange.of(issueDate));
+        }
+      }
+    });
+    return new PartitionState(path, lastModified, size, recordsCount[0] - fileEntries.size(),
+        fileIssueDates[0], fileEntries);
+  }
+
+  void reloadFile(String path) {
+    Set<Long> ids = liveIds.remove(path);
+    if (ids != null) {
+      ids.forEach(id -> cache.computeIfPresent(id,
+          (key, location) -> location.getPath().equals(path) ? null : location));
+    }
+    if (new File(path).exists()) {
+      PartitionState partition = scanFile(path);
+      partition.getEntries().forEach(this::putLocation);
+      deadRecords.put(path, partition.getDeadRecords());
+      if (partition.getIssueDates() != null) {
+        issueDates.put(path, partition.getIssueDates());
+      }
+    }
+  }
+
+  List<String> getAllFiles() {
     if (!new File(jsonFilePath).exists()) {
-      return readFiles;
+      return new ArrayList<>();
     }
-    listFiles((jsonFilePath)).stream().map(File::toString).forEach(str -> {
-      try (BufferedReader bufferedReader = new BufferedReader(new FileReader(str))) {
-        String line;
-        while ((line = bufferedReader.readLine()) != null) {
-          readFiles.add(line);
+    return listFiles(jsonFilePath).stream()
+        .map(File::toString)
+        .sorted()
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Files whose entries may have been issued between beginDate and endDate (inclusive). Ranges
+   * only grow until a file is rescanned, so files are never wrongly skipped.
+   */
+  List<String> getFiles(LocalDate beginDate, LocalDate endDate) {
+    return issueDates.entrySet().stream()
+        .filter(entry -> entry.getValue().overlaps(beginDate, endDate))
+        .map(Map.Entry::getKey)
+        .sorted()
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Earliest issue date the entries of the file may have, or LocalDate.MIN when it isn't known.
+   */
+  LocalDate getFirstIssueDate(String path) {
+    DateRange range = issueDates.get(path);
+    return range == null ? LocalDate.MIN : range.getMin();
+  }
+
+  void addIssueDate(String path, LocalDate issueDate) {
+    if (issueDate != null) {
+      issueDates.merge(path, DateRange.of(issueDate), DateRange::extend);
+    }
+  }
+
+  void forEachLine(String path, LineConsumer lineConsumer) {
+    try (InputStream input = new BufferedInputStream(Files.newInputStream(new File(path)
+        .toPath()))) {
+      ByteArrayOutputStream line = new ByteArrayOutputStream();
+      long lineOffset = 0;
+      long offset = 0;
+      int readByte;
+      while ((readByte = input.read()) != -1) {
+        offset++;
+        if (readByte == LINE_FEED) {
+          acceptLine(lineConsumer, line, lineOffset);
+          line.reset();
+          lineOffset = offset;
+        } else {
+          line.write(readByte);
         }
-      } catch (IOException ex) {
-        logger.warn(" from getAllFilesEntries in FileCache: "
-            + ExceptionMsg.IO_ERROR_WHILE_READING, ex);
-        throw new DbException(ExceptionMsg.IO_ERROR_WHILE_READING, ex);
       }
-    });
-    return readFiles;
+      acceptLine(lineConsumer, line, lineOffset);
+    } catch (IOException ex) {
+      logger.warn(" from forEachLine in FileCache: "
+          + ExceptionMsg.IO_ERROR_WHILE_READING, ex);
+      throw new DbException(ExceptionMsg.IO_ERROR_WHILE_READING, ex);
+    }
+  }
+
+  private void acceptLine(LineConsumer lineConsumer, ByteArrayOutputStream line, long offset) {
+    byte[] bytes = line.toByteArray();
+    int length = bytes.length;
+    if (length > 0 && bytes[length - 1] == CARRIAGE_RETURN) {
+      length--;
+    }
+    if (length > 0) {
+      lineConsumer.accept(new String(bytes, 0, length, StandardCharsets.UTF_8), offset, length);
+    }
   }
 
   private List<File> listFiles(String directoryName) {
@@ -65,11 +195,53 @@ public class FileCache<T extends WithNameIdIssueDate> {
     return (List<File>) FileUtils.listFiles(dir, extensions, true);
   }
 
-  private T jsonToEntry(String json) {
-    return (T) objectMapper.toObject(json);
+  /**
+   * Points the id to its new location, moving it between the live ids of files if needed.
+   */
+  void putLocation(long id, EntryLocation location) {
+    EntryLocation previous = cache.put(id, location);
+    if (previous != null && !previous.getPath().equals(location.getPath())) {
+      getLiveIds(previous.getPath()).remove(id);
+    }
+    getLiveIds(location.getPath()).add(id);
+  }
+
+  void removeLocation(long id) {
+    EntryLocation previous = cache.remove(id);
+    if (previous != null) {
+      getLiveIds(previous.getPath()).remove(id);
+    }
+  }
+
+  Map<Long, EntryLocation> getLiveEntries(String path) {
+    Map<Long, EntryLocation> entries = new HashMap<>();
+    for (long id : getLiveIds(path)) {
+      EntryLocation location = cache.get(id);
+      if (location != null && location.getPath().equals(path)) {
+        entries.put(id, location);
+      }
+    }
+    return entries;
+  }
+
+  private Set<Long> getLiveIds(String path) {
+    return liveIds.computeIfAbsent(path, key -> ConcurrentHashMap.newKeySet());
+  }
+
+  int addDeadRecords(String path, int count) {
+    return deadRecords.merge(path, count, Integer::sum);
   }
 
-  public HashMap getCache() {
+  void resetDeadRecords(String path) {
+    deadRecords.put(path, 0);
+  }
+
+  public Map<Long, EntryLocation> getCache() {
     return cache;
   }
-}
\ No newline at end of file
+
+  interface LineConsumer {
+
+    void accept(String line, long offset, int length);
+  }
+}
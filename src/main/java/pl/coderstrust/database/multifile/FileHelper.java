@@ -4,96 +4,192 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pl.coderstrust.database.DbException;
 import pl.coderstrust.database.ExceptionMsg;
-import pl.coderstrust.model.WithNameIdIssueDate;
+import pl.coderstrust.database.GroupCommitWriter;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 class FileHelper {
 
+  private static final String TEMP_FILE_EXTENSION = ".tmp";
   private final Logger logger = LoggerFactory.getLogger(FileHelper.class);
-  private FileCache fileCache;
-  private PathSelector pathSelector;
-  private String jsonTempFilePath;
-  private String dbKey;
-
-  FileHelper(FileCache fileCache, PathSelector pathSelector, String jsonTempFilePath,
-      String dbKey) {
-    this.dbKey = dbKey;
-    this.fileCache = fileCache;
-    this.pathSelector = pathSelector;
-    this.jsonTempFilePath = jsonTempFilePath;
+  private GroupCommitWriter writer;
+  private ConcurrentHashMap<String, Long> endOffsets = new ConcurrentHashMap<>();
+  private volatile CompletableFuture<Long> lastWrite = CompletableFuture.completedFuture(0L);
+
+  FileHelper(GroupCommitWriter writer) {
+    this.writer = writer;
+  }
+
+  EntryLocation addLine(String lineContent, String path) {
+    return addLines(Collections.singletonList(lineContent), path).get(0);
   }
 
-  void addLine(String lineContent, WithNameIdIssueDate invoice) {
-    String dataPath = pathSelector.getFilePath(invoice);
-    lineContent += System.lineSeparator();
-    File file = new File(dataPath);
+  /**
+   * Appends the lines to the file with a single write, returning their locations in order.
+   */
+  List<EntryLocation> addLines(List<String> linesContent, String path) {
+    byte[] separator = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    ByteArrayOutputStream batch = new ByteArrayOutputStream();
+    List<Long> relativeOffsets = new ArrayList<>(linesContent.size());
+    List<Integer> lengths = new ArrayList<>(linesContent.size());
+    for (String lineContent : linesContent) {
+      byte[] line = lineContent.getBytes(StandardCharsets.UTF_8);
+      relativeOffsets.add((long) batch.size());
+      lengths.add(line.length);
+      batch.write(line, 0, line.length);
+      batch.write(separator, 0, separator.length);
+    }
+    byte[] records = batch.toByteArray();
+    File file = new File(path);
     file.getParentFile().mkdirs();
-    try (FileWriter fw = new FileWriter(file, true)) {
-      fw.append(lineContent);
+    if (writer != null) {
+      long offset = endOffsets.computeIfAbsent(path, key -> file.length());
+      endOffsets.put(path, offset + records.length);
+      lastWrite = writer.append(file.toPath(), records);
+      return getLocations(path, offset, relativeOffsets, lengths);
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(records);
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+      long offset = channel.size();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      return getLocations(path, offset, relativeOffsets, lengths);
     } catch (IOException ex) {
-      logger.warn(" from addLine in FileHelper (MultiFile): "
+      logger.warn(" from addLines in FileHelper (MultiFile): "
           + ExceptionMsg.IO_ERROR_WHILE_ADDING, ex);
       throw new DbException(ExceptionMsg.IO_ERROR_WHILE_ADDING, ex);
     }
   }
 
-  String getLine(long id) {
-    String pathFile = fileCache.getCache().get(id).toString();
-    String json;
-    try (Stream<String> stream = Files.lines(new File(pathFile).toPath())) {
-      json = stream.filter(line -> line.contains(idToLineKey(id)))
-          .collect(Collectors.joining());
+  private List<EntryLocation> getLocations(String path, long offset, List<Long> relativeOffsets,
+      List<Integer> lengths) {
+    List<EntryLocation> locations = new ArrayList<>(lengths.size());
+    for (int i = 0; i < lengths.size(); i++) {
+      locations.add(new EntryLocation(path, offset + relativeOffsets.get(i), lengths.get(i)));
+    }
+    return locations;
+  }
+
+  void addTombstone(long id, String path) {
+    addLine(FileCache.TOMBSTONE_PREFIX + id + "}", path);
+  }
+
+  void addReference(long id, String path) {
+    addReferences(Collections.singletonList(id), path);
+  }
+
+  void addReferences(List<Long> ids, String path) {
+    addLines(ids.stream()
+        .map(id -> "{\"" + FileCache.REFERENCE_FIELD + "\":" + id + "}")
+        .collect(Collectors.toList()), path);
+  }
+
+  CompletableFuture<Long> getLastWrite() {
+    return lastWrite;
+  }
+
+  void awaitWrite(CompletableFuture<Long> write) {
+    try {
+      write.join();
+    } catch (CompletionException ex) {
+      if (ex.getCause() instanceof DbException) {
+        throw (DbException) ex.getCause();
+      }
+      throw new DbException(ExceptionMsg.IO_ERROR_WHILE_ADDING, ex);
+    }
+  }
+
+  void awaitPendingWrites() {
+    try {
+      lastWrite.join();
+    } catch (CompletionException ex) {
+      // failure is reported to the caller who queued the line
+    }
+  }
+
+  void resetEndOffset(String path) {
+    awaitPendingWrites();
+    endOffsets.remove(path);
+  }
+
+  String getLine(EntryLocation location) {
+    awaitPendingWrites();
+    try (FileChannel channel = FileChannel.open(new File(location.getPath()).toPath(),
+        StandardOpenOption.READ)) {
+      return new String(readBytes(channel, location), StandardCharsets.UTF_8);
     } catch (IOException ex) {
       logger.warn(" from getLine in FileHelper (MultiFile): "
           + ExceptionMsg.IO_ERROR_WHILE_READING, ex);
       throw new DbException(ExceptionMsg.IO_ERROR_WHILE_READING, ex);
     }
-    return json;
   }
 
-  private String idToLineKey(long systemId) {
-    return dbKey + ":" + String.valueOf(systemId);
+  private byte[] readBytes(FileChannel channel, EntryLocation location) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(location.getLength());
+    int readBytes = 0;
+    while (buffer.hasRemaining() && readBytes >= 0) {
+      readBytes = channel.read(buffer, location.getOffset() + buffer.position());
+    }
+    return Arrays.copyOf(buffer.array(), buffer.position());
   }
 
-  void deleteLine(long id) {
-    File inputFile = new File(fileCache.getCache().get(id).toString());
-    File tempFile = new File(jsonTempFilePath);
-    try (BufferedReader reader = new BufferedReader(new FileReader(inputFile));
-        BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile))) {
-      String lineToRemove = idToLineKey(id);
-      String currentLine;
-      while ((currentLine = reader.readLine()) != null) {
-        String trimmedLine = currentLine.trim();
-        if (trimmedLine.contains(lineToRemove)) {
-          continue;
-        }
-        writer.write(currentLine += System.lineSeparator());
+  Map<Long, EntryLocation> compactFile(String path, Map<Long, EntryLocation> liveEntries) {
+    List<Map.Entry<Long, EntryLocation>> entries = new ArrayList<>(liveEntries.entrySet());
+    entries.sort(Comparator.comparingLong(entry -> entry.getValue().getOffset()));
+    byte[] separator = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    File file = new File(path);
+    File tempFile = new File(path + TEMP_FILE_EXTENSION);
+    if (writer != null) {
+      writer.release(file.toPath());
+    }
+    Map<Long, EntryLocation> compactedEntries = new HashMap<>();
+    long offset = 0;
+    try (FileChannel input = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        OutputStream output = new BufferedOutputStream(Files.newOutputStream(tempFile.toPath()))) {
+      for (Map.Entry<Long, EntryLocation> entry : entries) {
+        byte[] line = readBytes(input, entry.getValue());
+        output.write(line);
+        output.write(separator);
+        compactedEntries.put(entry.getKey(), new EntryLocation(path, offset, line.length));
+        offset += line.length + separator.length;
       }
-      writer.close();
-      reader.close();
-
-      RandomAccessFile rafInput = new RandomAccessFile(inputFile, "rw");
-      rafInput.close();
-      inputFile.delete();
-
-      RandomAccessFile rafTemp = new RandomAccessFile(tempFile, "rw");
-      rafTemp.close();
-      tempFile.renameTo(inputFile);
-      tempFile.delete();
     } catch (IOException ex) {
-      logger.warn(" from deleteLine in FileHelper (MultiFile): "
-          + ExceptionMsg.IO_ERROR_WHILE_DELETING, ex);
-      throw new DbException(ExceptionMsg.IO_ERROR_WHILE_DELETING, ex);
+      logger.warn(" from compactFile in FileHelper (MultiFile): "
+          + ExceptionMsg.IO_ERROR_WHILE_COMPACTING, ex);
+      throw new DbException(ExceptionMsg.IO_ERROR_WHILE_COMPACTING, ex);
+    }
+    try {
+      Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException ex) {
+      logger.warn(" from compactFile in FileHelper (MultiFile): "
+          + ExceptionMsg.IO_ERROR_WHILE_COMPACTING, ex);
+      throw new DbException(ExceptionMsg.IO_ERROR_WHILE_COMPACTING, ex);
     }
+    endOffsets.remove(path);
+    return compactedEntries;
   }
-}
\ No newline at end of file
+}
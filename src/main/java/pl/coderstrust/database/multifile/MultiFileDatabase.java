@@ -5,12 +5,28 @@ import org.slf4j.LoggerFactory;
 import pl.coderstrust.database.Database;
 import pl.coderstrust.database.DbException;
 import pl.coderstrust.database.ExceptionMsg;
+import pl.coderstrust.database.GroupCommitWriter;
 import pl.coderstrust.database.ObjectMapperHelper;
+import pl.coderstrust.database.PageCursor;
 import pl.coderstrust.model.WithNameIdIssueDate;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class MultiFileDatabase<T extends WithNameIdIssueDate> implements Database<T> {
 
@@ -22,75 +38,469 @@ public class MultiFileDatabase<T extends WithNameIdIssueDate> implements Databas
   private FileHelper fileHelper;
   private FileCache<T> fileCache;
   private PathSelector pathSelector;
+  private PartitionLocks partitionLocks = new PartitionLocks();
+  private AtomicLong nextId;
+  private String idFieldName;
+  private int compactionThreshold;
+  private Set<String> compactionsScheduled = ConcurrentHashMap.newKeySet();
+  private ExecutorService compactor;
 
   public MultiFileDatabase(Class<T> entryClass, String dbKey) {
-    Configuration config = new Configuration(entryClass.getSimpleName());
+    this(entryClass, dbKey, null);
+  }
+
+  public MultiFileDatabase(Class<T> entryClass, String dbKey, GroupCommitWriter writer) {
+    this(entryClass, dbKey, Configuration.DEFAULT_COMPACTION_THRESHOLD, writer);
+  }
+
+  public MultiFileDatabase(Class<T> entryClass, String dbKey, int compactionThreshold,
+      GroupCommitWriter writer) {
+    this(entryClass, dbKey, new Configuration(entryClass.getSimpleName(), compactionThreshold),
+        writer);
+  }
+
+  public MultiFileDatabase(Class<T> entryClass, String dbKey, Configuration config,
+      GroupCommitWriter writer) {
+    this.idFieldName = dbKey.replace("\"", "");
+    this.compactionThreshold = config.getCompactionThreshold();
     objectMapper = new ObjectMapperHelper(entryClass);
-    fileCache = new FileCache(objectMapper, config.getJsonFilePath());
-    pathSelector = new PathSelector(config.getJsonFilePath());
-    fileHelper = new FileHelper(fileCache, pathSelector, config.getJsonTempFilePath(), dbKey);
+    fileCache = new FileCache(objectMapper, config.getJsonFilePath(), dbKey);
+    pathSelector = PathSelector.forConfiguration(config, fileCache);
+    fileHelper = new FileHelper(writer);
+    nextId = new AtomicLong(getFirstFreeId());
+  }
+
+  private long getFirstFreeId() {
+    return fileCache.getCache().isEmpty() ? FIRST_ID :
+        Collections.max(fileCache.getCache().keySet()) + INCREMENT_ID;
   }
 
   @Override
-  public synchronized long addEntry(T entry) {
-    entry.setId(getNextId());
-    fileHelper.addLine(objectMapper.toJson(entry), entry);
-    fileCache.getCache().put(entry.getId(), pathSelector.getFilePath(entry));
+  public long addEntry(T entry) {
+    entry.setId(nextId.getAndIncrement());
+    return writeNewEntry(entry);
+  }
+
+  @Override
+  public long insertEntry(T entry) {
+    nextId.accumulateAndGet(entry.getId() + INCREMENT_ID, Math::max);
+    return writeNewEntry(entry);
+  }
+
+  @Override
+  public long getMaxId() {
+    return nextId.get() - INCREMENT_ID;
+  }
+
+  private long writeNewEntry(T entry) {
+    String path = pathSelector.getFilePath(entry);
+    String referencePath = pathSelector.getReferencePath(entry);
+    CompletableFuture<Long> written;
+    partitionLocks.lock(path, referencePath);
+    try {
+      fileCache.addIssueDate(path, entry.getIssueDate());
+      fileCache.putLocation(entry.getId(), fileHelper.addLine(objectMapper.toJson(entry), path));
+      if (referencePath != null) {
+        fileHelper.addReference(entry.getId(), referencePath);
+      }
+      written = fileHelper.getLastWrite();
+    } finally {
+      partitionLocks.unlock(path, referencePath);
+    }
+    awaitWrite(written, path, path, referencePath);
     return entry.getId();
   }
 
-  private long getNextId() {
-    return fileCache.getCache().isEmpty() ? FIRST_ID :
-        (long) Collections.max(fileCache.getCache().keySet()) + INCREMENT_ID;
+  /**
+   * Appends the entries of each partition file, and their references, with a single write per
+   * file.
+   */
+  @Override
+  public List<Long> addEntries(List<T> entries) {
+    for (T entry : entries) {
+      entry.setId(nextId.getAndIncrement());
+    }
+    writeNewEntries(entries);
+    return entries.stream().map(WithNameIdIssueDate::getId).collect(Collectors.toList());
   }
 
   @Override
-  public synchronized void deleteEntry(long id) {
-    if (!idExist(id)) {
-      logger.warn(" from deleteEntry (MultiFileDatabase): "
+  public void insertEntries(List<T> entries) {
+    for (T entry : entries) {
+      nextId.accumulateAndGet(entry.getId() + INCREMENT_ID, Math::max);
+    }
+    writeNewEntries(entries);
+  }
+
+  private void writeNewEntries(List<T> entries) {
+    Map<String, List<T>> entriesByPath = new LinkedHashMap<>();
+    Map<String, List<Long>> referencesByPath = new LinkedHashMap<>();
+    for (T entry : entries) {
+      entriesByPath.computeIfAbsent(pathSelector.getFilePath(entry), path -> new ArrayList<>())
+          .add(entry);
+      String referencePath = pathSelector.getReferencePath(entry);
+      if (referencePath != null) {
+        referencesByPath.computeIfAbsent(referencePath, path -> new ArrayList<>())
+            .add(entry.getId());
+      }
+    }
+    String[] paths = Stream.concat(entriesByPath.keySet().stream(),
+        referencesByPath.keySet().stream()).toArray(String[]::new);
+    CompletableFuture<Long> written;
+    partitionLocks.lock(paths);
+    try {
+      for (Map.Entry<String, List<T>> partition : entriesByPath.entrySet()) {
+        String path = partition.getKey();
+        List<EntryLocation> locations = fileHelper.addLines(partition.getValue().stream()
+            .map(objectMapper::toJson)
+            .collect(Collectors.toList()), path);
+        for (int i = 0; i < locations.size(); i++) {
+          T entry = partition.getValue().get(i);
+          fileCache.addIssueDate(path, entry.getIssueDate());
+          fileCache.putLocation(entry.getId(), locations.get(i));
+        }
+      }
+      referencesByPath.forEach((path, ids) -> fileHelper.addReferences(ids, path));
+      written = fileHelper.getLastWrite();
+    } finally {
+      partitionLocks.unlock(paths);
+    }
+    try {
+      fileHelper.awaitWrite(written);
+    } catch (DbException ex) {
+      partitionLocks.lock(paths);
+      try {
+        for (String path : paths) {
+          fileHelper.resetEndOffset(path);
+          if (entriesByPath.containsKey(path)) {
+            fileCache.reloadFile(path);
+          }
+        }
+      } finally {
+        partitionLocks.unlock(paths);
+      }
+      throw ex;
+    }
+  }
+
+  private void awaitWrite(CompletableFuture<Long> written, String path, String otherPath,
+      String referencePath) {
+    try {
+      fileHelper.awaitWrite(written);
+    } catch (DbException ex) {
+      partitionLocks.lock(path, otherPath, referencePath);
+      try {
+        fileHelper.resetEndOffset(path);
+        fileCache.reloadFile(path);
+        if (!path.equals(otherPath)) {
+          fileHelper.resetEndOffset(otherPath);
+          fileCache.reloadFile(otherPath);
+        }
+        if (referencePath != null) {
+          fileHelper.resetEndOffset(referencePath);
+        }
+      } finally {
+        partitionLocks.unlock(path, otherPath, referencePath);
+      }
+      throw ex;
+    }
+  }
+
+  @Override
+  public void deleteEntry(long id) {
+    CompletableFuture<Long> written;
+    String path;
+    while (true) {
+      EntryLocation location = getLocation(id);
+      path = location.getPath();
+      partitionLocks.lock(path);
+      try {
+        if (fileCache.getCache().get(id) == location) {
+          fileHelper.addTombstone(id, path);
+          written = fileHelper.getLastWrite();
+          fileCache.removeLocation(id);
+          scheduleCompactionIfNeeded(path, fileCache.addDeadRecords(path, 2));
+          break;
+        }
+      } finally {
+        partitionLocks.unlock(path);
+      }
+    }
+    awaitWrite(written, path, path, null);
+  }
+
+  private EntryLocation getLocation(long id) {
+    EntryLocation location = fileCache.getCache().get(id);
+    if (location == null) {
+      logger.warn(" from getLocation (MultiFileDatabase): "
           + ExceptionMsg.INVOICE_NOT_EXIST);
       throw new DbException(ExceptionMsg.INVOICE_NOT_EXIST);
-    } else {
-      fileHelper.deleteLine(id);
-      fileCache.getCache().remove(id);
     }
+    return location;
   }
 
   @Override
   public T getEntryById(long id) {
-    T invoice;
-    if (fileCache.getCache().containsKey(id)) {
-      invoice = (T) objectMapper.toObject(fileHelper.getLine(id));
-    } else {
-      logger.warn(" from entryById (MultiFileDatabase): "
+    T entry = readEntry(id);
+    if (entry == null) {
+      logger.warn(" from getEntryById (MultiFileDatabase): "
           + ExceptionMsg.INVOICE_NOT_EXIST);
       throw new DbException(ExceptionMsg.INVOICE_NOT_EXIST);
     }
-    return invoice;
+    return entry;
+  }
+
+  private T readEntry(long id) {
+    while (true) {
+      EntryLocation location = fileCache.getCache().get(id);
+      if (location == null) {
+        return null;
+      }
+      partitionLocks.lock(location.getPath());
+      try {
+        if (fileCache.getCache().get(id) == location) {
+          return (T) objectMapper.toObject(fileHelper.getLine(location));
+        }
+      } finally {
+        partitionLocks.unlock(location.getPath());
+      }
+    }
   }
 
   @Override
-  public synchronized void updateEntry(T entry) {
-    if (fileCache.getCache().containsKey(entry.getId())) {
-      deleteEntry(entry.getId());
-      fileHelper.addLine(objectMapper.toJson(entry), entry);
-      fileCache.getCache().put(entry.getId(), pathSelector.getFilePath(entry));
+  public void updateEntry(T entry) {
+    String newPath = pathSelector.getFilePath(entry);
+    String referencePath = pathSelector.getReferencePath(entry);
+    CompletableFuture<Long> written;
+    String oldPath;
+    while (true) {
+      EntryLocation oldLocation = fileCache.getCache().get(entry.getId());
+      if (oldLocation == null) {
+        return;
+      }
+      oldPath = oldLocation.getPath();
+      partitionLocks.lock(oldPath, newPath, referencePath);
+      try {
+        if (fileCache.getCache().get(entry.getId()) == oldLocation) {
+          fileCache.addIssueDate(newPath, entry.getIssueDate());
+          fileCache.putLocation(entry.getId(),
+              fileHelper.addLine(objectMapper.toJson(entry), newPath));
+          if (oldPath.equals(newPath)) {
+            scheduleCompactionIfNeeded(oldPath, fileCache.addDeadRecords(oldPath, 1));
+          } else {
+            fileHelper.addTombstone(entry.getId(), oldPath);
+            scheduleCompactionIfNeeded(oldPath, fileCache.addDeadRecords(oldPath, 2));
+          }
+          if (referencePath != null) {
+            fileHelper.addReference(entry.getId(), referencePath);
+          }
+          written = fileHelper.getLastWrite();
+          break;
+        }
+      } finally {
+        partitionLocks.unlock(oldPath, newPath, referencePath);
+      }
     }
+    awaitWrite(written, newPath, oldPath, referencePath);
   }
 
   @Override
   public List<T> getEntries() {
+    return getEntries(fileCache.getAllFiles());
+  }
+
+  @Override
+  public List<T> getEntriesByDate(LocalDate beginDate, LocalDate endDate) {
+    return filterByDate(getEntries(pathSelector.getFilePaths(beginDate, endDate)), beginDate,
+        endDate);
+  }
+
+  /**
+   * Reads the files which may hold entries issued from the cursor on in the order of their
+   * earliest issue date, and stops once the page is full and the next file starts after its
+   * last entry.
+   */
+  @Override
+  public List<T> getEntriesPage(LocalDate beginDate, LocalDate endDate, PageCursor after,
+      int pageSize) {
+    PageCursor from = after.clampTo(beginDate);
+    if (from.getIssueDate().isAfter(endDate)) {
+      return new ArrayList<>();
+    }
+    List<String> paths = new ArrayList<>(pathSelector.getFilePaths(from.getIssueDate(), endDate));
+    paths.sort(Comparator.comparing(fileCache::getFirstIssueDate));
+    PriorityQueue<T> page = new PriorityQueue<>(pageSize + 1, PageCursor.ORDER.reversed());
+    for (String path : paths) {
+      if (!page.isEmpty() && page.size() >= pageSize
+          && fileCache.getFirstIssueDate(path).isAfter(page.peek().getIssueDate())) {
+        break;
+      }
+      for (T entry : getEntries(Collections.singletonList(path))) {
+        if (isIssuedBetween(entry, beginDate, endDate) && from.isBefore(entry)) {
+          page.offer(entry);
+          if (page.size() > pageSize) {
+            page.poll();
+          }
+        }
+      }
+    }
+    List<T> sorted = new ArrayList<>(page);
+    sorted.sort(PageCursor.ORDER);
+    return sorted;
+  }
+
+  @Override
+  public List<T> getEntriesByCompany(long companyId, LocalDate beginDate, LocalDate endDate) {
+    List<T> entries = getEntries(pathSelector.getFilePaths(companyId, beginDate, endDate));
+    Set<Long> ids = entries.stream()
+        .map(WithNameIdIssueDate::getId)
+        .collect(Collectors.toSet());
+    getReferences(pathSelector.getReferencePaths(companyId, beginDate, endDate))
+        .forEach((id, referencePath) -> {
+          if (ids.add(id)) {
+            T entry = readReferencedEntry(id, referencePath);
+            if (entry != null) {
+              entries.add(entry);
+            }
+          }
+        });
+    return filterByDate(entries, beginDate, endDate);
+  }
+
+  /**
+   * Reads one file at a time as the stream is consumed, so only a single partition is held in
+   * memory.
+   */
+  @Override
+  public Stream<T> streamEntries() {
+    return streamEntries(fileCache.getAllFiles());
+  }
+
+  @Override
+  public Stream<T> streamEntriesByDate(LocalDate beginDate, LocalDate endDate) {
+    return streamEntries(pathSelector.getFilePaths(beginDate, endDate))
+        .filter(entry -> isIssuedBetween(entry, beginDate, endDate));
+  }
+
+  @Override
+  public Stream<T> streamEntriesByCompany(long companyId, LocalDate beginDate,
+      LocalDate endDate) {
+    Set<Long> ids = ConcurrentHashMap.newKeySet();
+    Stream<T> referencedEntries = Stream.of(
+        pathSelector.getReferencePaths(companyId, beginDate, endDate))
+        .flatMap(paths -> getReferences(paths).entrySet().stream())
+        .filter(reference -> ids.add(reference.getKey()))
+        .map(reference -> readReferencedEntry(reference.getKey(), reference.getValue()))
+        .filter(Objects::nonNull);
+    return Stream.concat(
+        streamEntries(pathSelector.getFilePaths(companyId, beginDate, endDate))
+            .peek(entry -> ids.add(entry.getId())),
+        referencedEntries)
+        .filter(entry -> isIssuedBetween(entry, beginDate, endDate));
+  }
+
+  private Stream<T> streamEntries(List<String> paths) {
+    return paths.stream()
+        .flatMap(path -> getEntries(Collections.singletonList(path)).stream());
+  }
+
+  private List<T> filterByDate(List<T> entries, LocalDate beginDate, LocalDate endDate) {
+    return entries.stream()
+        .filter(entry -> isIssuedBetween(entry, beginDate, endDate))
+        .collect(Collectors.toList());
+  }
+
+  private boolean isIssuedBetween(T entry, LocalDate beginDate, LocalDate endDate) {
+    return !entry.getIssueDate().isBefore(beginDate) && !entry.getIssueDate().isAfter(endDate);
+  }
+
+  /**
+   * Ids referenced from the files, each with the last file referencing it. Reference files are
+   * only appended to, so they may still name entries which were deleted or moved since.
+   */
+  private Map<Long, String> getReferences(List<String> paths) {
+    fileHelper.awaitPendingWrites();
+    Map<Long, String> references = new LinkedHashMap<>();
+    for (String path : paths) {
+      partitionLocks.lock(path);
+      try {
+        fileCache.forEachLine(path, (line, offset, length) ->
+            references.put(objectMapper.readId(line, FileCache.REFERENCE_FIELD), path));
+      } finally {
+        partitionLocks.unlock(path);
+      }
+    }
+    return references;
+  }
+
+  /**
+   * The referenced entry, or null if the reference is stale, because the entry is gone or
+   * would now be referenced from another file.
+   */
+  private T readReferencedEntry(long id, String referencePath) {
+    T entry = readEntry(id);
+    if (entry == null || !referencePath.equals(pathSelector.getReferencePath(entry))) {
+      return null;
+    }
+    return entry;
+  }
+
+  private List<T> getEntries(List<String> paths) {
+    fileHelper.awaitPendingWrites();
     List<T> invoices = new ArrayList<>();
-    ArrayList<String> linesFromAllFiles;
-    linesFromAllFiles = fileCache.getAllFilesEntries();
-    for (String line : linesFromAllFiles) {
-      invoices.add((T) objectMapper.toObject(line));
+    for (String path : paths) {
+      partitionLocks.lock(path);
+      try {
+        fileCache.forEachLine(path, (line, offset, length) -> {
+          if (!line.startsWith(FileCache.TOMBSTONE_PREFIX)) {
+            EntryLocation location = fileCache.getCache()
+                .get(objectMapper.readId(line, idFieldName));
+            if (location != null && location.getPath().equals(path)
+                && location.getOffset() == offset) {
+              invoices.add((T) objectMapper.toObject(line));
+            }
+          }
+        });
+      } finally {
+        partitionLocks.unlock(path);
+      }
     }
     return invoices;
   }
 
   @Override
   public boolean idExist(long id) {
-    return fileCache.getCache().keySet().contains(id);
+    return fileCache.getCache().containsKey(id);
+  }
+
+  private void scheduleCompactionIfNeeded(String path, int deadRecords) {
+    if (deadRecords >= compactionThreshold && compactionsScheduled.add(path)) {
+      getCompactor().submit(() -> compact(path));
+    }
+  }
+
+  private synchronized ExecutorService getCompactor() {
+    if (compactor == null) {
+      compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "MultiFileDatabase-compactor");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return compactor;
+  }
+
+  private void compact(String path) {
+    partitionLocks.lock(path);
+    try {
+      fileHelper.compactFile(path, fileCache.getLiveEntries(path)).forEach(fileCache::putLocation);
+      fileCache.resetDeadRecords(path);
+    } catch (DbException ex) {
+      logger.warn(" from compact (MultiFileDatabase): "
+          + ExceptionMsg.IO_ERROR_WHILE_COMPACTING, ex);
+    } finally {
+      compactionsScheduled.remove(path);
+      partitionLocks.unlock(path);
+    }
   }
-}
\ No newline at end of file
+}
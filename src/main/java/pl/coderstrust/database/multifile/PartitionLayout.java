@@ -0,0 +1,7 @@
+package pl.coderstrust.database.multifile;
+
+public enum PartitionLayout {
+  DAY,
+  SEGMENT,
+  COMPANY
+}
@@ -0,0 +1,51 @@
+package pl.coderstrust.database.multifile;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+
+class PartitionLocks {
+
+  private static final int STRIPES_COUNT = 64;
+  private final ReentrantLock[] stripes = new ReentrantLock[STRIPES_COUNT];
+
+  PartitionLocks() {
+    for (int i = 0; i < STRIPES_COUNT; i++) {
+      stripes[i] = new ReentrantLock();
+    }
+  }
+
+  void lock(String... paths) {
+    for (int stripe : getStripes(paths)) {
+      stripes[stripe].lock();
+    }
+  }
+
+  void unlock(String... paths) {
+    int[] pathStripes = getStripes(paths);
+    for (int i = pathStripes.length - 1; i >= 0; i--) {
+      stripes[pathStripes[i]].unlock();
+    }
+  }
+
+  void lock(String path) {
+    stripes[getStripe(path)].lock();
+  }
+
+  void unlock(String path) {
+    stripes[getStripe(path)].unlock();
+  }
+
+  private int[] getStripes(String[] paths) {
+    return Arrays.stream(paths)
+        .filter(Objects::nonNull)
+        .mapToInt(this::getStripe)
+        .distinct()
+        .sorted()
+        .toArray();
+  }
+
+  private int getStripe(String path) {
+    return Math.floorMod(path.hashCode(), STRIPES_COUNT);
+  }
+}
@@ -0,0 +1,118 @@
+package pl.coderstrust.database.multifile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.coderstrust.database.ExceptionMsg;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+class PartitionManifest {
+
+  private static final String MANIFEST_FILE_NAME = "manifest.idx";
+  private static final String TEMP_FILE_EXTENSION = ".tmp";
+  private static final int FORMAT_VERSION = 2;
+  private final Logger logger = LoggerFactory.getLogger(PartitionManifest.class);
+  private File manifestFile;
+  private File tempFile;
+
+  PartitionManifest(String jsonFilePath) {
+    manifestFile = new File(jsonFilePath, MANIFEST_FILE_NAME);
+    tempFile = new File(jsonFilePath, MANIFEST_FILE_NAME + TEMP_FILE_EXTENSION);
+  }
+
+  Map<String, PartitionState> read() {
+    Map<String, PartitionState> partitions = new HashMap<>();
+    if (!manifestFile.exists()) {
+      return partitions;
+    }
+    try (CheckedInputStream checkedInput = new CheckedInputStream(
+        new BufferedInputStream(Files.newInputStream(manifestFile.toPath())), new CRC32());
+        DataInputStream input = new DataInputStream(checkedInput)) {
+      if (input.readInt() != FORMAT_VERSION) {
+        return new HashMap<>();
+      }
+      int partitionsCount = input.readInt();
+      for (int i = 0; i < partitionsCount; i++) {
+        String path = input.readUTF();
+        long lastModified = input.readLong();
+        long size = input.readLong();
+        int deadRecords = input.readInt();
+        DateRange issueDates = input.readBoolean()
+            ? new DateRange(LocalDate.ofEpochDay(input.readLong()),
+            LocalDate.ofEpochDay(input.readLong())) : null;
+        int entriesCount = input.readInt();
+        Map<Long, EntryLocation> entries = new HashMap<>();
+        for (int j = 0; j < entriesCount; j++) {
+          entries.put(input.readLong(),
+              new EntryLocation(path, input.readLong(), input.readInt()));
+        }
+        partitions.put(path, new PartitionState(path, lastModified, size, deadRecords,
+            issueDates, entries));
+      }
+      long expectedChecksum = checkedInput.getChecksum().getValue();
+      if (input.readLong() != expectedChecksum) {
+        return new HashMap<>();
+      }
+      return partitions;
+    } catch (IOException ex) {
+      logger.warn(" from read in PartitionManifest: "
+          + ExceptionMsg.IO_ERROR_WHILE_READING, ex);
+      return new HashMap<>();
+    }
+  }
+
+  void write(Collection<PartitionState> partitions) {
+    manifestFile.getParentFile().mkdirs();
+    try (CheckedOutputStream checkedOutput = new CheckedOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(tempFile.toPath())), new CRC32());
+        DataOutputStream output = new DataOutputStream(checkedOutput)) {
+      output.writeInt(FORMAT_VERSION);
+      output.writeInt(partitions.size());
+      for (PartitionState partition : partitions) {
+        output.writeUTF(partition.getPath());
+        output.writeLong(partition.getLastModified());
+        output.writeLong(partition.getSize());
+        output.writeInt(partition.getDeadRecords());
+        DateRange issueDates = partition.getIssueDates();
+        output.writeBoolean(issueDates != null);
+        if (issueDates != null) {
+          output.writeLong(issueDates.getMin().toEpochDay());
+          output.writeLong(issueDates.getMax().toEpochDay());
+        }
+        output.writeInt(partition.getEntries().size());
+        for (Map.Entry<Long, EntryLocation> entry : partition.getEntries().entrySet()) {
+          output.writeLong(entry.getKey());
+          output.writeLong(entry.getValue().getOffset());
+          output.writeInt(entry.getValue().getLength());
+        }
+      }
+      output.flush();
+      output.writeLong(checkedOutput.getChecksum().getValue());
+    } catch (IOException ex) {
+      logger.warn(" from write in PartitionManifest: "
+          + ExceptionMsg.IO_ERROR_WHILE_ADDING, ex);
+      return;
+    }
+    try {
+      Files.move(tempFile.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException ex) {
+      logger.warn(" from write in PartitionManifest: "
+          + ExceptionMsg.IO_ERROR_WHILE_ADDING, ex);
+    }
+  }
+}
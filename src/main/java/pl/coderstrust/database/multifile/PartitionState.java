@@ -0,0 +1,52 @@
+package pl.coderstrust.database.multifile;
+
+import java.io.File;
+import java.util.Map;
+
+class PartitionState {
+
+  private final String path;
+  private final long lastModified;
+  private final long size;
+  private final int deadRecords;
+  private final DateRange issueDates;
+  private final Map<Long, EntryLocation> entries;
+
+  PartitionState(String path, long lastModified, long size, int deadRecords,
+      DateRange issueDates, Map<Long, EntryLocation> entries) {
+    this.path = path;
+    this.lastModified = lastModified;
+    this.size = size;
+    this.deadRecords = deadRecords;
+    this.issueDates = issueDates;
+    this.entries = entries;
+  }
+
+  boolean matches(File file) {
+    return file.lastModified() == lastModified && file.length() == size;
+  }
+
+  String getPath() {
+    return path;
+  }
+
+  long getLastModified() {
+    return lastModified;
+  }
+
+  long getSize() {
+    return size;
+  }
+
+  int getDeadRecords() {
+    return deadRecords;
+  }
+
+  DateRange getIssueDates() {
+    return issueDates;
+  }
+
+  Map<Long, EntryLocation> getEntries() {
+    return entries;
+  }
+}
@@ -2,29 +2,47 @@ package pl.coderstrust.database.multifile;
 
 import pl.coderstrust.model.WithNameIdIssueDate;
 
-import java.io.File;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
 
-class PathSelector {
+interface PathSelector {
 
-  private String jsonFilePath;
+  String getFilePath(WithNameIdIssueDate entry);
 
-  PathSelector(String jsonFilePath) {
-    this.jsonFilePath = jsonFilePath;
+  /**
+   * Files which may hold entries issued between beginDate and endDate (inclusive).
+   */
+  List<String> getFilePaths(LocalDate beginDate, LocalDate endDate);
+
+  /**
+   * Files which may hold entries of the given company issued between beginDate and endDate.
+   */
+  default List<String> getFilePaths(long companyId, LocalDate beginDate, LocalDate endDate) {
+    return getFilePaths(beginDate, endDate);
+  }
+
+  /**
+   * File receiving a reference to the entry stored at getFilePath, or null if none is kept.
+   */
+  default String getReferencePath(WithNameIdIssueDate entry) {
+    return null;
+  }
+
+  default List<String> getReferencePaths(long companyId, LocalDate beginDate,
+      LocalDate endDate) {
+    return Collections.emptyList();
   }
 
-  String getFilePath(WithNameIdIssueDate entry) {
-    StringBuilder stringBuilder = new StringBuilder();
-    String invoiceDateYear = String.valueOf(entry.getIssueDate().getYear());
-    String invoiceDateMonth = String.valueOf(entry.getIssueDate().getMonth());
-    String invoiceDateDay = String.valueOf(entry.getIssueDate().getDayOfMonth());
-    stringBuilder.append(jsonFilePath);
-    stringBuilder.append(File.separator);
-    stringBuilder.append(invoiceDateYear);
-    stringBuilder.append(File.separator);
-    stringBuilder.append(invoiceDateMonth);
-    stringBuilder.append(File.separator);
-    stringBuilder.append(invoiceDateDay);
-    stringBuilder.append(".json");
-    return stringBuilder.toString();
+  static PathSelector forConfiguration(Configuration config, FileCache fileCache) {
+    switch (config.getLayout()) {
+      case SEGMENT:
+        return new SegmentPathSelector(config.getJsonFilePath(), config.getSegmentSize(),
+            fileCache);
+      case COMPANY:
+        return new CompanyPathSelector(config.getJsonFilePath());
+      default:
+        return new DayPathSelector(config.getJsonFilePath());
+    }
   }
 }
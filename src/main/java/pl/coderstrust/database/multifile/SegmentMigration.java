@@ -0,0 +1,73 @@
+package pl.coderstrust.database.multifile;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.coderstrust.database.DbException;
+import pl.coderstrust.database.ExceptionMsg;
+import pl.coderstrust.database.ObjectMapperHelper;
+import pl.coderstrust.model.WithNameIdIssueDate;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Rewrites the live entries of a MultiFileDatabase directory into size-rolled segment files,
+ * ordered by issue date so that segments cover narrow date ranges. Ids are kept, deleted and
+ * overwritten entries are dropped. Run it while the application is stopped.
+ */
+public class SegmentMigration<T extends WithNameIdIssueDate> {
+
+  private static final String STAGING_DIRECTORY_SUFFIX = ".segments";
+  private static final String BACKUP_DIRECTORY_SUFFIX = ".backup";
+  private final Logger logger = LoggerFactory.getLogger(SegmentMigration.class);
+  private Class<T> entryClass;
+  private String dbKey;
+
+  public SegmentMigration(Class<T> entryClass, String dbKey) {
+    this.entryClass = entryClass;
+    this.dbKey = dbKey;
+  }
+
+  public int migrate(long segmentSize) {
+    Configuration config = new Configuration(entryClass.getSimpleName());
+    File dbDirectory = new File(config.getJsonFilePath());
+    if (!dbDirectory.exists()) {
+      return 0;
+    }
+    List<T> entries = new MultiFileDatabase<>(entryClass, dbKey, config, null).getEntries();
+    entries.sort(Comparator.comparing(WithNameIdIssueDate::getIssueDate,
+        Comparator.nullsLast(Comparator.<LocalDate>naturalOrder()))
+        .thenComparingLong(WithNameIdIssueDate::getId));
+    File stagingDirectory = new File(config.getJsonFilePath() + STAGING_DIRECTORY_SUFFIX);
+    File backupDirectory = new File(config.getJsonFilePath() + BACKUP_DIRECTORY_SUFFIX);
+    try {
+      FileUtils.deleteDirectory(stagingDirectory);
+      FileUtils.forceMkdir(stagingDirectory);
+      writeSegments(entries, stagingDirectory, segmentSize);
+      FileUtils.deleteDirectory(backupDirectory);
+      Files.move(dbDirectory.toPath(), backupDirectory.toPath());
+      Files.move(stagingDirectory.toPath(), dbDirectory.toPath());
+      FileUtils.deleteDirectory(backupDirectory);
+    } catch (IOException ex) {
+      logger.warn(" from migrate in SegmentMigration: "
+          + ExceptionMsg.IO_ERROR_WHILE_MIGRATING, ex);
+      throw new DbException(ExceptionMsg.IO_ERROR_WHILE_MIGRATING, ex);
+    }
+    return entries.size();
+  }
+
+  private void writeSegments(List<T> entries, File directory, long segmentSize) {
+    ObjectMapperHelper<T> objectMapper = new ObjectMapperHelper<>(entryClass);
+    SegmentPathSelector pathSelector = new SegmentPathSelector(directory.toString(), segmentSize,
+        null);
+    FileHelper fileHelper = new FileHelper(null);
+    for (T entry : entries) {
+      fileHelper.addLine(objectMapper.toJson(entry), pathSelector.getFilePath(entry));
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package pl.coderstrust.database.multifile;
+
+import pl.coderstrust.model.WithNameIdIssueDate;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Appends every entry to the active segment file and rolls to the next one once the active
+ * segment reaches segmentSize bytes. Date range queries are pruned with the issue date range
+ * FileCache keeps for each file.
+ */
+class SegmentPathSelector implements PathSelector {
+
+  static final String SEGMENTS_DIRECTORY = "segments";
+  private static final String FILE_EXTENSION = ".json";
+  private static final String SEGMENT_NAME_FORMAT = "%08d";
+  private File segmentsDirectory;
+  private long segmentSize;
+  private FileCache fileCache;
+  private int activeSegment;
+
+  SegmentPathSelector(String jsonFilePath, long segmentSize, FileCache fileCache) {
+    this.segmentsDirectory = new File(jsonFilePath, SEGMENTS_DIRECTORY);
+    this.segmentSize = segmentSize;
+    this.fileCache = fileCache;
+    activeSegment = getLastSegment();
+  }
+
+  private int getLastSegment() {
+    int lastSegment = 0;
+    File[] files = segmentsDirectory.listFiles();
+    if (files == null) {
+      return lastSegment;
+    }
+    for (File file : files) {
+      String name = file.getName();
+      if (name.endsWith(FILE_EXTENSION)) {
+        try {
+          lastSegment = Math.max(lastSegment,
+              Integer.parseInt(name.substring(0, name.length() - FILE_EXTENSION.length())));
+        } catch (NumberFormatException ex) {
+          // not a segment file
+        }
+      }
+    }
+    return lastSegment;
+  }
+
+  @Override
+  public synchronized String getFilePath(WithNameIdIssueDate entry) {
+    String path = getSegmentPath(activeSegment);
+    if (new File(path).length() >= segmentSize) {
+      activeSegment++;
+      path = getSegmentPath(activeSegment);
+    }
+    return path;
+  }
+
+  private String getSegmentPath(int segment) {
+    return new File(segmentsDirectory, String.format(SEGMENT_NAME_FORMAT, segment) + FILE_EXTENSION)
+        .toString();
+  }
+
+  @Override
+  public List<String> getFilePaths(LocalDate beginDate, LocalDate endDate) {
+    return fileCache.getFiles(beginDate, endDate);
+  }
+}
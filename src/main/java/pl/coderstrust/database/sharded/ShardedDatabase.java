@@ -0,0 +1,256 @@
+package pl.coderstrust.database.sharded;
+
+import pl.coderstrust.database.Database;
+import pl.coderstrust.database.PageCursor;
+import pl.coderstrust.model.WithNameIdIssueDate;
+
+import java.time.LocalDate;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Spreads entries over several databases by id, so writers of different shards don't wait for
+ * each other. Ids are assigned here and the entries stored with {@link Database#insertEntry}.
+ * List queries run on all shards at once and their results are sorted by id. Streams follow the
+ * order the shards stream in, which is not id order for every kind of shard.
+ */
+public class ShardedDatabase<T extends WithNameIdIssueDate> implements Database<T> {
+
+  private static final long FIRST_ID = 0;
+  private static final long INCREMENT_ID = 1;
+
+  private final List<Database<T>> shards;
+  private final AtomicLong nextId;
+  private final ExecutorService queries;
+
+  public ShardedDatabase(List<Database<T>> shards) {
+    if (shards.isEmpty()) {
+      throw new IllegalArgumentException("at least one shard is needed");
+    }
+    this.shards = new ArrayList<>(shards);
+    queries = Executors.newFixedThreadPool(shards.size(), runnable -> {
+      Thread thread = new Thread(runnable, "ShardedDatabase-query");
+      thread.setDaemon(true);
+      return thread;
+    });
+    nextId = new AtomicLong(Math.max(FIRST_ID, shards.stream()
+        .mapToLong(Database::getMaxId)
+        .max()
+        .getAsLong() + INCREMENT_ID));
+  }
+
+  @Override
+  public long addEntry(T entry) {
+    entry.setId(nextId.getAndIncrement());
+    return getShard(entry.getId()).insertEntry(entry);
+  }
+
+  /**
+   * Hands every shard its part of the batch with a single {@link Database#insertEntries} call.
+   */
+  @Override
+  public List<Long> addEntries(List<T> entries) {
+    for (T entry : entries) {
+      entry.setId(nextId.getAndIncrement());
+    }
+    insertEntries(entries);
+    return entries.stream().map(WithNameIdIssueDate::getId).collect(Collectors.toList());
+  }
+
+  @Override
+  public void insertEntries(List<T> entries) {
+    for (T entry : entries) {
+      nextId.accumulateAndGet(entry.getId() + INCREMENT_ID, Math::max);
+    }
+    entries.stream()
+        .collect(Collectors.groupingBy(entry -> getShardIndex(entry.getId()),
+            LinkedHashMap::new, Collectors.toList()))
+        .forEach((shard, shardEntries) -> shards.get(shard).insertEntries(shardEntries));
+  }
+
+  @Override
+  public long insertEntry(T entry) {
+    nextId.accumulateAndGet(entry.getId() + INCREMENT_ID, Math::max);
+    return getShard(entry.getId()).insertEntry(entry);
+  }
+
+  @Override
+  public long getMaxId() {
+    return nextId.get() - INCREMENT_ID;
+  }
+
+  @Override
+  public void deleteEntry(long id) {
+    getShard(id).deleteEntry(id);
+  }
+
+  @Override
+  public T getEntryById(long id) {
+    return getShard(id).getEntryById(id);
+  }
+
+  @Override
+  public void updateEntry(T entry) {
+    getShard(entry.getId()).updateEntry(entry);
+  }
+
+  /**
+   * Hands every shard its part of the batch, in the order of the batch.
+   */
+  @Override
+  public void updateEntries(List<T> entries) {
+    entries.stream()
+        .collect(Collectors.groupingBy(entry -> getShardIndex(entry.getId()),
+            LinkedHashMap::new, Collectors.toList()))
+        .forEach((shard, shardEntries) -> shards.get(shard).updateEntries(shardEntries));
+  }
+
+  @Override
+  public void deleteEntries(List<Long> ids) {
+    ids.stream()
+        .collect(Collectors.groupingBy(this::getShardIndex, LinkedHashMap::new,
+            Collectors.toList()))
+        .forEach((shard, shardIds) -> shards.get(shard).deleteEntries(shardIds));
+  }
+
+  @Override
+  public List<T> getEntries() {
+    return queryAllShards(Database::getEntries);
+  }
+
+  @Override
+  public boolean idExist(long id) {
+    return getShard(id).idExist(id);
+  }
+
+  @Override
+  public List<T> getEntriesByDate(LocalDate beginDate, LocalDate endDate) {
+    return queryAllShards(shard -> shard.getEntriesByDate(beginDate, endDate));
+  }
+
+  @Override
+  public List<T> getEntriesByCompany(long companyId, LocalDate beginDate, LocalDate endDate) {
+    return queryAllShards(shard -> shard.getEntriesByCompany(companyId, beginDate, endDate));
+  }
+
+  @Override
+  public List<T> getEntriesByNip(String nip) {
+    return queryAllShards(shard -> shard.getEntriesByNip(nip));
+  }
+
+  /**
+   * Takes a page from every shard and keeps the first pageSize entries of them.
+   */
+  @Override
+  public List<T> getEntriesPage(LocalDate beginDate, LocalDate endDate, PageCursor after,
+      int pageSize) {
+    return queryAllShards(shard -> shard.getEntriesPage(beginDate, endDate, after, pageSize),
+        PageCursor.ORDER, pageSize);
+  }
+
+  @Override
+  public Stream<T> streamEntries() {
+    return streamAllShards(Database::streamEntries);
+  }
+
+  @Override
+  public Stream<T> streamEntriesByDate(LocalDate beginDate, LocalDate endDate) {
+    return streamAllShards(shard -> shard.streamEntriesByDate(beginDate, endDate));
+  }
+
+  @Override
+  public Stream<T> streamEntriesByCompany(long companyId, LocalDate beginDate,
+      LocalDate endDate) {
+    return streamAllShards(shard -> shard.streamEntriesByCompany(companyId, beginDate, endDate));
+  }
+
+  int getShardIndex(long id) {
+    return (int) Math.floorMod(id, (long) shards.size());
+  }
+
+  private Database<T> getShard(long id) {
+    return shards.get(getShardIndex(id));
+  }
+
+  /**
+   * Interleaves the streams of all shards by the id of their next entries, without reading any
+   * shard ahead. Only shards streaming in id order, like the off heap ones, give id order here.
+   */
+  private Stream<T> streamAllShards(Function<Database<T>, Stream<T>> query) {
+    List<Stream<T>> streams = shards.stream().map(query).collect(Collectors.toList());
+    List<Iterator<T>> iterators = streams.stream()
+        .map(Stream::iterator)
+        .collect(Collectors.toList());
+    return StreamSupport.stream(new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+        Spliterator.ORDERED | Spliterator.NONNULL) {
+
+      // next entry of every shard which has one left, with the rest of its entries
+      private PriorityQueue<Map.Entry<T, Iterator<T>>> heads;
+
+      @Override
+      public boolean tryAdvance(Consumer<? super T> action) {
+        if (heads == null) {
+          heads = new PriorityQueue<>(iterators.size(),
+              Comparator.comparingLong(head -> head.getKey().getId()));
+          iterators.forEach(this::addHead);
+        }
+        Map.Entry<T, Iterator<T>> head = heads.poll();
+        if (head == null) {
+          return false;
+        }
+        action.accept(head.getKey());
+        addHead(head.getValue());
+        return true;
+      }
+
+      private void addHead(Iterator<T> iterator) {
+        if (iterator.hasNext()) {
+          heads.add(new AbstractMap.SimpleImmutableEntry<>(iterator.next(), iterator));
+        }
+      }
+    }, false).onClose(() -> streams.forEach(Stream::close));
+  }
+
+  private List<T> queryAllShards(Function<Database<T>, List<T>> query) {
+    return queryAllShards(query, Comparator.comparingLong(WithNameIdIssueDate::getId),
+        Long.MAX_VALUE);
+  }
+
+  private List<T> queryAllShards(Function<Database<T>, List<T>> query,
+      Comparator<? super T> order, long limit) {
+    List<CompletableFuture<List<T>>> results = shards.stream()
+        .map(shard -> CompletableFuture.supplyAsync(() -> query.apply(shard), queries))
+        .collect(Collectors.toList());
+    try {
+      return results.stream()
+          .map(CompletableFuture::join)
+          .flatMap(List::stream)
+          .sorted(order)
+          .limit(limit)
+          .collect(Collectors.toList());
+    } catch (CompletionException ex) {
+      if (ex.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) ex.getCause();
+      }
+      throw ex;
+    }
+  }
+}
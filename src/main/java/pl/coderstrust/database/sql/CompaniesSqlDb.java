@@ -1,17 +1,30 @@
 package pl.coderstrust.database.sql;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import pl.coderstrust.database.Database;
+import pl.coderstrust.database.DbException;
+import pl.coderstrust.database.ExceptionMsg;
+import pl.coderstrust.database.PageCursor;
+import pl.coderstrust.database.PagedEntries;
 import pl.coderstrust.model.Company;
 import pl.coderstrust.model.Payment;
 
+import java.time.LocalDate;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class CompaniesSqlDb implements Database<Company> {
 
+  private final Logger logger = LoggerFactory.getLogger(CompaniesSqlDb.class);
+
   @Autowired
   private JdbcTemplate jdbcTemplate;
 
@@ -19,14 +32,22 @@ public class CompaniesSqlDb implements Database<Company> {
 
     long id = jdbcTemplate
         .queryForObject(SqlQueries.ADD_COMPANY_SQL, companyObject(entry), Long.class);
-
-    for (int i = 0; i < entry.getPayments().size(); i++) {
-      jdbcTemplate.update(SqlQueries.ADD_COMPANY_PAYMENTS_SQL,
-          companyPaymentObject(entry.getPayments().get(i), id));
-    }
+    addPayments(companyPaymentObjects(entry, id));
     return id;
   }
 
+  @Override
+  public long insertEntry(Company entry) {
+    logger.warn(" from insertEntry (CompaniesSqlDb): "
+        + ExceptionMsg.IDS_ASSIGNED_BY_DATABASE);
+    throw new DbException(ExceptionMsg.IDS_ASSIGNED_BY_DATABASE);
+  }
+
+  @Override
+  public long getMaxId() {
+    return jdbcTemplate.queryForObject(SqlQueries.GET_MAX_COMPANY_ID, Long.class);
+  }
+
   @Override
   public void deleteEntry(long id) {
     jdbcTemplate.update(SqlQueries.DELETE_COMPANY_BY_ID, id);
@@ -34,42 +55,105 @@ public class CompaniesSqlDb implements Database<Company> {
   }
 
   @Override
-  @SuppressWarnings("unchecked")
   public Company getEntryById(long id) {
-    List<Payment> payment = jdbcTemplate
-        .query(SqlQueries.GET_PAYMENTS_BY_COMPANY_ID, new Object[]{id},
-            new CompanyPaymentRowMapper());
-
-    return (Company) jdbcTemplate
-        .queryForObject(SqlQueries.GET_COMPANY_PAYMENTS_BY_COMPANY_ID, new Object[]{id},
-            new CompanyRowMapper(payment));
+    List<Company> companies = jdbcTemplate
+        .query(SqlQueries.GET_COMPANY_BY_ID, new Object[]{id}, new CompanyWithPaymentsExtractor());
+    return companies.isEmpty() ? null : companies.get(0);
   }
 
   @Override
   public void updateEntry(Company entry) {
     long id = entry.getId();
     jdbcTemplate.update(SqlQueries.DELETE_COMPANY_PAYMENTS_BY_COMPANY_ID, id);
+    addPayments(companyPaymentObjects(entry, id));
+    jdbcTemplate.update(SqlQueries.UPDATE_COMPANY, companyUpdateObject(entry));
+  }
 
-    for (int i = 0; i < entry.getPayments().size(); i++) {
-      jdbcTemplate.update(SqlQueries.ADD_COMPANY_PAYMENTS_SQL,
-          companyPaymentObject(entry.getPayments().get(i), id));
+  /**
+   * Takes the ids of all companies from their sequence with one query, so companies and their
+   * payments can then be inserted in two JDBC batches.
+   */
+  @Override
+  public List<Long> addEntries(List<Company> entries) {
+    if (entries.isEmpty()) {
+      return new ArrayList<>();
     }
+    List<Long> ids = jdbcTemplate
+        .queryForList(SqlQueries.GET_NEXT_COMPANY_IDS, Long.class, entries.size());
+    List<Object[]> companies = new ArrayList<>(entries.size());
+    List<Object[]> payments = new ArrayList<>();
+    for (int i = 0; i < entries.size(); i++) {
+      Company entry = entries.get(i);
+      entry.setId(ids.get(i));
+      companies.add(companyUpdateObject(entry));
+      payments.addAll(companyPaymentObjects(entry, entry.getId()));
+    }
+    jdbcTemplate.batchUpdate(SqlQueries.ADD_COMPANY_WITH_ID_SQL, companies);
+    addPayments(payments);
+    return ids;
+  }
 
-    jdbcTemplate.update(SqlQueries.UPDATE_COMPANY + id, companyObject(entry));
+  @Override
+  public void updateEntries(List<Company> entries) {
+    List<Object[]> ids = new ArrayList<>(entries.size());
+    List<Object[]> companies = new ArrayList<>(entries.size());
+    List<Object[]> payments = new ArrayList<>();
+    for (Company entry : entries) {
+      ids.add(new Object[]{entry.getId()});
+      companies.add(companyUpdateObject(entry));
+      payments.addAll(companyPaymentObjects(entry, entry.getId()));
+    }
+    jdbcTemplate.batchUpdate(SqlQueries.DELETE_COMPANY_PAYMENTS_BY_COMPANY_ID, ids);
+    addPayments(payments);
+    jdbcTemplate.batchUpdate(SqlQueries.UPDATE_COMPANY, companies);
+  }
+
+  @Override
+  public void deleteEntries(List<Long> ids) {
+    List<Object[]> batchArgs = ids.stream()
+        .map(id -> new Object[]{id})
+        .collect(Collectors.toList());
+    jdbcTemplate.batchUpdate(SqlQueries.DELETE_COMPANY_BY_ID, batchArgs);
+    jdbcTemplate.batchUpdate(SqlQueries.DELETE_COMPANY_PAYMENTS_BY_COMPANY_ID, batchArgs);
   }
 
   @Override
-  @SuppressWarnings("unchecked")
   public List<Company> getEntries() {
-    //TODO Company returns null for Payments while getting company by date
-    return jdbcTemplate
-        .query(SqlQueries.GET_COMPANIES_IN_SPECIFIC_DATE_RANGE, new CompanyRowMapper());
+    return jdbcTemplate.query(SqlQueries.GET_COMPANIES, new CompanyWithPaymentsExtractor());
+  }
+
+  @Override
+  public Stream<Company> streamEntries() {
+    return PagedEntries.stream((afterId, pageSize) -> jdbcTemplate
+            .query(SqlQueries.GET_COMPANIES_PAGE, new Object[]{afterId, pageSize},
+                new CompanyWithPaymentsExtractor()),
+        PagedEntries.DEFAULT_PAGE_SIZE);
+  }
+
+  @Override
+  public Stream<Company> streamEntriesByDate(LocalDate beginDate, LocalDate endDate) {
+    return PagedEntries.streamByDate(this, beginDate, endDate, PagedEntries.DEFAULT_PAGE_SIZE);
+  }
+
+  @Override
+  public List<Company> getEntriesPage(LocalDate beginDate, LocalDate endDate, PageCursor after,
+      int pageSize) {
+    PageCursor from = after.clampTo(beginDate);
+    java.sql.Date fromDate = java.sql.Date.valueOf(from.getIssueDate());
+    return jdbcTemplate.query(SqlQueries.GET_COMPANIES_PAGE_BY_DATE,
+        new Object[]{fromDate, java.sql.Date.valueOf(endDate), fromDate, from.getId(), pageSize},
+        new CompanyWithPaymentsExtractor());
   }
 
   @Override
   public boolean idExist(long idLong) {
-    return jdbcTemplate.queryForObject(SqlQueries.CHECK_IS_THERE_AN_ID + idLong, Long.class)
-        .equals(idLong);
+    return jdbcTemplate.queryForObject(SqlQueries.CHECK_IS_THERE_AN_ID, Boolean.class, idLong);
+  }
+
+  private void addPayments(List<Object[]> payments) {
+    if (!payments.isEmpty()) {
+      jdbcTemplate.batchUpdate(SqlQueries.ADD_COMPANY_PAYMENTS_SQL, payments);
+    }
   }
 
   private Object[] companyObject(Company entry) {
@@ -80,6 +164,19 @@ public class CompaniesSqlDb implements Database<Company> {
         entry.getTaxType().toString(), entry.isPersonalCarUsage()};
   }
 
+  private Object[] companyUpdateObject(Company entry) {
+    Object[] company = companyObject(entry);
+    Object[] withId = Arrays.copyOf(company, company.length + 1);
+    withId[company.length] = entry.getId();
+    return withId;
+  }
+
+  private List<Object[]> companyPaymentObjects(Company entry, long id) {
+    return entry.getPayments().stream()
+        .map(payment -> companyPaymentObject(payment, id))
+        .collect(Collectors.toList());
+  }
+
   private Object[] companyPaymentObject(Payment entry, long id) {
     Date date = Date.from(entry.getIssueDate().atStartOfDay()
         .atZone(ZoneId.systemDefault()).toInstant());
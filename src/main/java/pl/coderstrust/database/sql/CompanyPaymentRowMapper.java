@@ -14,8 +14,8 @@ public class CompanyPaymentRowMapper implements RowMapper {
     Payment payments = new Payment();
 
     if (!resultSet.wasNull()) {
-      payments.setId(resultSet.getInt(TableAndColumnsNames.COMPANY_PAYMENTS_ID));
-      payments.setIssueDate(resultSet.getDate(TableAndColumnsNames.COMPANY_ISSUE_DATE)
+      payments.setId(resultSet.getInt(TableAndColumnsNames.PAYMENT_ID));
+      payments.setIssueDate(resultSet.getDate(TableAndColumnsNames.PAYMENT_ISSUE_DATE)
           .toLocalDate());
       payments.setAmount(resultSet.getBigDecimal(TableAndColumnsNames.AMOUNT));
       payments.setType(PaymentType.valueOf(resultSet.getString(TableAndColumnsNames.PAYMENT_TYPE)));
@@ -0,0 +1,41 @@
+package pl.coderstrust.database.sql;
+
+import org.springframework.jdbc.core.ResultSetExtractor;
+import pl.coderstrust.model.Company;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads companies left joined with their payments, one row per payment, while walking the result
+ * set once. Rows of a company must come one after another.
+ */
+public class CompanyWithPaymentsExtractor implements ResultSetExtractor<List<Company>> {
+
+  private final CompanyRowMapper companyMapper = new CompanyRowMapper();
+  private final CompanyPaymentRowMapper paymentMapper = new CompanyPaymentRowMapper();
+
+  @Override
+  public List<Company> extractData(ResultSet resultSet) throws SQLException {
+    List<Company> companies = new ArrayList<>();
+    Company company = null;
+    int rowNumber = 0;
+    while (resultSet.next()) {
+      long id = resultSet.getLong(TableAndColumnsNames.COMPANY_ID);
+      if (company == null || company.getId() != id) {
+        company = companyMapper.mapRow(resultSet, rowNumber);
+        company.setPayments(new ArrayList<>());
+        companies.add(company);
+      }
+      // company without payments has a single row with null payment columns
+      resultSet.getLong(TableAndColumnsNames.PAYMENT_ID);
+      if (!resultSet.wasNull()) {
+        company.getPayments().add(paymentMapper.mapRow(resultSet, rowNumber));
+      }
+      rowNumber++;
+    }
+    return companies;
+  }
+}
@@ -2,6 +2,9 @@ package pl.coderstrust.database.sql;
 
 class SqlQueries {
 
+  private static final String COMPANY_ALIAS = "c";
+  private static final String PAYMENT_ALIAS = "p";
+
   static final String ADD_COMPANY_SQL =
       "INSERT INTO " + TableAndColumnsNames.TABLE_COMPANY
           + "(" + TableAndColumnsNames.COMPANY_NAME
@@ -32,14 +35,6 @@ class SqlQueries {
       "DELETE FROM " + TableAndColumnsNames.TABLE_COMPANY_PAYMENTS
           + " WHERE " + TableAndColumnsNames.COMPANY_ID_FOR_PAYMENTS + "=?";
 
-  static final String GET_COMPANY_PAYMENTS_BY_COMPANY_ID =
-      " SELECT * FROM " + TableAndColumnsNames.TABLE_COMPANY
-          + " WHERE " + TableAndColumnsNames.COMPANY_ID + "=?";
-
-  static final String GET_PAYMENTS_BY_COMPANY_ID =
-      "SELECT * FROM " + TableAndColumnsNames.TABLE_COMPANY_PAYMENTS
-          + " WHERE " + TableAndColumnsNames.COMPANY_ID_FOR_PAYMENTS + "=?";
-
   static final String UPDATE_COMPANY =
       "UPDATE " + TableAndColumnsNames.TABLE_COMPANY + " set "
           + TableAndColumnsNames.COMPANY_NAME + "=?,"
@@ -51,13 +46,72 @@ class SqlQueries {
           + TableAndColumnsNames.BANK_ACCOUNT_NUMBER + "=?,"
           + TableAndColumnsNames.TAX_TYPE + "=?,"
           + TableAndColumnsNames.CAR_USER + "=? WHERE "
-          + TableAndColumnsNames.COMPANY_ID + "=";
+          + TableAndColumnsNames.COMPANY_ID + "=?";
 
-  static final String GET_COMPANIES_IN_SPECIFIC_DATE_RANGE = "SELECT * FROM "
-      + TableAndColumnsNames.TABLE_COMPANY;
+  static final String ADD_COMPANY_WITH_ID_SQL =
+      "INSERT INTO " + TableAndColumnsNames.TABLE_COMPANY
+          + "(" + TableAndColumnsNames.COMPANY_NAME
+          + "," + TableAndColumnsNames.COMPANY_ISSUE_DATE
+          + "," + TableAndColumnsNames.ADDRESS
+          + "," + TableAndColumnsNames.CITY
+          + "," + TableAndColumnsNames.ZIP_CODE
+          + "," + TableAndColumnsNames.NIP
+          + "," + TableAndColumnsNames.BANK_ACCOUNT_NUMBER
+          + "," + TableAndColumnsNames.TAX_TYPE
+          + "," + TableAndColumnsNames.CAR_USER
+          + "," + TableAndColumnsNames.COMPANY_ID
+          + ") VALUES (?,?,?,?,?,?,?,?,?,?)";
+
+  static final String GET_NEXT_COMPANY_IDS = "SELECT nextval(pg_get_serial_sequence('"
+      + TableAndColumnsNames.TABLE_COMPANY + "','"
+      + TableAndColumnsNames.COMPANY_ID + "')) FROM generate_series(1,?)";
+
+  static final String GET_MAX_COMPANY_ID = "SELECT COALESCE(MAX("
+      + TableAndColumnsNames.COMPANY_ID + "),-1) FROM " + TableAndColumnsNames.TABLE_COMPANY;
+
+  static final String CHECK_IS_THERE_AN_ID = "SELECT EXISTS(SELECT 1 FROM "
+      + TableAndColumnsNames.TABLE_COMPANY + " WHERE "
+      + TableAndColumnsNames.COMPANY_ID + "=?)";
 
-  static final String CHECK_IS_THERE_AN_ID = "SELECT "
-      + TableAndColumnsNames.COMPANY_ID + " FROM "
+  static final String GET_COMPANY_BY_ID = withPayments("SELECT * FROM "
       + TableAndColumnsNames.TABLE_COMPANY + " WHERE "
-      + TableAndColumnsNames.COMPANY_ID + "=";
-}
\ No newline at end of file
+      + TableAndColumnsNames.COMPANY_ID + "=?", "");
+
+  static final String GET_COMPANIES = withPayments("SELECT * FROM "
+      + TableAndColumnsNames.TABLE_COMPANY, "");
+
+  static final String GET_COMPANIES_PAGE = withPayments("SELECT * FROM "
+      + TableAndColumnsNames.TABLE_COMPANY + " WHERE "
+      + TableAndColumnsNames.COMPANY_ID + ">? ORDER BY "
+      + TableAndColumnsNames.COMPANY_ID + " LIMIT ?", "");
+
+  static final String GET_COMPANIES_PAGE_BY_DATE = withPayments("SELECT * FROM "
+      + TableAndColumnsNames.TABLE_COMPANY + " WHERE "
+      + TableAndColumnsNames.COMPANY_ISSUE_DATE + " BETWEEN ? AND ? AND ("
+      + TableAndColumnsNames.COMPANY_ISSUE_DATE + ">? OR "
+      + TableAndColumnsNames.COMPANY_ID + ">?) ORDER BY "
+      + TableAndColumnsNames.COMPANY_ISSUE_DATE + ","
+      + TableAndColumnsNames.COMPANY_ID + " LIMIT ?",
+      COMPANY_ALIAS + "." + TableAndColumnsNames.COMPANY_ISSUE_DATE + ",");
+
+  /**
+   * Joins the companies selected by the query with their payments, one row per payment, the
+   * rows of a company next to each other, as {@link CompanyWithPaymentsExtractor} needs them.
+   */
+  private static String withPayments(String companiesQuery, String orderPrefix) {
+    return "SELECT " + COMPANY_ALIAS + ".*,"
+        + PAYMENT_ALIAS + "." + TableAndColumnsNames.COMPANY_PAYMENTS_ID + " AS "
+        + TableAndColumnsNames.PAYMENT_ID + ","
+        + PAYMENT_ALIAS + "." + TableAndColumnsNames.COMPANY_PAYMENTS_ISSUE_DATE + " AS "
+        + TableAndColumnsNames.PAYMENT_ISSUE_DATE + ","
+        + PAYMENT_ALIAS + "." + TableAndColumnsNames.AMOUNT + ","
+        + PAYMENT_ALIAS + "." + TableAndColumnsNames.PAYMENT_TYPE
+        + " FROM (" + companiesQuery + ") " + COMPANY_ALIAS
+        + " LEFT JOIN " + TableAndColumnsNames.TABLE_COMPANY_PAYMENTS + " " + PAYMENT_ALIAS
+        + " ON " + PAYMENT_ALIAS + "." + TableAndColumnsNames.COMPANY_ID_FOR_PAYMENTS + "="
+        + COMPANY_ALIAS + "." + TableAndColumnsNames.COMPANY_ID
+        + " ORDER BY " + orderPrefix
+        + COMPANY_ALIAS + "." + TableAndColumnsNames.COMPANY_ID + ","
+        + PAYMENT_ALIAS + "." + TableAndColumnsNames.COMPANY_PAYMENTS_ID;
+  }
+}
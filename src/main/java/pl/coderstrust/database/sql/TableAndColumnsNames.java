@@ -24,4 +24,8 @@ class TableAndColumnsNames {
   static final String PAYMENT_TYPE = "payment_type";
   static final String COMPANY_ID_FOR_PAYMENTS = "id_company";
   static final String COMPANY_PAYMENTS_ID = "id";
+
+  //Payment columns of companies joined with their payments
+  static final String PAYMENT_ID = "payment_id";
+  static final String PAYMENT_ISSUE_DATE = "payment_issue_date";
 }
\ No newline at end of file
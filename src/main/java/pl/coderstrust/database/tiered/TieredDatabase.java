@@ -0,0 +1,328 @@
+package pl.coderstrust.database.tiered;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.coderstrust.database.Database;
+import pl.coderstrust.database.DbException;
+import pl.coderstrust.database.ExceptionMsg;
+import pl.coderstrust.database.PageCursor;
+import pl.coderstrust.model.WithNameIdIssueDate;
+
+import java.io.Closeable;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Keeps entries issued in the current and last hotMonths months in the hot database and older
+ * ones in the cold database. Queries of a date range only ask the tiers holding that range, so
+ * recent periods are served by the hot tier alone. Entries are moved to the cold tier once a
+ * month ends up older than that, checked hourly. Ids are assigned here and stored with
+ * {@link Database#insertEntry} in both tiers.
+ */
+public class TieredDatabase<T extends WithNameIdIssueDate> implements Database<T>, Closeable {
+
+  private static final long FIRST_ID = 0;
+  private static final long INCREMENT_ID = 1;
+  private static final long AGING_PERIOD_HOURS = 1;
+  private final Logger logger = LoggerFactory.getLogger(TieredDatabase.class);
+
+  private final Database<T> hot;
+  private final Database<T> cold;
+  private final int hotMonths;
+  private final Supplier<LocalDate> today;
+  private final AtomicLong nextId;
+  // moves between tiers take the write lock, everything else the read lock
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  // hot tier holds exactly the entries issued on or after this date
+  private volatile LocalDate hotSince;
+  private ScheduledExecutorService aging;
+
+  public TieredDatabase(Database<T> hot, Database<T> cold, int hotMonths) {
+    this(hot, cold, hotMonths, LocalDate::now);
+    aging = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "TieredDatabase-aging");
+      thread.setDaemon(true);
+      return thread;
+    });
+    aging.scheduleAtFixedRate(this::ageEntries, AGING_PERIOD_HOURS, AGING_PERIOD_HOURS,
+        TimeUnit.HOURS);
+  }
+
+  TieredDatabase(Database<T> hot, Database<T> cold, int hotMonths, Supplier<LocalDate> today) {
+    if (hotMonths < 0) {
+      throw new IllegalArgumentException("hotMonths can't be negative");
+    }
+    this.hot = hot;
+    this.cold = cold;
+    this.hotMonths = hotMonths;
+    this.today = today;
+    hotSince = getCutoff();
+    // cold tier may still hold recent entries, e.g. of a database which wasn't tiered before
+    for (T entry : cold.getEntriesByDate(hotSince, LocalDate.MAX)) {
+      move(entry, cold, hot);
+    }
+    for (T entry : hot.getEntriesByDate(LocalDate.MIN, hotSince.minusDays(1))) {
+      move(entry, hot, cold);
+    }
+    nextId = new AtomicLong(Math.max(FIRST_ID,
+        Math.max(hot.getMaxId(), cold.getMaxId()) + INCREMENT_ID));
+  }
+
+  /**
+   * Stops aging, waiting for a move between tiers which is under way.
+   */
+  @Override
+  public void close() {
+    if (aging == null) {
+      return;
+    }
+    aging.shutdown();
+    try {
+      aging.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public long addEntry(T entry) {
+    entry.setId(nextId.getAndIncrement());
+    return insertEntry(entry);
+  }
+
+  @Override
+  public long getMaxId() {
+    return nextId.get() - INCREMENT_ID;
+  }
+
+  @Override
+  public long insertEntry(T entry) {
+    nextId.accumulateAndGet(entry.getId() + INCREMENT_ID, Math::max);
+    lock.readLock().lock();
+    try {
+      return getTierFor(entry.getIssueDate()).insertEntry(entry);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void deleteEntry(long id) {
+    lock.readLock().lock();
+    try {
+      getTierOf(id).deleteEntry(id);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public T getEntryById(long id) {
+    lock.readLock().lock();
+    try {
+      return getTierOf(id).getEntryById(id);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void updateEntry(T entry) {
+    lock.readLock().lock();
+    try {
+      Database<T> tier = getTierOf(entry.getId());
+      if (tier == getTierFor(entry.getIssueDate())) {
+        tier.updateEntry(entry);
+        return;
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    // issue date moved the entry across hotSince
+    lock.writeLock().lock();
+    try {
+      Database<T> tier = getTierOf(entry.getId());
+      Database<T> newTier = getTierFor(entry.getIssueDate());
+      if (tier == newTier) {
+        tier.updateEntry(entry);
+      } else if (!tier.idExist(entry.getId())) {
+        logger.warn(" from updateEntry (TieredDatabase): "
+            + ExceptionMsg.INVOICE_NOT_EXIST);
+        throw new DbException(ExceptionMsg.INVOICE_NOT_EXIST);
+      } else {
+        move(entry, tier, newTier);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public List<T> getEntries() {
+    return queryTiers(LocalDate.MIN, LocalDate.MAX, Database::getEntries);
+  }
+
+  @Override
+  public boolean idExist(long id) {
+    lock.readLock().lock();
+    try {
+      return hot.idExist(id) || cold.idExist(id);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public List<T> getEntriesByDate(LocalDate beginDate, LocalDate endDate) {
+    return queryTiers(beginDate, endDate, tier -> tier.getEntriesByDate(beginDate, endDate));
+  }
+
+  @Override
+  public List<T> getEntriesByCompany(long companyId, LocalDate beginDate, LocalDate endDate) {
+    return queryTiers(beginDate, endDate,
+        tier -> tier.getEntriesByCompany(companyId, beginDate, endDate));
+  }
+
+  @Override
+  public List<T> getEntriesByNip(String nip) {
+    return queryTiers(LocalDate.MIN, LocalDate.MAX, tier -> tier.getEntriesByNip(nip));
+  }
+
+  /**
+   * Cold entries are all issued before the hot ones, so the page continues into the hot tier
+   * only when the cold one runs out.
+   */
+  @Override
+  public List<T> getEntriesPage(LocalDate beginDate, LocalDate endDate, PageCursor after,
+      int pageSize) {
+    lock.readLock().lock();
+    try {
+      List<T> page = new ArrayList<>();
+      if (after.clampTo(beginDate).getIssueDate().isBefore(hotSince)) {
+        LocalDate coldEndDate = endDate.isBefore(hotSince) ? endDate : hotSince.minusDays(1);
+        page.addAll(cold.getEntriesPage(beginDate, coldEndDate, after, pageSize));
+      }
+      if (page.size() < pageSize && !endDate.isBefore(hotSince)) {
+        LocalDate hotBeginDate = beginDate.isBefore(hotSince) ? hotSince : beginDate;
+        page.addAll(hot.getEntriesPage(hotBeginDate, endDate, after, pageSize - page.size()));
+      }
+      return page;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public Stream<T> streamEntries() {
+    return streamTiers(LocalDate.MIN, LocalDate.MAX, Database::streamEntries);
+  }
+
+  @Override
+  public Stream<T> streamEntriesByDate(LocalDate beginDate, LocalDate endDate) {
+    return streamTiers(beginDate, endDate, tier -> tier.streamEntriesByDate(beginDate, endDate));
+  }
+
+  @Override
+  public Stream<T> streamEntriesByCompany(long companyId, LocalDate beginDate,
+      LocalDate endDate) {
+    return streamTiers(beginDate, endDate,
+        tier -> tier.streamEntriesByCompany(companyId, beginDate, endDate));
+  }
+
+  /**
+   * Moves entries of months which are no longer hot to the cold tier.
+   */
+  void ageEntries() {
+    LocalDate cutoff = getCutoff();
+    if (!cutoff.isAfter(hotSince)) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      for (T entry : hot.getEntriesByDate(hotSince, cutoff.minusDays(1))) {
+        move(entry, hot, cold);
+      }
+      hotSince = cutoff;
+    } catch (RuntimeException ex) {
+      logger.warn(" from ageEntries (TieredDatabase): "
+          + ExceptionMsg.IO_ERROR_WHILE_AGING, ex);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  LocalDate getHotSince() {
+    return hotSince;
+  }
+
+  private LocalDate getCutoff() {
+    return today.get().minusMonths(hotMonths).withDayOfMonth(1);
+  }
+
+  private Database<T> getTierFor(LocalDate issueDate) {
+    return issueDate.isBefore(hotSince) ? cold : hot;
+  }
+
+  private Database<T> getTierOf(long id) {
+    return hot.idExist(id) ? hot : cold;
+  }
+
+  /**
+   * Stores the entry in the new tier before removing it from the old one, so it's never lost.
+   */
+  private void move(T entry, Database<T> from, Database<T> to) {
+    to.insertEntry(entry);
+    from.deleteEntry(entry.getId());
+  }
+
+  /**
+   * Streams the hot tier before the cold one without holding the lock. Entries aged into the cold
+   * tier meanwhile are skipped there, which only needs the ids of the small hot tier.
+   */
+  private Stream<T> streamTiers(LocalDate beginDate, LocalDate endDate,
+      Function<Database<T>, Stream<T>> query) {
+    LocalDate since = hotSince;
+    if (!beginDate.isBefore(since)) {
+      return query.apply(hot);
+    }
+    if (endDate.isBefore(since)) {
+      return query.apply(cold);
+    }
+    Set<Long> hotIds = new HashSet<>();
+    return Stream.concat(
+        Stream.of(hot).flatMap(query).peek(entry -> hotIds.add(entry.getId())),
+        Stream.of(cold).flatMap(query).filter(entry -> !hotIds.contains(entry.getId())));
+  }
+
+  private List<T> queryTiers(LocalDate beginDate, LocalDate endDate,
+      Function<Database<T>, List<T>> query) {
+    lock.readLock().lock();
+    try {
+      if (!beginDate.isBefore(hotSince)) {
+        return query.apply(hot);
+      }
+      if (endDate.isBefore(hotSince)) {
+        return query.apply(cold);
+      }
+      List<T> entries = new ArrayList<>(query.apply(cold));
+      entries.addAll(query.apply(hot));
+      entries.sort(Comparator.comparingLong(WithNameIdIssueDate::getId));
+      return entries;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+}
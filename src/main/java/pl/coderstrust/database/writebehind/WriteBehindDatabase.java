@@ -0,0 +1,519 @@
+package pl.coderstrust.database.writebehind;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.coderstrust.database.Database;
+import pl.coderstrust.database.DbException;
+import pl.coderstrust.database.ExceptionMsg;
+import pl.coderstrust.database.PageCursor;
+import pl.coderstrust.model.WithNameIdIssueDate;
+
+import java.io.Closeable;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Buffers writes in front of a database and flushes them from one thread once batchSize writes
+ * are pending or flushIntervalMillis after the first of them. Ids are assigned on add and the
+ * entries are stored under them with {@link Database#insertEntry}, so the wrapped database has to
+ * support it. Reads see pending writes. Writers block while capacity writes are pending.
+ *
+ * <p>Writes of a failed flush go back to the front of the pending writes and are retried a flush
+ * interval later, so none of them is lost and reads keep seeing them. Those of the failed call to
+ * the wrapped database are retried whole. A flush, a writer waiting for
+ * capacity or close throws the failure when a retry made while it waits fails too. Close gives up
+ * after one failed attempt and leaves the remaining writes unflushed.
+ */
+public class WriteBehindDatabase<T extends WithNameIdIssueDate> implements Database<T>,
+    Closeable {
+
+  private static final long FIRST_ID = 0;
+  private static final long INCREMENT_ID = 1;
+  private final Logger logger = LoggerFactory.getLogger(WriteBehindDatabase.class);
+
+  private final Database<T> database;
+  private final int capacity;
+  private final int batchSize;
+  private final long flushIntervalMillis;
+  private final Thread flusher;
+  // latest not yet flushed write per id, in the order the ids were first written
+  private final LinkedHashMap<Long, PendingWrite<T>> pending = new LinkedHashMap<>();
+  private Map<Long, PendingWrite<T>> inFlight = Collections.emptyMap();
+  private long nextId;
+  private boolean flushRequested;
+  private boolean closed;
+  // failure of the last flush attempt, null once one succeeds
+  private DbException flushFailure;
+  private long failedFlushes;
+
+  public WriteBehindDatabase(Database<T> database, int capacity, int batchSize,
+      long flushIntervalMillis) {
+    if (capacity <= 0 || batchSize <= 0) {
+      throw new IllegalArgumentException("capacity and batchSize must be positive");
+    }
+    this.database = database;
+    this.capacity = capacity;
+    this.batchSize = batchSize;
+    this.flushIntervalMillis = flushIntervalMillis;
+    nextId = Math.max(FIRST_ID, database.getMaxId() + INCREMENT_ID);
+    flusher = new Thread(this::flushBatches, "WriteBehindDatabase-flush");
+    flusher.setDaemon(true);
+    flusher.start();
+  }
+
+  @Override
+  public long addEntry(T entry) {
+    synchronized (this) {
+      awaitCapacity();
+      entry.setId(nextId);
+      nextId += INCREMENT_ID;
+      enqueue(new PendingWrite<>(WriteKind.INSERT, entry.getId(), entry));
+    }
+    return entry.getId();
+  }
+
+  @Override
+  public long insertEntry(T entry) {
+    synchronized (this) {
+      awaitCapacity();
+      nextId = Math.max(nextId, entry.getId() + INCREMENT_ID);
+      enqueue(new PendingWrite<>(WriteKind.INSERT, entry.getId(), entry));
+    }
+    return entry.getId();
+  }
+
+  @Override
+  public synchronized long getMaxId() {
+    return nextId - INCREMENT_ID;
+  }
+
+  @Override
+  public void deleteEntry(long id) {
+    synchronized (this) {
+      awaitCapacity();
+      // checked under the monitor the write is enqueued with, so no write for the id comes between
+      if (!idExistLocked(id)) {
+        logger.warn(" from deleteEntry (WriteBehindDatabase): "
+            + ExceptionMsg.INVOICE_NOT_EXIST);
+        throw new DbException(ExceptionMsg.INVOICE_NOT_EXIST);
+      }
+      enqueue(new PendingWrite<>(WriteKind.DELETE, id, null));
+    }
+  }
+
+  @Override
+  public T getEntryById(long id) {
+    PendingWrite<T> write;
+    synchronized (this) {
+      write = getLatestWrite(id);
+    }
+    if (write == null) {
+      return database.getEntryById(id);
+    }
+    if (write.getKind() == WriteKind.DELETE) {
+      logger.warn(" from getEntryById (WriteBehindDatabase): "
+          + ExceptionMsg.INVOICE_NOT_EXIST);
+      throw new DbException(ExceptionMsg.INVOICE_NOT_EXIST);
+    }
+    return write.getEntry();
+  }
+
+  @Override
+  public void updateEntry(T entry) {
+    synchronized (this) {
+      awaitCapacity();
+      if (!idExistLocked(entry.getId())) {
+        logger.warn(" from updateEntry (WriteBehindDatabase): "
+            + ExceptionMsg.INVOICE_NOT_EXIST);
+        throw new DbException(ExceptionMsg.INVOICE_NOT_EXIST);
+      }
+      enqueue(new PendingWrite<>(WriteKind.UPDATE, entry.getId(), entry));
+    }
+  }
+
+  @Override
+  public List<T> getEntries() {
+    return withPendingWrites(database::getEntries, entry -> true);
+  }
+
+  @Override
+  public boolean idExist(long id) {
+    PendingWrite<T> write;
+    synchronized (this) {
+      write = getLatestWrite(id);
+    }
+    if (write == null) {
+      return database.idExist(id);
+    }
+    return write.getKind() != WriteKind.DELETE;
+  }
+
+  @Override
+  public List<T> getEntriesByDate(LocalDate beginDate, LocalDate endDate) {
+    return withPendingWrites(() -> database.getEntriesByDate(beginDate, endDate),
+        entry -> !entry.getIssueDate().isBefore(beginDate)
+            && !entry.getIssueDate().isAfter(endDate));
+  }
+
+  @Override
+  public List<T> getEntriesByCompany(long companyId, LocalDate beginDate, LocalDate endDate) {
+    return withPendingWrites(() -> database.getEntriesByCompany(companyId, beginDate, endDate),
+        entry -> !entry.getIssueDate().isBefore(beginDate)
+            && !entry.getIssueDate().isAfter(endDate));
+  }
+
+  @Override
+  public List<T> getEntriesByNip(String nip) {
+    return withPendingWrites(() -> database.getEntriesByNip(nip), entry -> true);
+  }
+
+  /**
+   * Pending writes may drop or replace as many stored entries as there are writes, so the stored
+   * page is taken that much longer.
+   */
+  @Override
+  public List<T> getEntriesPage(LocalDate beginDate, LocalDate endDate, PageCursor after,
+      int pageSize) {
+    Map<Long, PendingWrite<T>> writes = getPendingWrites();
+    List<T> stored = database.getEntriesPage(beginDate, endDate, after,
+        pageSize + writes.size());
+    return PageCursor.selectPage(withPendingWrites(writes, stored.stream(),
+        entry -> !entry.getIssueDate().isBefore(beginDate)
+            && !entry.getIssueDate().isAfter(endDate)), after, pageSize);
+  }
+
+  @Override
+  public Stream<T> streamEntries() {
+    return streamWithPendingWrites(database::streamEntries, entry -> true);
+  }
+
+  @Override
+  public Stream<T> streamEntriesByDate(LocalDate beginDate, LocalDate endDate) {
+    return streamWithPendingWrites(() -> database.streamEntriesByDate(beginDate, endDate),
+        entry -> !entry.getIssueDate().isBefore(beginDate)
+            && !entry.getIssueDate().isAfter(endDate));
+  }
+
+  @Override
+  public Stream<T> streamEntriesByCompany(long companyId, LocalDate beginDate,
+      LocalDate endDate) {
+    return streamWithPendingWrites(
+        () -> database.streamEntriesByCompany(companyId, beginDate, endDate),
+        entry -> !entry.getIssueDate().isBefore(beginDate)
+            && !entry.getIssueDate().isAfter(endDate));
+  }
+
+  /**
+   * Waits until every write made before the call reached the wrapped database. Throws if a flush
+   * attempt fails meanwhile; the writes stay pending then.
+   */
+  public synchronized void flush() {
+    long failedBefore = failedFlushes;
+    while (!pending.isEmpty() || !inFlight.isEmpty()) {
+      flushRequested = true;
+      notifyAll();
+      waitForFlusher();
+      throwFlushFailureSince(failedBefore);
+    }
+  }
+
+  /**
+   * Flushes pending writes and stops the flushing thread. Later writes are rejected.
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      notifyAll();
+    }
+    try {
+      flusher.join();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (this) {
+      if (!pending.isEmpty()) {
+        throwFlushFailureSince(0);
+      }
+    }
+  }
+
+  private void awaitCapacity() {
+    long failedBefore = failedFlushes;
+    while (!closed && pending.size() >= capacity) {
+      flushRequested = true;
+      notifyAll();
+      waitForFlusher();
+      throwFlushFailureSince(failedBefore);
+    }
+    if (closed) {
+      logger.warn(" from awaitCapacity (WriteBehindDatabase): "
+          + ExceptionMsg.IO_ERROR_WHILE_ADDING);
+      throw new DbException(ExceptionMsg.IO_ERROR_WHILE_ADDING);
+    }
+  }
+
+  /**
+   * Throws the failure of the last flush attempt if it failed after failedBefore attempts did.
+   */
+  private void throwFlushFailureSince(long failedBefore) {
+    if (failedFlushes > failedBefore && flushFailure != null) {
+      throw flushFailure;
+    }
+  }
+
+  private void waitForFlusher() {
+    try {
+      wait();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      logger.warn(" from waitForFlusher (WriteBehindDatabase): "
+          + ExceptionMsg.INVOICE_PROCESSING_INTERRUPT, ex);
+      throw new DbException(ExceptionMsg.INVOICE_PROCESSING_INTERRUPT, ex);
+    }
+  }
+
+  private void enqueue(PendingWrite<T> write) {
+    merge(write);
+    if (pending.size() == 1 || pending.size() >= batchSize) {
+      notifyAll();
+    }
+  }
+
+  /**
+   * Puts the failed batch back in front of the writes made while it was in flight.
+   */
+  private void requeue(Map<Long, PendingWrite<T>> batch) {
+    List<PendingWrite<T>> newer = new ArrayList<>(pending.values());
+    pending.clear();
+    pending.putAll(batch);
+    newer.forEach(this::merge);
+  }
+
+  private void merge(PendingWrite<T> write) {
+    PendingWrite<T> previous = pending.get(write.getId());
+    if (previous != null && previous.getKind() == WriteKind.INSERT) {
+      // the wrapped database hasn't seen the entry yet, so it's still an insert or nothing at all
+      if (write.getKind() == WriteKind.DELETE) {
+        pending.remove(write.getId());
+      } else {
+        pending.put(write.getId(), new PendingWrite<>(WriteKind.INSERT, write.getId(),
+            write.getEntry()));
+      }
+    } else {
+      pending.put(write.getId(), write);
+    }
+  }
+
+  private boolean idExistLocked(long id) {
+    PendingWrite<T> write = getLatestWrite(id);
+    if (write == null) {
+      return database.idExist(id);
+    }
+    return write.getKind() != WriteKind.DELETE;
+  }
+
+  private PendingWrite<T> getLatestWrite(long id) {
+    PendingWrite<T> write = pending.get(id);
+    return write != null ? write : inFlight.get(id);
+  }
+
+  private List<T> withPendingWrites(Supplier<List<T>> storedEntries, Predicate<T> filter) {
+    return streamWithPendingWrites(() -> storedEntries.get().stream(), filter)
+        .collect(Collectors.toList());
+  }
+
+  private Stream<T> streamWithPendingWrites(Supplier<Stream<T>> storedEntries,
+      Predicate<T> filter) {
+    Map<Long, PendingWrite<T>> writes = getPendingWrites();
+    // read after taking the writes, so a write flushed meanwhile is still in them
+    return withPendingWrites(writes, storedEntries.get(), filter);
+  }
+
+  private synchronized Map<Long, PendingWrite<T>> getPendingWrites() {
+    if (pending.isEmpty() && inFlight.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    Map<Long, PendingWrite<T>> writes = new LinkedHashMap<>(inFlight);
+    writes.putAll(pending);
+    return writes;
+  }
+
+  private Stream<T> withPendingWrites(Map<Long, PendingWrite<T>> writes, Stream<T> stored,
+      Predicate<T> filter) {
+    if (writes.isEmpty()) {
+      return stored;
+    }
+    Set<Long> applied = new HashSet<>();
+    Stream<T> storedWithWrites = stored
+        .map(entry -> {
+          PendingWrite<T> write = writes.get(entry.getId());
+          if (write == null) {
+            return entry;
+          }
+          applied.add(entry.getId());
+          return write.getKind() != WriteKind.DELETE && filter.test(write.getEntry())
+              ? write.getEntry() : null;
+        })
+        .filter(Objects::nonNull);
+    // filtered only once the stored entries are through, so applied is complete
+    Stream<T> notStoredWrites = writes.values().stream()
+        .filter(write -> !applied.contains(write.getId()) && write.getKind() != WriteKind.DELETE
+            && filter.test(write.getEntry()))
+        .map(PendingWrite::getEntry);
+    return Stream.concat(storedWithWrites, notStoredWrites);
+  }
+
+  private void flushBatches() {
+    while (true) {
+      Map<Long, PendingWrite<T>> batch;
+      synchronized (this) {
+        if (!awaitBatch()) {
+          return;
+        }
+        batch = new LinkedHashMap<>();
+        Iterator<Map.Entry<Long, PendingWrite<T>>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext() && batch.size() < batchSize) {
+          Map.Entry<Long, PendingWrite<T>> write = iterator.next();
+          batch.put(write.getKey(), write.getValue());
+          iterator.remove();
+        }
+        inFlight = batch;
+        flushRequested = flushRequested && !pending.isEmpty();
+        notifyAll();
+      }
+      Map<Long, PendingWrite<T>> unwritten = new LinkedHashMap<>(batch);
+      DbException failure = write(unwritten);
+      synchronized (this) {
+        inFlight = Collections.emptyMap();
+        flushFailure = failure;
+        if (failure != null) {
+          failedFlushes++;
+          requeue(unwritten);
+          // a waiting flush throws now, so the retry waits for the interval
+          flushRequested = false;
+        }
+        notifyAll();
+        if (failure != null && closed) {
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Waits until a batch is due. After a failed flush that is a flush interval later, however many
+   * writes are pending.
+   *
+   * @return false once closed with nothing left to flush
+   */
+  private boolean awaitBatch() {
+    try {
+      while (pending.isEmpty()) {
+        if (closed) {
+          return false;
+        }
+        wait();
+      }
+      long deadline = System.currentTimeMillis() + flushIntervalMillis;
+      long remaining = flushIntervalMillis;
+      while ((flushFailure != null || pending.size() < batchSize) && !flushRequested && !closed
+          && remaining > 0) {
+        wait(remaining);
+        remaining = deadline - System.currentTimeMillis();
+      }
+      return true;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return !pending.isEmpty();
+    }
+  }
+
+  /**
+   * Writes the batch with one call per kind of write and removes the writes of each call that
+   * succeeded from it. Writes in a batch are for distinct ids, so they can reach the database in
+   * any order.
+   *
+   * @return failure of the writes, or null if all of them succeeded
+   */
+  private DbException write(Map<Long, PendingWrite<T>> batch) {
+    List<T> inserts = new ArrayList<>();
+    List<T> updates = new ArrayList<>();
+    List<Long> deletes = new ArrayList<>();
+    for (PendingWrite<T> write : batch.values()) {
+      switch (write.getKind()) {
+        case INSERT:
+          inserts.add(write.getEntry());
+          break;
+        case UPDATE:
+          updates.add(write.getEntry());
+          break;
+        default:
+          deletes.add(write.getId());
+      }
+    }
+    try {
+      if (!inserts.isEmpty()) {
+        database.insertEntries(inserts);
+        batch.values().removeIf(write -> write.getKind() == WriteKind.INSERT);
+      }
+      if (!updates.isEmpty()) {
+        database.updateEntries(updates);
+        batch.values().removeIf(write -> write.getKind() == WriteKind.UPDATE);
+      }
+      if (!deletes.isEmpty()) {
+        database.deleteEntries(deletes);
+        batch.clear();
+      }
+    } catch (RuntimeException ex) {
+      logger.warn(" from write (WriteBehindDatabase): "
+          + ExceptionMsg.IO_ERROR_WHILE_FLUSHING, ex);
+      return new DbException(ExceptionMsg.IO_ERROR_WHILE_FLUSHING, ex);
+    }
+    return null;
+  }
+
+  private enum WriteKind {
+    INSERT, UPDATE, DELETE
+  }
+
+  private static class PendingWrite<T> {
+
+    private final WriteKind kind;
+    private final long id;
+    private final T entry;
+
+    PendingWrite(WriteKind kind, long id, T entry) {
+      this.kind = kind;
+      this.id = id;
+      this.entry = entry;
+    }
+
+    WriteKind getKind() {
+      return kind;
+    }
+
+    long getId() {
+      return id;
+    }
+
+    T getEntry() {
+      return entry;
+    }
+  }
+}
@@ -0,0 +1,33 @@
+package pl.coderstrust.model;
+
+import java.util.List;
+
+public class EntriesPage<T> {
+
+  private List<T> entries;
+  private String nextCursor;
+
+  public EntriesPage(List<T> entries, String nextCursor) {
+    this.entries = entries;
+    this.nextCursor = nextCursor;
+  }
+
+  public List<T> getEntries() {
+    return entries;
+  }
+
+  public void setEntries(List<T> entries) {
+    this.entries = entries;
+  }
+
+  /**
+   * Cursor to request the following page with, null on the last page.
+   */
+  public String getNextCursor() {
+    return nextCursor;
+  }
+
+  public void setNextCursor(String nextCursor) {
+    this.nextCursor = nextCursor;
+  }
+}
@@ -0,0 +1,50 @@
+package pl.coderstrust.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * Outcome of importing the invoice starting at the given line of an upload: either the id it
+ * was added under or the reasons it wasn't.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ImportResult {
+
+  private long line;
+  private Long id;
+  private List<String> errors;
+
+  public ImportResult() {
+  }
+
+  public ImportResult(long line, Long id, List<String> errors) {
+    this.line = line;
+    this.id = id;
+    this.errors = errors;
+  }
+
+  public long getLine() {
+    return line;
+  }
+
+  public void setLine(long line) {
+    this.line = line;
+  }
+
+  public Long getId() {
+    return id;
+  }
+
+  public void setId(Long id) {
+    this.id = id;
+  }
+
+  public List<String> getErrors() {
+    return errors;
+  }
+
+  public void setErrors(List<String> errors) {
+    this.errors = errors;
+  }
+}
@@ -19,6 +19,13 @@ public class Messages {
   public static final String DATE_TOO_EARLY = "Date is earlier then actual date.";
   public static final String END_BEFORE_START = "End date is before the start date.";
 
+  public static final String PAGE_SIZE_INCORRECT = "Page size is not between 1 and 1000.";
+  public static final String PAGE_CURSOR_INCORRECT = "Page cursor is incorrect.";
+  public static final String BATCH_SIZE_INCORRECT =
+      "Batch is empty or has more than 1000 entries.";
+  public static final String IMPORT_LINE_INCORRECT = "Line is not a complete invoice.";
+  public static final String IMPORT_NOT_STORED = "Invoice could not be stored.";
+
   public static final String PRODUCT_NO_NAME = "Product name is empty.";
   public static final String PRODUCT_NO_DESCRIPTION = "Product description is empty.";
   public static final String PRODUCT_NO_NET_VALUE = "Product net value is empty.";
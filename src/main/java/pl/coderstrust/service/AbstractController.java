@@ -2,22 +2,37 @@ package pl.coderstrust.service;
 
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import pl.coderstrust.database.PageCursor;
+import pl.coderstrust.model.EntriesPage;
 import pl.coderstrust.model.Messages;
 import pl.coderstrust.model.WithNameIdIssueDate;
 import pl.coderstrust.model.WithValidation;
+import pl.coderstrust.service.bulk.BulkMediaTypes;
+import pl.coderstrust.service.bulk.CsvColumns;
+import pl.coderstrust.service.bulk.EntryExporter;
 import pl.coderstrust.service.filters.EntriesFilter;
 
 import java.io.ByteArrayInputStream;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public abstract class AbstractController<T extends WithNameIdIssueDate & WithValidation> {
 
+  private static final int MAX_PAGE_SIZE = 1000;
+  private static final int MAX_BATCH_SIZE = 1000;
+  private static final String GZIP = "gzip";
+
   protected AbstractService<T> service;
   protected EntriesFilter<T> filter;
+  protected EntryExporter exporter;
 
 
   public ResponseEntity addEntry(T entry, Long filterId) {
@@ -35,6 +50,26 @@ public abstract class AbstractController<T extends WithNameIdIssueDate & WithVal
     return ResponseEntity.badRequest().body(entryState);
   }
 
+  /**
+   * Adds the entries only when all of them are valid. Validation errors are prefixed with the
+   * index of the entry they belong to.
+   */
+  public ResponseEntity addEntries(List<T> entries) {
+    if (entries == null || entries.isEmpty() || entries.size() > MAX_BATCH_SIZE) {
+      return ResponseEntity.badRequest().body(Messages.BATCH_SIZE_INCORRECT);
+    }
+    List<String> entriesState = new ArrayList<>();
+    for (int i = 0; i < entries.size(); i++) {
+      for (String error : entries.get(i).validate()) {
+        entriesState.add(i + ": " + error);
+      }
+    }
+    if (!entriesState.isEmpty()) {
+      return ResponseEntity.badRequest().body(entriesState);
+    }
+    return ResponseEntity.ok(service.addEntries(entries));
+  }
+
   public ResponseEntity getEntryById(Long entryId, Long filterKey) {
     if (!service.idExist(entryId)) {
       return ResponseEntity.notFound().build();
@@ -50,19 +85,82 @@ public abstract class AbstractController<T extends WithNameIdIssueDate & WithVal
 
 
   public ResponseEntity getEntryByDate(LocalDate startDate, LocalDate endDate, Long filterKey) {
-    if (startDate == null && endDate == null) {
-      if (filterKey != null) {
-        return ResponseEntity.ok(filter.filterByField(service.getEntry(), filterKey));
+    if (filterKey != null) {
+      try (Stream<T> entries = service.streamEntryByCompany(filterKey, startDate, endDate)) {
+        return ResponseEntity.ok(filter.filterByField(entries, filterKey)
+            .collect(Collectors.toList()));
       }
+    }
+
+    if (startDate == null && endDate == null) {
       return ResponseEntity.ok(service.getEntry());
     }
 
+    return ResponseEntity.ok(service.getEntryByDate(startDate, endDate));
+  }
+
+
+  public ResponseEntity getEntryByDate(LocalDate startDate, LocalDate endDate, Long filterKey,
+      Integer pageSize, String cursor) {
+    if (pageSize == null && cursor == null) {
+      return getEntryByDate(startDate, endDate, filterKey);
+    }
+    if (pageSize == null || pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+      return ResponseEntity.badRequest().body(Messages.PAGE_SIZE_INCORRECT);
+    }
+    PageCursor after;
+    try {
+      after = cursor == null ? PageCursor.START : PageCursor.decode(cursor);
+    } catch (IllegalArgumentException ex) {
+      return ResponseEntity.badRequest().body(Messages.PAGE_CURSOR_INCORRECT);
+    }
+
+    List<T> page;
     if (filterKey != null) {
-      return ResponseEntity
-          .ok(filter.filterByField(service.getEntryByDate(startDate, endDate), filterKey));
+      try (Stream<T> entries = service.streamEntryByCompany(filterKey, startDate, endDate)) {
+        page = PageCursor.selectPage(filter.filterByField(entries, filterKey), after, pageSize);
+      }
+    } else {
+      page = service.getEntryPage(startDate, endDate, after, pageSize);
     }
+    PageCursor next = PageCursor.next(page, pageSize);
+    return ResponseEntity.ok(new EntriesPage<>(page, next == null ? null : next.encode()));
+  }
 
-    return ResponseEntity.ok(service.getEntryByDate(startDate, endDate));
+
+  /**
+   * Streams the entries issued between startDate and endDate as NDJSON or CSV, whichever the
+   * Accept header names, gzipped when the client accepts it. Entries are written while the
+   * database reads them, after this method has returned.
+   */
+  public ResponseEntity<StreamingResponseBody> exportEntries(LocalDate startDate,
+      LocalDate endDate, String accept, String acceptEncoding, CsvColumns columns) {
+    MediaType format = selectBulkFormat(accept);
+    if (format == null) {
+      return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+    }
+    boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains(GZIP);
+    HttpHeaders headers = new HttpHeaders();
+    headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    if (gzip) {
+      headers.add(HttpHeaders.CONTENT_ENCODING, GZIP);
+    }
+    return ResponseEntity.ok().headers(headers).contentType(format).body(output -> {
+      try (Stream<T> entries = service.streamEntryByDate(startDate, endDate)) {
+        exporter.export(entries, format, columns, gzip, output);
+      }
+    });
+  }
+
+  private MediaType selectBulkFormat(String accept) {
+    if (accept == null) {
+      return null;
+    }
+    try {
+      return BulkMediaTypes.select(MediaType.parseMediaTypes(accept));
+    } catch (InvalidMediaTypeException ex) {
+      return null;
+    }
   }
 
 
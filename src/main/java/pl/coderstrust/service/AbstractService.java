@@ -1,14 +1,15 @@
 package pl.coderstrust.service;
 
 import pl.coderstrust.database.Database;
+import pl.coderstrust.database.PageCursor;
 import pl.coderstrust.model.Invoice;
 import pl.coderstrust.model.WithNameIdIssueDate;
 import pl.coderstrust.service.pdf.PdfGenerator;
 
 import java.io.ByteArrayInputStream;
 import java.time.LocalDate;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 public abstract class AbstractService<T extends WithNameIdIssueDate> {
 
@@ -24,6 +25,14 @@ public abstract class AbstractService<T extends WithNameIdIssueDate> {
     return entriesDb.addEntry(entry);
   }
 
+  public List<Long> addEntries(List<T> entries) {
+    for (T entry : entries) {
+      entry.setId(-1);
+      setDefaultEntryNameIfEmpty(entry);
+    }
+    return entriesDb.addEntries(entries);
+  }
+
   public void deleteEntry(long id) {
     entriesDb.deleteEntry(id);
   }
@@ -60,21 +69,55 @@ public abstract class AbstractService<T extends WithNameIdIssueDate> {
     if (endDate == null) {
       endDate = MAX_DATE;
     }
-    List<T> selectedEntries = new ArrayList<>();
-    List<T> allEntries = entriesDb.getEntries();
-    for (T entry : allEntries) {
-      if (entry.getIssueDate().isBefore(endDate.plusDays(1)) && entry.getIssueDate()
-          .isAfter(beginDate.minusDays(1))) {
-        selectedEntries.add(entry);
-      }
+    return entriesDb.getEntriesByDate(beginDate, endDate);
+  }
+
+  public List<T> getEntryPage(LocalDate beginDate, LocalDate endDate, PageCursor after,
+      int pageSize) {
+    if (beginDate == null) {
+      beginDate = MIN_DATE;
+    }
+    if (endDate == null) {
+      endDate = MAX_DATE;
+    }
+    return entriesDb.getEntriesPage(beginDate, endDate, after, pageSize);
+  }
+
+  public List<T> getEntryByCompany(long companyId, LocalDate beginDate, LocalDate endDate) {
+    if (beginDate == null) {
+      beginDate = MIN_DATE;
+    }
+    if (endDate == null) {
+      endDate = MAX_DATE;
     }
-    return selectedEntries;
+    return entriesDb.getEntriesByCompany(companyId, beginDate, endDate);
   }
 
   public List<T> getEntries() {
     return entriesDb.getEntries();
   }
 
+  public Stream<T> streamEntries() {
+    return entriesDb.streamEntries();
+  }
+
+  public Stream<T> streamEntryByDate(LocalDate beginDate, LocalDate endDate) {
+    LocalDate begin = beginDate == null ? MIN_DATE : beginDate;
+    LocalDate end = endDate == null ? MAX_DATE : endDate;
+    return entriesDb.streamEntriesByDate(begin, end);
+  }
+
+  public Stream<T> streamEntryByCompany(long companyId, LocalDate beginDate,
+      LocalDate endDate) {
+    if (beginDate == null) {
+      beginDate = MIN_DATE;
+    }
+    if (endDate == null) {
+      endDate = MAX_DATE;
+    }
+    return entriesDb.streamEntriesByCompany(companyId, beginDate, endDate);
+  }
+
   public void setDefaultEntryNameIfEmpty(T entry) {
     if (entry.getName() == null || entry.getName().trim().length() == 0) {
       entry.setName("N/A");
@@ -2,31 +2,39 @@ package pl.coderstrust.service;
 
 
 import io.swagger.annotations.ApiOperation;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import pl.coderstrust.model.Company;
 import pl.coderstrust.model.Messages;
+import pl.coderstrust.service.bulk.CsvColumns;
+import pl.coderstrust.service.bulk.EntryExporter;
 import pl.coderstrust.service.filters.CompanyDummyFilter;
 
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @CrossOrigin(origins = "http://localhost:4200")
 @RequestMapping("v2/company")
 @RestController
 public class CompanyController extends AbstractController<Company> {
 
-  public CompanyController(CompanyService companyService, CompanyDummyFilter dummyFilter) {
+  public CompanyController(CompanyService companyService, CompanyDummyFilter dummyFilter,
+      EntryExporter exporter) {
     super.service = companyService;
     super.filter = dummyFilter;
+    super.exporter = exporter;
   }
 
   @RequestMapping(value = "", method = RequestMethod.POST)
@@ -46,8 +54,11 @@ public class CompanyController extends AbstractController<Company> {
 
   @RequestMapping(value = "/name", method = RequestMethod.GET)
   public ResponseEntity getCompanyByName(@RequestParam("name") String name) {
-    List<Company> selectedCompanies = service.getEntry().stream()
-        .filter(company -> company.getName().contains(name)).collect(Collectors.toList());
+    List<Company> selectedCompanies;
+    try (Stream<Company> companies = service.streamEntries()) {
+      selectedCompanies = companies
+          .filter(company -> company.getName().contains(name)).collect(Collectors.toList());
+    }
     if (selectedCompanies.isEmpty()) {
       return ResponseEntity.notFound().build();
     } else {
@@ -59,8 +70,21 @@ public class CompanyController extends AbstractController<Company> {
   @ApiOperation(value = "Returns the list of companies in the specified date range")
   public synchronized ResponseEntity getCompanyByDate(
       @RequestParam(name = "startDate", required = false) LocalDate startDate,
-      @RequestParam(name = "endDate", required = false) LocalDate endDate) {
-    return super.getEntryByDate(startDate, endDate, null);
+      @RequestParam(name = "endDate", required = false) LocalDate endDate,
+      @RequestParam(name = "pageSize", required = false) Integer pageSize,
+      @RequestParam(name = "cursor", required = false) String cursor) {
+    return super.getEntryByDate(startDate, endDate, null, pageSize, cursor);
+  }
+
+  @RequestMapping(value = "/export", method = RequestMethod.GET)
+  @ApiOperation(value = "Streams the companies in the specified date range as NDJSON or CSV")
+  public ResponseEntity<StreamingResponseBody> exportCompanies(
+      @RequestParam(name = "startDate", required = false) LocalDate startDate,
+      @RequestParam(name = "endDate", required = false) LocalDate endDate,
+      @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept,
+      @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false)
+          String acceptEncoding) {
+    return super.exportEntries(startDate, endDate, accept, acceptEncoding, CsvColumns.COMPANIES);
   }
 
   @RequestMapping(value = "/nip/{nip}", method = RequestMethod.GET)
@@ -18,12 +18,13 @@ public class CompanyService extends AbstractService<Company> {
 
   @Override
   public boolean nipExist(String nip) {
-    return entriesDb.getEntries().stream().anyMatch(company -> company.getNip().equals(nip));
+    return entriesDb.getEntriesByNip(nip).stream()
+        .anyMatch(company -> company.getNip().equals(nip));
   }
 
   @Override
   public Company getEntryByNip(String nip) {
-    Optional<Company> companyWithProvidedNip = entriesDb.getEntries().stream()
+    Optional<Company> companyWithProvidedNip = entriesDb.getEntriesByNip(nip).stream()
         .filter(company -> company.getNip().equals(nip)).findAny();
     return companyWithProvidedNip.orElse(null);
   }
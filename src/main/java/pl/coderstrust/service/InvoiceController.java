@@ -3,28 +3,44 @@ package pl.coderstrust.service;
 import io.swagger.annotations.ApiOperation;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import pl.coderstrust.model.Invoice;
+import pl.coderstrust.service.bulk.BulkMediaTypes;
+import pl.coderstrust.service.bulk.CsvColumns;
+import pl.coderstrust.service.bulk.EntryExporter;
+import pl.coderstrust.service.bulk.InvoiceImporter;
 import pl.coderstrust.service.filters.InvoiceDummyFilter;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDate;
+import java.util.List;
+import javax.servlet.http.HttpServletResponse;
 
 @CrossOrigin(origins = "http://localhost:4200")
 @RequestMapping("v1/invoice")
 @RestController
 public class InvoiceController extends AbstractController<Invoice> {
 
-  public InvoiceController(InvoiceService invoiceService, InvoiceDummyFilter dummyFilter) {
+  private InvoiceImporter importer;
+
+  public InvoiceController(InvoiceService invoiceService, InvoiceDummyFilter dummyFilter,
+      InvoiceImporter importer, EntryExporter exporter) {
     super.service = invoiceService;
     super.filter = dummyFilter;
+    super.exporter = exporter;
+    this.importer = importer;
   }
 
   @RequestMapping(value = "", method = RequestMethod.POST)
@@ -33,6 +49,36 @@ public class InvoiceController extends AbstractController<Invoice> {
     return super.addEntry(invoice, null);
   }
 
+  @RequestMapping(value = "/batch", method = RequestMethod.POST)
+  @ApiOperation(value = "Adds all the invoices or none of them and returns their ids")
+  public synchronized ResponseEntity addInvoices(@RequestBody List<Invoice> invoices) {
+    return super.addEntries(invoices);
+  }
+
+  /**
+   * Not synchronized like the other endpoints, as an upload may take long and the importer
+   * stores its invoices with the same service methods.
+   */
+  @RequestMapping(value = "/import", method = RequestMethod.POST,
+      consumes = {BulkMediaTypes.NDJSON_VALUE, BulkMediaTypes.CSV_VALUE})
+  @ApiOperation(value = "Adds the invoices of an NDJSON or CSV upload, reporting every invoice")
+  public void importInvoices(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+      InputStream upload, HttpServletResponse response) throws IOException {
+    response.setContentType(BulkMediaTypes.NDJSON_VALUE);
+    importer.importInvoices(upload, contentType, response.getOutputStream());
+  }
+
+  @RequestMapping(value = "/export", method = RequestMethod.GET)
+  @ApiOperation(value = "Streams the invoices in the specified date range as NDJSON or CSV")
+  public ResponseEntity<StreamingResponseBody> exportInvoices(
+      @RequestParam(name = "startDate", required = false) LocalDate startDate,
+      @RequestParam(name = "endDate", required = false) LocalDate endDate,
+      @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept,
+      @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false)
+          String acceptEncoding) {
+    return super.exportEntries(startDate, endDate, accept, acceptEncoding, CsvColumns.INVOICES);
+  }
+
   @RequestMapping(value = "/{id}", method = RequestMethod.GET)
   @ApiOperation(value = "Returns the invoice by id")
   public synchronized ResponseEntity getInvoiceById(@PathVariable("id") Long invoiceId) {
@@ -43,8 +89,10 @@ public class InvoiceController extends AbstractController<Invoice> {
   @ApiOperation(value = "Returns the list of invoices in the specified date range")
   public synchronized ResponseEntity getInvoiceByDate(
       @RequestParam(name = "startDate", required = false) LocalDate startDate,
-      @RequestParam(name = "endDate", required = false) LocalDate endDate) {
-    return super.getEntryByDate(startDate, endDate, null);
+      @RequestParam(name = "endDate", required = false) LocalDate endDate,
+      @RequestParam(name = "pageSize", required = false) Integer pageSize,
+      @RequestParam(name = "cursor", required = false) String cursor) {
+    return super.getEntryByDate(startDate, endDate, null, pageSize, cursor);
   }
 
   @RequestMapping(value = "/{id}", method = RequestMethod.PUT)
@@ -49,8 +49,10 @@ public class InvoiceControllerMultiCompanies extends AbstractController<Invoice>
   public synchronized ResponseEntity getInvoiceByDatePerCompany(
       @PathVariable("companyId") Long companyId,
       @RequestParam(name = "startDate", required = false) LocalDate startDate,
-      @RequestParam(name = "endDate", required = false) LocalDate endDate) {
-    return super.getEntryByDate(startDate, endDate, companyId);
+      @RequestParam(name = "endDate", required = false) LocalDate endDate,
+      @RequestParam(name = "pageSize", required = false) Integer pageSize,
+      @RequestParam(name = "cursor", required = false) String cursor) {
+    return super.getEntryByDate(startDate, endDate, companyId, pageSize, cursor);
   }
 
   @RequestMapping(value = "/{invoiceId}", method = RequestMethod.PUT)
@@ -4,9 +4,15 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import pl.coderstrust.database.Database;
+import pl.coderstrust.model.Company;
 import pl.coderstrust.model.Invoice;
 import pl.coderstrust.service.pdf.PdfGenerator;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 @Service
 public class InvoiceService extends AbstractService<Invoice> {
 
@@ -28,6 +34,36 @@ public class InvoiceService extends AbstractService<Invoice> {
     return entriesDb.addEntry(entry);
   }
 
+  /**
+   * Companies repeated across the batch are looked up or added once. The batch is added all or
+   * nothing, so when it fails the companies added for it are deleted again.
+   */
+  @Override
+  public List<Long> addEntries(List<Invoice> entries) {
+    Map<String, Company> companiesByNip = new HashMap<>();
+    List<Long> addedCompanyIds = new ArrayList<>();
+    try {
+      for (Invoice entry : entries) {
+        entry.setId(-1);
+        entry.setBuyer(companiesByNip.computeIfAbsent(entry.getBuyer().getNip(),
+            nip -> getOrAddCompany(entry.getBuyer(), addedCompanyIds)));
+        entry.setSeller(companiesByNip.computeIfAbsent(entry.getSeller().getNip(),
+            nip -> getOrAddCompany(entry.getSeller(), addedCompanyIds)));
+        super.setDefaultEntryNameIfEmpty(entry);
+      }
+      return entriesDb.addEntries(entries);
+    } catch (RuntimeException ex) {
+      for (long companyId : addedCompanyIds) {
+        try {
+          companyService.deleteEntry(companyId);
+        } catch (RuntimeException deleteException) {
+          ex.addSuppressed(deleteException);
+        }
+      }
+      throw ex;
+    }
+  }
+
   @Override
   public void updateEntry(Invoice entry) {
     checkIfCompaniesExistInDbAndAddIfNot(entry);
@@ -36,17 +72,20 @@ public class InvoiceService extends AbstractService<Invoice> {
   }
 
   private void checkIfCompaniesExistInDbAndAddIfNot(Invoice invoice) {
-    if (companyService.nipExist(invoice.getBuyer().getNip())) {
-      invoice.setBuyer(companyService.getEntryByNip(invoice.getBuyer().getNip()));
-    } else {
-      long buyerId = companyService.addEntry(invoice.getBuyer());
-      invoice.setBuyer(companyService.findEntry(buyerId));
-    }
-    if (companyService.nipExist(invoice.getSeller().getNip())) {
-      invoice.setSeller(companyService.getEntryByNip(invoice.getSeller().getNip()));
-    } else {
-      long buyerId = companyService.addEntry(invoice.getSeller());
-      invoice.setSeller(companyService.findEntry(buyerId));
+    invoice.setBuyer(getOrAddCompany(invoice.getBuyer()));
+    invoice.setSeller(getOrAddCompany(invoice.getSeller()));
+  }
+
+  private Company getOrAddCompany(Company company) {
+    return getOrAddCompany(company, new ArrayList<>());
+  }
+
+  private Company getOrAddCompany(Company company, List<Long> addedCompanyIds) {
+    if (companyService.nipExist(company.getNip())) {
+      return companyService.getEntryByNip(company.getNip());
     }
+    long companyId = companyService.addEntry(company);
+    addedCompanyIds.add(companyId);
+    return companyService.findEntry(companyId);
   }
 }
\ No newline at end of file
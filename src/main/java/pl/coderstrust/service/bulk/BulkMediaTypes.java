@@ -0,0 +1,33 @@
+package pl.coderstrust.service.bulk;
+
+import org.springframework.http.MediaType;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Formats of bulk uploads and downloads, which are read and written a line at a time.
+ */
+public final class BulkMediaTypes {
+
+  public static final String NDJSON_VALUE = "application/x-ndjson";
+  public static final MediaType NDJSON = MediaType.valueOf(NDJSON_VALUE);
+  public static final String CSV_VALUE = "text/csv";
+  public static final MediaType CSV = MediaType.valueOf(CSV_VALUE);
+
+  private BulkMediaTypes() {
+  }
+
+  /**
+   * The bulk format named by the types, NDJSON if both are, or null if neither is. Wildcards
+   * don't name one, as bulk responses aren't buffered and so must be asked for explicitly.
+   */
+  public static MediaType select(List<MediaType> types) {
+    for (MediaType bulkType : Arrays.asList(NDJSON, CSV)) {
+      if (types.stream().anyMatch(bulkType::includes)) {
+        return bulkType;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,93 @@
+package pl.coderstrust.service.bulk;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Columns of a CSV export, named by JSON properties with nested ones joined by dots, like the
+ * ones {@link CsvInvoiceReader} reads. Elements of the repeated field, e.g. the products of an
+ * invoice, get a row each. Rows after the first one of an entry leave the other columns empty.
+ */
+public final class CsvColumns {
+
+  public static final CsvColumns INVOICES = new CsvColumns(
+      Arrays.asList("invoiceId", "name", "issueDate", "paymentDate", "paymentState",
+          "buyer.name", "buyer.issueDate", "buyer.address", "buyer.city", "buyer.zipCode",
+          "buyer.nip", "buyer.bankAccountNumber", "seller.name", "seller.issueDate",
+          "seller.address", "seller.city", "seller.zipCode", "seller.nip",
+          "seller.bankAccountNumber"),
+      "products",
+      Arrays.asList("product.name", "product.description", "product.netValue",
+          "product.vatRate", "product.productType", "amount"));
+  public static final CsvColumns COMPANIES = new CsvColumns(
+      Arrays.asList("companyId", "name", "issueDate", "address", "city", "zipCode", "nip",
+          "bankAccountNumber", "taxType", "personalCarUsage"),
+      null, Collections.emptyList());
+
+  private static final String PATH_SEPARATOR = ".";
+  private static final String EMPTY = "";
+
+  private final List<String> names = new ArrayList<>();
+  private final List<JsonPointer> entryColumns = new ArrayList<>();
+  private final JsonPointer repeatedField;
+  private final List<JsonPointer> repeatedColumns = new ArrayList<>();
+
+  private CsvColumns(List<String> entryColumns, String repeatedField,
+      List<String> repeatedColumns) {
+    for (String column : entryColumns) {
+      names.add(column);
+      this.entryColumns.add(toPointer(column));
+    }
+    this.repeatedField = repeatedField == null ? null : toPointer(repeatedField);
+    for (String column : repeatedColumns) {
+      names.add(repeatedField + PATH_SEPARATOR + column);
+      this.repeatedColumns.add(toPointer(column));
+    }
+  }
+
+  List<String> getNames() {
+    return names;
+  }
+
+  /**
+   * Rows of one entry, at least one even when its repeated field is empty.
+   */
+  List<String[]> toRows(JsonNode entry) {
+    List<String[]> rows = new ArrayList<>();
+    JsonNode elements = repeatedField == null ? null : entry.at(repeatedField);
+    if (elements == null || elements.size() == 0) {
+      rows.add(toRow(entry, null));
+      return rows;
+    }
+    rows.add(toRow(entry, elements.get(0)));
+    for (int i = 1; i < elements.size(); i++) {
+      rows.add(toRow(null, elements.get(i)));
+    }
+    return rows;
+  }
+
+  private String[] toRow(JsonNode entry, JsonNode element) {
+    String[] row = new String[names.size()];
+    int column = 0;
+    for (JsonPointer pointer : entryColumns) {
+      row[column++] = entry == null ? EMPTY : toValue(entry.at(pointer));
+    }
+    for (JsonPointer pointer : repeatedColumns) {
+      row[column++] = element == null ? EMPTY : toValue(element.at(pointer));
+    }
+    return row;
+  }
+
+  private String toValue(JsonNode node) {
+    return node.isValueNode() && !node.isNull() ? node.asText() : EMPTY;
+  }
+
+  private static JsonPointer toPointer(String path) {
+    return JsonPointer.compile("/" + path.replace(PATH_SEPARATOR, "/"));
+  }
+}
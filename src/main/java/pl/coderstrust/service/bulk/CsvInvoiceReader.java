@@ -0,0 +1,136 @@
+package pl.coderstrust.service.bulk;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import pl.coderstrust.model.Invoice;
+import pl.coderstrust.model.Messages;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Reads invoices from CSV with a header row naming the JSON properties of the invoice, nested
+ * ones with dots, e.g. buyer.nip or products.product.netValue. Every row holds one product of
+ * the invoice. A row whose columns outside products are all empty adds its product to the
+ * invoice of the previous row. Lines are counted as rows, so quoted values mustn't span lines.
+ */
+class CsvInvoiceReader implements InvoiceReader {
+
+  private static final String PRODUCTS_PREFIX = "products.";
+  private static final String PRODUCTS_FIELD = "products";
+  private static final String PATH_SEPARATOR = "\\.";
+
+  private final ObjectMapper mapper;
+  private final MappingIterator<Map<String, String>> rows;
+  private Map<String, String> row;
+  // header is the first line
+  private long rowLine = 1;
+  private boolean broken;
+  // line of the row which isn't CSV, until it's reported
+  private long brokenLine = -1;
+
+  CsvInvoiceReader(InputStream upload, ObjectMapper mapper) throws IOException {
+    this.mapper = mapper;
+    rows = new CsvMapper().readerFor(Map.class)
+        .with(CsvSchema.emptySchema().withHeader())
+        .readValues(upload);
+  }
+
+  @Override
+  public ImportLine next() throws IOException {
+    if (row == null && !readRow()) {
+      return takeBrokenLine();
+    }
+    long line = rowLine;
+    ObjectNode invoice = mapper.createObjectNode();
+    ArrayNode products = invoice.putArray(PRODUCTS_FIELD);
+    putRow(invoice, products);
+    while (readRow() && isContinuation(row)) {
+      putRow(invoice, products);
+    }
+    try {
+      return ImportLine.parsed(line, mapper.treeToValue(invoice, Invoice.class));
+    } catch (JsonProcessingException ex) {
+      return ImportLine.failed(line, Messages.IMPORT_LINE_INCORRECT);
+    }
+  }
+
+  /**
+   * Moves to the next row. A row which isn't CSV stops the import, as the parser can't tell
+   * where the following one starts.
+   */
+  private boolean readRow() throws IOException {
+    row = null;
+    if (broken) {
+      return false;
+    }
+    try {
+      if (!rows.hasNextValue()) {
+        return false;
+      }
+      row = rows.nextValue();
+      rowLine++;
+      return true;
+    } catch (JsonProcessingException ex) {
+      broken = true;
+      brokenLine = ++rowLine;
+      return false;
+    }
+  }
+
+  private ImportLine takeBrokenLine() {
+    if (brokenLine < 0) {
+      return null;
+    }
+    ImportLine failed = ImportLine.failed(brokenLine, Messages.IMPORT_LINE_INCORRECT);
+    brokenLine = -1;
+    return failed;
+  }
+
+  private boolean isContinuation(Map<String, String> row) {
+    return row.entrySet().stream()
+        .allMatch(column -> column.getKey().startsWith(PRODUCTS_PREFIX)
+            || isEmpty(column.getValue()));
+  }
+
+  private void putRow(ObjectNode invoice, ArrayNode products) {
+    ObjectNode product = mapper.createObjectNode();
+    for (Map.Entry<String, String> column : row.entrySet()) {
+      if (isEmpty(column.getValue())) {
+        continue;
+      }
+      if (column.getKey().startsWith(PRODUCTS_PREFIX)) {
+        putPath(product, column.getKey().substring(PRODUCTS_PREFIX.length()), column.getValue());
+      } else {
+        putPath(invoice, column.getKey(), column.getValue());
+      }
+    }
+    if (product.size() > 0) {
+      products.add(product);
+    }
+  }
+
+  private boolean isEmpty(String value) {
+    return value == null || value.trim().isEmpty();
+  }
+
+  private void putPath(ObjectNode node, String path, String value) {
+    String[] fields = path.split(PATH_SEPARATOR);
+    ObjectNode parent = node;
+    for (int i = 0; i < fields.length - 1; i++) {
+      parent = parent.with(fields[i]);
+    }
+    parent.put(fields[fields.length - 1], value);
+  }
+
+  @Override
+  public void close() throws IOException {
+    rows.close();
+  }
+}
@@ -0,0 +1,100 @@
+package pl.coderstrust.service.bulk;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import pl.coderstrust.model.WithNameIdIssueDate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes entries as NDJSON or as CSV while they're read from the stream, so only the entry being
+ * written and the buffers of the generator are held in memory. The output is flushed after every
+ * batch of entries, so the client gets them as the export goes on.
+ */
+@Service
+public class EntryExporter {
+
+  static final int BATCH_SIZE = 500;
+  private static final int GZIP_BUFFER_SIZE = 8192;
+  private static final char LINE_SEPARATOR = '\n';
+
+  private final ObjectMapper mapper;
+  // CSV values are read from the JSON tree, which must hold dates as text
+  private final ObjectMapper treeMapper;
+  private final CsvMapper csvMapper = new CsvMapper();
+
+  @Autowired
+  public EntryExporter(ObjectMapper mapper) {
+    this.mapper = mapper;
+    treeMapper = mapper.copy().disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+  }
+
+  /**
+   * Writes the entries in the given bulk format, gzipped when asked to. The output is finished
+   * but left open.
+   */
+  public void export(Stream<? extends WithNameIdIssueDate> entries, MediaType format,
+      CsvColumns columns, boolean gzip, OutputStream output) throws IOException {
+    // sync flush makes the batches leave the deflater before the export ends
+    OutputStream target = gzip ? new GZIPOutputStream(output, GZIP_BUFFER_SIZE, true) : output;
+    if (BulkMediaTypes.CSV.includes(format)) {
+      writeCsv(entries.iterator(), columns, target);
+    } else {
+      writeNdjson(entries.iterator(), target);
+    }
+    if (gzip) {
+      ((GZIPOutputStream) target).finish();
+    }
+    output.flush();
+  }
+
+  private void writeNdjson(Iterator<? extends WithNameIdIssueDate> entries, OutputStream target)
+      throws IOException {
+    ObjectWriter writer = mapper.writer()
+        .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    try (JsonGenerator generator = mapper.getFactory().createGenerator(target)) {
+      generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      generator.setRootValueSeparator(null);
+      int written = 0;
+      while (entries.hasNext()) {
+        writer.writeValue(generator, entries.next());
+        generator.writeRaw(LINE_SEPARATOR);
+        if (++written % BATCH_SIZE == 0) {
+          generator.flush();
+        }
+      }
+    }
+  }
+
+  private void writeCsv(Iterator<? extends WithNameIdIssueDate> entries, CsvColumns columns,
+      OutputStream target) throws IOException {
+    CsvSchema.Builder schema = CsvSchema.builder().setUseHeader(true);
+    columns.getNames().forEach(schema::addColumn);
+    try (SequenceWriter rows = csvMapper.writer(schema.build())
+        .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+        .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+        .writeValues(target)) {
+      int written = 0;
+      while (entries.hasNext()) {
+        for (String[] row : columns.toRows(treeMapper.valueToTree(entries.next()))) {
+          rows.write(row);
+        }
+        if (++written % BATCH_SIZE == 0) {
+          rows.flush();
+        }
+      }
+    }
+  }
+}
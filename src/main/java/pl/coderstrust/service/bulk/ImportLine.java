@@ -0,0 +1,64 @@
+package pl.coderstrust.service.bulk;
+
+import pl.coderstrust.model.Invoice;
+import pl.coderstrust.model.Messages;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Invoice read from an upload, or the reason it couldn't be read, on its way through the import
+ * pipeline.
+ */
+class ImportLine {
+
+  private final long line;
+  private final Invoice invoice;
+  private CompletableFuture<List<String>> errors;
+
+  private ImportLine(long line, Invoice invoice, List<String> errors) {
+    this.line = line;
+    this.invoice = invoice;
+    this.errors = errors == null ? null : CompletableFuture.completedFuture(errors);
+  }
+
+  static ImportLine parsed(long line, Invoice invoice) {
+    return new ImportLine(line, invoice, null);
+  }
+
+  static ImportLine failed(long line, String error) {
+    return new ImportLine(line, null, Collections.singletonList(error));
+  }
+
+  /**
+   * Starts validating the invoice on the executor, unless reading it already failed.
+   */
+  void validate(Executor validators) {
+    if (errors == null) {
+      errors = CompletableFuture.supplyAsync(this::validateInvoice, validators);
+    }
+  }
+
+  private List<String> validateInvoice() {
+    try {
+      return invoice.validate();
+    } catch (NullPointerException ex) {
+      // validation expects the companies and products to be there
+      return Collections.singletonList(Messages.IMPORT_LINE_INCORRECT);
+    }
+  }
+
+  List<String> getErrors() {
+    return errors.join();
+  }
+
+  long getLine() {
+    return line;
+  }
+
+  Invoice getInvoice() {
+    return invoice;
+  }
+}
@@ -0,0 +1,205 @@
+package pl.coderstrust.service.bulk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import pl.coderstrust.model.ImportResult;
+import pl.coderstrust.model.Invoice;
+import pl.coderstrust.model.Messages;
+import pl.coderstrust.service.InvoiceService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+
+/**
+ * Adds the invoices of an NDJSON or CSV upload and writes an NDJSON report with the result of
+ * every invoice, in upload order. Reading, validation on a worker pool and batched inserts run as
+ * a pipeline joined by a bounded queue, so memory use doesn't grow with the upload. The report of
+ * a batch is flushed as soon as the batch is stored. At most MAX_CONCURRENT_IMPORTS uploads are
+ * stored at once, later ones wait for one of them to finish.
+ */
+@Service
+public class InvoiceImporter {
+
+  static final int BATCH_SIZE = 500;
+  private static final int QUEUE_CAPACITY = 2 * BATCH_SIZE;
+  private static final long OFFER_TIMEOUT_MILLIS = 100;
+  private static final int MAX_CONCURRENT_IMPORTS = 4;
+  private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+  private static final ImportLine END_OF_UPLOAD = ImportLine.failed(-1, null);
+  private static final byte LINE_SEPARATOR = '\n';
+  private final Logger logger = LoggerFactory.getLogger(InvoiceImporter.class);
+
+  private final InvoiceService invoiceService;
+  private final ObjectMapper mapper;
+  private final ExecutorService validators;
+  private final ExecutorService inserters;
+
+  @Autowired
+  public InvoiceImporter(InvoiceService invoiceService, ObjectMapper mapper) {
+    this.invoiceService = invoiceService;
+    this.mapper = mapper;
+    validators = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+        runnable -> {
+          Thread thread = new Thread(runnable, "InvoiceImporter-validation");
+          thread.setDaemon(true);
+          return thread;
+        });
+    inserters = Executors.newFixedThreadPool(MAX_CONCURRENT_IMPORTS, runnable -> {
+      Thread thread = new Thread(runnable, "InvoiceImporter-insert");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Lets imports under way finish for a while, then stops them. Validators are stopped last, as
+   * they're used until an import ends.
+   */
+  @PreDestroy
+  public void shutdown() {
+    inserters.shutdown();
+    try {
+      if (!inserters.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        inserters.shutdownNow();
+      }
+    } catch (InterruptedException ex) {
+      inserters.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+    validators.shutdownNow();
+  }
+
+  /**
+   * Reads the upload on the calling thread while another one stores the validated invoices and
+   * writes the report. Returns once the whole upload is stored and reported.
+   */
+  public void importInvoices(InputStream upload, MediaType contentType, OutputStream report)
+      throws IOException {
+    BlockingQueue<ImportLine> lines = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    Future<?> inserting = inserters.submit(() -> {
+      insertLines(lines, report);
+      return null;
+    });
+    try (InvoiceReader reader = BulkMediaTypes.CSV.includes(contentType)
+        ? new CsvInvoiceReader(upload, mapper) : new NdjsonInvoiceReader(upload, mapper)) {
+      ImportLine line;
+      while ((line = reader.next()) != null) {
+        line.validate(validators);
+        if (!enqueue(lines, line, inserting)) {
+          break;
+        }
+      }
+    } finally {
+      enqueue(lines, END_OF_UPLOAD, inserting);
+      awaitInserting(inserting);
+    }
+  }
+
+  /**
+   * Waits for room in the queue, giving up when the inserting side has stopped, e.g. because the
+   * client went away.
+   */
+  private boolean enqueue(BlockingQueue<ImportLine> lines, ImportLine line, Future<?> inserting)
+      throws InterruptedIOException {
+    try {
+      while (!lines.offer(line, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+        if (inserting.isDone()) {
+          return false;
+        }
+      }
+      return true;
+    } catch (InterruptedException ex) {
+      inserting.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+  }
+
+  private void awaitInserting(Future<?> inserting) throws IOException {
+    try {
+      inserting.get();
+    } catch (InterruptedException ex) {
+      inserting.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof IOException) {
+        throw (IOException) ex.getCause();
+      }
+      if (ex.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) ex.getCause();
+      }
+      throw new IllegalStateException(ex.getCause());
+    }
+  }
+
+  private void insertLines(BlockingQueue<ImportLine> lines, OutputStream report)
+      throws IOException, InterruptedException {
+    List<ImportLine> batch = new ArrayList<>(BATCH_SIZE);
+    while (true) {
+      ImportLine line = lines.take();
+      if (line == END_OF_UPLOAD) {
+        break;
+      }
+      batch.add(line);
+      if (batch.size() == BATCH_SIZE) {
+        insertBatch(batch, report);
+        batch.clear();
+      }
+    }
+    insertBatch(batch, report);
+  }
+
+  /**
+   * Stores the valid invoices of the batch with one batch write, so companies they share are
+   * looked up once, then reports every line of it.
+   */
+  private void insertBatch(List<ImportLine> batch, OutputStream report) throws IOException {
+    List<Invoice> valid = new ArrayList<>(batch.size());
+    for (ImportLine line : batch) {
+      if (line.getErrors().isEmpty()) {
+        valid.add(line.getInvoice());
+      }
+    }
+    List<Long> ids = null;
+    if (!valid.isEmpty()) {
+      try {
+        ids = invoiceService.addEntries(valid);
+      } catch (RuntimeException ex) {
+        logger.warn(" from insertBatch (InvoiceImporter): " + Messages.IMPORT_NOT_STORED, ex);
+      }
+    }
+    int stored = 0;
+    for (ImportLine line : batch) {
+      ImportResult result;
+      if (!line.getErrors().isEmpty()) {
+        result = new ImportResult(line.getLine(), null, line.getErrors());
+      } else if (ids == null) {
+        result = new ImportResult(line.getLine(), null,
+            Collections.singletonList(Messages.IMPORT_NOT_STORED));
+      } else {
+        result = new ImportResult(line.getLine(), ids.get(stored++), null);
+      }
+      report.write(mapper.writeValueAsBytes(result));
+      report.write(LINE_SEPARATOR);
+    }
+    report.flush();
+  }
+}
@@ -0,0 +1,13 @@
+package pl.coderstrust.service.bulk;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+interface InvoiceReader extends Closeable {
+
+  /**
+   * The next invoice of the upload, or null at its end. Invoices which can't be read are
+   * returned as failed lines, so the import goes on with the following ones.
+   */
+  ImportLine next() throws IOException;
+}
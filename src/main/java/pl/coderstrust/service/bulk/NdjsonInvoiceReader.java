@@ -0,0 +1,50 @@
+package pl.coderstrust.service.bulk;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import pl.coderstrust.model.Invoice;
+import pl.coderstrust.model.Messages;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads one JSON invoice per line. Every line gets its own parser, so a malformed line only
+ * fails itself. Blank lines are skipped.
+ */
+class NdjsonInvoiceReader implements InvoiceReader {
+
+  private final BufferedReader reader;
+  private final ObjectMapper mapper;
+  private long lineNumber;
+
+  NdjsonInvoiceReader(InputStream upload, ObjectMapper mapper) {
+    this.reader = new BufferedReader(new InputStreamReader(upload, StandardCharsets.UTF_8));
+    this.mapper = mapper;
+  }
+
+  @Override
+  public ImportLine next() throws IOException {
+    String line;
+    do {
+      line = reader.readLine();
+      if (line == null) {
+        return null;
+      }
+      lineNumber++;
+    } while (line.trim().isEmpty());
+    try {
+      return ImportLine.parsed(lineNumber, mapper.readValue(line, Invoice.class));
+    } catch (JsonProcessingException ex) {
+      return ImportLine.failed(lineNumber, Messages.IMPORT_LINE_INCORRECT);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+}
@@ -4,6 +4,7 @@ import pl.coderstrust.model.WithNameIdIssueDate;
 import pl.coderstrust.model.WithValidation;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface EntriesFilter<T extends WithNameIdIssueDate & WithValidation> {
 
@@ -23,4 +24,8 @@ public interface EntriesFilter<T extends WithNameIdIssueDate & WithValidation> {
     return entries;
   }
 
+  default Stream<T> filterByField(Stream<T> entries, long filterKey) {
+    return entries;
+  }
+
 }
\ No newline at end of file
@@ -8,6 +8,7 @@ import pl.coderstrust.model.Invoice;
 
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class InvoiceByCompanyFilter implements EntriesFilter<Invoice> {
@@ -36,11 +37,15 @@ public class InvoiceByCompanyFilter implements EntriesFilter<Invoice> {
 
   @Override
   public List<Invoice> filterByField(List<Invoice> entries, long companyId) {
-    return entries.stream()
-        .filter(line -> hasBuyerOrSeller(line, companyId))
+    return filterByField(entries.stream(), companyId)
         .collect(Collectors.toList());
   }
 
+  @Override
+  public Stream<Invoice> filterByField(Stream<Invoice> entries, long companyId) {
+    return entries.filter(line -> hasBuyerOrSeller(line, companyId));
+  }
+
   private boolean hasBuyerOrSeller(Invoice entry, long filterId) {
     return entry.getSeller().getId() == filterId
         || entry.getBuyer().getId() == filterId;
@@ -17,13 +17,12 @@ import pl.coderstrust.service.CompanyService;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
-import java.util.ArrayList;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
 import javax.annotation.Resource;
 
 @Service
@@ -46,26 +45,26 @@ public class TaxCalculatorService {
   BigDecimal calculateIncome(long companyId, LocalDate beginDate, LocalDate endDate) {
     Function<Invoice, BigDecimal> getValueFunction = x -> getCompanyIdSeller(companyId).test(x)
         ? getNetValue(x) : BigDecimal.ZERO;
-    return calculatePattern(getValueFunction, beginDate, endDate);
+    return calculatePattern(getValueFunction, companyId, beginDate, endDate);
   }
 
   BigDecimal calculateCost(long companyId, LocalDate beginDate, LocalDate endDate) {
     Function<Invoice, BigDecimal> getValueFunction = x -> getCompanyIdBuyer(companyId).test(x)
         ? getCostValue(x, companyService.findEntry(companyId)) : BigDecimal.ZERO;
-    return calculatePattern(getValueFunction, beginDate, endDate);
+    return calculatePattern(getValueFunction, companyId, beginDate, endDate);
   }
 
   BigDecimal calculateIncomeVat(long companyId, LocalDate beginDate, LocalDate endDate) {
     Function<Invoice, BigDecimal> getValueFunction = x -> getCompanyIdBuyer(companyId).test(x)
         ? getIncomeVatValue(x, companyService.findEntry(companyId)) : BigDecimal.ZERO;
-    return calculatePattern(getValueFunction, beginDate, endDate);
+    return calculatePattern(getValueFunction, companyId, beginDate, endDate);
   }
 
   BigDecimal calculateOutcomeVat(long companyId, LocalDate beginDate,
       LocalDate endDate) {
     Function<Invoice, BigDecimal> getValueFunction = x -> getCompanyIdSeller(companyId).test(x)
         ? getVatValue(x) : BigDecimal.ZERO;
-    return calculatePattern(getValueFunction, beginDate, endDate);
+    return calculatePattern(getValueFunction, companyId, beginDate, endDate);
   }
 
   BigDecimal calculateIncomeTaxAdvance(long companyId,
@@ -209,12 +208,10 @@ public class TaxCalculatorService {
   }
 
   private BigDecimal calculatePattern(Function<Invoice, BigDecimal> getValueFunction,
-      LocalDate beginDate, LocalDate endDate) {
-    BigDecimal income = BigDecimal.valueOf(0);
-    for (Invoice invoice : getInvoiceByDate(beginDate, endDate)) {
-      income = income.add(getValueFunction.apply(invoice));
+      long companyId, LocalDate beginDate, LocalDate endDate) {
+    try (Stream<Invoice> invoices = streamInvoiceByDate(companyId, beginDate, endDate)) {
+      return invoices.map(getValueFunction).reduce(BigDecimal.valueOf(0), BigDecimal::add);
     }
-    return income;
   }
 
   private BigDecimal getCostValue(Invoice invoice, Company company) {
@@ -266,23 +263,15 @@ public class TaxCalculatorService {
     return vatValue;
   }
 
-  private List<Invoice> getInvoiceByDate(LocalDate beginDate, LocalDate endDate) {
+  private Stream<Invoice> streamInvoiceByDate(long companyId, LocalDate beginDate,
+      LocalDate endDate) {
     if (beginDate == null) {
       beginDate = LocalDate.MIN;
     }
     if (endDate == null) {
       endDate = LocalDate.MAX;
     }
-    List<Invoice> selectedInvoices = new ArrayList<>();
-    List<Invoice> allInvoices = database.getEntries();
-    for (Invoice invoice : allInvoices) {
-      if ((invoice.getIssueDate().isBefore(endDate) || invoice.getIssueDate().isEqual(endDate))
-          && (invoice.getIssueDate().isAfter(beginDate) || invoice.getIssueDate()
-          .isEqual(beginDate))) {
-        selectedInvoices.add(invoice);
-      }
-    }
-    return selectedInvoices;
+    return database.streamEntriesByCompany(companyId, beginDate, endDate);
   }
 
   //Method adds half of product vat to cost if needed. Polish tax system.
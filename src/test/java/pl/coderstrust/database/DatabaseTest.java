@@ -12,9 +12,14 @@ import org.junit.rules.ExpectedException;
 import pl.coderstrust.helpers.TestCasesGenerator;
 import pl.coderstrust.model.Invoice;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public abstract class DatabaseTest {
 
@@ -136,6 +141,59 @@ public abstract class DatabaseTest {
     assertThat(output, is(equalTo(expected)));
   }
 
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldAddSeveralInvoicesInOneBatch() {
+    //given
+    givenDatabase = getCleanDatabase();
+    List<Invoice> invoices = new ArrayList<>();
+    for (int i = 0; i < INVOICES_COUNT; i++) {
+      invoices.add(generator.getTestInvoice(i, INVOICE_ENTRIES_COUNT));
+    }
+    //when
+    List<Long> ids = givenDatabase.addEntries(invoices);
+    //then
+    assertThat(ids.size(), is(INVOICES_COUNT));
+    for (int i = 0; i < INVOICES_COUNT; i++) {
+      assertThat(mapper.toJson(givenDatabase.getEntryById(ids.get(i))),
+          is(equalTo(mapper.toJson(invoices.get(i)))));
+    }
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldUpdateSeveralInvoicesInOneBatch() {
+    //given
+    List<Invoice> invoices = new ArrayList<>();
+    for (int i = 0; i < INVOICES_COUNT; i++) {
+      givenInvoice = generator.getTestInvoice(i + 1, INVOICE_ENTRIES_COUNT);
+      givenInvoice.setId(invoiceIds[i]);
+      invoices.add(givenInvoice);
+      expected[i] = mapper.toJson(givenInvoice);
+    }
+    //when
+    givenDatabase.updateEntries(invoices);
+    //then
+    for (int i = 0; i < INVOICES_COUNT; i++) {
+      output[i] = mapper.toJson(givenDatabase.getEntryById(invoiceIds[i]));
+    }
+    assertThat(output, is(equalTo(expected)));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldDeleteSeveralInvoicesInOneBatch() {
+    //given
+    List<Long> ids = Arrays.stream(invoiceIds).boxed().collect(Collectors.toList());
+    //when
+    givenDatabase.deleteEntries(ids);
+    //then
+    for (long id : ids) {
+      assertThat(givenDatabase.idExist(id), is(false));
+    }
+    assertThat(givenDatabase.getEntries().size(), is(0));
+  }
+
   @Test
   @SuppressWarnings("unchecked")
   public void shouldGetAllInvoices() {
@@ -149,6 +207,115 @@ public abstract class DatabaseTest {
     assertThat(output, is(equalTo(expected)));
   }
 
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldStreamAllInvoices() {
+    //when
+    List<Invoice> allInvoices;
+    try (Stream<Invoice> entries = givenDatabase.streamEntries()) {
+      allInvoices = entries
+          .sorted(Comparator.comparingLong(Invoice::getId))
+          .collect(Collectors.toList());
+    }
+    //then
+    String[] output = new String[allInvoices.size()];
+    for (int i = 0; i < output.length; i++) {
+      output[i] = mapper.toJson(allInvoices.get(i));
+    }
+    assertThat(output, is(equalTo(expected)));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldStreamLatestVersionOfInvoices() {
+    //given
+    givenDatabase.deleteEntry(invoiceIds[0]);
+    Invoice updated = generator.getTestInvoice(INVOICES_COUNT + 1, INVOICE_ENTRIES_COUNT);
+    updated.setId(invoiceIds[1]);
+    givenDatabase.updateEntry(updated);
+    //when
+    List<Invoice> allInvoices;
+    try (Stream<Invoice> entries = givenDatabase.streamEntries()) {
+      allInvoices = entries.collect(Collectors.toList());
+    }
+    //then
+    assertThat(allInvoices.size(), is(1));
+    assertThat(mapper.toJson(allInvoices.get(0)), is(equalTo(mapper.toJson(updated))));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldStreamSameInvoicesOfCompanyAsListed() {
+    //given
+    Invoice invoice = (Invoice) givenDatabase.getEntryById(invoiceIds[0]);
+    long companyId = invoice.getSeller().getId();
+    LocalDate beginDate = invoice.getIssueDate().minusDays(1);
+    LocalDate endDate = invoice.getIssueDate().plusDays(1);
+    //when
+    List<Long> streamedIds;
+    try (Stream<Invoice> entries = givenDatabase
+        .streamEntriesByCompany(companyId, beginDate, endDate)) {
+      streamedIds = entries.map(Invoice::getId).sorted().collect(Collectors.toList());
+    }
+    //then
+    List<Invoice> listed = givenDatabase.getEntriesByCompany(companyId, beginDate, endDate);
+    assertThat(streamedIds, is(equalTo(listed.stream().map(Invoice::getId).sorted()
+        .collect(Collectors.toList()))));
+    assertThat(streamedIds.contains(invoiceIds[0]), is(true));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldStreamSameInvoicesOfDateRangeAsListed() {
+    //given
+    givenDatabase = getCleanDatabase();
+    LocalDate date = LocalDate.of(2018, 3, 1);
+    for (int i = 0; i < 7; i++) {
+      Invoice invoice = generator.getTestInvoice(i, INVOICE_ENTRIES_COUNT);
+      invoice.setIssueDate(date.plusDays(i));
+      givenDatabase.addEntry(invoice);
+    }
+    LocalDate beginDate = date.plusDays(2);
+    LocalDate endDate = date.plusDays(4);
+    //when
+    List<Long> streamedIds;
+    try (Stream<Invoice> entries = givenDatabase.streamEntriesByDate(beginDate, endDate)) {
+      streamedIds = entries.map(Invoice::getId).sorted().collect(Collectors.toList());
+    }
+    //then
+    List<Invoice> listed = givenDatabase.getEntriesByDate(beginDate, endDate);
+    assertThat(streamedIds.size(), is(3));
+    assertThat(streamedIds, is(equalTo(listed.stream().map(Invoice::getId).sorted()
+        .collect(Collectors.toList()))));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldGetInvoicesPageByPageInIssueDateOrder() {
+    //given
+    givenDatabase = getCleanDatabase();
+    LocalDate date = LocalDate.of(2018, 3, 1);
+    List<Invoice> expectedOrder = new ArrayList<>();
+    for (int i = 0; i < 7; i++) {
+      Invoice invoice = generator.getTestInvoice(i, INVOICE_ENTRIES_COUNT);
+      invoice.setIssueDate(date.plusDays(6 - i / 2));
+      invoice.setId(givenDatabase.addEntry(invoice));
+      expectedOrder.add(invoice);
+    }
+    expectedOrder.sort(PageCursor.ORDER);
+    //when
+    List<Long> pagedIds = new ArrayList<>();
+    PageCursor cursor = PageCursor.START;
+    while (cursor != null) {
+      List<Invoice> page = givenDatabase.getEntriesPage(date, date.plusDays(6), cursor, 3);
+      page.forEach(invoice -> pagedIds.add(invoice.getId()));
+      cursor = PageCursor.next(page, 3);
+    }
+    //then
+    assertThat(pagedIds, is(equalTo(expectedOrder.stream().map(Invoice::getId)
+        .collect(Collectors.toList()))));
+  }
+
   @Test
   public void shouldReturnTrueWhenInvoiceExist() {
     long invoiceId = invoiceIds[(new Random()).nextInt(invoiceIds.length)];
@@ -0,0 +1,128 @@
+package pl.coderstrust.database;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class GroupCommitWriterTest {
+
+  private static final int WRITERS_COUNT = 8;
+  private static final int RECORDS_PER_WRITER = 50;
+  private static final int FILES_COUNT = 20;
+  private Path file;
+  private GroupCommitWriter writer;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("groupCommit", ".json").toPath();
+    writer = new GroupCommitWriter(FsyncPolicy.PER_RECORD);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    writer.close();
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  public void shouldCompleteFuturesWithOffsetsOfWrittenRecords() throws Exception {
+    //when
+    CompletableFuture<Long> first = writer.append(file, "first\n".getBytes(StandardCharsets.UTF_8));
+    CompletableFuture<Long> second =
+        writer.append(file, "second\n".getBytes(StandardCharsets.UTF_8));
+    //then
+    assertThat(first.get(), is(0L));
+    assertThat(second.get(), is(6L));
+    assertThat(new String(Files.readAllBytes(file), StandardCharsets.UTF_8),
+        is(equalTo("first\nsecond\n")));
+  }
+
+  @Test
+  public void shouldWriteAllRecordsOfConcurrentWriters() throws Exception {
+    //given
+    ExecutorService executor = Executors.newFixedThreadPool(WRITERS_COUNT);
+    List<CompletableFuture<Long>> writes = new ArrayList<>();
+    //when
+    for (int i = 0; i < WRITERS_COUNT * RECORDS_PER_WRITER; i++) {
+      byte[] record = ("record" + i + "\n").getBytes(StandardCharsets.UTF_8);
+      writes.add(CompletableFuture.supplyAsync(() -> writer.append(file, record), executor)
+          .thenCompose(write -> write));
+    }
+    CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).get();
+    executor.shutdown();
+    executor.awaitTermination(1, TimeUnit.SECONDS);
+    //then
+    assertThat(Files.readAllLines(file).size(), is(WRITERS_COUNT * RECORDS_PER_WRITER));
+  }
+
+  @Test
+  public void shouldKeepOnlyRecordsOfCompletedFuturesWhenBatchFails() throws Exception {
+    //given
+    Path missingDirectory = file.resolveSibling("missing" + System.nanoTime()).resolve("file");
+    List<CompletableFuture<Long>> writes = new ArrayList<>();
+    //when
+    for (int i = 0; i < RECORDS_PER_WRITER; i++) {
+      writes.add(writer.append(file, ("record" + i + "\n").getBytes(StandardCharsets.UTF_8)));
+    }
+    CompletableFuture<Long> failed = writer.append(missingDirectory, new byte[]{1});
+    writer.awaitPendingWrites();
+    //then
+    assertThat(failed.isCompletedExceptionally(), is(true));
+    long completed = writes.stream().filter(write -> !write.isCompletedExceptionally()).count();
+    assertThat((long) Files.readAllLines(file).size(), is(completed));
+  }
+
+  @Test
+  public void shouldWriteBatchSpanningMoreFilesThanKeptOpen() throws Exception {
+    //given
+    GroupCommitWriter batchWriter = new GroupCommitWriter(FsyncPolicy.PER_BATCH);
+    List<Path> files = new ArrayList<>();
+    for (int i = 0; i < FILES_COUNT; i++) {
+      files.add(File.createTempFile("groupCommit", ".json").toPath());
+    }
+    List<CompletableFuture<Long>> writes = new ArrayList<>();
+    //when
+    for (int round = 0; round < 2; round++) {
+      for (Path batchFile : files) {
+        writes.add(batchWriter.append(batchFile,
+            ("record" + round + "\n").getBytes(StandardCharsets.UTF_8)));
+      }
+    }
+    CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).get();
+    batchWriter.close();
+    //then
+    for (Path batchFile : files) {
+      assertThat(new String(Files.readAllBytes(batchFile), StandardCharsets.UTF_8),
+          is(equalTo("record0\nrecord1\n")));
+      Files.delete(batchFile);
+    }
+  }
+
+  @Test
+  public void shouldFlushQueuedRecordsOnClose() throws Exception {
+    //given
+    for (int i = 0; i < RECORDS_PER_WRITER; i++) {
+      writer.append(file, ("record" + i + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+    //when
+    writer.close();
+    //then
+    assertThat(Files.readAllLines(file).size(), is(RECORDS_PER_WRITER));
+  }
+}
@@ -0,0 +1,59 @@
+package pl.coderstrust.database;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import pl.coderstrust.helpers.TestCasesGenerator;
+import pl.coderstrust.model.Invoice;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PageCursorTest {
+
+  @Rule
+  public ExpectedException incorrectCursor = ExpectedException.none();
+  private TestCasesGenerator generator = new TestCasesGenerator();
+
+  @Test
+  public void shouldDecodeEncodedCursor() {
+    //given
+    PageCursor cursor = new PageCursor(LocalDate.of(2018, 3, 1), 17);
+    //when
+    PageCursor decoded = PageCursor.decode(cursor.encode());
+    //then
+    assertThat(decoded.getIssueDate(), is(LocalDate.of(2018, 3, 1)));
+    assertThat(decoded.getId(), is(17L));
+  }
+
+  @Test
+  public void shouldRejectIncorrectCursor() {
+    incorrectCursor.expect(IllegalArgumentException.class);
+    PageCursor.decode("notACursor");
+  }
+
+  @Test
+  public void shouldSelectFirstEntriesAfterCursor() {
+    //given
+    LocalDate date = LocalDate.of(2018, 3, 1);
+    List<Invoice> invoices = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      Invoice invoice = generator.getTestInvoice(i, 1);
+      invoice.setId(i);
+      invoice.setIssueDate(date.minusDays(i % 3));
+      invoices.add(invoice);
+    }
+    //when
+    List<Invoice> page = PageCursor.selectPage(invoices.stream(),
+        new PageCursor(date.minusDays(2), 2), 3);
+    //then
+    assertThat(page.size(), is(3));
+    assertThat(page.get(0).getId(), is(5L));
+    assertThat(page.get(1).getId(), is(1L));
+    assertThat(page.get(2).getId(), is(4L));
+  }
+}
@@ -0,0 +1,153 @@
+package pl.coderstrust.database.cache;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+import pl.coderstrust.database.Database;
+import pl.coderstrust.database.DatabaseTest;
+import pl.coderstrust.database.DbException;
+import pl.coderstrust.database.ExceptionMsg;
+import pl.coderstrust.database.ObjectMapperHelper;
+import pl.coderstrust.database.memory.InMemoryDatabase;
+import pl.coderstrust.model.Invoice;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class CachingDatabaseTest extends DatabaseTest {
+
+  private static final int MAXIMUM_SIZE = 2;
+  private static final long TIME_TO_LIVE = TimeUnit.SECONDS.toNanos(10);
+  private ObjectMapperHelper<Invoice> mapper = new ObjectMapperHelper<>(Invoice.class);
+
+  @Override
+  public Database getCleanDatabase() {
+    return new CachingDatabase<>(new InMemoryDatabase<>(Invoice.class), Invoice.class,
+        MAXIMUM_SIZE);
+  }
+
+  @Test
+  public void shouldServeRepeatedReadsFromCache() {
+    //given
+    CachingDatabase<Invoice> database =
+        new CachingDatabase<>(new InMemoryDatabase<>(Invoice.class), Invoice.class,
+            MAXIMUM_SIZE);
+    long id = database.addEntry(generator.getTestInvoice(1, 1));
+    //when
+    Invoice first = database.getEntryById(id);
+    Invoice second = database.getEntryById(id);
+    boolean exists = database.idExist(id);
+    //then
+    assertThat(second == first, is(false));
+    assertThat(mapper.toJson(second), is(mapper.toJson(first)));
+    assertThat(exists, is(true));
+    assertThat(database.getMissCount(), is(1L));
+    assertThat(database.getHitCount(), is(2L));
+  }
+
+  @Test
+  public void shouldNotChangeCachedEntryWhenReturnedEntryIsChanged() {
+    //given
+    CachingDatabase<Invoice> database =
+        new CachingDatabase<>(new InMemoryDatabase<>(Invoice.class), Invoice.class,
+            MAXIMUM_SIZE);
+    long id = database.addEntry(generator.getTestInvoice(1, 1));
+    String name = database.getEntryById(id).getName();
+    //when
+    database.getEntryById(id).setName("changed");
+    //then
+    assertThat(database.getEntryById(id).getName(), is(name));
+    assertThat(database.getHitCount(), is(2L));
+  }
+
+  @Test
+  public void shouldEvictLeastRecentlyUsedEntry() {
+    //given
+    CachingDatabase<Invoice> database =
+        new CachingDatabase<>(new InMemoryDatabase<>(Invoice.class), Invoice.class,
+            MAXIMUM_SIZE);
+    long firstId = database.addEntry(generator.getTestInvoice(1, 1));
+    long secondId = database.addEntry(generator.getTestInvoice(2, 1));
+    long thirdId = database.addEntry(generator.getTestInvoice(3, 1));
+    database.getEntryById(firstId);
+    database.getEntryById(secondId);
+    database.getEntryById(firstId);
+    //when
+    database.getEntryById(thirdId);
+    database.getEntryById(firstId);
+    database.getEntryById(secondId);
+    //then
+    assertThat(database.getSize(), is(MAXIMUM_SIZE));
+    assertThat(database.getEvictionCount(), is(2L));
+    assertThat(database.getHitCount(), is(2L));
+    assertThat(database.getMissCount(), is(4L));
+  }
+
+  @Test
+  public void shouldExpireEntriesAfterTimeToLive() {
+    //given
+    AtomicLong clock = new AtomicLong();
+    CachingDatabase<Invoice> database = new CachingDatabase<>(
+        new InMemoryDatabase<>(Invoice.class), Invoice.class, MAXIMUM_SIZE, TIME_TO_LIVE,
+        clock::get);
+    long id = database.addEntry(generator.getTestInvoice(1, 1));
+    database.getEntryById(id);
+    //when
+    clock.addAndGet(TIME_TO_LIVE - 1);
+    database.getEntryById(id);
+    clock.addAndGet(1);
+    database.getEntryById(id);
+    //then
+    assertThat(database.getHitCount(), is(1L));
+    assertThat(database.getMissCount(), is(2L));
+    assertThat(database.getEvictionCount(), is(1L));
+  }
+
+  @Test
+  public void shouldInvalidateEntryOnUpdate() {
+    //given
+    CachingDatabase<Invoice> database =
+        new CachingDatabase<>(new InMemoryDatabase<>(Invoice.class), Invoice.class,
+            MAXIMUM_SIZE);
+    long id = database.addEntry(generator.getTestInvoice(1, 1));
+    Invoice cached = database.getEntryById(id);
+    Invoice updated = generator.getTestInvoice(2, 1);
+    updated.setId(id);
+    //when
+    database.updateEntry(updated);
+    //then
+    assertThat(database.getEntryById(id) == cached, is(false));
+    assertThat(database.getEntryById(id).getName(), is(updated.getName()));
+  }
+
+  @Test
+  public void shouldInvalidateEntryOnDelete() {
+    //given
+    CachingDatabase<Invoice> database =
+        new CachingDatabase<>(new InMemoryDatabase<>(Invoice.class), Invoice.class,
+            MAXIMUM_SIZE);
+    long id = database.addEntry(generator.getTestInvoice(1, 1));
+    database.getEntryById(id);
+    //when
+    database.deleteEntry(id);
+    //then
+    assertThat(database.idExist(id), is(false));
+    assertThat(database.getSize(), is(0));
+  }
+
+  @Test
+  public void shouldNotServeDeletedEntryFromCache() {
+    //given
+    CachingDatabase<Invoice> database =
+        new CachingDatabase<>(new InMemoryDatabase<>(Invoice.class), Invoice.class,
+            MAXIMUM_SIZE);
+    long id = database.addEntry(generator.getTestInvoice(1, 1));
+    database.getEntryById(id);
+    database.deleteEntry(id);
+    //when
+    atDeletedInvoiceAccess.expect(DbException.class);
+    atDeletedInvoiceAccess.expectMessage(ExceptionMsg.INVOICE_NOT_EXIST);
+    database.getEntryById(id);
+  }
+}
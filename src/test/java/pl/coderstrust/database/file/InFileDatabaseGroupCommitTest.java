@@ -0,0 +1,72 @@
+package pl.coderstrust.database.file;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.After;
+import org.junit.Test;
+import pl.coderstrust.database.Database;
+import pl.coderstrust.database.DbException;
+import pl.coderstrust.database.ExceptionMsg;
+import pl.coderstrust.database.FsyncPolicy;
+import pl.coderstrust.database.GroupCommitWriter;
+import pl.coderstrust.model.Invoice;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+public class InFileDatabaseGroupCommitTest extends InFileDatabaseTest {
+
+  private GroupCommitWriter writer;
+
+  @Override
+  protected Database createDatabase() {
+    closeWriter();
+    writer = new GroupCommitWriter(FsyncPolicy.PER_BATCH);
+    return new InFileDatabase<>(Invoice.class, "\"invoiceId\"", writer);
+  }
+
+  @After
+  public void closeWriter() {
+    if (writer != null) {
+      writer.close();
+    }
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldReadEntryWrittenAfterFailedWriteWhereItLanded() throws Exception {
+    //given
+    CompletableFuture<Long> failedWrite = new CompletableFuture<>();
+    CountDownLatch failedWriteQueued = new CountDownLatch(1);
+    closeWriter();
+    writer = new GroupCommitWriter(FsyncPolicy.PER_BATCH) {
+      private boolean failNext = true;
+
+      @Override
+      public synchronized CompletableFuture<Long> append(Path file, byte[] record) {
+        if (failNext) {
+          failNext = false;
+          failedWriteQueued.countDown();
+          return failedWrite;
+        }
+        return super.append(file, record);
+      }
+    };
+    Database database = new InFileDatabase<>(Invoice.class, "\"invoiceId\"", writer);
+    CompletableFuture<Long> failedAdd = CompletableFuture.supplyAsync(
+        () -> database.addEntry(generator.getTestInvoice(INVOICES_COUNT, 1)));
+    failedWriteQueued.await();
+    //when
+    long addedId = database.addEntry(generator.getTestInvoice(INVOICES_COUNT + 1, 1));
+    Invoice output = (Invoice) database.getEntryById(addedId);
+    failedWrite.completeExceptionally(new DbException(ExceptionMsg.IO_ERROR_WHILE_ADDING));
+    boolean addFailed = failedAdd.handle((id, failure) -> failure != null).get();
+    //then
+    assertThat(output.getId(), is(addedId));
+    assertThat(addFailed, is(true));
+    assertThat(database.getEntries().size(), is(INVOICES_COUNT + 1));
+    assertThat(createDatabase().getEntries().size(), is(INVOICES_COUNT + 1));
+  }
+}
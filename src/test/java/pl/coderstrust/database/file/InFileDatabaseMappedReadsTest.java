@@ -0,0 +1,30 @@
+package pl.coderstrust.database.file;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+import pl.coderstrust.database.Database;
+import pl.coderstrust.model.Invoice;
+
+public class InFileDatabaseMappedReadsTest extends InFileDatabaseTest {
+
+  @Override
+  protected Database createDatabase() {
+    return new InFileDatabase<>(Invoice.class, "\"invoiceId\"",
+        new Configuration(Invoice.class.getSimpleName(),
+            Configuration.DEFAULT_COMPACTION_THRESHOLD, true), null);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldRemapDbFileWhenItGrows() {
+    //given
+    int entriesCount = givenDatabase.getEntries().size();
+    //when
+    long addedId = givenDatabase.addEntry(generator.getTestInvoice(INVOICES_COUNT, 1));
+    //then
+    assertThat(((Invoice) givenDatabase.getEntryById(addedId)).getId(), is(addedId));
+    assertThat(givenDatabase.getEntries().size(), is(entriesCount + 1));
+  }
+}
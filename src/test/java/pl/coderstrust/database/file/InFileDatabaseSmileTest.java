@@ -0,0 +1,117 @@
+package pl.coderstrust.database.file;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+import pl.coderstrust.database.Database;
+import pl.coderstrust.database.DatabaseTest;
+import pl.coderstrust.database.DbException;
+import pl.coderstrust.database.ObjectMapperHelper;
+import pl.coderstrust.database.RecordFormat;
+import pl.coderstrust.model.Invoice;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+public class InFileDatabaseSmileTest extends DatabaseTest {
+
+  private static final String INVOICE_KEY = "\"invoiceId\"";
+  private Configuration config = new Configuration(Invoice.class.getSimpleName(), false,
+      RecordFormat.SMILE);
+  private Configuration jsonConfig = new Configuration(Invoice.class.getSimpleName());
+  private File dataFile = new File(config.getDbFilePath());
+  private ObjectMapperHelper<Invoice> mapper = new ObjectMapperHelper<>(Invoice.class);
+
+  @Override
+  public Database getCleanDatabase() {
+    try {
+      Files.deleteIfExists(dataFile.toPath());
+      Files.deleteIfExists(new File(config.getDbIndexFilePath()).toPath());
+    } catch (IOException ex) {
+      ex.printStackTrace();
+    }
+    return createDatabase();
+  }
+
+  private Database createDatabase() {
+    return new InFileDatabase<>(Invoice.class, INVOICE_KEY, config, null);
+  }
+
+  @Test
+  public void shouldStoreLengthPrefixedRecords() throws Exception {
+    //when
+    byte[] content = Files.readAllBytes(dataFile.toPath());
+    int firstRecordLength = ByteBuffer.wrap(content).getInt();
+    //then
+    assertThat(firstRecordLength > 0 && firstRecordLength < content.length, is(true));
+  }
+
+  @Test
+  public void shouldRejectRecordWithInvalidChecksum() throws Exception {
+    //given
+    byte[] content = Files.readAllBytes(dataFile.toPath());
+    content[Integer.BYTES] ^= 1;
+    Files.write(dataFile.toPath(), content);
+    //then
+    atDeletedInvoiceAccess.expect(DbException.class);
+    //when
+    createDatabase();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldTruncateTornRecordBeforeAppendingNextOne() throws Exception {
+    //given
+    long validLength = dataFile.length();
+    byte[] content = Files.readAllBytes(dataFile.toPath());
+    int firstRecordLength = ByteBuffer.wrap(content).getInt();
+    Files.write(dataFile.toPath(),
+        Arrays.copyOf(content, Integer.BYTES + firstRecordLength / 2), StandardOpenOption.APPEND);
+    //when
+    Database database = createDatabase();
+    long fileLengthAfterOpening = dataFile.length();
+    long addedId = database.addEntry(generator.getTestInvoice(INVOICES_COUNT, 1));
+    List<Invoice> output = createDatabase().getEntries();
+    //then
+    assertThat(fileLengthAfterOpening, is(validLength));
+    assertThat(output.size(), is(INVOICES_COUNT + 1));
+    assertThat(output.get(INVOICES_COUNT).getId(), is(addedId));
+  }
+
+  @Test
+  public void shouldKeepIndexSnapshotApartFromJsonLinesOne() {
+    //when
+    String smileIndexPath = config.getDbIndexFilePath();
+    String jsonIndexPath = jsonConfig.getDbIndexFilePath();
+    //then
+    assertThat(smileIndexPath.equals(jsonIndexPath), is(false));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldConvertJsonLinesFileKeepingLiveEntries() throws Exception {
+    //given
+    Files.deleteIfExists(new File(jsonConfig.getDbFilePath()).toPath());
+    Database jsonDatabase = new InFileDatabase<>(Invoice.class, INVOICE_KEY, jsonConfig, null);
+    for (int i = 0; i < INVOICES_COUNT; i++) {
+      jsonDatabase.addEntry(generator.getTestInvoice(i, 1));
+    }
+    jsonDatabase.deleteEntry(0);
+    //when
+    int converted = new RecordFormatConverter<>(Invoice.class, INVOICE_KEY)
+        .convert(RecordFormat.JSON, RecordFormat.SMILE);
+    List<Invoice> output = createDatabase().getEntries();
+    //then
+    assertThat(converted, is(INVOICES_COUNT - 1));
+    assertThat(output.size(), is(INVOICES_COUNT - 1));
+    assertThat(mapper.toJson(output.get(0)),
+        is(equalTo(mapper.toJson((Invoice) jsonDatabase.getEntryById(1)))));
+  }
+}
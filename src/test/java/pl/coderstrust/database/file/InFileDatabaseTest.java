@@ -7,12 +7,21 @@ import static org.junit.Assert.assertThat;
 import org.junit.Test;
 import pl.coderstrust.database.Database;
 import pl.coderstrust.database.DatabaseTest;
+import pl.coderstrust.database.PageCursor;
 import pl.coderstrust.model.Invoice;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -23,6 +32,7 @@ public class InFileDatabaseTest extends DatabaseTest {
   private Configuration config = new Configuration(Invoice.class.getSimpleName());
   private FileHelper fileHelper = new FileHelper(config);
   private File dataFile = new File(config.getDbFilePath());
+  private File indexFile = new File(config.getDbIndexFilePath());
 
   @Override
   public Database getCleanDatabase() {
@@ -41,6 +51,11 @@ public class InFileDatabaseTest extends DatabaseTest {
         ex.printStackTrace();
       }
     }
+    indexFile.delete();
+    return createDatabase();
+  }
+
+  protected Database createDatabase() {
     return new InFileDatabase<>(Invoice.class, "\"invoiceId\"");
   }
 
@@ -85,26 +100,13 @@ public class InFileDatabaseTest extends DatabaseTest {
     assertThat(String.join("", fileContent), is(equalTo("test line1test line2")));
   }
 
-  @Test
-  public void shouldRemoveCorrectNumberOfLinesLineFromDbFile() {
-    //given
-    getCleanDatabase();
-    //when
-    fileHelper.addLine("test line1");
-    fileHelper.addLine("test line2");
-    fileHelper.deleteLine("test line2");
-    //then
-    ArrayList<String> fileContent = getFileContent(dataFile);
-    assertThat(String.join("", fileContent), is(equalTo("test line1")));
-  }
-
   @Test
   public void shouldGetOneLineFromDbFile() {
     getCleanDatabase();
     //when
     fileHelper.addLine("test line1");
-    fileHelper.addLine("test line2");
-    String output = fileHelper.getLine("test line2");
+    LinePosition position = fileHelper.addLine("test line2");
+    String output = fileHelper.readLine(position);
     //then
     assertThat(output, is(equalTo("test line2")));
   }
@@ -128,13 +130,206 @@ public class InFileDatabaseTest extends DatabaseTest {
     //given
     getCleanDatabase();
     //when
-    fileHelper.addLine("test line1");
+    LinePosition position = fileHelper.addLine("test line1");
     FileHelper newFileHelper = new FileHelper(config);
-    String output = newFileHelper.getLine("test line1");
+    String output = newFileHelper.readLine(position);
     //then
     assertThat(output, is(equalTo("test line1")));
   }
 
+  @Test
+  public void shouldIndexAllLinesWithTheirPositions() {
+    //given
+    getCleanDatabase();
+    LinePosition first = fileHelper.addLine("test line1");
+    LinePosition second = fileHelper.addLine("test line2");
+    ArrayList<String> output = new ArrayList<>();
+    //when
+    fileHelper.forEachLine((line, position) -> output.add(
+        line + "@" + position.getOffset() + ":" + position.getLength()));
+    //then
+    assertThat(output.toArray(), is(equalTo(new String[]{
+        "test line1@" + first.getOffset() + ":" + first.getLength(),
+        "test line2@" + second.getOffset() + ":" + second.getLength()})));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldNotTouchEntryWhoseIdStartsWithDeletedId() {
+    //given
+    for (int i = INVOICES_COUNT; i <= 10; i++) {
+      givenDatabase.addEntry(generator.getTestInvoice(i, 1));
+    }
+    //when
+    givenDatabase.deleteEntry(1);
+    Invoice output = (Invoice) givenDatabase.getEntryById(10);
+    //then
+    assertThat(output.getId(), is(10L));
+  }
+
+  @Test
+  public void shouldKeepOnlyLiveEntriesInDbFileAfterCompaction() throws Exception {
+    //given
+    Database database = new InFileDatabase<Invoice>(Invoice.class, "\"invoiceId\"", 2, null);
+    //when
+    for (int i = 0; i < INVOICES_COUNT; i++) {
+      database.deleteEntry(invoiceIds[i]);
+    }
+    int checkNumber = 0;
+    while (getFileContent(dataFile).size() > 0 && checkNumber < WAIT_TIME_FOR_FILESYSTEM
+        / UNIT_WAIT_TIME_FOR_FILESYSTEM) {
+      Thread.sleep(UNIT_WAIT_TIME_FOR_FILESYSTEM);
+      checkNumber++;
+    }
+    //then
+    assertThat(getFileContent(dataFile).size(), is(0));
+    assertThat(database.getEntries().size(), is(0));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldReadEntriesWrittenAfterCompaction() throws Exception {
+    //given
+    Database database = new InFileDatabase<Invoice>(Invoice.class, "\"invoiceId\"", 1, null);
+    givenInvoice.setId(invoiceIds[0]);
+    database.updateEntry(givenInvoice);
+    Thread.sleep(UNIT_WAIT_TIME_FOR_FILESYSTEM);
+    //when
+    long addedId = database.addEntry(generator.getTestInvoice(INVOICES_COUNT, 1));
+    Database reopened = new InFileDatabase<Invoice>(Invoice.class, "\"invoiceId\"");
+    //then
+    assertThat(database.getEntries().size(), is(INVOICES_COUNT + 1));
+    assertThat(((Invoice) database.getEntryById(addedId)).getId(), is(addedId));
+    assertThat(((Invoice) reopened.getEntryById(invoiceIds[0])).getName(),
+        is(givenInvoice.getName()));
+    assertThat(reopened.getEntries().size(), is(INVOICES_COUNT + 1));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldRestoreIndexFromSnapshotAndReplayNewerLines() {
+    //given
+    ((InFileDatabase<Invoice>) givenDatabase).saveIndexSnapshot();
+    long addedId = givenDatabase.addEntry(generator.getTestInvoice(INVOICES_COUNT, 1));
+    givenDatabase.deleteEntry(invoiceIds[0]);
+    //when
+    Database reopened = createDatabase();
+    //then
+    assertThat(indexFile.exists(), is(true));
+    assertThat(reopened.idExist(invoiceIds[0]), is(false));
+    assertThat(((Invoice) reopened.getEntryById(addedId)).getId(), is(addedId));
+    assertThat(reopened.getEntries().size(), is(INVOICES_COUNT));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldIgnoreSnapshotNotMatchingDbFile() throws Exception {
+    //given
+    ((InFileDatabase<Invoice>) givenDatabase).saveIndexSnapshot();
+    ArrayList<String> lines = getFileContent(dataFile);
+    Collections.reverse(lines);
+    Files.write(dataFile.toPath(), lines);
+    //when
+    Database reopened = createDatabase();
+    //then
+    for (int i = 0; i < INVOICES_COUNT; i++) {
+      assertThat(((Invoice) reopened.getEntryById(invoiceIds[i])).getId(), is(invoiceIds[i]));
+    }
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldIgnoreSnapshotWhenEarlierRecordsChangedKeepingFileLength() throws Exception {
+    //given
+    ((InFileDatabase<Invoice>) givenDatabase).saveIndexSnapshot();
+    ArrayList<String> lines = getFileContent(dataFile);
+    lines.set(0, lines.get(0).replaceFirst("\"name\":\".", "\"name\":\""));
+    lines.set(1, lines.get(1).replaceFirst("\"name\":\"", "\"name\":\"Z"));
+    Files.write(dataFile.toPath(), lines);
+    //when
+    Database reopened = createDatabase();
+    //then
+    for (int i = 0; i < INVOICES_COUNT; i++) {
+      assertThat(((Invoice) reopened.getEntryById(invoiceIds[i])).getId(), is(invoiceIds[i]));
+    }
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldNotReuseIdOfDeletedEntryAfterRestoringSnapshot() {
+    //given
+    long lastId = invoiceIds[INVOICES_COUNT - 1];
+    givenDatabase.deleteEntry(lastId);
+    ((InFileDatabase<Invoice>) givenDatabase).saveIndexSnapshot();
+    //when
+    long addedId = createDatabase().addEntry(generator.getTestInvoice(1, 1));
+    //then
+    assertThat(addedId > lastId, is(true));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldTruncateTornLineBeforeAppendingNextOne() throws Exception {
+    //given
+    long validLength = dataFile.length();
+    String firstLine = getFileContent(dataFile).get(0);
+    Files.write(dataFile.toPath(), firstLine.substring(0, firstLine.length() / 2)
+        .getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    //when
+    Database database = createDatabase();
+    long fileLengthAfterOpening = dataFile.length();
+    long addedId = database.addEntry(generator.getTestInvoice(INVOICES_COUNT, 1));
+    List<Invoice> output = createDatabase().getEntries();
+    //then
+    assertThat(fileLengthAfterOpening, is(validLength));
+    assertThat(output.size(), is(INVOICES_COUNT + 1));
+    assertThat(output.get(INVOICES_COUNT).getId(), is(addedId));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldTruncateTornLineAfterSnapshotWhenRestoringFromIt() throws Exception {
+    //given
+    ((InFileDatabase<Invoice>) givenDatabase).saveIndexSnapshot();
+    long addedId = givenDatabase.addEntry(generator.getTestInvoice(INVOICES_COUNT, 1));
+    long validLength = dataFile.length();
+    String firstLine = getFileContent(dataFile).get(0);
+    Files.write(dataFile.toPath(), firstLine.substring(0, firstLine.length() / 2)
+        .getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    //when
+    Database database = createDatabase();
+    long fileLengthAfterOpening = dataFile.length();
+    //then
+    assertThat(fileLengthAfterOpening, is(validLength));
+    assertThat(database.getEntries().size(), is(INVOICES_COUNT + 1));
+    assertThat(((Invoice) database.getEntryById(addedId)).getId(), is(addedId));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldDecodeOnlyRecordsOfRequestedPage() throws Exception {
+    //given
+    List<Invoice> expected = givenDatabase.getEntries();
+    expected.sort(PageCursor.ORDER);
+    Invoice latest = generator.getTestInvoice(INVOICES_COUNT, 1);
+    latest.setIssueDate(expected.get(INVOICES_COUNT - 1).getIssueDate().plusDays(1));
+    givenDatabase.addEntry(latest);
+    List<String> lines = getFileContent(dataFile);
+    String lastLine = lines.get(lines.size() - 1);
+    byte[] garbage = new byte[lastLine.length()];
+    Arrays.fill(garbage, (byte) 'x');
+    try (FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(garbage), dataFile.length() - lastLine.length() - 1);
+    }
+    //when
+    List<Invoice> page = givenDatabase.getEntriesPage(LocalDate.MIN, LocalDate.MAX,
+        PageCursor.START, 2);
+    //then
+    assertThat(page.size(), is(2));
+    assertThat(page.get(0).getId(), is(expected.get(0).getId()));
+    assertThat(page.get(1).getId(), is(expected.get(1).getId()));
+  }
+
   private ArrayList<String> getFileContent(File file) {
     try (Stream<String> dbStream = Files.lines(file.toPath())) {
       return dbStream
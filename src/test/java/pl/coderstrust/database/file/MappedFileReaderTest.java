@@ -0,0 +1,86 @@
+package pl.coderstrust.database.file;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class MappedFileReaderTest {
+
+  private static final int CHUNK_BYTES = 16;
+  private static final List<String> PAYLOADS =
+      Arrays.asList("first", "second record", "x", "a payload longer than two chunks", "last");
+  private Path file;
+  private MappedFileReader reader;
+  private RecordCodec codec = new LengthPrefixedRecordCodec();
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("mappedReader", ".db").toPath();
+    reader = new MappedFileReader(file, codec, CHUNK_BYTES);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    reader.close();
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  public void shouldReadRecordsCrossingChunkBoundaries() throws IOException {
+    //given
+    append(PAYLOADS);
+    //when
+    List<String> records = new ArrayList<>();
+    List<LinePosition> positions = new ArrayList<>();
+    reader.forEachRecord(0, (record, position) -> {
+      records.add(toString(record));
+      positions.add(position);
+    });
+    //then
+    assertThat(records, is(PAYLOADS));
+    for (int i = 0; i < positions.size(); i++) {
+      assertThat(toString(reader.slice(positions.get(i))), is(PAYLOADS.get(i)));
+    }
+  }
+
+  @Test
+  public void shouldReadRecordsAppendedAfterMapping() throws IOException {
+    //given
+    append(PAYLOADS.subList(0, 2));
+    reader.forEachRecord(0, (record, position) -> {
+    });
+    append(PAYLOADS.subList(2, PAYLOADS.size()));
+    //when
+    List<String> records = new ArrayList<>();
+    reader.forEachRecord(0, (record, position) -> records.add(toString(reader.slice(position))));
+    //then
+    assertThat(records, is(PAYLOADS));
+  }
+
+  private void append(List<String> payloads) throws IOException {
+    for (String payload : payloads) {
+      Files.write(file, codec.encode(payload.getBytes(StandardCharsets.UTF_8)),
+          StandardOpenOption.APPEND);
+    }
+  }
+
+  private static String toString(ByteBuffer record) {
+    byte[] bytes = new byte[record.remaining()];
+    record.duplicate().get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,101 @@
+package pl.coderstrust.database.file;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import pl.coderstrust.database.Database;
+import pl.coderstrust.database.DatabaseTest;
+import pl.coderstrust.database.multifile.Configuration;
+import pl.coderstrust.database.multifile.MultiFileDatabase;
+import pl.coderstrust.database.multifile.PartitionLayout;
+import pl.coderstrust.model.Invoice;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class MultiFileDatabaseCompanyLayoutTest extends DatabaseTest {
+
+  private static final LocalDate BEGIN_DATE = LocalDate.of(2019, 1, 1);
+  private static final LocalDate END_DATE = LocalDate.of(2019, 12, 31);
+
+  @Override
+  public Database getCleanDatabase() {
+    Configuration config = new Configuration(Invoice.class.getSimpleName());
+    try {
+      FileUtils.forceMkdir(new File(config.getJsonFilePath()));
+      FileUtils.cleanDirectory(new File(config.getJsonFilePath()));
+    } catch (IOException ex) {
+      ex.printStackTrace();
+    }
+    return createDatabase();
+  }
+
+  private Database createDatabase() {
+    return new MultiFileDatabase<>(Invoice.class, "\"invoiceId\"",
+        new Configuration(Invoice.class.getSimpleName(), PartitionLayout.COMPANY, 0), null);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldListCompanyInvoicesFromItsOwnFilesOnly() throws Exception {
+    //given
+    long soldId = givenDatabase.addEntry(getInvoice(1, 2));
+    long boughtId = givenDatabase.addEntry(getInvoice(3, 1));
+    givenDatabase.addEntry(getInvoice(2, 3));
+    Database reopened = createDatabase();
+    Configuration config = new Configuration(Invoice.class.getSimpleName());
+    File otherCompanyFile = new File(config.getJsonFilePath() + File.separator + "2"
+        + File.separator + "2019.json");
+    Files.write(otherCompanyFile.toPath(), "not a json line".getBytes(),
+        StandardOpenOption.APPEND);
+    //when
+    List<Invoice> output = reopened.getEntriesByCompany(1, BEGIN_DATE, END_DATE);
+    //then
+    assertThat(output.stream().map(Invoice::getId).collect(Collectors.toSet()),
+        is(new HashSet<>(Arrays.asList(soldId, boughtId))));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldSkipReferencesToDeletedInvoices() {
+    //given
+    long boughtId = givenDatabase.addEntry(getInvoice(3, 1));
+    //when
+    givenDatabase.deleteEntry(boughtId);
+    //then
+    assertThat(givenDatabase.getEntriesByCompany(1, BEGIN_DATE, END_DATE).size(), is(0));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldSkipReferencesOfInvoicesBoughtByOtherCompanyAfterUpdate() {
+    //given
+    Invoice invoice = getInvoice(3, 1);
+    long boughtId = givenDatabase.addEntry(invoice);
+    //when
+    invoice.getBuyer().setId(4);
+    givenDatabase.updateEntry(invoice);
+    Database reopened = createDatabase();
+    //then
+    assertThat(reopened.getEntriesByCompany(1, BEGIN_DATE, END_DATE).size(), is(0));
+    assertThat(((Invoice) reopened.getEntriesByCompany(4, BEGIN_DATE, END_DATE).get(0)).getId(),
+        is(boughtId));
+    assertThat(reopened.streamEntriesByCompany(1, BEGIN_DATE, END_DATE).count(), is(0L));
+  }
+
+  private Invoice getInvoice(long sellerId, long buyerId) {
+    Invoice invoice = generator.getTestInvoice(INVOICES_COUNT, 1);
+    invoice.getSeller().setId(sellerId);
+    invoice.getBuyer().setId(buyerId);
+    return invoice;
+  }
+}
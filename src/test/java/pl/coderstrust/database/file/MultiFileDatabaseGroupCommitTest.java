@@ -0,0 +1,27 @@
+package pl.coderstrust.database.file;
+
+import org.junit.After;
+import pl.coderstrust.database.Database;
+import pl.coderstrust.database.FsyncPolicy;
+import pl.coderstrust.database.GroupCommitWriter;
+import pl.coderstrust.database.multifile.MultiFileDatabase;
+import pl.coderstrust.model.Invoice;
+
+public class MultiFileDatabaseGroupCommitTest extends MultiFileDatabaseTest {
+
+  private GroupCommitWriter writer;
+
+  @Override
+  protected Database createDatabase() {
+    closeWriter();
+    writer = new GroupCommitWriter(FsyncPolicy.NONE);
+    return new MultiFileDatabase<>(Invoice.class, "\"invoiceId\"", writer);
+  }
+
+  @After
+  public void closeWriter() {
+    if (writer != null) {
+      writer.close();
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package pl.coderstrust.database.file;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import pl.coderstrust.database.Database;
+import pl.coderstrust.database.DatabaseTest;
+import pl.coderstrust.database.multifile.Configuration;
+import pl.coderstrust.database.multifile.MultiFileDatabase;
+import pl.coderstrust.database.multifile.PartitionLayout;
+import pl.coderstrust.database.multifile.SegmentMigration;
+import pl.coderstrust.model.Invoice;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+public class MultiFileDatabaseSegmentsTest extends DatabaseTest {
+
+  private static final long SEGMENT_SIZE = 1;
+  private static final long MIGRATED_SEGMENT_SIZE = 1024 * 1024;
+
+  @Override
+  public Database getCleanDatabase() {
+    Configuration config = new Configuration(Invoice.class.getSimpleName());
+    try {
+      FileUtils.forceMkdir(new File(config.getJsonFilePath()));
+      FileUtils.cleanDirectory(new File(config.getJsonFilePath()));
+    } catch (IOException ex) {
+      ex.printStackTrace();
+    }
+    return createDatabase();
+  }
+
+  private Database createDatabase() {
+    return new MultiFileDatabase<>(Invoice.class, "\"invoiceId\"",
+        new Configuration(Invoice.class.getSimpleName(), PartitionLayout.SEGMENT, SEGMENT_SIZE),
+        null);
+  }
+
+  @Test
+  public void shouldRollToNextSegmentOnceActiveSegmentIsFull() {
+    //then
+    assertThat(getDataFiles().size(), is(INVOICES_COUNT));
+    assertThat(getDataFiles().iterator().next().getParentFile().getName(), is("segments"));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldReadOnlySegmentsOverlappingDateRange() throws Exception {
+    //given
+    Invoice invoice = generator.getTestInvoice(INVOICES_COUNT, 1);
+    invoice.setIssueDate(LocalDate.of(2019, 5, 10));
+    long addedId = givenDatabase.addEntry(invoice);
+    Database reopened = createDatabase();
+    File firstSegment = getDataFiles().stream().sorted().findFirst().get();
+    Files.write(firstSegment.toPath(), "not a json line".getBytes(), StandardOpenOption.APPEND);
+    //when
+    List<Invoice> output = reopened.getEntriesByDate(LocalDate.of(2019, 4, 1),
+        LocalDate.of(2019, 6, 1));
+    //then
+    assertThat(output.size(), is(1));
+    assertThat(output.get(0).getId(), is(addedId));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldMigrateDayFilesToSegmentsKeepingIds() {
+    //given
+    Database dayDatabase = new MultiFileDatabase<>(Invoice.class, "\"invoiceId\"");
+    dayDatabase.deleteEntry(invoiceIds[0]);
+    Invoice invoice = generator.getTestInvoice(INVOICES_COUNT, 1);
+    invoice.setIssueDate(LocalDate.of(2018, 12, 31));
+    long addedId = dayDatabase.addEntry(invoice);
+    //when
+    int migrated = new SegmentMigration<>(Invoice.class, "\"invoiceId\"")
+        .migrate(MIGRATED_SEGMENT_SIZE);
+    Database migratedDatabase = createDatabase();
+    //then
+    assertThat(migrated, is(INVOICES_COUNT));
+    assertThat(getDataFiles().size(), is(1));
+    assertThat(migratedDatabase.idExist(invoiceIds[0]), is(false));
+    assertThat(((Invoice) migratedDatabase.getEntryById(invoiceIds[1])).getId(),
+        is(invoiceIds[1]));
+    assertThat(((Invoice) migratedDatabase.getEntryById(addedId)).getId(), is(addedId));
+  }
+
+  private Collection<File> getDataFiles() {
+    Configuration config = new Configuration(Invoice.class.getSimpleName());
+    return FileUtils.listFiles(new File(config.getJsonFilePath()), new String[]{"json"}, true);
+  }
+}
@@ -1,9 +1,14 @@
 package pl.coderstrust.database.file;
 
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
 import org.apache.commons.io.FileUtils;
+import org.junit.Test;
 import pl.coderstrust.database.Database;
 import pl.coderstrust.database.DatabaseTest;
 import pl.coderstrust.database.ObjectMapperHelper;
+import pl.coderstrust.database.PageCursor;
 import pl.coderstrust.database.multifile.Configuration;
 import pl.coderstrust.database.multifile.FileCache;
 import pl.coderstrust.database.multifile.MultiFileDatabase;
@@ -11,9 +16,23 @@ import pl.coderstrust.model.Invoice;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class MultiFileDatabaseTest extends DatabaseTest {
 
+  private static final int WRITERS_COUNT = 4;
+  private static final int ENTRIES_PER_WRITER = 10;
+
   @Override
   public Database getCleanDatabase() {
     Configuration config = new Configuration(Invoice.class.getSimpleName());
@@ -29,9 +48,157 @@ public class MultiFileDatabaseTest extends DatabaseTest {
     }
     @SuppressWarnings("unchecked")
     ObjectMapperHelper objectMapperHelper = new ObjectMapperHelper(Invoice.class);
-    FileCache fileCache = new FileCache(objectMapperHelper, config.getJsonFilePath());
+    FileCache fileCache = new FileCache(objectMapperHelper, config.getJsonFilePath(),
+        "\"invoiceId\"");
     fileCache.getCache().clear();
 
+    return createDatabase();
+  }
+
+  protected Database createDatabase() {
     return new MultiFileDatabase<>(Invoice.class, "\"invoiceId\"");
   }
-}
\ No newline at end of file
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldAppendTombstoneInsteadOfRewritingDayFile() throws Exception {
+    //given
+    File dayFile = getDayFile();
+    long sizeBeforeDelete = dayFile.length();
+    //when
+    givenDatabase.deleteEntry(invoiceIds[0]);
+    Database reopened = createDatabase();
+    //then
+    assertThat(dayFile.length() > sizeBeforeDelete, is(true));
+    assertThat(reopened.idExist(invoiceIds[0]), is(false));
+    assertThat(((Invoice) reopened.getEntryById(invoiceIds[1])).getId(), is(invoiceIds[1]));
+    assertThat(reopened.getEntries().size(), is(INVOICES_COUNT - 1));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldReclaimDeadRecordsOfDayFile() throws Exception {
+    //given
+    Database database = new MultiFileDatabase<Invoice>(Invoice.class, "\"invoiceId\"", 2, null);
+    givenInvoice.setId(invoiceIds[1]);
+    database.updateEntry(givenInvoice);
+    //when
+    database.deleteEntry(invoiceIds[0]);
+    int checkNumber = 0;
+    while (Files.readAllLines(getDayFile().toPath()).size() > 1 && checkNumber < 40) {
+      Thread.sleep(100);
+      checkNumber++;
+    }
+    //then
+    assertThat(Files.readAllLines(getDayFile().toPath()).size(), is(1));
+    assertThat(((Invoice) database.getEntryById(invoiceIds[1])).getName(),
+        is(givenInvoice.getName()));
+    assertThat(database.getEntries().size(), is(1));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldReadOnlyDayFilesWithinDateRange() throws Exception {
+    //given
+    for (int month = 1; month <= 2; month++) {
+      Invoice invoice = generator.getTestInvoice(month, 1);
+      invoice.setIssueDate(LocalDate.of(2019, month, 10));
+      givenDatabase.addEntry(invoice);
+    }
+    Configuration config = new Configuration(Invoice.class.getSimpleName());
+    File unrelatedFile = new File(config.getJsonFilePath() + File.separator + "2018"
+        + File.separator + "MARCH" + File.separator + "1.json");
+    FileUtils.forceMkdir(unrelatedFile.getParentFile());
+    Files.write(unrelatedFile.toPath(), "not a json line".getBytes());
+    //when
+    List<Invoice> output = givenDatabase.getEntriesByDate(LocalDate.of(2019, 2, 1),
+        LocalDate.of(2019, 3, 1));
+    //then
+    assertThat(output.size(), is(INVOICES_COUNT + 1));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldTakeUnchangedDayFilesFromManifest() throws Exception {
+    //given
+    createDatabase();
+    File dayFile = getDayFile();
+    long lastModified = dayFile.lastModified();
+    byte[] unreadableContent = new byte[(int) dayFile.length()];
+    Files.write(dayFile.toPath(), unreadableContent);
+    dayFile.setLastModified(lastModified);
+    //when
+    Database reopened = createDatabase();
+    //then
+    assertThat(reopened.idExist(invoiceIds[0]), is(true));
+    assertThat(reopened.idExist(invoiceIds[1]), is(true));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldRescanDayFilesChangedSinceManifest() {
+    //given
+    Database database = createDatabase();
+    long addedId = database.addEntry(generator.getTestInvoice(INVOICES_COUNT, 1));
+    //when
+    Database reopened = createDatabase();
+    //then
+    assertThat(((Invoice) reopened.getEntryById(addedId)).getId(), is(addedId));
+    assertThat(reopened.getEntries().size(), is(INVOICES_COUNT + 1));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldNotReadDayFilesAfterFullPage() throws Exception {
+    //given
+    givenDatabase = getCleanDatabase();
+    LocalDate date = LocalDate.of(2018, 3, 1);
+    for (int i = 0; i < 3; i++) {
+      Invoice invoice = generator.getTestInvoice(i, 1);
+      invoice.setIssueDate(date.plusDays(i / 2));
+      givenDatabase.addEntry(invoice);
+    }
+    File nextDayFile = new File(new Configuration(Invoice.class.getSimpleName())
+        .getJsonFilePath(), "2018" + File.separator + Month.MARCH + File.separator + "2.json");
+    byte[] garbage = new byte[(int) nextDayFile.length()];
+    Arrays.fill(garbage, (byte) 'x');
+    Files.write(nextDayFile.toPath(), garbage);
+    //when
+    List<Invoice> page = givenDatabase.getEntriesPage(date, date.plusDays(1), PageCursor.START,
+        2);
+    //then
+    assertThat(page.size(), is(2));
+    assertThat(page.get(1).getIssueDate(), is(date));
+  }
+
+  private File getDayFile() {
+    Configuration config = new Configuration(Invoice.class.getSimpleName());
+    return FileUtils.listFiles(new File(config.getJsonFilePath()), new String[]{"json"}, true)
+        .iterator().next();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldKeepAllEntriesOfConcurrentWritersOnDifferentDays() throws Exception {
+    //given
+    ExecutorService executor = Executors.newFixedThreadPool(WRITERS_COUNT);
+    List<CompletableFuture<Long>> writes = new ArrayList<>();
+    //when
+    for (int i = 0; i < WRITERS_COUNT * ENTRIES_PER_WRITER; i++) {
+      Invoice invoice = generator.getTestInvoice(i, 1);
+      invoice.setIssueDate(LocalDate.of(2019, 3, 1).plusDays(i % WRITERS_COUNT));
+      writes.add(CompletableFuture.supplyAsync(() -> givenDatabase.addEntry(invoice), executor));
+    }
+    CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).get();
+    executor.shutdown();
+    executor.awaitTermination(1, TimeUnit.SECONDS);
+    HashSet<Long> ids = new HashSet<>();
+    for (CompletableFuture<Long> write : writes) {
+      ids.add(write.get());
+    }
+    //then
+    assertThat(ids.size(), is(WRITERS_COUNT * ENTRIES_PER_WRITER));
+    assertThat(givenDatabase.getEntries().size(),
+        is(INVOICES_COUNT + WRITERS_COUNT * ENTRIES_PER_WRITER));
+  }
+}
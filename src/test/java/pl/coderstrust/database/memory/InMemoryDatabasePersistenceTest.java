@@ -0,0 +1,110 @@
+package pl.coderstrust.database.memory;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+import pl.coderstrust.database.Database;
+import pl.coderstrust.database.DatabaseTest;
+import pl.coderstrust.database.DbException;
+import pl.coderstrust.database.FsyncPolicy;
+import pl.coderstrust.database.GroupCommitWriter;
+import pl.coderstrust.model.Invoice;
+
+import java.io.File;
+
+public class InMemoryDatabasePersistenceTest extends DatabaseTest {
+
+  private static final int SNAPSHOT_INTERVAL = 1000;
+  private Configuration config = new Configuration(Invoice.class.getSimpleName(),
+      SNAPSHOT_INTERVAL);
+
+  @Override
+  public Database getCleanDatabase() {
+    for (File file : getDbFiles()) {
+      file.delete();
+    }
+    return createDatabase();
+  }
+
+  private InMemoryDatabase<Invoice> createDatabase() {
+    return new InMemoryDatabase<>(Invoice.class, config, null);
+  }
+
+  private File[] getDbFiles() {
+    File[] files = new File(config.getDbFilePath()).listFiles((directory, name) ->
+        name.startsWith("memoryDb" + Invoice.class.getSimpleName()));
+    return files == null ? new File[0] : files;
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldReplayLoggedMutationsAfterRestart() {
+    //given
+    givenInvoice.setId(invoiceIds[1]);
+    givenInvoice.setName("updated");
+    givenDatabase.updateEntry(givenInvoice);
+    givenDatabase.deleteEntry(invoiceIds[0]);
+    //when
+    Database reopened = createDatabase();
+    //then
+    assertThat(reopened.idExist(invoiceIds[0]), is(false));
+    assertThat(((Invoice) reopened.getEntryById(invoiceIds[1])).getName(), is("updated"));
+    assertThat(reopened.getEntries().size(), is(INVOICES_COUNT - 1));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldLoadSnapshotAndReplayLogTail() {
+    //given
+    InMemoryDatabase<Invoice> database = createDatabase();
+    database.saveSnapshot();
+    database.deleteEntry(invoiceIds[0]);
+    long addedId = database.addEntry(generator.getTestInvoice(INVOICES_COUNT, 1));
+    //when
+    Database reopened = createDatabase();
+    //then
+    assertThat(reopened.idExist(invoiceIds[0]), is(false));
+    assertThat(reopened.idExist(invoiceIds[1]), is(true));
+    assertThat(((Invoice) reopened.getEntryById(addedId)).getId(), is(addedId));
+    assertThat(new File(config.getLogFilePath(0)).exists(), is(false));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldNotReuseIdOfDeletedLastEntryAfterRestart() {
+    //given
+    givenDatabase.deleteEntry(invoiceIds[INVOICES_COUNT - 1]);
+    //when
+    long addedId = createDatabase().addEntry(generator.getTestInvoice(INVOICES_COUNT, 1));
+    //then
+    assertThat(addedId > invoiceIds[INVOICES_COUNT - 1], is(true));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldNotChangeMemoryWhenLogWriteFails() {
+    //given
+    GroupCommitWriter writer = new GroupCommitWriter(FsyncPolicy.PER_BATCH);
+    InMemoryDatabase<Invoice> database = new InMemoryDatabase<>(Invoice.class, config, writer);
+    // the next segment can't be opened for appending
+    File nextSegment = new File(config.getLogFilePath(1));
+    nextSegment.mkdirs();
+    String loggedName = database.getEntryById(invoiceIds[1]).getName();
+    givenInvoice.setId(invoiceIds[1]);
+    givenInvoice.setName("updated");
+    boolean failed = false;
+    //when
+    try {
+      database.updateEntry(givenInvoice);
+    } catch (DbException ex) {
+      failed = true;
+    } finally {
+      writer.close();
+      nextSegment.delete();
+    }
+    //then
+    assertThat(failed, is(true));
+    assertThat(database.getEntryById(invoiceIds[1]).getName(), is(loggedName));
+  }
+}
@@ -1,14 +1,91 @@
 package pl.coderstrust.database.memory;
 
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
 import pl.coderstrust.database.Database;
 import pl.coderstrust.database.DatabaseTest;
+import pl.coderstrust.model.Company;
 import pl.coderstrust.model.Invoice;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 public class InMemoryDatabaseTest extends DatabaseTest {
 
+  private static final int WRITERS_COUNT = 4;
+  private static final int ENTRIES_PER_WRITER = 100;
+
   @Override
   @SuppressWarnings("unchecked")
   public Database getCleanDatabase() {
     return new InMemoryDatabase(Invoice.class);
   }
-}
\ No newline at end of file
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldAssignUniqueIdsToConcurrentWriters() throws Exception {
+    //given
+    ExecutorService executor = Executors.newFixedThreadPool(WRITERS_COUNT);
+    List<CompletableFuture<Long>> writes = new ArrayList<>();
+    //when
+    for (int i = 0; i < WRITERS_COUNT * ENTRIES_PER_WRITER; i++) {
+      Invoice invoice = generator.getTestInvoice(i, 1);
+      writes.add(CompletableFuture.supplyAsync(() -> givenDatabase.addEntry(invoice), executor));
+    }
+    CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).get();
+    executor.shutdown();
+    HashSet<Long> ids = new HashSet<>();
+    for (CompletableFuture<Long> write : writes) {
+      ids.add(write.get());
+    }
+    //then
+    assertThat(ids.size(), is(WRITERS_COUNT * ENTRIES_PER_WRITER));
+    assertThat(givenDatabase.getEntries().size(),
+        is(INVOICES_COUNT + WRITERS_COUNT * ENTRIES_PER_WRITER));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldKeepDateAndCompanyIndexesInSyncOnUpdate() {
+    //given
+    LocalDate oldDate = LocalDate.of(2019, 3, 1);
+    LocalDate newDate = LocalDate.of(2019, 5, 1);
+    Invoice invoice = generator.getTestInvoice(INVOICES_COUNT, 1);
+    invoice.getSeller().setId(1);
+    long id = givenDatabase.addEntry(invoice);
+    //when
+    Invoice updated = generator.getTestInvoice(INVOICES_COUNT, 1);
+    updated.setId(id);
+    updated.setIssueDate(newDate);
+    updated.getSeller().setId(2);
+    givenDatabase.updateEntry(updated);
+    //then
+    assertThat(givenDatabase.getEntriesByDate(newDate, newDate).size(), is(1));
+    assertThat(givenDatabase.getEntriesByDate(oldDate, oldDate).size(), is(INVOICES_COUNT));
+    assertThat(givenDatabase.getEntriesByCompany(1, oldDate, newDate).size(), is(0));
+    assertThat(givenDatabase.getEntriesByCompany(2, oldDate, newDate).size(), is(1));
+  }
+
+  @Test
+  public void shouldFindCompaniesByNipUntilNipChanges() {
+    //given
+    Database<Company> companies = new InMemoryDatabase<>(Company.class);
+    Company company = generator.getTestInvoice(1, 1).getSeller();
+    String oldNip = company.getNip();
+    companies.addEntry(company);
+    //when
+    Company updated = generator.getTestInvoice(2, 1).getSeller();
+    updated.setId(company.getId());
+    companies.updateEntry(updated);
+    //then
+    assertThat(companies.getEntriesByNip(oldNip).size(), is(0));
+    assertThat(companies.getEntriesByNip(updated.getNip()).get(0).getId(), is(company.getId()));
+  }
+}
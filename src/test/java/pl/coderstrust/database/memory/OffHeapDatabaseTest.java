@@ -0,0 +1,63 @@
+package pl.coderstrust.database.memory;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+import pl.coderstrust.database.Database;
+import pl.coderstrust.database.DatabaseTest;
+import pl.coderstrust.model.Invoice;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class OffHeapDatabaseTest extends DatabaseTest {
+
+  private static final int SLAB_SIZE = 64 * 1024;
+  private static final int ENTRIES_COUNT = 1000;
+
+  @Override
+  public Database getCleanDatabase() {
+    return new OffHeapDatabase<>(Invoice.class, SLAB_SIZE);
+  }
+
+  @Test
+  public void shouldReuseFreedSlabSpace() {
+    //given
+    OffHeapDatabase<Invoice> database = new OffHeapDatabase<>(Invoice.class, SLAB_SIZE);
+    List<Long> ids = addInvoices(database);
+    long allocatedBytes = database.getAllocatedBytes();
+    //when
+    for (long id : ids) {
+      database.deleteEntry(id);
+    }
+    addInvoices(database);
+    //then
+    assertThat(database.getAllocatedBytes(), is(allocatedBytes));
+  }
+
+  @Test
+  public void shouldKeepRemainingEntriesAfterRemovals() {
+    //given
+    OffHeapDatabase<Invoice> database = new OffHeapDatabase<>(Invoice.class, SLAB_SIZE);
+    List<Long> ids = addInvoices(database);
+    //when
+    for (int i = 0; i < ids.size(); i += 2) {
+      database.deleteEntry(ids.get(i));
+    }
+    //then
+    assertThat(database.getEntries().size(), is(ENTRIES_COUNT / 2));
+    for (int i = 0; i < ids.size(); i++) {
+      assertThat(database.idExist(ids.get(i)), is(i % 2 == 1));
+    }
+    assertThat(database.getEntryById(ids.get(1)).getId(), is(ids.get(1)));
+  }
+
+  private List<Long> addInvoices(OffHeapDatabase<Invoice> database) {
+    List<Long> ids = new ArrayList<>();
+    for (int i = 0; i < ENTRIES_COUNT; i++) {
+      ids.add(database.addEntry(generator.getTestInvoice(i, 1)));
+    }
+    return ids;
+  }
+}
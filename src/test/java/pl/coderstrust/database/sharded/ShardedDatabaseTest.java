@@ -0,0 +1,133 @@
+package pl.coderstrust.database.sharded;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+import pl.coderstrust.database.Database;
+import pl.coderstrust.database.DatabaseTest;
+import pl.coderstrust.database.memory.InMemoryDatabase;
+import pl.coderstrust.database.memory.OffHeapDatabase;
+import pl.coderstrust.model.Invoice;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class ShardedDatabaseTest extends DatabaseTest {
+
+  private static final int SHARD_COUNT = 3;
+  private static final int ENTRIES_COUNT = 30;
+
+  @Override
+  public Database getCleanDatabase() {
+    return new ShardedDatabase<>(getShards());
+  }
+
+  @Test
+  public void shouldSpreadEntriesEvenlyOverShards() {
+    //given
+    List<Database<Invoice>> shards = getShards();
+    ShardedDatabase<Invoice> database = new ShardedDatabase<>(shards);
+    //when
+    for (int i = 0; i < ENTRIES_COUNT; i++) {
+      database.addEntry(generator.getTestInvoice(i, 1));
+    }
+    //then
+    for (int i = 0; i < SHARD_COUNT; i++) {
+      List<Invoice> shardEntries = shards.get(i).getEntries();
+      assertThat(shardEntries.size(), is(ENTRIES_COUNT / SHARD_COUNT));
+      for (Invoice invoice : shardEntries) {
+        assertThat(database.getShardIndex(invoice.getId()), is(i));
+      }
+    }
+  }
+
+  @Test
+  public void shouldMergeEntriesOfAllShardsInIdOrder() {
+    //given
+    ShardedDatabase<Invoice> database = new ShardedDatabase<>(getShards());
+    List<Long> ids = new ArrayList<>();
+    for (int i = 0; i < ENTRIES_COUNT; i++) {
+      ids.add(database.addEntry(generator.getTestInvoice(i, 1)));
+    }
+    //when
+    List<Invoice> entries = database.getEntries();
+    //then
+    assertThat(entries.size(), is(ENTRIES_COUNT));
+    for (int i = 0; i < ENTRIES_COUNT; i++) {
+      assertThat(entries.get(i).getId(), is(ids.get(i)));
+    }
+  }
+
+  @Test
+  public void shouldStreamEntriesOfAllShardsInIdOrder() {
+    //given
+    // off heap shards stream their entries in id order
+    List<Database<Invoice>> shards = new ArrayList<>();
+    for (int i = 0; i < SHARD_COUNT; i++) {
+      shards.add(new OffHeapDatabase<>(Invoice.class));
+    }
+    ShardedDatabase<Invoice> database = new ShardedDatabase<>(shards);
+    List<Invoice> invoices = new ArrayList<>();
+    for (int i = 0; i < ENTRIES_COUNT; i++) {
+      invoices.add(generator.getTestInvoice(i, 1));
+    }
+    List<Long> ids = database.addEntries(invoices);
+    //when
+    List<Invoice> entries;
+    try (Stream<Invoice> stream = database.streamEntries()) {
+      entries = stream.collect(Collectors.toList());
+    }
+    //then
+    assertThat(entries.size(), is(ENTRIES_COUNT));
+    for (int i = 0; i < ENTRIES_COUNT; i++) {
+      assertThat(entries.get(i).getId(), is(ids.get(i)));
+    }
+    for (Database<Invoice> shard : shards) {
+      assertThat(shard.getEntries().size(), is(ENTRIES_COUNT / SHARD_COUNT));
+    }
+  }
+
+  @Test
+  public void shouldQueryDateRangeOnAllShards() {
+    //given
+    ShardedDatabase<Invoice> database = new ShardedDatabase<>(getShards());
+    LocalDate date = LocalDate.of(2018, 3, 1);
+    for (int i = 0; i < ENTRIES_COUNT; i++) {
+      Invoice invoice = generator.getTestInvoice(i, 1);
+      invoice.setIssueDate(date.plusDays(i));
+      database.addEntry(invoice);
+    }
+    //when
+    List<Invoice> entries = database.getEntriesByDate(date.plusDays(10), date.plusDays(19));
+    //then
+    assertThat(entries.size(), is(10));
+    assertThat(entries.get(0).getIssueDate(), is(date.plusDays(10)));
+  }
+
+  @Test
+  public void shouldContinueIdsOfExistingShards() {
+    //given
+    List<Database<Invoice>> shards = getShards();
+    ShardedDatabase<Invoice> database = new ShardedDatabase<>(shards);
+    long lastId = 0;
+    for (int i = 0; i < ENTRIES_COUNT; i++) {
+      lastId = database.addEntry(generator.getTestInvoice(i, 1));
+    }
+    //when
+    long id = new ShardedDatabase<>(shards).addEntry(generator.getTestInvoice(0, 1));
+    //then
+    assertThat(id, is(lastId + 1));
+  }
+
+  private List<Database<Invoice>> getShards() {
+    List<Database<Invoice>> shards = new ArrayList<>();
+    for (int i = 0; i < SHARD_COUNT; i++) {
+      shards.add(new InMemoryDatabase<>(Invoice.class));
+    }
+    return shards;
+  }
+}
@@ -0,0 +1,131 @@
+package pl.coderstrust.database.tiered;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+import pl.coderstrust.database.Database;
+import pl.coderstrust.database.DatabaseTest;
+import pl.coderstrust.database.memory.InMemoryDatabase;
+import pl.coderstrust.model.Invoice;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TieredDatabaseTest extends DatabaseTest {
+
+  private static final int HOT_MONTHS = 1;
+  private static final LocalDate TODAY = LocalDate.of(2018, 5, 15);
+  private static final LocalDate HOT_SINCE = LocalDate.of(2018, 4, 1);
+
+  @Override
+  public Database getCleanDatabase() {
+    return new TieredDatabase<>(new InMemoryDatabase<>(Invoice.class),
+        new InMemoryDatabase<>(Invoice.class), HOT_MONTHS, () -> TODAY);
+  }
+
+  @Test
+  public void shouldStoreEntriesInTierOfTheirIssueDate() {
+    //given
+    InMemoryDatabase<Invoice> hot = new InMemoryDatabase<>(Invoice.class);
+    InMemoryDatabase<Invoice> cold = new InMemoryDatabase<>(Invoice.class);
+    TieredDatabase<Invoice> database = new TieredDatabase<>(hot, cold, HOT_MONTHS, () -> TODAY);
+    //when
+    long recentId = database.addEntry(getInvoice(HOT_SINCE));
+    long oldId = database.addEntry(getInvoice(HOT_SINCE.minusDays(1)));
+    //then
+    assertThat(database.getHotSince(), is(HOT_SINCE));
+    assertThat(hot.idExist(recentId), is(true));
+    assertThat(cold.idExist(oldId), is(true));
+    assertThat(database.getEntryById(oldId).getId(), is(oldId));
+    assertThat(database.getEntries().size(), is(2));
+  }
+
+  @Test
+  public void shouldNotQueryColdTierForRecentRange() {
+    //given
+    AtomicInteger coldQueries = new AtomicInteger();
+    InMemoryDatabase<Invoice> cold = new InMemoryDatabase<Invoice>(Invoice.class) {
+      @Override
+      public List<Invoice> getEntriesByDate(LocalDate beginDate, LocalDate endDate) {
+        coldQueries.incrementAndGet();
+        return super.getEntriesByDate(beginDate, endDate);
+      }
+    };
+    TieredDatabase<Invoice> database = new TieredDatabase<>(
+        new InMemoryDatabase<>(Invoice.class), cold, HOT_MONTHS, () -> TODAY);
+    database.addEntry(getInvoice(HOT_SINCE.plusDays(3)));
+    database.addEntry(getInvoice(HOT_SINCE.minusDays(3)));
+    coldQueries.set(0);
+    //when
+    List<Invoice> recent = database.getEntriesByDate(HOT_SINCE, TODAY);
+    int coldQueriesForRecent = coldQueries.get();
+    List<Invoice> all = database.getEntriesByDate(HOT_SINCE.minusMonths(1), TODAY);
+    //then
+    assertThat(coldQueriesForRecent, is(0));
+    assertThat(coldQueries.get(), is(1));
+    assertThat(recent.size(), is(1));
+    assertThat(all.size(), is(2));
+  }
+
+  @Test
+  public void shouldMoveEntriesToColdTierWhenTheirMonthAges() {
+    //given
+    AtomicReference<LocalDate> today = new AtomicReference<>(TODAY);
+    InMemoryDatabase<Invoice> hot = new InMemoryDatabase<>(Invoice.class);
+    InMemoryDatabase<Invoice> cold = new InMemoryDatabase<>(Invoice.class);
+    TieredDatabase<Invoice> database = new TieredDatabase<>(hot, cold, HOT_MONTHS, today::get);
+    long agingId = database.addEntry(getInvoice(HOT_SINCE.plusDays(10)));
+    long recentId = database.addEntry(getInvoice(TODAY));
+    //when
+    today.set(TODAY.plusMonths(1));
+    database.ageEntries();
+    //then
+    assertThat(database.getHotSince(), is(HOT_SINCE.plusMonths(1)));
+    assertThat(hot.idExist(agingId), is(false));
+    assertThat(cold.idExist(agingId), is(true));
+    assertThat(hot.idExist(recentId), is(true));
+    assertThat(database.getEntries().size(), is(2));
+  }
+
+  @Test
+  public void shouldTakeRecentEntriesFromColdTierOnStart() {
+    //given
+    InMemoryDatabase<Invoice> hot = new InMemoryDatabase<>(Invoice.class);
+    InMemoryDatabase<Invoice> cold = new InMemoryDatabase<>(Invoice.class);
+    long recentId = cold.addEntry(getInvoice(TODAY));
+    long oldId = cold.addEntry(getInvoice(HOT_SINCE.minusMonths(2)));
+    //when
+    TieredDatabase<Invoice> database = new TieredDatabase<>(hot, cold, HOT_MONTHS, () -> TODAY);
+    long nextId = database.addEntry(getInvoice(TODAY));
+    //then
+    assertThat(hot.idExist(recentId), is(true));
+    assertThat(cold.idExist(recentId), is(false));
+    assertThat(cold.idExist(oldId), is(true));
+    assertThat(nextId, is(Math.max(recentId, oldId) + 1));
+  }
+
+  @Test
+  public void shouldMoveEntryWhenUpdateChangesItsTier() {
+    //given
+    InMemoryDatabase<Invoice> hot = new InMemoryDatabase<>(Invoice.class);
+    InMemoryDatabase<Invoice> cold = new InMemoryDatabase<>(Invoice.class);
+    TieredDatabase<Invoice> database = new TieredDatabase<>(hot, cold, HOT_MONTHS, () -> TODAY);
+    long id = database.addEntry(getInvoice(TODAY));
+    Invoice updated = getInvoice(HOT_SINCE.minusMonths(3));
+    updated.setId(id);
+    //when
+    database.updateEntry(updated);
+    //then
+    assertThat(hot.idExist(id), is(false));
+    assertThat(cold.getEntryById(id).getIssueDate(), is(HOT_SINCE.minusMonths(3)));
+  }
+
+  private Invoice getInvoice(LocalDate issueDate) {
+    Invoice invoice = generator.getTestInvoice(1, 1);
+    invoice.setIssueDate(issueDate);
+    return invoice;
+  }
+}
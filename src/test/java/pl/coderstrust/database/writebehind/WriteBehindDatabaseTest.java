@@ -0,0 +1,236 @@
+package pl.coderstrust.database.writebehind;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+import pl.coderstrust.database.Database;
+import pl.coderstrust.database.DatabaseTest;
+import pl.coderstrust.database.DbException;
+import pl.coderstrust.database.ExceptionMsg;
+import pl.coderstrust.database.memory.InMemoryDatabase;
+import pl.coderstrust.model.Invoice;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class WriteBehindDatabaseTest extends DatabaseTest {
+
+  private static final int CAPACITY = 100;
+  private static final int BATCH_SIZE = 10;
+  private static final long FLUSH_INTERVAL_MILLIS = 10;
+  private static final long NEVER_MILLIS = TimeUnit.HOURS.toMillis(1);
+  private static final long WAIT_TIME_MILLIS = 200;
+
+  @Override
+  public Database getCleanDatabase() {
+    return new WriteBehindDatabase<>(new InMemoryDatabase<>(Invoice.class), CAPACITY, BATCH_SIZE,
+        FLUSH_INTERVAL_MILLIS);
+  }
+
+  @Test
+  public void shouldServePendingEntriesBeforeFlush() {
+    //given
+    InMemoryDatabase<Invoice> stored = new InMemoryDatabase<>(Invoice.class);
+    WriteBehindDatabase<Invoice> database =
+        new WriteBehindDatabase<>(stored, CAPACITY, BATCH_SIZE, NEVER_MILLIS);
+    //when
+    long id = database.addEntry(generator.getTestInvoice(1, 1));
+    //then
+    assertThat(stored.idExist(id), is(false));
+    assertThat(database.idExist(id), is(true));
+    assertThat(database.getEntryById(id).getId(), is(id));
+    assertThat(database.getEntries().size(), is(1));
+    database.flush();
+    assertThat(stored.getEntryById(id).getId(), is(id));
+  }
+
+  @Test
+  public void shouldFlushFullBatchWithoutWaitingForInterval() throws Exception {
+    //given
+    InMemoryDatabase<Invoice> stored = new InMemoryDatabase<>(Invoice.class);
+    WriteBehindDatabase<Invoice> database =
+        new WriteBehindDatabase<>(stored, CAPACITY, BATCH_SIZE, NEVER_MILLIS);
+    //when
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      database.addEntry(generator.getTestInvoice(i, 1));
+    }
+    //then
+    long deadline = System.currentTimeMillis() + WAIT_TIME_MILLIS * 10;
+    while (stored.getEntries().size() < BATCH_SIZE && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(stored.getEntries().size(), is(BATCH_SIZE));
+  }
+
+  @Test
+  public void shouldApplyPendingUpdatesAndDeletesToStoredEntries() {
+    //given
+    InMemoryDatabase<Invoice> stored = new InMemoryDatabase<>(Invoice.class);
+    long updatedId = stored.addEntry(generator.getTestInvoice(1, 1));
+    long deletedId = stored.addEntry(generator.getTestInvoice(2, 1));
+    WriteBehindDatabase<Invoice> database =
+        new WriteBehindDatabase<>(stored, CAPACITY, BATCH_SIZE, NEVER_MILLIS);
+    Invoice updated = generator.getTestInvoice(3, 1);
+    updated.setId(updatedId);
+    //when
+    database.updateEntry(updated);
+    database.deleteEntry(deletedId);
+    long addedId = database.addEntry(generator.getTestInvoice(4, 1));
+    //then
+    assertThat(addedId, is(deletedId + 1));
+    assertThat(database.idExist(deletedId), is(false));
+    assertThat(database.getEntries().size(), is(2));
+    assertThat(database.getEntries().get(0).getName(), is(updated.getName()));
+    assertThat(stored.idExist(deletedId), is(true));
+    database.flush();
+    assertThat(stored.idExist(deletedId), is(false));
+    assertThat(stored.getEntryById(updatedId).getName(), is(updated.getName()));
+    assertThat(stored.getEntryById(addedId).getId(), is(addedId));
+  }
+
+  @Test
+  public void shouldNotReuseIdOfEntryDeletedFromWrappedDatabase() {
+    //given
+    InMemoryDatabase<Invoice> stored = new InMemoryDatabase<>(Invoice.class);
+    stored.addEntry(generator.getTestInvoice(1, 1));
+    long deletedId = stored.addEntry(generator.getTestInvoice(2, 1));
+    stored.deleteEntry(deletedId);
+    WriteBehindDatabase<Invoice> database =
+        new WriteBehindDatabase<>(stored, CAPACITY, BATCH_SIZE, NEVER_MILLIS);
+    //when
+    long addedId = database.addEntry(generator.getTestInvoice(3, 1));
+    //then
+    assertThat(addedId, is(deletedId + 1));
+    assertThat(database.getMaxId(), is(addedId));
+  }
+
+  @Test
+  public void shouldDropEntryDeletedBeforeFlush() {
+    //given
+    InMemoryDatabase<Invoice> stored = new InMemoryDatabase<>(Invoice.class);
+    WriteBehindDatabase<Invoice> database =
+        new WriteBehindDatabase<>(stored, CAPACITY, BATCH_SIZE, NEVER_MILLIS);
+    long id = database.addEntry(generator.getTestInvoice(1, 1));
+    //when
+    database.deleteEntry(id);
+    database.flush();
+    //then
+    assertThat(database.idExist(id), is(false));
+    assertThat(stored.getEntries().size(), is(0));
+  }
+
+  @Test
+  public void shouldFlushPendingEntriesOnClose() {
+    //given
+    InMemoryDatabase<Invoice> stored = new InMemoryDatabase<>(Invoice.class);
+    WriteBehindDatabase<Invoice> database =
+        new WriteBehindDatabase<>(stored, CAPACITY, BATCH_SIZE, NEVER_MILLIS);
+    for (int i = 0; i < BATCH_SIZE / 2; i++) {
+      database.addEntry(generator.getTestInvoice(i, 1));
+    }
+    //when
+    database.close();
+    //then
+    assertThat(stored.getEntries().size(), is(BATCH_SIZE / 2));
+  }
+
+  @Test
+  public void shouldKeepWritesOfFailedFlushForRetry() {
+    //given
+    AtomicBoolean failing = new AtomicBoolean(true);
+    InMemoryDatabase<Invoice> stored = new InMemoryDatabase<Invoice>(Invoice.class) {
+      @Override
+      public void insertEntries(List<Invoice> entries) {
+        if (failing.get()) {
+          throw new DbException(ExceptionMsg.IO_ERROR_WHILE_ADDING);
+        }
+        super.insertEntries(entries);
+      }
+    };
+    WriteBehindDatabase<Invoice> database =
+        new WriteBehindDatabase<>(stored, CAPACITY, BATCH_SIZE, NEVER_MILLIS);
+    long id = database.addEntry(generator.getTestInvoice(1, 1));
+    //when
+    String failure = null;
+    try {
+      database.flush();
+    } catch (DbException ex) {
+      failure = ex.getMessage();
+    }
+    boolean readableAfterFailure = database.idExist(id);
+    failing.set(false);
+    database.flush();
+    //then
+    assertThat(failure, is(ExceptionMsg.IO_ERROR_WHILE_FLUSHING));
+    assertThat(readableAfterFailure, is(true));
+    assertThat(stored.getEntryById(id).getId(), is(id));
+  }
+
+  @Test
+  public void shouldMergeLaterWritesIntoRetriedOnes() {
+    //given
+    AtomicBoolean failing = new AtomicBoolean(true);
+    InMemoryDatabase<Invoice> stored = new InMemoryDatabase<Invoice>(Invoice.class) {
+      @Override
+      public void insertEntries(List<Invoice> entries) {
+        if (failing.get()) {
+          throw new DbException(ExceptionMsg.IO_ERROR_WHILE_ADDING);
+        }
+        super.insertEntries(entries);
+      }
+    };
+    WriteBehindDatabase<Invoice> database =
+        new WriteBehindDatabase<>(stored, CAPACITY, BATCH_SIZE, NEVER_MILLIS);
+    long id = database.addEntry(generator.getTestInvoice(1, 1));
+    try {
+      database.flush();
+    } catch (DbException ex) {
+      // the write stays pending
+    }
+    Invoice updated = generator.getTestInvoice(2, 1);
+    updated.setId(id);
+    //when
+    database.updateEntry(updated);
+    failing.set(false);
+    database.flush();
+    //then
+    assertThat(stored.getEntries().size(), is(1));
+    assertThat(stored.getEntryById(id).getName(), is(updated.getName()));
+  }
+
+  @Test
+  public void shouldBlockWritersWhileBufferIsFull() throws Exception {
+    //given
+    CountDownLatch release = new CountDownLatch(1);
+    InMemoryDatabase<Invoice> stored = new InMemoryDatabase<Invoice>(Invoice.class) {
+      @Override
+      public void insertEntries(List<Invoice> entries) {
+        try {
+          release.await();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+        super.insertEntries(entries);
+      }
+    };
+    WriteBehindDatabase<Invoice> database = new WriteBehindDatabase<>(stored, 1, 1, NEVER_MILLIS);
+    database.addEntry(generator.getTestInvoice(1, 1));
+    //when
+    CompletableFuture<Long> blocked = CompletableFuture.supplyAsync(() -> {
+      database.addEntry(generator.getTestInvoice(2, 1));
+      return database.addEntry(generator.getTestInvoice(3, 1));
+    });
+    Thread.sleep(WAIT_TIME_MILLIS);
+    boolean doneWhileFull = blocked.isDone();
+    release.countDown();
+    blocked.get(WAIT_TIME_MILLIS * 10, TimeUnit.MILLISECONDS);
+    database.flush();
+    //then
+    assertThat(doneWhileFull, is(false));
+    assertThat(stored.getEntries().size(), is(3));
+  }
+}
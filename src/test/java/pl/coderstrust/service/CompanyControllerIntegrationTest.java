@@ -4,12 +4,14 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.handler;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -23,9 +25,11 @@ import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import pl.coderstrust.helpers.InvoicesWithSpecifiedData;
 import pl.coderstrust.model.Company;
 import pl.coderstrust.model.CompanyBuilder;
+import pl.coderstrust.service.bulk.BulkMediaTypes;
 
 import java.util.List;
 import java.util.regex.Matcher;
@@ -42,6 +46,7 @@ public class CompanyControllerIntegrationTest {
   private static final String GET_COMPANY_BY_ID_METHOD = "getCompanyById";
   private static final String REMOVE_COMPANY_METHOD = "removeCompany";
   private static final String ADD_COMPANY_METHOD = "addCompany";
+  private static final String EXPORT_COMPANIES_METHOD = "exportCompanies";
   private static final String DEFAULT_PATH = "/v2/company";
   private static final MediaType CONTENT_TYPE = MediaType.APPLICATION_JSON_UTF8;
   private static final String INT_FROM_STRING_REGEX_PATTERN = "([0-9])+";
@@ -78,6 +83,26 @@ public class CompanyControllerIntegrationTest {
     assertThat(companies.get(0), is(equalTo(testCompany)));
   }
 
+  @Test
+  public void shouldExportCompaniesAsCsv() throws Exception {
+    //given
+    this.mockMvc.perform(post(DEFAULT_PATH).content(json(testCompany)).contentType(CONTENT_TYPE))
+        .andExpect(status().isOk());
+    //when
+    MvcResult export = this.mockMvc
+        .perform(get(DEFAULT_PATH + "/export").accept(BulkMediaTypes.CSV))
+        .andExpect(handler().methodName(EXPORT_COMPANIES_METHOD))
+        .andExpect(request().asyncStarted()).andReturn();
+    String response = this.mockMvc.perform(asyncDispatch(export))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+    //then
+    String[] lines = response.split("\n");
+    assertThat(lines.length, is(2));
+    assertTrue(lines[0].startsWith("companyId,name,issueDate,"));
+    assertTrue(lines[1].contains(testCompany.getNip()));
+  }
+
   @Test
   public void shouldReturnErrorCausedByEmptyFields() throws Exception {
     //given
@@ -2,39 +2,56 @@ package pl.coderstrust.service;
 
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.handler;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import pl.coderstrust.helpers.InvoicesWithSpecifiedData;
 import pl.coderstrust.helpers.TestCasesGenerator;
+import pl.coderstrust.model.Company;
+import pl.coderstrust.model.ImportResult;
 import pl.coderstrust.model.Invoice;
 import pl.coderstrust.model.InvoiceEntry;
 import pl.coderstrust.model.Product;
+import pl.coderstrust.service.bulk.BulkMediaTypes;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
@@ -47,6 +64,15 @@ public class InvoiceControllerIntegrationTest {
   private static final String GET_INVOICE_BY_ID_METHOD = "getInvoiceById";
   private static final String REMOVE_INVOICE_METHOD = "removeInvoice";
   private static final String ADD_INVOICE_METHOD = "addInvoice";
+  private static final String ADD_INVOICES_METHOD = "addInvoices";
+  private static final String IMPORT_INVOICES_METHOD = "importInvoices";
+  private static final String EXPORT_INVOICES_METHOD = "exportInvoices";
+  private static final String CSV_HEADER = "name,issueDate,paymentDate,paymentState,"
+      + "buyer.name,buyer.issueDate,buyer.address,buyer.city,buyer.zipCode,buyer.nip,"
+      + "buyer.bankAccountNumber,seller.name,seller.issueDate,seller.address,seller.city,"
+      + "seller.zipCode,seller.nip,seller.bankAccountNumber,products.product.name,"
+      + "products.product.description,products.product.netValue,products.product.vatRate,"
+      + "products.product.productType,products.amount";
   private static final String GET_PDF_METHOD = "invoiceToPdf";
   private static final String DEFAULT_PATH = "/v1/invoice";
   private static final MediaType CONTENT_TYPE_JSON = MediaType.APPLICATION_JSON_UTF8;
@@ -228,6 +254,199 @@ public class InvoiceControllerIntegrationTest {
     }
   }
 
+  @Test
+  public void shouldGetInvoicesPageByPageInIssueDateOrder() throws Exception {
+    //given
+    for (int i = 1; i <= 5; i++) {
+      Invoice invoice = generator.getTestInvoice(i, 1);
+      invoice.setIssueDate(LocalDate.of(2021, 1, 1).minusMonths(i));
+      this.mockMvc.perform(post(DEFAULT_PATH).content(json(invoice)).contentType(CONTENT_TYPE_JSON))
+          .andExpect(status().isOk());
+    }
+    //when
+    String firstPage = this.mockMvc
+        .perform(get(DEFAULT_PATH + "?pageSize=3"))
+        .andExpect(handler().methodName(GET_INVOICE_BY_DATE_METHOD)).andExpect(status().isOk())
+        .andExpect(jsonPath("$.entries.length()", is(3)))
+        .andExpect(jsonPath("$.entries.[0].issueDate", is("2020-08-01")))
+        .andExpect(jsonPath("$.entries.[2].issueDate", is("2020-10-01")))
+        .andReturn().getResponse().getContentAsString();
+    String cursor = mapper.readTree(firstPage).get("nextCursor").asText();
+    //then
+    this.mockMvc
+        .perform(get(DEFAULT_PATH + "?pageSize=3&cursor=" + cursor))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.entries.length()", is(2)))
+        .andExpect(jsonPath("$.entries.[0].issueDate", is("2020-11-01")))
+        .andExpect(jsonPath("$.entries.[1].issueDate", is("2020-12-01")))
+        .andExpect(jsonPath("$.nextCursor", is(nullValue())));
+  }
+
+  @Test
+  public void shouldRejectIncorrectPageCursor() throws Exception {
+    this.mockMvc
+        .perform(get(DEFAULT_PATH + "?pageSize=3&cursor=notACursor"))
+        .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  public void shouldAddInvoicesInOneBatch() throws Exception {
+    //given
+    List<Invoice> invoices = Arrays.asList(generator.getTestInvoice(1, 1),
+        generator.getTestInvoice(2, 3));
+    //when
+    this.mockMvc
+        .perform(post(DEFAULT_PATH + "/batch").content(mapper.writeValueAsString(invoices))
+            .contentType(CONTENT_TYPE_JSON))
+        .andExpect(handler().methodName(ADD_INVOICES_METHOD)).andExpect(status().isOk())
+        .andExpect(jsonPath("$.[0]", is(1)))
+        .andExpect(jsonPath("$.[1]", is(2)));
+    String response = this.mockMvc.perform(get(DEFAULT_PATH))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+    //then
+    assertThat(getInvoicesFromResponse(response).size(), is(2));
+  }
+
+  @Test
+  public void shouldRejectWholeBatchWithInvalidInvoice() throws Exception {
+    //given
+    List<Invoice> invoices = Arrays.asList(generator.getTestInvoice(1, 1),
+        generator.getTestInvoice(2, 0));
+    //when
+    this.mockMvc
+        .perform(post(DEFAULT_PATH + "/batch").content(mapper.writeValueAsString(invoices))
+            .contentType(CONTENT_TYPE_JSON))
+        .andExpect(handler().methodName(ADD_INVOICES_METHOD))
+        .andExpect(status().isBadRequest())
+        .andExpect(content().string("[\"1: Products list is empty.\"]"));
+    String response = this.mockMvc.perform(get(DEFAULT_PATH))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+    //then
+    assertThat(getInvoicesFromResponse(response).size(), is(0));
+  }
+
+  @Test
+  public void shouldImportInvoicesFromNdjsonReportingEveryLine() throws Exception {
+    //given
+    String upload = json(generator.getTestInvoice(1, 1)) + "\n{not an invoice\n\n"
+        + json(generator.getTestInvoice(2, 0)) + "\n" + json(generator.getTestInvoice(3, 2));
+    //when
+    String report = this.mockMvc
+        .perform(post(DEFAULT_PATH + "/import").content(upload)
+            .contentType(BulkMediaTypes.NDJSON))
+        .andExpect(handler().methodName(IMPORT_INVOICES_METHOD)).andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+    //then
+    List<ImportResult> results = getImportResults(report);
+    assertThat(results.size(), is(4));
+    assertThat(results.get(0).getId(), is(1L));
+    assertThat(results.get(1).getLine(), is(2L));
+    assertThat(results.get(1).getErrors(), is(Arrays.asList("Line is not a complete invoice.")));
+    assertThat(results.get(2).getLine(), is(4L));
+    assertThat(results.get(2).getErrors(), is(Arrays.asList("Products list is empty.")));
+    assertThat(results.get(3).getLine(), is(5L));
+    assertThat(results.get(3).getId(), is(2L));
+  }
+
+  @Test
+  public void shouldImportInvoicesFromCsvWithProductPerRow() throws Exception {
+    //given
+    Invoice first = generator.getTestInvoice(1, 2);
+    Invoice second = generator.getTestInvoice(2, 1);
+    String upload = CSV_HEADER + "\n"
+        + csvRow(first, first.getProducts().get(0)) + "\n"
+        + csvRow(null, first.getProducts().get(1)) + "\n"
+        + csvRow(second, second.getProducts().get(0)) + "\n";
+    //when
+    String report = this.mockMvc
+        .perform(post(DEFAULT_PATH + "/import").content(upload)
+            .contentType(BulkMediaTypes.CSV))
+        .andExpect(handler().methodName(IMPORT_INVOICES_METHOD)).andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+    String stored = this.mockMvc.perform(get(DEFAULT_PATH + "/1"))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+    //then
+    List<ImportResult> results = getImportResults(report);
+    assertThat(results.size(), is(2));
+    assertThat(results.get(0).getLine(), is(2L));
+    assertThat(results.get(0).getId(), is(1L));
+    assertThat(results.get(1).getLine(), is(4L));
+    assertThat(results.get(1).getId(), is(2L));
+    assertThat(jsonToInvoice(stored).getProducts().size(), is(2));
+  }
+
+  @Test
+  public void shouldExportInvoicesAsNdjson() throws Exception {
+    //given
+    List<Invoice> invoices = Arrays.asList(generator.getTestInvoice(1, 1),
+        generator.getTestInvoice(2, 2), generator.getTestInvoice(3, 3));
+    this.mockMvc.perform(post(DEFAULT_PATH + "/batch").content(mapper.writeValueAsString(invoices))
+        .contentType(CONTENT_TYPE_JSON)).andExpect(status().isOk());
+    //when
+    MvcResult export = this.mockMvc
+        .perform(get(DEFAULT_PATH + "/export").accept(BulkMediaTypes.NDJSON))
+        .andExpect(handler().methodName(EXPORT_INVOICES_METHOD))
+        .andExpect(request().asyncStarted()).andReturn();
+    String response = this.mockMvc.perform(asyncDispatch(export))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(BulkMediaTypes.NDJSON))
+        .andReturn().getResponse().getContentAsString();
+    //then
+    List<Invoice> exported = new ArrayList<>();
+    for (String line : response.split("\n")) {
+      exported.add(jsonToInvoice(line));
+    }
+    exported.sort(Comparator.comparingLong(Invoice::getId));
+    assertThat(exported.size(), is(3));
+    assertThat(exported.get(2).getId(), is(3L));
+    assertThat(exported.get(2).getProducts().size(), is(3));
+  }
+
+  @Test
+  public void shouldExportGzippedCsvWhichCanBeImportedAgain() throws Exception {
+    //given
+    List<Invoice> invoices = Arrays.asList(generator.getTestInvoice(1, 2),
+        generator.getTestInvoice(2, 1));
+    this.mockMvc.perform(post(DEFAULT_PATH + "/batch").content(mapper.writeValueAsString(invoices))
+        .contentType(CONTENT_TYPE_JSON)).andExpect(status().isOk());
+    //when
+    MvcResult export = this.mockMvc
+        .perform(get(DEFAULT_PATH + "/export").accept(BulkMediaTypes.CSV)
+            .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+        .andExpect(request().asyncStarted()).andReturn();
+    byte[] gzipped = this.mockMvc.perform(asyncDispatch(export))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+        .andReturn().getResponse().getContentAsByteArray();
+    String csv;
+    try (GZIPInputStream unzipped = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+      csv = IOUtils.toString(unzipped, StandardCharsets.UTF_8);
+    }
+    String report = this.mockMvc
+        .perform(post(DEFAULT_PATH + "/import").content(csv).contentType(BulkMediaTypes.CSV))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+    //then
+    assertThat(csv.split("\n").length, is(4));
+    assertTrue(csv.startsWith("invoiceId,name,issueDate,"));
+    List<ImportResult> results = getImportResults(report);
+    assertThat(results.size(), is(2));
+    assertThat(results.get(0).getId(), is(3L));
+    assertThat(results.get(1).getLine(), is(4L));
+    assertThat(results.get(1).getId(), is(4L));
+  }
+
+  @Test
+  public void shouldNotExportInvoicesWithoutBulkFormatInAcceptHeader() throws Exception {
+    //when
+    this.mockMvc.perform(get(DEFAULT_PATH + "/export").accept(MediaType.ALL))
+        .andExpect(handler().methodName(EXPORT_INVOICES_METHOD))
+        .andExpect(status().isNotAcceptable());
+  }
+
   @Test
   public void shouldGetInvoiceSpecifiedById() throws Exception {
     //given
@@ -328,6 +547,36 @@ public class InvoiceControllerIntegrationTest {
     return mapper.writeValueAsString(invoice);
   }
 
+  private List<ImportResult> getImportResults(String report) throws Exception {
+    List<ImportResult> results = new ArrayList<>();
+    for (String line : report.split("\n")) {
+      results.add(mapper.readValue(line, ImportResult.class));
+    }
+    return results;
+  }
+
+  private String csvRow(Invoice invoice, InvoiceEntry entry) {
+    List<Object> values = new ArrayList<>();
+    if (invoice == null) {
+      values.addAll(Collections.nCopies(18, ""));
+    } else {
+      values.addAll(Arrays.asList(invoice.getName(), invoice.getIssueDate(),
+          invoice.getPaymentDate(), invoice.getPaymentState()));
+      for (Company company : Arrays.asList(invoice.getBuyer(), invoice.getSeller())) {
+        values.addAll(Arrays.asList(company.getName(), company.getIssueDate(),
+            company.getAddress(), company.getCity(), company.getZipCode(), company.getNip(),
+            company.getBankAccountNumber()));
+      }
+    }
+    Product product = entry.getProduct();
+    values.addAll(Arrays.asList(product.getName(), product.getDescription(),
+        product.getNetValue(), product.getVatRate(), product.getProductType(),
+        entry.getAmount()));
+    return values.stream()
+        .map(value -> value == null ? "" : value.toString())
+        .collect(Collectors.joining(","));
+  }
+
   private Invoice jsonToInvoice(String jsonInvoice) throws Exception {
     return mapper.readValue(jsonInvoice, Invoice.class);
   }
@@ -3,7 +3,10 @@ package pl.coderstrust.service;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.IsEqual.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -14,7 +17,10 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import pl.coderstrust.database.Database;
+import pl.coderstrust.database.DbException;
+import pl.coderstrust.database.ExceptionMsg;
 import pl.coderstrust.helpers.InvoicesWithSpecifiedData;
+import pl.coderstrust.model.Company;
 import pl.coderstrust.model.Invoice;
 import pl.coderstrust.service.pdf.PdfGenerator;
 
@@ -57,6 +63,27 @@ public class InvoiceServiceTest {
     assertThat(invoiceBook.addEntry(invoice), is(equalTo(1L)));
   }
 
+  @Test
+  public void shouldDeleteCompaniesAddedForBatchWhenBatchFails() {
+    //given
+    when(companyService.nipExist(anyString())).thenReturn(false);
+    when(companyService.addEntry(any(Company.class))).thenReturn(5L, 6L);
+    when(companyService.findEntry(anyLong())).thenReturn(invoice.getBuyer());
+    when(database.addEntries(anyList()))
+        .thenThrow(new DbException(ExceptionMsg.IO_ERROR_WHILE_ADDING));
+    //when
+    boolean failed = false;
+    try {
+      invoiceBook.addEntries(Collections.singletonList(invoice));
+    } catch (DbException ex) {
+      failed = true;
+    }
+    //then
+    assertThat(failed, is(true));
+    verify(companyService).deleteEntry(5L);
+    verify(companyService).deleteEntry(6L);
+  }
+
   @Test
   public void shouldRemoveInvoice() {
     //given
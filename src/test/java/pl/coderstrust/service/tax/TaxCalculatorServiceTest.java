@@ -9,6 +9,7 @@ import static org.mockito.Mockito.when;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.Answers;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
@@ -41,7 +42,7 @@ public class TaxCalculatorServiceTest {
   private TaxSummaryMapBuilder mapBuilder = new TaxSummaryMapBuilder();
   private Company testCompany = InvoicesWithSpecifiedData.getPolishCompanySeller();
 
-  @Mock
+  @Mock(answer = Answers.CALLS_REAL_METHODS)
   private Database database;
 
   @Mock